@@ -0,0 +1,369 @@
+/*
+ * Java Trust Project.
+ * Copyright (C) 2021 e-Contract.be BV.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+
+package be.fedict.trust;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.security.InvalidParameterException;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Optional;
+import java.util.Set;
+
+import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.ASN1Sequence;
+import org.bouncycastle.asn1.DERIA5String;
+import org.bouncycastle.asn1.x509.AccessDescription;
+import org.bouncycastle.asn1.x509.AuthorityInformationAccess;
+import org.bouncycastle.asn1.x509.AuthorityKeyIdentifier;
+import org.bouncycastle.asn1.x509.CRLDistPoint;
+import org.bouncycastle.asn1.x509.DistributionPoint;
+import org.bouncycastle.asn1.x509.DistributionPointName;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.asn1.x509.PolicyInformation;
+import org.bouncycastle.asn1.x509.SubjectKeyIdentifier;
+import org.bouncycastle.asn1.x509.X509ObjectIdentifiers;
+import org.bouncycastle.asn1.x509.qualified.QCStatement;
+import org.bouncycastle.cert.jcajce.JcaX509ExtensionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import be.fedict.trust.cache.WeakIdentityMap;
+
+/**
+ * Parsed X509 certificate extensions, shared by the trust linkers and the
+ * certificate constraints. Each extension is decoded lazily, at most once per
+ * certificate instance, so that repeated validations of the same certificates
+ * do not redo the ASN.1 work.
+ * <p>
+ * Instances are thread-safe. A malformed extension is not cached, and gets
+ * reported again on every access.
+ * </p>
+ * <p>
+ * A profile does not keep its certificate alive. It should only be used while
+ * the caller still holds the certificate itself.
+ * </p>
+ */
+public final class CertificateProfile {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(CertificateProfile.class);
+
+	private static final WeakIdentityMap<X509Certificate, CertificateProfile> PROFILES = new WeakIdentityMap<>();
+
+	private static final ASN1ObjectIdentifier ID_ETSI_QCS_QC_TYPE = new ASN1ObjectIdentifier("0.4.0.1862.1.6");
+
+	/**
+	 * Only weakly referenced, as the profile is the value of the weakly keyed
+	 * {@link #PROFILES} map. A strong reference would keep its own key alive.
+	 */
+	private final WeakReference<X509Certificate> certificate;
+
+	private volatile Optional<URI> crlUri;
+
+	private volatile Optional<URI> ocspUri;
+
+	private volatile Boolean ca;
+
+	private volatile Optional<SubjectKeyIdentifier> subjectKeyIdentifier;
+
+	private volatile Optional<AuthorityKeyIdentifier> authorityKeyIdentifier;
+
+	private volatile Optional<Set<String>> certificatePolicies;
+
+	private volatile Optional<Set<ASN1ObjectIdentifier>> qcStatementIds;
+
+	private volatile Set<ASN1ObjectIdentifier> qcTypes;
+
+	private CertificateProfile(final X509Certificate certificate) {
+		this.certificate = new WeakReference<>(certificate);
+	}
+
+	/**
+	 * Gives back the profile of the given certificate.
+	 * 
+	 * @param certificate the X509 certificate.
+	 * @return the certificate profile.
+	 */
+	public static CertificateProfile getInstance(final X509Certificate certificate) {
+		return PROFILES.computeIfAbsent(certificate, CertificateProfile::new);
+	}
+
+	/**
+	 * Gives back the first HTTP URI of the CRL distribution points.
+	 * 
+	 * @return the CRL URI, or <code>null</code> if not present.
+	 */
+	public URI getCrlUri() {
+		Optional<URI> crlUri = this.crlUri;
+		if (null == crlUri) {
+			crlUri = Optional.ofNullable(decodeCrlUri());
+			this.crlUri = crlUri;
+		}
+		return crlUri.orElse(null);
+	}
+
+	/**
+	 * Gives back the OCSP URI of the authority information access extension.
+	 * 
+	 * @return the OCSP URI, or <code>null</code> if not present.
+	 * @throws IOException
+	 * @throws URISyntaxException
+	 */
+	public URI getOcspUri() throws IOException, URISyntaxException {
+		Optional<URI> ocspUri = this.ocspUri;
+		if (null == ocspUri) {
+			ocspUri = Optional.ofNullable(decodeAccessLocation(X509ObjectIdentifiers.ocspAccessMethod));
+			this.ocspUri = ocspUri;
+		}
+		return ocspUri.orElse(null);
+	}
+
+	/**
+	 * Returns whether the basic constraints extension marks the certificate as
+	 * CA.
+	 */
+	public boolean isCa() {
+		Boolean ca = this.ca;
+		if (null == ca) {
+			ca = decodeCa();
+			this.ca = ca;
+		}
+		return ca;
+	}
+
+	/**
+	 * Gives back the subject key identifier.
+	 * 
+	 * @return the subject key identifier, or <code>null</code> if not present.
+	 */
+	public SubjectKeyIdentifier getSubjectKeyIdentifier() throws IOException {
+		Optional<SubjectKeyIdentifier> subjectKeyIdentifier = this.subjectKeyIdentifier;
+		if (null == subjectKeyIdentifier) {
+			final ASN1Encodable extension = parseExtension(Extension.subjectKeyIdentifier);
+			subjectKeyIdentifier = Optional
+					.ofNullable(null != extension ? SubjectKeyIdentifier.getInstance(extension) : null);
+			this.subjectKeyIdentifier = subjectKeyIdentifier;
+		}
+		return subjectKeyIdentifier.orElse(null);
+	}
+
+	/**
+	 * Gives back the authority key identifier.
+	 * 
+	 * @return the authority key identifier, or <code>null</code> if not present.
+	 */
+	public AuthorityKeyIdentifier getAuthorityKeyIdentifier() throws IOException {
+		Optional<AuthorityKeyIdentifier> authorityKeyIdentifier = this.authorityKeyIdentifier;
+		if (null == authorityKeyIdentifier) {
+			final ASN1Encodable extension = parseExtension(Extension.authorityKeyIdentifier);
+			authorityKeyIdentifier = Optional
+					.ofNullable(null != extension ? AuthorityKeyIdentifier.getInstance(extension) : null);
+			this.authorityKeyIdentifier = authorityKeyIdentifier;
+		}
+		return authorityKeyIdentifier.orElse(null);
+	}
+
+	/**
+	 * Gives back the certificate policy OIDs.
+	 * 
+	 * @return the unmodifiable set of policy OIDs, or <code>null</code> if the
+	 *         extension is not present.
+	 */
+	public Set<String> getCertificatePolicies() throws IOException {
+		Optional<Set<String>> certificatePolicies = this.certificatePolicies;
+		if (null == certificatePolicies) {
+			final ASN1Encodable extension = parseExtension(Extension.certificatePolicies);
+			Set<String> policyIds = null;
+			if (null != extension) {
+				policyIds = new LinkedHashSet<>();
+				for (final ASN1Encodable policy : ASN1Sequence.getInstance(extension)) {
+					policyIds.add(PolicyInformation.getInstance(policy).getPolicyIdentifier().getId());
+				}
+				policyIds = Collections.unmodifiableSet(policyIds);
+			}
+			certificatePolicies = Optional.ofNullable(policyIds);
+			this.certificatePolicies = certificatePolicies;
+		}
+		return certificatePolicies.orElse(null);
+	}
+
+	/**
+	 * Gives back the QCStatement identifiers.
+	 * 
+	 * @return the unmodifiable set of statement identifiers, or <code>null</code>
+	 *         if the extension is not present.
+	 */
+	public Set<ASN1ObjectIdentifier> getQcStatementIds() throws IOException {
+		decodeQcStatements();
+		return this.qcStatementIds.orElse(null);
+	}
+
+	/**
+	 * Gives back the QcType OIDs of the QcType statement.
+	 * 
+	 * @return the unmodifiable set of QcType OIDs, empty if not present.
+	 */
+	public Set<ASN1ObjectIdentifier> getQcTypes() throws IOException {
+		decodeQcStatements();
+		return this.qcTypes;
+	}
+
+	private void decodeQcStatements() throws IOException {
+		if (null != this.qcStatementIds) {
+			return;
+		}
+		final ASN1Encodable extension = parseExtension(Extension.qCStatements);
+		Set<ASN1ObjectIdentifier> statementIds = null;
+		final Set<ASN1ObjectIdentifier> qcTypes = new LinkedHashSet<>();
+		if (null != extension) {
+			statementIds = new LinkedHashSet<>();
+			for (final ASN1Encodable statement : ASN1Sequence.getInstance(extension)) {
+				final QCStatement qcStatement = QCStatement.getInstance(statement);
+				final ASN1ObjectIdentifier statementId = qcStatement.getStatementId();
+				LOGGER.debug("statement Id: {}", statementId.getId());
+				statementIds.add(statementId);
+				if (ID_ETSI_QCS_QC_TYPE.equals(statementId)) {
+					for (final ASN1Encodable qcType : ASN1Sequence.getInstance(qcStatement.getStatementInfo())) {
+						qcTypes.add(ASN1ObjectIdentifier.getInstance(qcType));
+					}
+				}
+			}
+			statementIds = Collections.unmodifiableSet(statementIds);
+		}
+		// qcTypes is published before qcStatementIds, which marks the decoding as done
+		this.qcTypes = Collections.unmodifiableSet(qcTypes);
+		this.qcStatementIds = Optional.ofNullable(statementIds);
+	}
+
+	private X509Certificate getCertificate() {
+		final X509Certificate certificate = this.certificate.get();
+		if (null == certificate) {
+			throw new IllegalStateException("certificate already garbage collected");
+		}
+		return certificate;
+	}
+
+	private ASN1Encodable parseExtension(final ASN1ObjectIdentifier oid) throws IOException {
+		final byte[] extensionValue = getCertificate().getExtensionValue(oid.getId());
+		if (null == extensionValue) {
+			return null;
+		}
+		return JcaX509ExtensionUtils.parseExtensionValue(extensionValue);
+	}
+
+	private boolean decodeCa() {
+		final byte[] extensionValue = getCertificate().getExtensionValue(Extension.basicConstraints.getId());
+		if (null == extensionValue) {
+			return false;
+		}
+		try {
+			final DerCursor cursor = DerCursor.openExtensionValue(extensionValue);
+			if (DerCursor.SEQUENCE != cursor.next()) {
+				LOGGER.debug("basic constraints extension is not an ASN1 sequence");
+				return false;
+			}
+			cursor.enter();
+			// BasicConstraints ::= SEQUENCE { cA BOOLEAN DEFAULT FALSE, pathLenConstraint INTEGER OPTIONAL }
+			if (cursor.hasNext() && DerCursor.BOOLEAN == cursor.next()) {
+				return cursor.getBoolean();
+			}
+			return false;
+		} catch (final IOException e) {
+			LOGGER.error("IO error", e);
+			return false;
+		}
+	}
+
+	private URI decodeCrlUri() {
+		final ASN1Encodable extension;
+		try {
+			extension = parseExtension(Extension.cRLDistributionPoints);
+		} catch (final IOException e) {
+			throw new RuntimeException("IO error: " + e.getMessage(), e);
+		}
+		if (null == extension) {
+			return null;
+		}
+		final CRLDistPoint distPoint = CRLDistPoint.getInstance(extension);
+		final DistributionPoint[] distributionPoints = distPoint.getDistributionPoints();
+		for (final DistributionPoint distributionPoint : distributionPoints) {
+			final DistributionPointName distributionPointName = distributionPoint.getDistributionPoint();
+			if (DistributionPointName.FULL_NAME != distributionPointName.getType()) {
+				continue;
+			}
+			final GeneralNames generalNames = (GeneralNames) distributionPointName.getName();
+			final GeneralName[] names = generalNames.getNames();
+			for (final GeneralName name : names) {
+				if (name.getTagNo() != GeneralName.uniformResourceIdentifier) {
+					LOGGER.debug("not a uniform resource identifier");
+					continue;
+				}
+				final DERIA5String derStr = DERIA5String.getInstance(name.getName());
+				final String str = derStr.getString();
+				if (false == str.startsWith("http")) {
+					/*
+					 * skip ldap:// protocols
+					 */
+					LOGGER.debug("not HTTP/HTTPS: {}", str);
+					continue;
+				}
+				try {
+					return new URI(str);
+				} catch (final URISyntaxException e) {
+					throw new InvalidParameterException("CRL URI syntax error: " + e.getMessage());
+				}
+			}
+		}
+		return null;
+	}
+
+	private URI decodeAccessLocation(final ASN1ObjectIdentifier accessMethod) throws IOException, URISyntaxException {
+		final ASN1Encodable extension = parseExtension(Extension.authorityInfoAccess);
+		if (null == extension) {
+			return null;
+		}
+		final AuthorityInformationAccess authorityInformationAccess = AuthorityInformationAccess
+				.getInstance(extension);
+		final AccessDescription[] accessDescriptions = authorityInformationAccess.getAccessDescriptions();
+		for (final AccessDescription accessDescription : accessDescriptions) {
+			LOGGER.debug("access method: " + accessDescription.getAccessMethod());
+			final boolean correctAccessMethod = accessDescription.getAccessMethod().equals(accessMethod);
+			if (!correctAccessMethod) {
+				continue;
+			}
+			final GeneralName gn = accessDescription.getAccessLocation();
+			if (gn.getTagNo() != GeneralName.uniformResourceIdentifier) {
+				LOGGER.debug("not a uniform resource identifier");
+				continue;
+			}
+			final DERIA5String str = DERIA5String.getInstance(gn.getName());
+			final String accessLocation = str.getString();
+			LOGGER.debug("access location: {}", accessLocation);
+			return new URI(accessLocation);
+		}
+		return null;
+	}
+}
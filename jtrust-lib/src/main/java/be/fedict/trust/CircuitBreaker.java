@@ -0,0 +1,139 @@
+/*
+ * Java Trust Project.
+ * Copyright (C) 2021 e-Contract.be BV.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.trust;
+
+/**
+ * Circuit breaker for a single online PKI service endpoint. After a number of
+ * consecutive failures the circuit opens, and requests fail fast for the open
+ * duration. Afterwards a single probe request is let through. Depending on the
+ * outcome of the probe, the circuit closes again or re-opens.
+ * <p>
+ * This implementation is thread-safe.
+ * </p>
+ */
+public class CircuitBreaker {
+
+	/**
+	 * The circuit breaker states.
+	 */
+	public enum State {
+		/**
+		 * Requests are let through.
+		 */
+		CLOSED,
+
+		/**
+		 * Requests fail fast.
+		 */
+		OPEN,
+
+		/**
+		 * A single probe request is in flight.
+		 */
+		HALF_OPEN
+	}
+
+	private final int failureThreshold;
+
+	private final long openDuration;
+
+	private State state;
+
+	private int failureCount;
+
+	private long openUntil;
+
+	/**
+	 * Main constructor.
+	 * 
+	 * @param failureThreshold the number of consecutive failures after which the
+	 *                         circuit opens.
+	 * @param openDuration     the duration in milliseconds during which the
+	 *                         circuit stays open.
+	 */
+	public CircuitBreaker(final int failureThreshold, final long openDuration) {
+		if (failureThreshold < 1) {
+			throw new IllegalArgumentException("invalid failure threshold");
+		}
+		this.failureThreshold = failureThreshold;
+		this.openDuration = openDuration;
+		this.state = State.CLOSED;
+	}
+
+	/**
+	 * Returns whether a request is allowed. When the open duration has passed,
+	 * only the first caller is allowed, as probe.
+	 * 
+	 * @return <code>true</code> if the request can be executed.
+	 */
+	public synchronized boolean allowRequest() {
+		switch (this.state) {
+		case CLOSED:
+			return true;
+		case OPEN:
+			if (System.currentTimeMillis() < this.openUntil) {
+				return false;
+			}
+			this.state = State.HALF_OPEN;
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Records a successful request. Closes the circuit.
+	 */
+	public synchronized void recordSuccess() {
+		this.state = State.CLOSED;
+		this.failureCount = 0;
+	}
+
+	/**
+	 * Records a failed request. Opens the circuit when the failure threshold is
+	 * reached, or when the probe request failed.
+	 */
+	public synchronized void recordFailure() {
+		this.failureCount++;
+		if (State.HALF_OPEN == this.state || this.failureCount >= this.failureThreshold) {
+			this.state = State.OPEN;
+			this.openUntil = System.currentTimeMillis() + this.openDuration;
+		}
+	}
+
+	/**
+	 * Records a request of which the outcome says nothing about the endpoint,
+	 * like a timeout caused by the validation deadline of the caller, or a
+	 * cancelled request. Only a probe request re-opens the circuit, as otherwise
+	 * no new probe would ever be let through.
+	 */
+	public synchronized void recordInconclusive() {
+		if (State.HALF_OPEN == this.state) {
+			this.state = State.OPEN;
+			this.openUntil = System.currentTimeMillis() + this.openDuration;
+		}
+	}
+
+	/**
+	 * Gives back the current state.
+	 */
+	public synchronized State getState() {
+		return this.state;
+	}
+}
@@ -0,0 +1,49 @@
+/*
+ * Java Trust Project.
+ * Copyright (C) 2021 e-Contract.be BV.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.trust;
+
+import java.io.IOException;
+
+/**
+ * Thrown by the {@link HttpTransport} when a request is not executed because
+ * the circuit breaker of the target endpoint is open.
+ */
+public class CircuitBreakerOpenException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final String endpoint;
+
+	/**
+	 * Main constructor.
+	 * 
+	 * @param endpoint the endpoint that is considered down.
+	 */
+	public CircuitBreakerOpenException(final String endpoint) {
+		super("circuit breaker open for: " + endpoint);
+		this.endpoint = endpoint;
+	}
+
+	/**
+	 * Gives back the endpoint that is considered down.
+	 */
+	public String getEndpoint() {
+		return this.endpoint;
+	}
+}
@@ -70,11 +70,25 @@ public class Credentials {
 	 * @param httpClientContext
 	 */
 	public void init(HttpClientContext httpClientContext) {
-		if (this.credentials.isEmpty()) {
+		CredentialsProvider credentialsProvider = createCredentialsProvider();
+		if (null == credentialsProvider) {
 			return;
 		}
-		CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
 		httpClientContext.setCredentialsProvider(credentialsProvider);
+	}
+
+	/**
+	 * Creates a Commons HTTPClient credentials provider using the credentials
+	 * stored in this credential store.
+	 * 
+	 * @return the credentials provider, or <code>null</code> if this credential
+	 *         store is empty.
+	 */
+	public CredentialsProvider createCredentialsProvider() {
+		if (this.credentials.isEmpty()) {
+			return null;
+		}
+		CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
 		for (Credential credential : this.credentials) {
 			AuthScope authScope = new AuthScope(credential.getHost(), credential.getPort(), credential.getRealm(),
 					credential.getScheme());
@@ -82,5 +96,6 @@ public class Credentials {
 					credential.getUsername(), credential.getPassword());
 			credentialsProvider.setCredentials(authScope, usernamePasswordCredentials);
 		}
+		return credentialsProvider;
 	}
 }
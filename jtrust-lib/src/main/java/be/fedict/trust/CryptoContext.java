@@ -0,0 +1,218 @@
+/*
+ * Java Trust Project.
+ * Copyright (C) 2021 e-Contract.be BV.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.trust;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.ocsp.CertID;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.ContentVerifierProvider;
+import org.bouncycastle.operator.DigestCalculatorProvider;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.jcajce.JcaContentVerifierProviderBuilder;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+
+import be.fedict.trust.cache.WeakIdentityMap;
+
+/**
+ * Shared crypto context for trust linkers and repositories. Keeps the JCA
+ * provider lookups off the hot path by sharing thread-safe factories, pooling
+ * the non thread-safe primitives per thread, and caching the OCSP issuer hashes
+ * per CA certificate.
+ */
+public final class CryptoContext {
+
+	private static final DigestCalculatorProvider DIGEST_CALCULATOR_PROVIDER;
+
+	private static final JcaContentVerifierProviderBuilder CONTENT_VERIFIER_PROVIDER_BUILDER = new JcaContentVerifierProviderBuilder()
+			.setProvider(BouncyCastleProvider.PROVIDER_NAME);
+
+	private static final ThreadLocal<CertificateFactory> CERTIFICATE_FACTORIES = ThreadLocal.withInitial(() -> {
+		try {
+			return CertificateFactory.getInstance("X.509");
+		} catch (final CertificateException e) {
+			throw new IllegalStateException("X.509 certificate factory not available", e);
+		}
+	});
+
+	private static final ThreadLocal<Map<String, Signature>> SIGNATURES = ThreadLocal.withInitial(HashMap::new);
+
+	private static final ThreadLocal<Map<String, MessageDigest>> MESSAGE_DIGESTS = ThreadLocal
+			.withInitial(HashMap::new);
+
+	private static final WeakIdentityMap<X509Certificate, IssuerHashes> ISSUER_HASHES = new WeakIdentityMap<>();
+
+	static {
+		try {
+			DIGEST_CALCULATOR_PROVIDER = new JcaDigestCalculatorProviderBuilder()
+					.setProvider(BouncyCastleProvider.PROVIDER_NAME).build();
+		} catch (final OperatorCreationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	private static class IssuerHashes {
+
+		private final DEROctetString issuerNameHash;
+		private final DEROctetString issuerKeyHash;
+
+		public IssuerHashes(final DEROctetString issuerNameHash, final DEROctetString issuerKeyHash) {
+			this.issuerNameHash = issuerNameHash;
+			this.issuerKeyHash = issuerKeyHash;
+		}
+	}
+
+	private CryptoContext() {
+		super();
+	}
+
+	/**
+	 * Gives back the shared Bouncy Castle digest calculator provider.
+	 */
+	public static DigestCalculatorProvider getDigestCalculatorProvider() {
+		return DIGEST_CALCULATOR_PROVIDER;
+	}
+
+	/**
+	 * Gives back a Bouncy Castle content verifier provider for the given public
+	 * key.
+	 * 
+	 * @param publicKey the public key.
+	 * @throws OperatorCreationException
+	 */
+	public static ContentVerifierProvider getContentVerifierProvider(final PublicKey publicKey)
+			throws OperatorCreationException {
+		return CONTENT_VERIFIER_PROVIDER_BUILDER.build(publicKey);
+	}
+
+	/**
+	 * Gives back the X.509 certificate factory of the current thread.
+	 */
+	public static CertificateFactory getCertificateFactory() {
+		return CERTIFICATE_FACTORIES.get();
+	}
+
+	/**
+	 * Parses the given encoded X.509 certificate.
+	 * 
+	 * @param encodedCertificate the DER encoded certificate.
+	 * @return the certificate.
+	 * @throws CertificateException
+	 */
+	public static X509Certificate generateCertificate(final byte[] encodedCertificate) throws CertificateException {
+		return (X509Certificate) getCertificateFactory()
+				.generateCertificate(new ByteArrayInputStream(encodedCertificate));
+	}
+
+	/**
+	 * Gives back the signature instance of the current thread for the given
+	 * algorithm. The signature instance should be initialized before use, and
+	 * should not be used beyond the current call.
+	 * 
+	 * @param algorithm the signature algorithm.
+	 * @throws NoSuchAlgorithmException
+	 */
+	public static Signature getSignature(final String algorithm) throws NoSuchAlgorithmException {
+		final Map<String, Signature> signatures = SIGNATURES.get();
+		Signature signature = signatures.get(algorithm);
+		if (null == signature) {
+			signature = Signature.getInstance(algorithm);
+			signatures.put(algorithm, signature);
+		}
+		return signature;
+	}
+
+	/**
+	 * Gives back the reset message digest instance of the current thread for the
+	 * given algorithm. The message digest instance should not be used beyond the
+	 * current call.
+	 * 
+	 * @param algorithm the digest algorithm.
+	 * @throws NoSuchAlgorithmException
+	 */
+	public static MessageDigest getMessageDigest(final String algorithm) throws NoSuchAlgorithmException {
+		final Map<String, MessageDigest> messageDigests = MESSAGE_DIGESTS.get();
+		MessageDigest messageDigest = messageDigests.get(algorithm);
+		if (null == messageDigest) {
+			messageDigest = MessageDigest.getInstance(algorithm);
+			messageDigests.put(algorithm, messageDigest);
+		} else {
+			messageDigest.reset();
+		}
+		return messageDigest;
+	}
+
+	/**
+	 * Creates the SHA-1 based OCSP certificate identifier. The issuer name and key
+	 * hashes are computed only once per issuer certificate.
+	 * 
+	 * @param issuerCertificate the issuer certificate.
+	 * @param serialNumber      the serial number of the certificate.
+	 * @return the OCSP certificate identifier.
+	 * @throws CertificateEncodingException
+	 * @throws IOException
+	 */
+	public static CertificateID createCertificateID(final X509Certificate issuerCertificate,
+			final BigInteger serialNumber) throws CertificateEncodingException, IOException {
+		final IssuerHashes issuerHashes = getIssuerHashes(issuerCertificate);
+		return new CertificateID(new CertID(CertificateID.HASH_SHA1, issuerHashes.issuerNameHash,
+				issuerHashes.issuerKeyHash, new ASN1Integer(serialNumber)));
+	}
+
+	private static IssuerHashes getIssuerHashes(final X509Certificate issuerCertificate)
+			throws CertificateEncodingException, IOException {
+		final IssuerHashes cachedIssuerHashes = ISSUER_HASHES.get(issuerCertificate);
+		if (null != cachedIssuerHashes) {
+			return cachedIssuerHashes;
+		}
+		final X509CertificateHolder issuerCertificateHolder = new JcaX509CertificateHolder(issuerCertificate);
+		final MessageDigest messageDigest;
+		try {
+			messageDigest = getMessageDigest("SHA-1");
+		} catch (final NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-1 not available", e);
+		}
+		final byte[] issuerNameHash = messageDigest
+				.digest(issuerCertificateHolder.getSubject().getEncoded(ASN1Encoding.DER));
+		final byte[] issuerKeyHash = messageDigest
+				.digest(issuerCertificateHolder.getSubjectPublicKeyInfo().getPublicKeyData().getBytes());
+		final IssuerHashes issuerHashes = new IssuerHashes(new DEROctetString(issuerNameHash),
+				new DEROctetString(issuerKeyHash));
+		ISSUER_HASHES.put(issuerCertificate, issuerHashes);
+		return issuerHashes;
+	}
+}
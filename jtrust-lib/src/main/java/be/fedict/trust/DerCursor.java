@@ -0,0 +1,290 @@
+/*
+ * Java Trust Project.
+ * Copyright (C) 2021 e-Contract.be BV.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+
+package be.fedict.trust;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+
+/**
+ * Lightweight DER cursor. Walks a DER encoding in place, without creating
+ * intermediate streams or ASN.1 objects, so that extension values on the
+ * validation hot paths can be inspected without generating garbage.
+ * <p>
+ * The cursor only supports single byte tags and definite lengths, which is
+ * all DER encoded X509 extensions require. Instances are not thread-safe.
+ * </p>
+ */
+public final class DerCursor {
+
+	public static final int BOOLEAN = 0x01;
+	public static final int INTEGER = 0x02;
+	public static final int OCTET_STRING = 0x04;
+	public static final int OBJECT_IDENTIFIER = 0x06;
+	public static final int ENUMERATED = 0x0a;
+	public static final int SEQUENCE = 0x30;
+
+	private static final int CONSTRUCTED = 0x20;
+
+	private static final int MAX_DEPTH = 8;
+
+	private final byte[] data;
+
+	private final int[] limits;
+
+	private int depth;
+
+	private int position;
+
+	private int limit;
+
+	private int tag;
+
+	private int valueOffset;
+
+	private int valueLength;
+
+	/**
+	 * Main constructor.
+	 * 
+	 * @param data the DER encoding. The array is not copied.
+	 */
+	public DerCursor(final byte[] data) {
+		this(data, 0, data.length);
+	}
+
+	/**
+	 * Creates a cursor over a part of the given DER encoding.
+	 * 
+	 * @param data   the DER encoding. The array is not copied.
+	 * @param offset the offset of the first element.
+	 * @param length the length of the encoded elements.
+	 */
+	public DerCursor(final byte[] data, final int offset, final int length) {
+		if (offset < 0 || length < 0 || offset + length > data.length) {
+			throw new IllegalArgumentException("invalid range");
+		}
+		this.data = data;
+		this.limits = new int[MAX_DEPTH];
+		this.position = offset;
+		this.limit = offset + length;
+		this.tag = -1;
+	}
+
+	/**
+	 * Opens an X509 extension value as returned by
+	 * {@link java.security.cert.X509Extension#getExtensionValue(String)}. The
+	 * returned cursor is positioned in front of the DER encoded value wrapped by
+	 * the OCTET STRING.
+	 * 
+	 * @param extensionValue the encoded extension value.
+	 * @return the cursor.
+	 * @throws IOException in case of an invalid encoding.
+	 */
+	public static DerCursor openExtensionValue(final byte[] extensionValue) throws IOException {
+		final DerCursor cursor = new DerCursor(extensionValue);
+		cursor.next(OCTET_STRING);
+		cursor.enter();
+		return cursor;
+	}
+
+	/**
+	 * Gives back the encoded contents of the given object identifier, for use
+	 * with {@link #valueEquals(byte[])}.
+	 * 
+	 * @param oid the object identifier.
+	 * @return the contents octets.
+	 */
+	public static byte[] getContents(final ASN1ObjectIdentifier oid) {
+		try {
+			final DerCursor cursor = new DerCursor(oid.getEncoded(ASN1Encoding.DER));
+			cursor.next(OBJECT_IDENTIFIER);
+			return Arrays.copyOfRange(cursor.data, cursor.valueOffset, cursor.valueOffset + cursor.valueLength);
+		} catch (final IOException e) {
+			throw new IllegalArgumentException("OID encoding error: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Returns whether there are more elements at the current nesting level.
+	 */
+	public boolean hasNext() {
+		return this.position < this.limit;
+	}
+
+	/**
+	 * Moves to the next element at the current nesting level.
+	 * 
+	 * @return the tag of the element.
+	 * @throws IOException in case of an invalid encoding, or when there are no
+	 *                     more elements.
+	 */
+	public int next() throws IOException {
+		if (this.position + 2 > this.limit) {
+			throw new IOException("unexpected end of DER encoding");
+		}
+		final int elementTag = this.data[this.position++] & 0xff;
+		if ((elementTag & 0x1f) == 0x1f) {
+			throw new IOException("unsupported DER tag: " + elementTag);
+		}
+		int length = this.data[this.position++] & 0xff;
+		if (length > 0x7f) {
+			final int lengthBytes = length & 0x7f;
+			if (0 == lengthBytes || lengthBytes > 3 || this.position + lengthBytes > this.limit) {
+				throw new IOException("unsupported DER length");
+			}
+			length = 0;
+			for (int idx = 0; idx < lengthBytes; idx++) {
+				length = (length << 8) | (this.data[this.position++] & 0xff);
+			}
+		}
+		if (length > this.limit - this.position) {
+			throw new IOException("DER length exceeds encoding");
+		}
+		this.tag = elementTag;
+		this.valueOffset = this.position;
+		this.valueLength = length;
+		this.position += length;
+		return elementTag;
+	}
+
+	/**
+	 * Moves to the next element at the current nesting level, which should have
+	 * the given tag.
+	 * 
+	 * @param expectedTag the expected tag.
+	 * @throws IOException in case of an invalid encoding, or a different tag.
+	 */
+	public void next(final int expectedTag) throws IOException {
+		if (expectedTag != next()) {
+			throw new IOException("expected DER tag " + expectedTag + " but got " + this.tag);
+		}
+	}
+
+	/**
+	 * Gives back the tag of the current element.
+	 */
+	public int getTag() {
+		return this.tag;
+	}
+
+	/**
+	 * Gives back the length of the contents of the current element.
+	 */
+	public int getLength() {
+		return this.valueLength;
+	}
+
+	/**
+	 * Descends into the current element, which should be a constructed element,
+	 * or an OCTET STRING wrapping a DER encoding.
+	 * 
+	 * @throws IOException if the current element cannot be entered.
+	 */
+	public void enter() throws IOException {
+		if (this.tag < 0 || ((this.tag & CONSTRUCTED) == 0 && OCTET_STRING != this.tag)) {
+			throw new IOException("cannot enter DER tag: " + this.tag);
+		}
+		if (MAX_DEPTH == this.depth) {
+			throw new IOException("DER nesting too deep");
+		}
+		this.limits[this.depth++] = this.limit;
+		this.position = this.valueOffset;
+		this.limit = this.valueOffset + this.valueLength;
+		this.tag = -1;
+	}
+
+	/**
+	 * Leaves the element entered last, skipping its remaining elements.
+	 * 
+	 * @throws IOException if no element has been entered.
+	 */
+	public void exit() throws IOException {
+		if (0 == this.depth) {
+			throw new IOException("no DER element entered");
+		}
+		this.position = this.limit;
+		this.limit = this.limits[--this.depth];
+		this.tag = -1;
+	}
+
+	/**
+	 * Compares the contents of the current element with the given contents.
+	 * 
+	 * @param contents the expected contents.
+	 * @return <code>true</code> if equal.
+	 */
+	public boolean valueEquals(final byte[] contents) {
+		if (this.tag < 0 || contents.length != this.valueLength) {
+			return false;
+		}
+		for (int idx = 0; idx < this.valueLength; idx++) {
+			if (contents[idx] != this.data[this.valueOffset + idx]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Decodes the current element as a boolean.
+	 * 
+	 * @throws IOException in case of an invalid boolean encoding.
+	 */
+	public boolean getBoolean() throws IOException {
+		if (1 != this.valueLength || (this.tag & CONSTRUCTED) != 0) {
+			throw new IOException("invalid DER boolean");
+		}
+		return 0 != this.data[this.valueOffset];
+	}
+
+	/**
+	 * Decodes the current INTEGER or ENUMERATED element as a 32-bit integer.
+	 * 
+	 * @throws IOException in case of an invalid encoding, or if the value does
+	 *                     not fit.
+	 */
+	public int getInt() throws IOException {
+		if (0 == this.valueLength || this.valueLength > 4 || (this.tag & CONSTRUCTED) != 0) {
+			throw new IOException("unsupported DER integer");
+		}
+		int value = this.data[this.valueOffset];
+		for (int idx = 1; idx < this.valueLength; idx++) {
+			value = (value << 8) | (this.data[this.valueOffset + idx] & 0xff);
+		}
+		return value;
+	}
+
+	/**
+	 * Decodes the current INTEGER element as an unsigned value, like
+	 * {@link org.bouncycastle.asn1.ASN1Integer#getPositiveValue()}.
+	 * 
+	 * @throws IOException in case of an invalid encoding.
+	 */
+	public BigInteger getPositiveValue() throws IOException {
+		if (0 == this.valueLength || (this.tag & CONSTRUCTED) != 0) {
+			throw new IOException("invalid DER integer");
+		}
+		return new BigInteger(1, Arrays.copyOfRange(this.data, this.valueOffset, this.valueOffset + this.valueLength));
+	}
+}
@@ -0,0 +1,667 @@
+/*
+ * Java Trust Project.
+ * Copyright (C) 2021 e-Contract.be BV.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.trust;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.utils.URIUtils;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.protocol.HttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Shared HTTP transport for the online PKI services. Keeps a pool of persistent
+ * connections so that subsequent requests towards the same CRL server or OCSP
+ * responder can reuse an already established TCP connection and TLS session.
+ * <p>
+ * The network configuration and the credentials are applied once at
+ * construction. A single instance can be shared between several CRL and OCSP
+ * repositories, and is thread-safe.
+ * </p>
+ * <p>
+ * Optionally a circuit breaker per endpoint can be enabled. When an endpoint
+ * keeps on failing, requests towards it then fail fast with a
+ * {@link CircuitBreakerOpenException} instead of waiting for the network
+ * timeouts.
+ * </p>
+ * <p>
+ * When a {@link ValidationDeadline} is bound to the calling thread, the
+ * connection and socket timeouts are limited to the remaining validation time
+ * budget. A timeout caused by such a limit is reported as
+ * {@link ValidationDeadlineExceededException}, and does not count as a failure
+ * of the endpoint, except for a circuit breaker probe request.
+ * </p>
+ * <p>
+ * Next to the blocking {@link #execute(HttpUriRequest)}, requests can be
+ * executed in a non-blocking way via {@link #executeAsync(HttpUriRequest)}.
+ * The non-blocking HTTP client is only started on first use.
+ * </p>
+ */
+public class HttpTransport implements Closeable {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(HttpTransport.class);
+
+	/**
+	 * Default connection timeout in milliseconds.
+	 */
+	public static final int DEFAULT_CONNECTION_TIMEOUT = 1000;
+
+	/**
+	 * Default socket timeout in milliseconds.
+	 */
+	public static final int DEFAULT_SOCKET_TIMEOUT = 2000;
+
+	/**
+	 * Default maximum number of pooled connections per route.
+	 */
+	public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 10;
+
+	/**
+	 * Default maximum number of pooled connections.
+	 */
+	public static final int DEFAULT_MAX_CONNECTIONS = 50;
+
+	/**
+	 * Default keep-alive duration in milliseconds, used when the server does not
+	 * indicate one itself.
+	 */
+	public static final long DEFAULT_KEEP_ALIVE_DURATION = 1000 * 30;
+
+	/**
+	 * Default period in milliseconds after which idle pooled connections get
+	 * evicted.
+	 */
+	public static final long DEFAULT_IDLE_CONNECTION_TIMEOUT = 1000 * 60;
+
+	/**
+	 * Default duration in milliseconds during which an opened circuit breaker
+	 * stays open.
+	 */
+	public static final long DEFAULT_CIRCUIT_BREAKER_OPEN_DURATION = 1000 * 30;
+
+	private static final long EVICTION_INTERVAL = 1000 * 5;
+
+	private static final int CONNECT_TIMEOUT_LIMITED = 1;
+
+	private static final int SOCKET_TIMEOUT_LIMITED = 2;
+
+	private static final ScheduledExecutorService IDLE_CONNECTION_EVICTOR = Executors
+			.newSingleThreadScheduledExecutor(runnable -> {
+				final Thread thread = new Thread(runnable, "jtrust-http-idle-connection-evictor");
+				thread.setDaemon(true);
+				return thread;
+			});
+
+	private final PoolingHttpClientConnectionManager connectionManager;
+
+	private final CloseableHttpClient httpClient;
+
+	private final RequestConfig requestConfig;
+
+	private final CredentialsProvider credentialsProvider;
+
+	private volatile CloseableHttpAsyncClient httpAsyncClient;
+
+	private PoolingNHttpClientConnectionManager asyncConnectionManager;
+
+	private int maxConnectionsPerRoute;
+
+	private int maxConnections;
+
+	private final ScheduledFuture<?> evictionTask;
+
+	private volatile long keepAliveDuration;
+
+	private volatile long idleConnectionTimeout;
+
+	private volatile boolean closed;
+
+	private final ConcurrentMap<String, CircuitBreaker> circuitBreakers;
+
+	private volatile int circuitBreakerFailureThreshold;
+
+	private volatile long circuitBreakerOpenDuration;
+
+	/**
+	 * Default constructor.
+	 */
+	public HttpTransport() {
+		this(null, null);
+	}
+
+	/**
+	 * Main constructor.
+	 *
+	 * @param networkConfig the optional network configuration.
+	 */
+	public HttpTransport(final NetworkConfig networkConfig) {
+		this(networkConfig, null);
+	}
+
+	/**
+	 * Main constructor.
+	 *
+	 * @param networkConfig the optional network configuration.
+	 * @param credentials   the optional credentials to access protected online
+	 *                      PKI services.
+	 */
+	public HttpTransport(final NetworkConfig networkConfig, final Credentials credentials) {
+		this.keepAliveDuration = DEFAULT_KEEP_ALIVE_DURATION;
+		this.idleConnectionTimeout = DEFAULT_IDLE_CONNECTION_TIMEOUT;
+		this.circuitBreakers = new ConcurrentHashMap<>();
+		this.circuitBreakerOpenDuration = DEFAULT_CIRCUIT_BREAKER_OPEN_DURATION;
+		this.maxConnectionsPerRoute = DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+		this.maxConnections = DEFAULT_MAX_CONNECTIONS;
+
+		this.connectionManager = new PoolingHttpClientConnectionManager();
+		this.connectionManager.setDefaultMaxPerRoute(this.maxConnectionsPerRoute);
+		this.connectionManager.setMaxTotal(this.maxConnections);
+
+		final RequestConfig.Builder requestConfigBuilder = RequestConfig.custom()
+				.setConnectTimeout(DEFAULT_CONNECTION_TIMEOUT).setConnectionRequestTimeout(DEFAULT_CONNECTION_TIMEOUT)
+				.setSocketTimeout(DEFAULT_SOCKET_TIMEOUT);
+		if (null != networkConfig) {
+			final HttpHost proxy = new HttpHost(networkConfig.getProxyHost(), networkConfig.getProxyPort());
+			requestConfigBuilder.setProxy(proxy);
+		}
+
+		final HttpClientBuilder httpClientBuilder = HttpClientBuilder.create();
+		httpClientBuilder.setConnectionManager(this.connectionManager);
+		this.requestConfig = requestConfigBuilder.build();
+		httpClientBuilder.setDefaultRequestConfig(this.requestConfig);
+		httpClientBuilder.setKeepAliveStrategy(new KeepAliveStrategy());
+		this.credentialsProvider = null != credentials ? credentials.createCredentialsProvider() : null;
+		if (null != this.credentialsProvider) {
+			httpClientBuilder.setDefaultCredentialsProvider(this.credentialsProvider);
+		}
+		this.httpClient = httpClientBuilder.build();
+
+		final IdleConnectionEviction idleConnectionEviction = new IdleConnectionEviction(this);
+		this.evictionTask = IDLE_CONNECTION_EVICTOR.scheduleWithFixedDelay(idleConnectionEviction, EVICTION_INTERVAL,
+				EVICTION_INTERVAL, TimeUnit.MILLISECONDS);
+		idleConnectionEviction.setEvictionTask(this.evictionTask);
+	}
+
+	/**
+	 * Executes the given HTTP request using a pooled connection. The caller should
+	 * close the returned response so that the underlying connection can be
+	 * released back into the pool.
+	 *
+	 * @param request the HTTP request.
+	 * @return the HTTP response.
+	 * @throws IOException                 in case of a connection problem.
+	 * @throws CircuitBreakerOpenException if the endpoint is considered down.
+	 * @throws ValidationDeadlineExceededException if the validation deadline has
+	 *                                             been exceeded.
+	 */
+	public CloseableHttpResponse execute(final HttpUriRequest request) throws IOException {
+		if (this.closed) {
+			throw new IllegalStateException("HTTP transport has been closed");
+		}
+		final int limitedTimeouts = applyValidationDeadline(request);
+		final CircuitBreaker circuitBreaker = getCircuitBreaker(request.getURI());
+		if (null == circuitBreaker) {
+			try {
+				return this.httpClient.execute(request);
+			} catch (final IOException e) {
+				throw toDeadlineException(e, limitedTimeouts);
+			}
+		}
+		if (false == circuitBreaker.allowRequest()) {
+			LOGGER.debug("circuit breaker open, not executing: {}", request.getURI());
+			throw new CircuitBreakerOpenException(getEndpoint(request.getURI()));
+		}
+		final CloseableHttpResponse response;
+		try {
+			response = this.httpClient.execute(request);
+		} catch (final IOException e) {
+			final IOException error = toDeadlineException(e, limitedTimeouts);
+			recordFailure(circuitBreaker, error);
+			throw error;
+		} catch (final RuntimeException e) {
+			circuitBreaker.recordFailure();
+			throw e;
+		}
+		recordResponse(circuitBreaker, response);
+		return response;
+	}
+
+	/**
+	 * Executes the given HTTP request without blocking the calling thread. The
+	 * response entity is fully buffered in memory, so the returned response does
+	 * not have to be closed.
+	 * 
+	 * @param request the HTTP request.
+	 * @return the future HTTP response. Completes exceptionally with an
+	 *         {@link IOException} in case of a connection problem.
+	 */
+	public CompletableFuture<HttpResponse> executeAsync(final HttpUriRequest request) {
+		if (this.closed) {
+			throw new IllegalStateException("HTTP transport has been closed");
+		}
+		final CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+		final int limitedTimeouts;
+		try {
+			limitedTimeouts = applyValidationDeadline(request);
+		} catch (final IOException e) {
+			future.completeExceptionally(e);
+			return future;
+		}
+		final CircuitBreaker circuitBreaker = getCircuitBreaker(request.getURI());
+		if (null != circuitBreaker && false == circuitBreaker.allowRequest()) {
+			LOGGER.debug("circuit breaker open, not executing: {}", request.getURI());
+			future.completeExceptionally(new CircuitBreakerOpenException(getEndpoint(request.getURI())));
+			return future;
+		}
+		final CloseableHttpAsyncClient client;
+		try {
+			client = getHttpAsyncClient();
+		} catch (final IOException e) {
+			future.completeExceptionally(e);
+			return future;
+		}
+		client.execute(request, new FutureCallback<HttpResponse>() {
+
+			@Override
+			public void completed(final HttpResponse response) {
+				recordResponse(circuitBreaker, response);
+				future.complete(response);
+			}
+
+			@Override
+			public void failed(final Exception e) {
+				final Exception error = e instanceof IOException ? toDeadlineException((IOException) e, limitedTimeouts)
+						: e;
+				if (null != circuitBreaker) {
+					recordFailure(circuitBreaker, error);
+				}
+				future.completeExceptionally(error);
+			}
+
+			@Override
+			public void cancelled() {
+				if (null != circuitBreaker) {
+					// releases the probe request, if this was the one
+					circuitBreaker.recordInconclusive();
+				}
+				future.cancel(false);
+			}
+		});
+		return future;
+	}
+
+	private CloseableHttpAsyncClient getHttpAsyncClient() throws IOException {
+		CloseableHttpAsyncClient client = this.httpAsyncClient;
+		if (null != client) {
+			return client;
+		}
+		synchronized (this) {
+			if (this.closed) {
+				throw new IllegalStateException("HTTP transport has been closed");
+			}
+			if (null == this.httpAsyncClient) {
+				final ThreadFactory threadFactory = runnable -> {
+					final Thread thread = new Thread(runnable, "jtrust-http-async");
+					thread.setDaemon(true);
+					return thread;
+				};
+				final PoolingNHttpClientConnectionManager newConnectionManager = new PoolingNHttpClientConnectionManager(
+						new DefaultConnectingIOReactor(IOReactorConfig.DEFAULT, threadFactory));
+				newConnectionManager.setDefaultMaxPerRoute(this.maxConnectionsPerRoute);
+				newConnectionManager.setMaxTotal(this.maxConnections);
+				final HttpAsyncClientBuilder httpAsyncClientBuilder = HttpAsyncClientBuilder.create();
+				httpAsyncClientBuilder.setConnectionManager(newConnectionManager);
+				httpAsyncClientBuilder.setDefaultRequestConfig(this.requestConfig);
+				httpAsyncClientBuilder.setKeepAliveStrategy(new KeepAliveStrategy());
+				httpAsyncClientBuilder.setThreadFactory(threadFactory);
+				if (null != this.credentialsProvider) {
+					httpAsyncClientBuilder.setDefaultCredentialsProvider(this.credentialsProvider);
+				}
+				final CloseableHttpAsyncClient newClient = httpAsyncClientBuilder.build();
+				newClient.start();
+				this.asyncConnectionManager = newConnectionManager;
+				this.httpAsyncClient = newClient;
+			}
+			return this.httpAsyncClient;
+		}
+	}
+
+	private static void recordResponse(final CircuitBreaker circuitBreaker, final HttpResponse response) {
+		if (null == circuitBreaker) {
+			return;
+		}
+		if (response.getStatusLine().getStatusCode() >= 500) {
+			circuitBreaker.recordFailure();
+		} else {
+			circuitBreaker.recordSuccess();
+		}
+	}
+
+	private static void recordFailure(final CircuitBreaker circuitBreaker, final Exception error) {
+		if (error instanceof ValidationDeadlineExceededException) {
+			circuitBreaker.recordInconclusive();
+		} else {
+			circuitBreaker.recordFailure();
+		}
+	}
+
+	/**
+	 * Gives back a {@link ValidationDeadlineExceededException} if the given error
+	 * is a timeout of which the timeout value got limited by the validation
+	 * deadline, otherwise the error itself.
+	 */
+	private static IOException toDeadlineException(final IOException e, final int limitedTimeouts) {
+		if (e instanceof ValidationDeadlineExceededException) {
+			return e;
+		}
+		final boolean deadlineTimeout;
+		if (e instanceof ConnectTimeoutException) {
+			deadlineTimeout = 0 != (limitedTimeouts & CONNECT_TIMEOUT_LIMITED);
+		} else if (e instanceof SocketTimeoutException) {
+			deadlineTimeout = 0 != (limitedTimeouts & SOCKET_TIMEOUT_LIMITED);
+		} else {
+			deadlineTimeout = false;
+		}
+		if (false == deadlineTimeout) {
+			return e;
+		}
+		return new ValidationDeadlineExceededException(e);
+	}
+
+	/**
+	 * Limits the timeouts of the given request to the remaining validation time
+	 * budget.
+	 * 
+	 * @return the limited timeouts, as combination of
+	 *         {@link #CONNECT_TIMEOUT_LIMITED} and {@link #SOCKET_TIMEOUT_LIMITED}.
+	 */
+	private int applyValidationDeadline(final HttpUriRequest request) throws IOException {
+		final ValidationDeadline validationDeadline = ValidationDeadline.getCurrent();
+		if (null == validationDeadline) {
+			return 0;
+		}
+		final long remaining = validationDeadline.getRemaining();
+		if (0 == remaining) {
+			LOGGER.debug("validation deadline exceeded, not executing: {}", request.getURI());
+			throw new ValidationDeadlineExceededException();
+		}
+		if (false == request instanceof HttpRequestBase) {
+			return 0;
+		}
+		final HttpRequestBase httpRequest = (HttpRequestBase) request;
+		final RequestConfig config = null != httpRequest.getConfig() ? httpRequest.getConfig() : this.requestConfig;
+		final int connectTimeout = limitTimeout(config.getConnectTimeout(), remaining);
+		final int connectionRequestTimeout = limitTimeout(config.getConnectionRequestTimeout(), remaining);
+		final int socketTimeout = limitTimeout(config.getSocketTimeout(), remaining);
+		int limitedTimeouts = 0;
+		if (connectTimeout != config.getConnectTimeout()
+				|| connectionRequestTimeout != config.getConnectionRequestTimeout()) {
+			limitedTimeouts |= CONNECT_TIMEOUT_LIMITED;
+		}
+		if (socketTimeout != config.getSocketTimeout()) {
+			limitedTimeouts |= SOCKET_TIMEOUT_LIMITED;
+		}
+		if (0 == limitedTimeouts) {
+			return 0;
+		}
+		LOGGER.debug("limiting timeouts to remaining validation budget: {} ms", remaining);
+		httpRequest.setConfig(RequestConfig.copy(config).setConnectTimeout(connectTimeout)
+				.setConnectionRequestTimeout(connectionRequestTimeout).setSocketTimeout(socketTimeout).build());
+		return limitedTimeouts;
+	}
+
+	private static int limitTimeout(final int timeout, final long remaining) {
+		if (timeout <= 0 || timeout > remaining) {
+			return (int) Math.min(remaining, Integer.MAX_VALUE);
+		}
+		return timeout;
+	}
+
+	private CircuitBreaker getCircuitBreaker(final URI uri) {
+		final int failureThreshold = this.circuitBreakerFailureThreshold;
+		if (failureThreshold <= 0) {
+			return null;
+		}
+		final long openDuration = this.circuitBreakerOpenDuration;
+		return this.circuitBreakers.computeIfAbsent(getEndpoint(uri),
+				endpoint -> new CircuitBreaker(failureThreshold, openDuration));
+	}
+
+	private static String getEndpoint(final URI uri) {
+		return URIUtils.extractHost(uri).toURI();
+	}
+
+	/**
+	 * Gives back the circuit breaker state of the endpoint of the given URI.
+	 *
+	 * @param uri the URI.
+	 * @return the state, {@link CircuitBreaker.State#CLOSED} if circuit breakers
+	 *         are disabled.
+	 */
+	public CircuitBreaker.State getCircuitBreakerState(final URI uri) {
+		if (this.circuitBreakerFailureThreshold <= 0) {
+			return CircuitBreaker.State.CLOSED;
+		}
+		final CircuitBreaker circuitBreaker = this.circuitBreakers.get(getEndpoint(uri));
+		if (null == circuitBreaker) {
+			return CircuitBreaker.State.CLOSED;
+		}
+		return circuitBreaker.getState();
+	}
+
+	/**
+	 * Sets the number of consecutive failures after which the circuit breaker of
+	 * an endpoint opens. Connection errors and 5xx responses count as failures.
+	 * Defaults to <code>0</code>, disabling the circuit breakers.
+	 *
+	 * @param circuitBreakerFailureThreshold
+	 */
+	public void setCircuitBreakerFailureThreshold(final int circuitBreakerFailureThreshold) {
+		this.circuitBreakerFailureThreshold = circuitBreakerFailureThreshold;
+		this.circuitBreakers.clear();
+	}
+
+	/**
+	 * Sets the duration in milliseconds during which an opened circuit breaker
+	 * stays open, before letting through a probe request.
+	 *
+	 * @param circuitBreakerOpenDuration
+	 */
+	public void setCircuitBreakerOpenDuration(final long circuitBreakerOpenDuration) {
+		this.circuitBreakerOpenDuration = circuitBreakerOpenDuration;
+		this.circuitBreakers.clear();
+	}
+
+	/**
+	 * Sets the maximum number of pooled connections per route.
+	 * Applies to both the blocking and the non-blocking requests.
+	 *
+	 * @param maxConnectionsPerRoute
+	 */
+	public synchronized void setMaxConnectionsPerRoute(final int maxConnectionsPerRoute) {
+		this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+		this.connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+		if (null != this.asyncConnectionManager) {
+			this.asyncConnectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+		}
+	}
+
+	/**
+	 * Sets the maximum number of pooled connections over all routes.
+	 * Applies to both the blocking and the non-blocking requests.
+	 *
+	 * @param maxConnections
+	 */
+	public synchronized void setMaxConnections(final int maxConnections) {
+		this.maxConnections = maxConnections;
+		this.connectionManager.setMaxTotal(maxConnections);
+		if (null != this.asyncConnectionManager) {
+			this.asyncConnectionManager.setMaxTotal(maxConnections);
+		}
+	}
+
+	/**
+	 * Sets the keep-alive duration in milliseconds for connections for which the
+	 * server did not indicate a keep-alive duration itself.
+	 *
+	 * @param keepAliveDuration
+	 */
+	public void setKeepAliveDuration(final long keepAliveDuration) {
+		this.keepAliveDuration = keepAliveDuration;
+	}
+
+	/**
+	 * Sets the period in milliseconds after which idle pooled connections get
+	 * evicted.
+	 *
+	 * @param idleConnectionTimeout
+	 */
+	public void setIdleConnectionTimeout(final long idleConnectionTimeout) {
+		this.idleConnectionTimeout = idleConnectionTimeout;
+	}
+
+	/**
+	 * Evicts all expired connections, and all connections that have been idle for
+	 * longer than the idle connection timeout.
+	 */
+	public void evictIdleConnections() {
+		this.connectionManager.closeExpiredConnections();
+		this.connectionManager.closeIdleConnections(this.idleConnectionTimeout, TimeUnit.MILLISECONDS);
+		final PoolingNHttpClientConnectionManager asyncConnectionManager;
+		synchronized (this) {
+			asyncConnectionManager = this.asyncConnectionManager;
+		}
+		if (null != asyncConnectionManager) {
+			asyncConnectionManager.closeExpiredConnections();
+			asyncConnectionManager.closeIdleConnections(this.idleConnectionTimeout, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Returns whether this HTTP transport has been closed.
+	 *
+	 * @return <code>true</code> if closed.
+	 */
+	public boolean isClosed() {
+		return this.closed;
+	}
+
+	/**
+	 * Closes this HTTP transport, together with all pooled connections.
+	 */
+	@Override
+	public void close() {
+		final CloseableHttpAsyncClient client;
+		synchronized (this) {
+			if (this.closed) {
+				return;
+			}
+			this.closed = true;
+			client = this.httpAsyncClient;
+		}
+		this.evictionTask.cancel(false);
+		try {
+			this.httpClient.close();
+		} catch (final IOException e) {
+			LOGGER.warn("error closing HTTP client: {}", e.getMessage(), e);
+		}
+		this.connectionManager.shutdown();
+		if (null != client) {
+			try {
+				client.close();
+			} catch (final IOException e) {
+				LOGGER.warn("error closing async HTTP client: {}", e.getMessage(), e);
+			}
+		}
+	}
+
+	private class KeepAliveStrategy implements ConnectionKeepAliveStrategy {
+
+		@Override
+		public long getKeepAliveDuration(final HttpResponse response, final HttpContext context) {
+			final long serverKeepAliveDuration = DefaultConnectionKeepAliveStrategy.INSTANCE
+					.getKeepAliveDuration(response, context);
+			if (serverKeepAliveDuration > 0) {
+				return serverKeepAliveDuration;
+			}
+			return HttpTransport.this.keepAliveDuration;
+		}
+	}
+
+	/**
+	 * Only keeps a weak reference towards the transport, so the shared eviction
+	 * thread does not prevent unused transports from being garbage collected.
+	 */
+	private static class IdleConnectionEviction implements Runnable {
+
+		private final WeakReference<HttpTransport> httpTransportRef;
+
+		private volatile ScheduledFuture<?> evictionTask;
+
+		IdleConnectionEviction(final HttpTransport httpTransport) {
+			this.httpTransportRef = new WeakReference<>(httpTransport);
+		}
+
+		void setEvictionTask(final ScheduledFuture<?> evictionTask) {
+			this.evictionTask = evictionTask;
+		}
+
+		@Override
+		public void run() {
+			final HttpTransport httpTransport = this.httpTransportRef.get();
+			if (null == httpTransport) {
+				LOGGER.debug("HTTP transport garbage collected");
+				this.evictionTask.cancel(false);
+				return;
+			}
+			httpTransport.evictIdleConnections();
+		}
+	}
+}
@@ -24,14 +24,28 @@ import java.security.cert.X509Certificate;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import be.fedict.trust.cache.ValidationResultCache;
 import be.fedict.trust.constraints.CertificateConstraint;
+import be.fedict.trust.linker.AsyncTrustLinker;
+import be.fedict.trust.linker.AsyncTrustLinkerAdapter;
 import be.fedict.trust.linker.CustomCertSignValidator;
 import be.fedict.trust.linker.TrustLinker;
 import be.fedict.trust.linker.TrustLinkerResult;
@@ -40,12 +54,18 @@ import be.fedict.trust.linker.TrustLinkerResultReason;
 import be.fedict.trust.policy.AlgorithmPolicy;
 import be.fedict.trust.policy.DefaultAlgorithmPolicy;
 import be.fedict.trust.repository.CertificateRepository;
+import be.fedict.trust.repository.VerifiedCertificateRepository;
 import be.fedict.trust.revocation.RevocationData;
 
 /**
  * Trust Validator.
  * <p>
- * Notice that this component is not thread-safe as it is using internal state.
+ * Notice that a trust validator configured via its setters is not thread-safe
+ * as it is using internal state. A trust validator created via
+ * {@link #builder(CertificateRepository)} is immutable and can be shared
+ * between threads, given thread-safe trust linkers and certificate
+ * constraints. Per-call state, like the used revocation data, is then passed
+ * via a {@link ValidationContext}.
  * </p>
  * 
  * @author Frank Cornelis
@@ -65,6 +85,24 @@ public class TrustValidator {
 
 	private AlgorithmPolicy algorithmPolicy;
 
+	private long validationTimeout;
+
+	private Executor executor = AsyncTrustLinkerAdapter.getDefaultExecutor();
+
+	private boolean concurrentTrustLinking;
+
+	private ValidationResultCache validationResultCache;
+
+	private ValidationResultCache trustLinkCache;
+
+	/**
+	 * Identity of the current configuration, keying the cached validation
+	 * results. Replaced on every configuration change.
+	 */
+	private Object configuration = new Object();
+
+	private final boolean immutable;
+
 	/**
 	 * Main constructor.
 	 * 
@@ -91,6 +129,42 @@ public class TrustValidator {
 		this.certificateConstraints = new LinkedList<>();
 		this.revocationData = revocationData;
 		this.algorithmPolicy = new DefaultAlgorithmPolicy();
+		this.immutable = false;
+	}
+
+	private TrustValidator(final Builder builder) {
+		this.certificateRepository = builder.certificateRepository;
+		this.trustLinkers = Collections.unmodifiableList(new ArrayList<>(builder.trustLinkers));
+		this.certificateConstraints = Collections.unmodifiableList(new ArrayList<>(builder.certificateConstraints));
+		this.algorithmPolicy = builder.algorithmPolicy;
+		this.validationTimeout = builder.validationTimeout;
+		this.executor = builder.executor;
+		this.concurrentTrustLinking = builder.concurrentTrustLinking;
+		this.validationResultCache = builder.validationResultCache;
+		this.trustLinkCache = builder.trustLinkCache;
+		this.immutable = true;
+	}
+
+	/**
+	 * Gives back a builder for an immutable trust validator.
+	 * 
+	 * @param certificateRepository the certificate repository used by the trust
+	 *                              validator.
+	 * @return the builder.
+	 */
+	public static Builder builder(final CertificateRepository certificateRepository) {
+		return new Builder(certificateRepository);
+	}
+
+	/**
+	 * Checks whether the configuration can still change, and stops using the
+	 * validation results cached under the former configuration.
+	 */
+	private void checkMutable() {
+		if (this.immutable) {
+			throw new IllegalStateException("trust validator is immutable");
+		}
+		this.configuration = new Object();
 	}
 
 	/**
@@ -100,6 +174,7 @@ public class TrustValidator {
 	 * @param trustLinker the trust linker component.
 	 */
 	public void addTrustLinker(final TrustLinker trustLinker) {
+		checkMutable();
 		this.trustLinkers.add(trustLinker);
 	}
 
@@ -110,9 +185,27 @@ public class TrustValidator {
 	 * @param algorithmPolicy the algorithm policy component.
 	 */
 	public void setAlgorithmPolicy(final AlgorithmPolicy algorithmPolicy) {
+		checkMutable();
 		this.algorithmPolicy = algorithmPolicy;
 	}
 
+	/**
+	 * Sets the overall time budget in milliseconds of a single certificate path
+	 * validation. The network timeouts of the online revocation services are
+	 * limited to the remaining budget. Defaults to <code>0</code>, meaning no
+	 * time budget.
+	 * 
+	 * @param validationTimeout the time budget in milliseconds.
+	 */
+	public void setValidationTimeout(final long validationTimeout) {
+		checkMutable();
+		this.validationTimeout = validationTimeout;
+	}
+
+	public long getValidationTimeout() {
+		return this.validationTimeout;
+	}
+
 	/**
 	 * Adds a certificate constraint to this trust validator. Keep this typo-version
 	 * of addCertificateContrainT for downwards compatibility.
@@ -123,6 +216,7 @@ public class TrustValidator {
 	 */
 	@Deprecated
 	public void addCertificateConstrain(final CertificateConstraint certificateConstraint) {
+		checkMutable();
 		this.certificateConstraints.add(certificateConstraint);
 	}
 
@@ -132,6 +226,7 @@ public class TrustValidator {
 	 * @param certificateConstraint the certificate constraint component.
 	 */
 	public void addCertificateConstraint(final CertificateConstraint certificateConstraint) {
+		checkMutable();
 		this.certificateConstraints.add(certificateConstraint);
 	}
 
@@ -287,6 +382,539 @@ public class TrustValidator {
 	 */
 	public void isTrusted(final List<X509Certificate> certificatePath, final Date validationDate, final boolean expiredMode)
 			throws TrustLinkerResultException {
+		isTrusted(certificatePath, validationDate, expiredMode, this.validationTimeout);
+	}
+
+	/**
+	 * Validates whether the certificate path was valid at the given validation
+	 * date, within the given time budget.
+	 * 
+	 * @param certificatePath   the X509 certificate path to be validated.
+	 * @param validationDate    the date at which the certificate path validation
+	 *                          should be verified.
+	 * @param expiredMode       set to <code>true</code> for validation mode of
+	 *                          expired certificates.
+	 * @param validationTimeout the time budget in milliseconds, <code>0</code>
+	 *                          for no time budget.
+	 * @throws TrustLinkerResultException with reason
+	 *                                    {@link TrustLinkerResultReason#VALIDATION_TIMEOUT}
+	 *                                    when the time budget has been exceeded.
+	 * @see #setValidationTimeout(long)
+	 */
+	public void isTrusted(final List<X509Certificate> certificatePath, final Date validationDate,
+			final boolean expiredMode, final long validationTimeout) throws TrustLinkerResultException {
+		isTrusted(certificatePath, validationDate, expiredMode, validationTimeout, this.revocationData);
+	}
+
+	/**
+	 * Validates whether the certificate path is valid, using the given per-call
+	 * validation context. This is the way to collect revocation data when using a
+	 * shared trust validator.
+	 * 
+	 * @param certificatePath   the X509 certificate path to be validated.
+	 * @param validationContext the validation context.
+	 * @throws TrustLinkerResultException in case the certificate path is invalid.
+	 * @see #builder(CertificateRepository)
+	 */
+	public void isTrusted(final List<X509Certificate> certificatePath, final ValidationContext validationContext)
+			throws TrustLinkerResultException {
+		isTrusted(certificatePath, validationContext.getValidationDate(), validationContext.isExpiredMode(),
+				this.validationTimeout, validationContext.getRevocationData());
+	}
+
+	private void isTrusted(final List<X509Certificate> certificatePath, final Date validationDate,
+			final boolean expiredMode, final long validationTimeout, final RevocationData revocationData)
+			throws TrustLinkerResultException {
+		final ValidationResultCache validationResultCache = this.validationResultCache;
+		final ValidationResultCache.Key cacheKey = null != validationResultCache
+				? validationResultCache.getKey(this.configuration, certificatePath, expiredMode)
+				: null;
+		if (null == cacheKey) {
+			isTrustedWithinTimeout(certificatePath, validationDate, expiredMode, validationTimeout, revocationData);
+			return;
+		}
+		final RevocationData cachedRevocationData = findCachedRevocationData(validationResultCache, cacheKey,
+				validationDate, revocationData);
+		if (null != cachedRevocationData) {
+			LOGGER.debug("cached validation result");
+			addRevocationData(revocationData, cachedRevocationData);
+			return;
+		}
+		// collect the revocation data behind the result, to determine its expiry
+		final RevocationData validationRevocationData = newRevocationData(revocationData);
+		try {
+			isTrustedWithinTimeout(certificatePath, validationDate, expiredMode, validationTimeout,
+					validationRevocationData);
+		} finally {
+			addRevocationData(revocationData, validationRevocationData);
+		}
+		validationResultCache.put(cacheKey, certificatePath, validationDate, validationRevocationData);
+	}
+
+	private void isTrustedWithinTimeout(final List<X509Certificate> certificatePath, final Date validationDate,
+			final boolean expiredMode, final long validationTimeout, final RevocationData revocationData)
+			throws TrustLinkerResultException {
+		if (validationTimeout <= 0) {
+			validate(certificatePath, validationDate, expiredMode, revocationData);
+			return;
+		}
+		final ValidationDeadline validationDeadline = new ValidationDeadline(validationTimeout);
+		final ValidationDeadline previousValidationDeadline = ValidationDeadline.getCurrent();
+		if (null != previousValidationDeadline
+				&& previousValidationDeadline.getRemaining() <= validationDeadline.getRemaining()) {
+			// an enclosing validation has a tighter budget
+			validate(certificatePath, validationDate, expiredMode, revocationData);
+			return;
+		}
+		ValidationDeadline.setCurrent(validationDeadline);
+		try {
+			validate(certificatePath, validationDate, expiredMode, revocationData);
+		} finally {
+			ValidationDeadline.setCurrent(previousValidationDeadline);
+		}
+	}
+
+	/**
+	 * Validates whether the certificate path is valid at the given validation date,
+	 * without blocking the calling thread on network I/O. Trust linkers
+	 * implementing {@link AsyncTrustLinker} are invoked directly, other trust
+	 * linkers are run via the executor.
+	 * 
+	 * @param certificatePath the X509 certificate path to be validated.
+	 * @param validationDate  the date at which the certificate path validation
+	 *                        should be verified.
+	 * @return the future outcome, completing exceptionally with a
+	 *         {@link TrustLinkerResultException} in case the certificate path is
+	 *         invalid.
+	 * @see #setExecutor(Executor)
+	 */
+	public CompletableFuture<Void> isTrustedAsync(final List<X509Certificate> certificatePath,
+			final Date validationDate) {
+		return isTrustedAsync(certificatePath, validationDate, false);
+	}
+
+	/**
+	 * Validates whether the certificate path is valid at the given validation date,
+	 * without blocking the calling thread on network I/O.
+	 * 
+	 * @param certificatePath the X509 certificate path to be validated.
+	 * @param validationDate  the date at which the certificate path validation
+	 *                        should be verified.
+	 * @param expiredMode     set to <code>true</code> for validation mode of
+	 *                        expired certificates.
+	 * @return the future outcome, completing exceptionally with a
+	 *         {@link TrustLinkerResultException} in case the certificate path is
+	 *         invalid.
+	 * @see #isTrustedAsync(List, Date)
+	 */
+	public CompletableFuture<Void> isTrustedAsync(final List<X509Certificate> certificatePath,
+			final Date validationDate, final boolean expiredMode) {
+		return isTrustedAsync(certificatePath, validationDate, expiredMode, this.revocationData);
+	}
+
+	/**
+	 * Validates whether the certificate path is valid, using the given per-call
+	 * validation context, without blocking the calling thread on network I/O.
+	 * 
+	 * @param certificatePath   the X509 certificate path to be validated.
+	 * @param validationContext the validation context.
+	 * @return the future outcome, completing exceptionally with a
+	 *         {@link TrustLinkerResultException} in case the certificate path is
+	 *         invalid.
+	 * @see #isTrusted(List, ValidationContext)
+	 */
+	public CompletableFuture<Void> isTrustedAsync(final List<X509Certificate> certificatePath,
+			final ValidationContext validationContext) {
+		return isTrustedAsync(certificatePath, validationContext.getValidationDate(),
+				validationContext.isExpiredMode(), validationContext.getRevocationData());
+	}
+
+	private CompletableFuture<Void> isTrustedAsync(final List<X509Certificate> certificatePath,
+			final Date validationDate, final boolean expiredMode, final RevocationData revocationData) {
+		final ValidationResultCache validationResultCache = this.validationResultCache;
+		final ValidationResultCache.Key cacheKey = null != validationResultCache
+				? validationResultCache.getKey(this.configuration, certificatePath, expiredMode)
+				: null;
+		if (null == cacheKey) {
+			return validateAsync(certificatePath, validationDate, expiredMode, revocationData);
+		}
+		final RevocationData cachedRevocationData = findCachedRevocationData(validationResultCache, cacheKey,
+				validationDate, revocationData);
+		if (null != cachedRevocationData) {
+			LOGGER.debug("cached validation result");
+			addRevocationData(revocationData, cachedRevocationData);
+			return CompletableFuture.completedFuture(null);
+		}
+		final RevocationData validationRevocationData = newRevocationData(revocationData);
+		return validateAsync(certificatePath, validationDate, expiredMode, validationRevocationData)
+				.whenComplete((result, error) -> addRevocationData(revocationData, validationRevocationData))
+				.thenRun(() -> validationResultCache.put(cacheKey, certificatePath, validationDate,
+						validationRevocationData));
+	}
+
+	private CompletableFuture<Void> validateAsync(final List<X509Certificate> certificatePath,
+			final Date validationDate, final boolean expiredMode, final RevocationData revocationData) {
+		final ValidationDeadline validationDeadline = this.validationTimeout > 0
+				? new ValidationDeadline(this.validationTimeout)
+				: ValidationDeadline.getCurrent();
+		try {
+			checkRoot(certificatePath, validationDate, expiredMode);
+		} catch (final TrustLinkerResultException e) {
+			return failedFuture(e);
+		}
+		return checkTrustLinksAsync(certificatePath, certificatePath.size() - 2, validationDate, revocationData,
+				validationDeadline).thenAccept(result -> {
+					try {
+						checkCertificateConstraints(certificatePath.get(0));
+					} catch (final TrustLinkerResultException e) {
+						throw new CompletionException(e);
+					}
+				});
+	}
+
+	private CompletableFuture<Void> checkTrustLinksAsync(final List<X509Certificate> certificatePath,
+			final int certIdx, final Date validationDate, final RevocationData revocationData,
+			final ValidationDeadline validationDeadline) {
+		if (certIdx < 0) {
+			return CompletableFuture.completedFuture(null);
+		}
+		final X509Certificate childCertificate = certificatePath.get(certIdx);
+		final X509Certificate certificate = certificatePath.get(certIdx + 1);
+		LOGGER.debug("verifying certificate: {}", childCertificate.getSubjectX500Principal());
+		try {
+			// check certificate signature
+			checkSignatureAlgorithm(childCertificate.getSigAlgName(), validationDate);
+		} catch (final TrustLinkerResultException e) {
+			return failedFuture(e);
+		}
+		final ValidationResultCache.Key cacheKey = getTrustLinkCacheKey(childCertificate, certificate, certIdx > 0);
+		final CompletableFuture<Void> trustLinkResult;
+		if (null == cacheKey) {
+			trustLinkResult = checkTrustLinkAsync(this.trustLinkers.iterator(), false, childCertificate, certificate,
+					validationDate, revocationData, validationDeadline);
+		} else {
+			final RevocationData cachedRevocationData = findCachedRevocationData(this.trustLinkCache, cacheKey,
+					validationDate, revocationData);
+			if (null != cachedRevocationData) {
+				LOGGER.debug("cached trust link");
+				addRevocationData(revocationData, cachedRevocationData);
+				trustLinkResult = CompletableFuture.completedFuture(null);
+			} else {
+				final RevocationData linkRevocationData = newRevocationData(revocationData);
+				trustLinkResult = checkTrustLinkAsync(this.trustLinkers.iterator(), false, childCertificate,
+						certificate, validationDate, linkRevocationData, validationDeadline)
+								.whenComplete((result, error) -> addRevocationData(revocationData, linkRevocationData))
+								.thenRun(() -> this.trustLinkCache.put(cacheKey,
+										Arrays.asList(childCertificate, certificate), validationDate,
+										linkRevocationData));
+			}
+		}
+		return trustLinkResult.thenCompose(result -> checkTrustLinksAsync(certificatePath, certIdx - 1,
+				validationDate, revocationData, validationDeadline));
+	}
+
+	private CompletableFuture<Void> checkTrustLinkAsync(final Iterator<TrustLinker> trustLinkerIterator,
+			final boolean someTrustLinkerTrusts, final X509Certificate childCertificate,
+			final X509Certificate certificate, final Date validationDate, final RevocationData revocationData,
+			final ValidationDeadline validationDeadline) {
+		final CompletableFuture<TrustLinkerResult> trustLinkerResultFuture;
+		try {
+			checkValidationDeadline(validationDeadline, null);
+			if (false == trustLinkerIterator.hasNext()) {
+				if (false == someTrustLinkerTrusts) {
+					throw noTrust(childCertificate, certificate, validationDeadline);
+				}
+				return CompletableFuture.completedFuture(null);
+			}
+			final TrustLinker trustLinker = trustLinkerIterator.next();
+			LOGGER.debug("trying trust linker: {}", trustLinker.getClass().getSimpleName());
+			final ValidationDeadline previousValidationDeadline = ValidationDeadline.setCurrent(validationDeadline);
+			try {
+				trustLinkerResultFuture = AsyncTrustLinkerAdapter.adapt(trustLinker, this.executor).hasTrustLinkAsync(
+						childCertificate, certificate, validationDate, revocationData, this.algorithmPolicy);
+			} finally {
+				ValidationDeadline.setCurrent(previousValidationDeadline);
+			}
+		} catch (final TrustLinkerResultException e) {
+			return failedFuture(e);
+		}
+		return trustLinkerResultFuture.handle((trustLinkerResult, error) -> {
+			if (null != error) {
+				final Throwable cause = error instanceof CompletionException && null != error.getCause()
+						? error.getCause()
+						: error;
+				try {
+					return TrustValidator.<Void>failedFuture(toTrustLinkerResultException(cause, validationDeadline));
+				} catch (final TrustLinkerResultException e) {
+					return TrustValidator.<Void>failedFuture(e);
+				}
+			}
+			if (null == trustLinkerResult) {
+				LOGGER.warn("trust linker result should not be NULL");
+			}
+			// we don't break as there still might be a trust linker that complains
+			return checkTrustLinkAsync(trustLinkerIterator,
+					someTrustLinkerTrusts || TrustLinkerResult.TRUSTED == trustLinkerResult, childCertificate,
+					certificate, validationDate, revocationData, validationDeadline);
+		}).thenCompose(Function.identity());
+	}
+
+	private static <T> CompletableFuture<T> failedFuture(final Throwable error) {
+		final CompletableFuture<T> future = new CompletableFuture<>();
+		future.completeExceptionally(error);
+		return future;
+	}
+
+	/**
+	 * Sets the executor used by {@link #isTrustedAsync(List, Date)} to run trust
+	 * linkers that do not implement {@link AsyncTrustLinker}, and to run the trust
+	 * linkers when concurrent trust linking is enabled. Defaults to the bounded
+	 * pool of {@link AsyncTrustLinkerAdapter#getDefaultExecutor()}. If
+	 * <code>null</code>, such trust linkers run on the calling thread.
+	 * 
+	 * @param executor
+	 */
+	public void setExecutor(final Executor executor) {
+		checkMutable();
+		this.executor = executor;
+	}
+
+	/**
+	 * Sets whether the trust linkers of all links of a certificate path are
+	 * started at once when validation begins, so that the revocation lookups of the
+	 * different links run concurrently. The trust linker results are still
+	 * evaluated link per link, from the root down, and the revocation data is
+	 * still collected in that order. Defaults to <code>false</code>.
+	 * 
+	 * @param concurrentTrustLinking
+	 * @see #setExecutor(Executor)
+	 */
+	public void setConcurrentTrustLinking(final boolean concurrentTrustLinking) {
+		checkMutable();
+		this.concurrentTrustLinking = concurrentTrustLinking;
+	}
+
+	/**
+	 * Sets the cache of positive validation results. On a cache hit, the
+	 * certificate path is trusted without any signature verification or
+	 * revocation lookup, and the cached revocation data is handed out. The cache
+	 * can be shared between trust validators, as each trust validator only sees
+	 * the validation results of its own configuration. Defaults to
+	 * <code>null</code>, meaning no caching.
+	 * 
+	 * @param validationResultCache the validation result cache, or
+	 *                              <code>null</code>.
+	 */
+	public void setValidationResultCache(final ValidationResultCache validationResultCache) {
+		checkMutable();
+		this.validationResultCache = validationResultCache;
+	}
+
+	/**
+	 * Sets the cache of positive trust link decisions for the links towards
+	 * intermediate certificates. On a cache hit, the trust linkers are not
+	 * invoked for that link, so that on a hot path only the leaf link needs work.
+	 * The cache entries expire with the revocation evidence behind them. Should
+	 * be another cache instance than the validation result cache. Can be shared
+	 * between trust validators, as each trust validator only sees the trust link
+	 * decisions of its own configuration. Defaults to <code>null</code>, meaning
+	 * no caching.
+	 * 
+	 * @param trustLinkCache the trust link cache, or <code>null</code>.
+	 */
+	public void setTrustLinkCache(final ValidationResultCache trustLinkCache) {
+		checkMutable();
+		this.trustLinkCache = trustLinkCache;
+	}
+
+	private void validate(final List<X509Certificate> certificatePath, final Date validationDate,
+			final boolean expiredMode, final RevocationData revocationData) throws TrustLinkerResultException {
+		checkRoot(certificatePath, validationDate, expiredMode);
+
+		if (this.concurrentTrustLinking && certificatePath.size() > 2) {
+			checkTrustLinksConcurrently(certificatePath, validationDate, revocationData);
+		} else {
+			int certIdx = certificatePath.size() - 1;
+			X509Certificate certificate = certificatePath.get(certIdx);
+			certIdx--;
+
+			while (certIdx >= 0) {
+				final X509Certificate childCertificate = certificatePath.get(certIdx);
+				LOGGER.debug("verifying certificate: {}", childCertificate.getSubjectX500Principal());
+				certIdx--;
+				checkTrustLink(childCertificate, certificate, validationDate, revocationData, certIdx >= 0);
+				certificate = childCertificate;
+			}
+		}
+
+		checkCertificateConstraints(certificatePath.get(0));
+	}
+
+	/**
+	 * Starts the trust linkers of all links at once, and afterwards evaluates
+	 * their results link per link, from the root down.
+	 */
+	private void checkTrustLinksConcurrently(final List<X509Certificate> certificatePath, final Date validationDate,
+			final RevocationData revocationData) throws TrustLinkerResultException {
+		final ValidationDeadline validationDeadline = ValidationDeadline.getCurrent();
+		final int linkCount = certificatePath.size() - 1;
+		final List<List<CompletableFuture<TrustLinkerResult>>> linkResults = new ArrayList<>(linkCount);
+		final List<List<RevocationData>> linkRevocationData = new ArrayList<>(linkCount);
+		final List<ValidationResultCache.Key> cacheKeys = new ArrayList<>(linkCount);
+		for (int certIdx = linkCount - 1; certIdx >= 0; certIdx--) {
+			final X509Certificate childCertificate = certificatePath.get(certIdx);
+			final X509Certificate certificate = certificatePath.get(certIdx + 1);
+			final ValidationResultCache.Key cacheKey = getTrustLinkCacheKey(childCertificate, certificate,
+					certIdx > 0);
+			cacheKeys.add(cacheKey);
+			if (null != cacheKey) {
+				final RevocationData cachedRevocationData = findCachedRevocationData(this.trustLinkCache, cacheKey,
+						validationDate, revocationData);
+				if (null != cachedRevocationData) {
+					LOGGER.debug("cached trust link");
+					linkResults.add(null);
+					linkRevocationData.add(Collections.singletonList(cachedRevocationData));
+					continue;
+				}
+			}
+			// each trust linker of each link runs concurrently, so each collects its own
+			// revocation data, merged in trust linker order once the link is accepted
+			final boolean collectRevocationData = null != revocationData || null != cacheKey;
+			final List<CompletableFuture<TrustLinkerResult>> trustLinkerResults = new ArrayList<>(
+					this.trustLinkers.size());
+			final List<RevocationData> trustLinkerRevocationData = new ArrayList<>(this.trustLinkers.size());
+			for (final TrustLinker trustLinker : this.trustLinkers) {
+				final RevocationData perLinkerRevocationData = collectRevocationData
+						? newRevocationData(revocationData)
+						: null;
+				trustLinkerResults.add(AsyncTrustLinkerAdapter.adapt(trustLinker, this.executor).hasTrustLinkAsync(
+						childCertificate, certificate, validationDate, perLinkerRevocationData, this.algorithmPolicy));
+				trustLinkerRevocationData.add(perLinkerRevocationData);
+			}
+			linkResults.add(trustLinkerResults);
+			linkRevocationData.add(trustLinkerRevocationData);
+		}
+
+		// once the result is decided, the trust linkers still running for the other
+		// links are of no use anymore
+		try {
+			for (int linkIdx = 0; linkIdx < linkCount; linkIdx++) {
+				final int certIdx = linkCount - 1 - linkIdx;
+				final X509Certificate childCertificate = certificatePath.get(certIdx);
+				final X509Certificate certificate = certificatePath.get(certIdx + 1);
+				LOGGER.debug("verifying certificate: {}", childCertificate.getSubjectX500Principal());
+				// check certificate signature
+				checkSignatureAlgorithm(childCertificate.getSigAlgName(), validationDate);
+				final List<CompletableFuture<TrustLinkerResult>> trustLinkerResults = linkResults.get(linkIdx);
+				if (null == trustLinkerResults) {
+					// cached trust link
+					addRevocationData(revocationData, linkRevocationData.get(linkIdx).get(0));
+					continue;
+				}
+				boolean sometrustLinkerTrusts = false;
+				for (final CompletableFuture<TrustLinkerResult> trustLinkerResultFuture : trustLinkerResults) {
+					final TrustLinkerResult trustLinkerResult = awaitTrustLinkerResult(trustLinkerResultFuture,
+							validationDeadline);
+					if (null == trustLinkerResult) {
+						LOGGER.warn("trust linker result should not be NULL");
+					}
+					if (TrustLinkerResult.TRUSTED == trustLinkerResult) {
+						sometrustLinkerTrusts = true;
+					}
+				}
+				if (false == sometrustLinkerTrusts) {
+					throw noTrust(childCertificate, certificate, validationDeadline);
+				}
+				final RevocationData mergedRevocationData = newRevocationData(revocationData);
+				for (final RevocationData trustLinkerRevocationData : linkRevocationData.get(linkIdx)) {
+					addRevocationData(mergedRevocationData, trustLinkerRevocationData);
+				}
+				addRevocationData(revocationData, mergedRevocationData);
+				final ValidationResultCache.Key cacheKey = cacheKeys.get(linkIdx);
+				if (null != cacheKey) {
+					this.trustLinkCache.put(cacheKey, Arrays.asList(childCertificate, certificate), validationDate,
+							mergedRevocationData);
+				}
+			}
+		} finally {
+			for (final List<CompletableFuture<TrustLinkerResult>> trustLinkerResults : linkResults) {
+				if (null != trustLinkerResults) {
+					trustLinkerResults.forEach(trustLinkerResult -> trustLinkerResult.cancel(false));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gives back the trust link cache key, only for links towards intermediate
+	 * certificates, as leaf certificates would only churn the cache. The key
+	 * includes the configuration, so that a trust link decided by the trust
+	 * linkers of one trust validator is not reused by another one.
+	 */
+	private ValidationResultCache.Key getTrustLinkCacheKey(final X509Certificate childCertificate,
+			final X509Certificate certificate, final boolean intermediate) {
+		if (false == intermediate || null == this.trustLinkCache) {
+			return null;
+		}
+		return this.trustLinkCache.getKey(this.configuration, Arrays.asList(childCertificate, certificate), false);
+	}
+
+	private static void addRevocationData(final RevocationData revocationData,
+			final RevocationData addedRevocationData) {
+		if (null == revocationData || null == addedRevocationData) {
+			return;
+		}
+		revocationData.getOcspRevocationData().addAll(addedRevocationData.getOcspRevocationData());
+		revocationData.getCrlRevocationData().addAll(addedRevocationData.getCrlRevocationData());
+		revocationData.limitExpiry(addedRevocationData.getExpiry());
+	}
+
+	/**
+	 * Gives back the revocation data collecting the revocation evidence behind a
+	 * result to be cached. The encoded revocation evidence is only retained when
+	 * the caller asks for it.
+	 */
+	private static RevocationData newRevocationData(final RevocationData revocationData) {
+		return new RevocationData(null != revocationData && revocationData.isRetainEvidence());
+	}
+
+	/**
+	 * Finds a cached result. A result cached without the revocation evidence does
+	 * not serve callers asking for it.
+	 */
+	private static RevocationData findCachedRevocationData(final ValidationResultCache cache,
+			final ValidationResultCache.Key cacheKey, final Date validationDate, final RevocationData revocationData) {
+		final RevocationData cachedRevocationData = cache.find(cacheKey, validationDate);
+		if (null == cachedRevocationData || null == revocationData || false == revocationData.isRetainEvidence()
+				|| cachedRevocationData.isRetainEvidence()) {
+			return cachedRevocationData;
+		}
+		LOGGER.debug("cached result lacks revocation evidence");
+		return null;
+	}
+
+	private static TrustLinkerResult awaitTrustLinkerResult(final CompletableFuture<TrustLinkerResult> future,
+			final ValidationDeadline validationDeadline) throws TrustLinkerResultException {
+		try {
+			if (null == validationDeadline) {
+				return future.get();
+			}
+			return future.get(validationDeadline.getRemaining(), TimeUnit.MILLISECONDS);
+		} catch (final TimeoutException e) {
+			LOGGER.warn("validation deadline exceeded");
+			throw new TrustLinkerResultException(TrustLinkerResultReason.VALIDATION_TIMEOUT,
+					"validation deadline exceeded", e);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new TrustLinkerResultException(TrustLinkerResultReason.UNSPECIFIED,
+					"interrupted while waiting for trust linker", e);
+		} catch (final ExecutionException e) {
+			throw toTrustLinkerResultException(e.getCause(), validationDeadline);
+		}
+	}
+
+	private void checkRoot(final List<X509Certificate> certificatePath, final Date validationDate,
+			final boolean expiredMode) throws TrustLinkerResultException {
 		if (certificatePath.isEmpty()) {
 			throw new TrustLinkerResultException(TrustLinkerResultReason.UNSPECIFIED, "certificate path is empty");
 		}
@@ -300,24 +928,22 @@ public class TrustValidator {
 			LOGGER.debug("expired certificate validation mode");
 		}
 
-		int certIdx = certificatePath.size() - 1;
-		X509Certificate certificate = certificatePath.get(certIdx);
+		final X509Certificate certificate = certificatePath.get(certificatePath.size() - 1);
 		LOGGER.debug("verifying root certificate: {}", certificate.getSubjectX500Principal());
-		checkSelfSigned(certificate);
+		final boolean verifiedTrustPoint = this.certificateRepository instanceof VerifiedCertificateRepository
+				&& ((VerifiedCertificateRepository) this.certificateRepository).isVerifiedTrustPoint(certificate);
+		if (verifiedTrustPoint) {
+			// self-signature already verified by the certificate repository
+			LOGGER.debug("verified trust point");
+		} else {
+			checkSelfSigned(certificate);
+		}
 		// check certificate signature
 		checkSignatureAlgorithm(certificate.getSigAlgName(), validationDate);
-		checkSelfSignedTrust(certificate, validationDate, expiredMode);
-
-		certIdx--;
-
-		while (certIdx >= 0) {
-			final X509Certificate childCertificate = certificatePath.get(certIdx);
-			LOGGER.debug("verifying certificate: {}", childCertificate.getSubjectX500Principal());
-			certIdx--;
-			checkTrustLink(childCertificate, certificate, validationDate);
-			certificate = childCertificate;
-		}
+		checkSelfSignedTrust(certificate, validationDate, expiredMode, verifiedTrustPoint);
+	}
 
+	private void checkCertificateConstraints(final X509Certificate certificate) throws TrustLinkerResultException {
 		for (final CertificateConstraint certificateConstraint : this.certificateConstraints) {
 			final String certificateConstraintName = certificateConstraint.getClass().getSimpleName();
 			LOGGER.debug("certificate constraint check: {}", certificateConstraintName);
@@ -333,7 +959,8 @@ public class TrustValidator {
 		}
 	}
 
-	private void checkTrustLink(final X509Certificate childCertificate, final X509Certificate certificate, final Date validationDate)
+	private void checkTrustLink(final X509Certificate childCertificate, final X509Certificate certificate,
+			final Date validationDate, final RevocationData revocationData, final boolean intermediate)
 			throws TrustLinkerResultException {
 		if (null == childCertificate) {
 			return;
@@ -341,21 +968,42 @@ public class TrustValidator {
 		// check certificate signature
 		checkSignatureAlgorithm(childCertificate.getSigAlgName(), validationDate);
 
+		final ValidationResultCache.Key cacheKey = getTrustLinkCacheKey(childCertificate, certificate, intermediate);
+		if (null == cacheKey) {
+			checkTrustLink(childCertificate, certificate, validationDate, revocationData);
+			return;
+		}
+		final RevocationData cachedRevocationData = findCachedRevocationData(this.trustLinkCache, cacheKey,
+				validationDate, revocationData);
+		if (null != cachedRevocationData) {
+			LOGGER.debug("cached trust link");
+			addRevocationData(revocationData, cachedRevocationData);
+			return;
+		}
+		final RevocationData linkRevocationData = newRevocationData(revocationData);
+		try {
+			checkTrustLink(childCertificate, certificate, validationDate, linkRevocationData);
+		} finally {
+			addRevocationData(revocationData, linkRevocationData);
+		}
+		this.trustLinkCache.put(cacheKey, Arrays.asList(childCertificate, certificate), validationDate,
+				linkRevocationData);
+	}
+
+	private void checkTrustLink(final X509Certificate childCertificate, final X509Certificate certificate,
+			final Date validationDate, final RevocationData revocationData) throws TrustLinkerResultException {
+
 		boolean sometrustLinkerTrusts = false;
+		final ValidationDeadline validationDeadline = ValidationDeadline.getCurrent();
 		for (final TrustLinker trustLinker : this.trustLinkers) {
+			checkValidationDeadline(validationDeadline, null);
 			LOGGER.debug("trying trust linker: {}", trustLinker.getClass().getSimpleName());
 			TrustLinkerResult trustLinkerResult;
 			try {
 				trustLinkerResult = trustLinker.hasTrustLink(childCertificate, certificate, validationDate,
-						this.revocationData, this.algorithmPolicy);
-			} catch (final TrustLinkerResultException e) {
-				// we let this type of exception pass as is
-				LOGGER.warn("trust linker exception: " + e.getMessage(), e);
-				throw e;
+						revocationData, this.algorithmPolicy);
 			} catch (final Exception e) {
-				LOGGER.warn("trust linker error: " + e.getMessage(), e);
-				throw new TrustLinkerResultException(TrustLinkerResultReason.UNSPECIFIED,
-						"trust linker error: " + e.getMessage(), e);
+				throw toTrustLinkerResultException(e, validationDeadline);
 			}
 			if (null == trustLinkerResult) {
 				LOGGER.warn("trust linker result should not be NULL");
@@ -367,15 +1015,51 @@ public class TrustValidator {
 			}
 		}
 		if (false == sometrustLinkerTrusts) {
-			final String message = "no trust between " + childCertificate.getSubjectX500Principal() + " and "
-					+ certificate.getSubjectX500Principal();
-			LOGGER.warn(message);
-			throw new TrustLinkerResultException(TrustLinkerResultReason.NO_TRUST, message);
+			throw noTrust(childCertificate, certificate, validationDeadline);
+		}
+	}
+
+	private static TrustLinkerResultException toTrustLinkerResultException(final Throwable error,
+			final ValidationDeadline validationDeadline) throws TrustLinkerResultException {
+		if (error instanceof TrustLinkerResultException) {
+			final TrustLinkerResultException e = (TrustLinkerResultException) error;
+			LOGGER.warn("trust linker exception: " + e.getMessage(), e);
+			final TrustLinkerResultReason reason = e.getReason();
+			if (TrustLinkerResultReason.CRL_UNAVAILABLE == reason
+					|| TrustLinkerResultReason.OCSP_UNAVAILABLE == reason) {
+				checkValidationDeadline(validationDeadline, e);
+			}
+			// we let this type of exception pass as is
+			return e;
 		}
+		LOGGER.warn("trust linker error: " + error.getMessage(), error);
+		checkValidationDeadline(validationDeadline, error);
+		return new TrustLinkerResultException(TrustLinkerResultReason.UNSPECIFIED,
+				"trust linker error: " + error.getMessage(), error);
+	}
+
+	private static TrustLinkerResultException noTrust(final X509Certificate childCertificate,
+			final X509Certificate certificate, final ValidationDeadline validationDeadline)
+			throws TrustLinkerResultException {
+		checkValidationDeadline(validationDeadline, null);
+		final String message = "no trust between " + childCertificate.getSubjectX500Principal() + " and "
+				+ certificate.getSubjectX500Principal();
+		LOGGER.warn(message);
+		return new TrustLinkerResultException(TrustLinkerResultReason.NO_TRUST, message);
 	}
 
-	private void checkSelfSignedTrust(final X509Certificate certificate, final Date validationDate, final boolean expiredMode)
+	private static void checkValidationDeadline(final ValidationDeadline validationDeadline, final Throwable cause)
 			throws TrustLinkerResultException {
+		if (null == validationDeadline || false == validationDeadline.isExpired()) {
+			return;
+		}
+		LOGGER.warn("validation deadline exceeded");
+		throw new TrustLinkerResultException(TrustLinkerResultReason.VALIDATION_TIMEOUT,
+				"validation deadline exceeded", cause);
+	}
+
+	private void checkSelfSignedTrust(final X509Certificate certificate, final Date validationDate,
+			final boolean expiredMode, final boolean trustPoint) throws TrustLinkerResultException {
 		if (certificate.getNotBefore().after(validationDate)) {
 			LOGGER.error("certificate not yet valid");
 			LOGGER.error("validation date: {}", validationDate);
@@ -399,7 +1083,7 @@ public class TrustValidator {
 				LOGGER.warn("not after: {}", certificate.getNotAfter());
 			}
 		}
-		if (this.certificateRepository.isTrustPoint(certificate)) {
+		if (trustPoint || this.certificateRepository.isTrustPoint(certificate)) {
 			return;
 		}
 		LOGGER.warn("self-signed certificate not in repository: {}", certificate.getSubjectX500Principal());
@@ -414,6 +1098,143 @@ public class TrustValidator {
 	 * @param revocationData
 	 */
 	public void setRevocationData(final RevocationData revocationData) {
+		checkMutable();
 		this.revocationData = revocationData;
 	}
+
+	/**
+	 * Builder for an immutable trust validator.
+	 */
+	public static final class Builder {
+
+		private final CertificateRepository certificateRepository;
+
+		private final List<TrustLinker> trustLinkers;
+
+		private final List<CertificateConstraint> certificateConstraints;
+
+		private AlgorithmPolicy algorithmPolicy;
+
+		private long validationTimeout;
+
+		private Executor executor;
+
+		private boolean concurrentTrustLinking;
+
+		private ValidationResultCache validationResultCache;
+
+		private ValidationResultCache trustLinkCache;
+
+		private Builder(final CertificateRepository certificateRepository) {
+			this.certificateRepository = certificateRepository;
+			this.trustLinkers = new LinkedList<>();
+			this.certificateConstraints = new LinkedList<>();
+			this.algorithmPolicy = new DefaultAlgorithmPolicy();
+			this.executor = AsyncTrustLinkerAdapter.getDefaultExecutor();
+		}
+
+		/**
+		 * Adds a trust linker.
+		 * 
+		 * @param trustLinker the trust linker component.
+		 * @return this builder.
+		 * @see TrustValidator#addTrustLinker(TrustLinker)
+		 */
+		public Builder addTrustLinker(final TrustLinker trustLinker) {
+			this.trustLinkers.add(trustLinker);
+			return this;
+		}
+
+		/**
+		 * Adds a certificate constraint.
+		 * 
+		 * @param certificateConstraint the certificate constraint component.
+		 * @return this builder.
+		 */
+		public Builder addCertificateConstraint(final CertificateConstraint certificateConstraint) {
+			this.certificateConstraints.add(certificateConstraint);
+			return this;
+		}
+
+		/**
+		 * Sets the algorithm policy.
+		 * 
+		 * @param algorithmPolicy the algorithm policy component.
+		 * @return this builder.
+		 */
+		public Builder setAlgorithmPolicy(final AlgorithmPolicy algorithmPolicy) {
+			this.algorithmPolicy = algorithmPolicy;
+			return this;
+		}
+
+		/**
+		 * Sets the overall time budget of a single certificate path validation.
+		 * 
+		 * @param validationTimeout the time budget in milliseconds.
+		 * @return this builder.
+		 * @see TrustValidator#setValidationTimeout(long)
+		 */
+		public Builder setValidationTimeout(final long validationTimeout) {
+			this.validationTimeout = validationTimeout;
+			return this;
+		}
+
+		/**
+		 * Sets the executor running the blocking trust linkers.
+		 * 
+		 * @param executor
+		 * @return this builder.
+		 * @see TrustValidator#setExecutor(Executor)
+		 */
+		public Builder setExecutor(final Executor executor) {
+			this.executor = executor;
+			return this;
+		}
+
+		/**
+		 * Sets whether the trust linkers of all links are started at once.
+		 * 
+		 * @param concurrentTrustLinking
+		 * @return this builder.
+		 * @see TrustValidator#setConcurrentTrustLinking(boolean)
+		 */
+		public Builder setConcurrentTrustLinking(final boolean concurrentTrustLinking) {
+			this.concurrentTrustLinking = concurrentTrustLinking;
+			return this;
+		}
+
+		/**
+		 * Sets the cache of positive validation results.
+		 * 
+		 * @param validationResultCache the validation result cache, or
+		 *                              <code>null</code>.
+		 * @return this builder.
+		 * @see TrustValidator#setValidationResultCache(ValidationResultCache)
+		 */
+		public Builder setValidationResultCache(final ValidationResultCache validationResultCache) {
+			this.validationResultCache = validationResultCache;
+			return this;
+		}
+
+		/**
+		 * Sets the cache of positive trust link decisions.
+		 * 
+		 * @param trustLinkCache the trust link cache, or <code>null</code>.
+		 * @return this builder.
+		 * @see TrustValidator#setTrustLinkCache(ValidationResultCache)
+		 */
+		public Builder setTrustLinkCache(final ValidationResultCache trustLinkCache) {
+			this.trustLinkCache = trustLinkCache;
+			return this;
+		}
+
+		/**
+		 * Builds the immutable trust validator.
+		 * 
+		 * @return the trust validator.
+		 */
+		public TrustValidator build() {
+			return new TrustValidator(this);
+		}
+	}
 }
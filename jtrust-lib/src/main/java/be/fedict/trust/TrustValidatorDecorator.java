@@ -100,10 +100,13 @@ public class TrustValidatorDecorator {
 			boolean noOcsp, CrlRepository crlRepository) {
 		trustValidator.addTrustLinker(new PublicKeyTrustLinker());
 
-		OnlineOcspRepository ocspRepository = new OnlineOcspRepository(this.networkConfig);
+		// OCSP and CRL downloads share the same connection pool
+		HttpTransport httpTransport = new HttpTransport(this.networkConfig);
+
+		OnlineOcspRepository ocspRepository = new OnlineOcspRepository(httpTransport);
 
 		if (null == crlRepository) {
-			OnlineCrlRepository onlineCrlRepository = new OnlineCrlRepository(this.networkConfig);
+			OnlineCrlRepository onlineCrlRepository = new OnlineCrlRepository(httpTransport);
 			crlRepository = new CachedCrlRepository(onlineCrlRepository);
 		}
 
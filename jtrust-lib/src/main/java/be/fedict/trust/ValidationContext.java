@@ -0,0 +1,94 @@
+/*
+ * Java Trust Project.
+ * Copyright (C) 2021 e-Contract.be BV.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+
+package be.fedict.trust;
+
+import java.util.Date;
+
+import be.fedict.trust.revocation.RevocationData;
+
+/**
+ * Per-call state of a single certificate path validation. Allows a shared,
+ * immutable {@link TrustValidator} to collect the used revocation data for
+ * each caller separately.
+ * <p>
+ * Notice that a validation context should not be used by concurrent
+ * validations.
+ * </p>
+ * 
+ * @see TrustValidator#isTrusted(java.util.List, ValidationContext)
+ */
+public class ValidationContext {
+
+	private final Date validationDate;
+
+	private boolean expiredMode;
+
+	private RevocationData revocationData;
+
+	/**
+	 * Default constructor, validating at the current date.
+	 */
+	public ValidationContext() {
+		this(new Date());
+	}
+
+	/**
+	 * Main constructor.
+	 * 
+	 * @param validationDate the date at which the certificate path validation
+	 *                       should be verified.
+	 */
+	public ValidationContext(final Date validationDate) {
+		this.validationDate = validationDate;
+	}
+
+	public Date getValidationDate() {
+		return this.validationDate;
+	}
+
+	/**
+	 * Sets whether expired certificates are validated.
+	 * 
+	 * @param expiredMode set to <code>true</code> for validation mode of expired
+	 *                    certificates.
+	 */
+	public void setExpiredMode(final boolean expiredMode) {
+		this.expiredMode = expiredMode;
+	}
+
+	public boolean isExpiredMode() {
+		return this.expiredMode;
+	}
+
+	/**
+	 * Sets the revocation data container that the trust linkers should fill up
+	 * with the used revocation data.
+	 * 
+	 * @param revocationData the revocation data container, or <code>null</code>
+	 *                       to not collect revocation data.
+	 */
+	public void setRevocationData(final RevocationData revocationData) {
+		this.revocationData = revocationData;
+	}
+
+	public RevocationData getRevocationData() {
+		return this.revocationData;
+	}
+}
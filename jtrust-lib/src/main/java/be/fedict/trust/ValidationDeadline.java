@@ -0,0 +1,150 @@
+/*
+ * Java Trust Project.
+ * Copyright (C) 2021 e-Contract.be BV.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.trust;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overall time budget of a single certificate path validation. While a
+ * validation runs, its deadline is bound to the validating thread, so that
+ * the CRL and OCSP repositories can limit their network timeouts to the
+ * remaining budget.
+ * <p>
+ * Instances are immutable and thread-safe.
+ * </p>
+ */
+public final class ValidationDeadline {
+
+	private static final ThreadLocal<ValidationDeadline> CURRENT = new ThreadLocal<>();
+
+	private final long deadlineNanos;
+
+	/**
+	 * Main constructor.
+	 * 
+	 * @param timeout the time budget in milliseconds, starting now.
+	 */
+	public ValidationDeadline(final long timeout) {
+		this.deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+	}
+
+	/**
+	 * Gives back the remaining time budget in milliseconds.
+	 * 
+	 * @return the remaining milliseconds, <code>0</code> when expired.
+	 */
+	public long getRemaining() {
+		final long remainingNanos = this.deadlineNanos - System.nanoTime();
+		if (remainingNanos <= 0) {
+			return 0;
+		}
+		return Math.max(1, TimeUnit.NANOSECONDS.toMillis(remainingNanos));
+	}
+
+	/**
+	 * Returns whether the time budget has been used up.
+	 */
+	public boolean isExpired() {
+		return this.deadlineNanos - System.nanoTime() <= 0;
+	}
+
+	/**
+	 * Gives back the deadline of the validation running on the current thread.
+	 * 
+	 * @return the deadline, or <code>null</code> if none applies.
+	 */
+	public static ValidationDeadline getCurrent() {
+		return CURRENT.get();
+	}
+
+	/**
+	 * Binds the given deadline to the current thread. The caller is responsible
+	 * for restoring the returned previous deadline afterwards.
+	 * 
+	 * @param deadline the deadline, or <code>null</code> to unbind.
+	 * @return the previously bound deadline, or <code>null</code>.
+	 */
+	public static ValidationDeadline setCurrent(final ValidationDeadline deadline) {
+		final ValidationDeadline previousDeadline = CURRENT.get();
+		if (null == deadline) {
+			CURRENT.remove();
+		} else {
+			CURRENT.set(deadline);
+		}
+		return previousDeadline;
+	}
+
+	/**
+	 * Gives back the given timeout, limited to the remaining time budget of the
+	 * validation running on the current thread.
+	 * 
+	 * @param timeout the timeout in milliseconds.
+	 * @return the limited timeout in milliseconds.
+	 */
+	public static long limit(final long timeout) {
+		final ValidationDeadline deadline = CURRENT.get();
+		if (null == deadline) {
+			return timeout;
+		}
+		return Math.min(timeout, deadline.getRemaining());
+	}
+
+	/**
+	 * Runs the given task via the given executor, with the deadline of the current
+	 * thread bound to the executing thread. Exceptions thrown by the task complete
+	 * the returned future exceptionally. A task whose future got cancelled before
+	 * it started does not run at all.
+	 * 
+	 * @param task     the task.
+	 * @param executor the executor. If <code>null</code>, the task runs on the
+	 *                 calling thread.
+	 * @return the future result of the task.
+	 */
+	public static <T> CompletableFuture<T> callAsync(final Callable<T> task, final Executor executor) {
+		final CompletableFuture<T> future = new CompletableFuture<>();
+		final ValidationDeadline validationDeadline = CURRENT.get();
+		final Runnable runnable = () -> {
+			if (future.isDone()) {
+				return;
+			}
+			final ValidationDeadline previousValidationDeadline = setCurrent(validationDeadline);
+			try {
+				future.complete(task.call());
+			} catch (final Throwable e) {
+				future.completeExceptionally(e);
+			} finally {
+				setCurrent(previousValidationDeadline);
+			}
+		};
+		if (null == executor) {
+			runnable.run();
+		} else {
+			try {
+				executor.execute(runnable);
+			} catch (final RejectedExecutionException e) {
+				future.completeExceptionally(e);
+			}
+		}
+		return future;
+	}
+}
@@ -0,0 +1,51 @@
+/*
+ * Java Trust Project.
+ * Copyright (C) 2021 e-Contract.be BV.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+
+package be.fedict.trust;
+
+import java.net.SocketTimeoutException;
+
+/**
+ * Thrown by the {@link HttpTransport} when a request timed out because of the
+ * {@link ValidationDeadline} of the caller, rather than because of the regular
+ * network timeouts. Such a timeout says nothing about the availability of the
+ * endpoint.
+ */
+public class ValidationDeadlineExceededException extends SocketTimeoutException {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Default constructor, for when the deadline already passed before the
+	 * request got executed.
+	 */
+	public ValidationDeadlineExceededException() {
+		super("validation deadline exceeded");
+	}
+
+	/**
+	 * Main constructor.
+	 * 
+	 * @param cause the network timeout limited by the validation deadline.
+	 */
+	public ValidationDeadlineExceededException(final Throwable cause) {
+		super("validation deadline exceeded: " + cause.getMessage());
+		initCause(cause);
+	}
+}
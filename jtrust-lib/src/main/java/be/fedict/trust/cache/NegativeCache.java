@@ -0,0 +1,135 @@
+/*
+ * Java Trust Project.
+ * Copyright (C) 2021 e-Contract.be BV.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.trust.cache;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import be.fedict.trust.ServerNotAvailableException;
+import be.fedict.trust.ValidationDeadlineExceededException;
+
+/**
+ * Remembers {@link ServerNotAvailableException} outcomes for a short period, so
+ * that subsequent requests for the same key fail fast instead of waiting for
+ * the network timeouts again.
+ * 
+ * @param <K> the key type.
+ */
+public class NegativeCache<K> {
+
+	private final ConcurrentMap<K, Entry> entries;
+
+	private volatile long duration;
+
+	private static class Entry {
+
+		private final ServerNotAvailableException exception;
+		private final long expiry;
+
+		public Entry(final ServerNotAvailableException exception, final long expiry) {
+			this.exception = exception;
+			this.expiry = expiry;
+		}
+	}
+
+	/**
+	 * Default constructor. The negative cache is disabled until a duration is
+	 * set.
+	 */
+	public NegativeCache() {
+		this.entries = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * Throws a {@link ServerNotAvailableException} when a recent failure got
+	 * recorded for the given key.
+	 * 
+	 * @param key the key.
+	 * @throws ServerNotAvailableException
+	 */
+	public void check(final K key) throws ServerNotAvailableException {
+		if (this.duration <= 0 || null == key) {
+			return;
+		}
+		final Entry entry = this.entries.get(key);
+		if (null == entry) {
+			return;
+		}
+		if (System.currentTimeMillis() >= entry.expiry) {
+			this.entries.remove(key, entry);
+			return;
+		}
+		final ServerNotAvailableException exception = entry.exception;
+		throw new ServerNotAvailableException(exception.getMessage() + " (cached)", exception.getServerType(),
+				exception);
+	}
+
+	/**
+	 * Records a failure for the given key. A failure caused by the validation
+	 * deadline of the caller is not recorded, as it says nothing about the
+	 * availability of the server.
+	 * 
+	 * @param key       the key.
+	 * @param exception the failure.
+	 */
+	public void put(final K key, final ServerNotAvailableException exception) {
+		final long currentDuration = this.duration;
+		if (currentDuration <= 0 || null == key) {
+			return;
+		}
+		for (Throwable cause = exception.getCause(); null != cause; cause = cause.getCause()) {
+			if (cause instanceof ValidationDeadlineExceededException) {
+				return;
+			}
+		}
+		this.entries.put(key, new Entry(exception, System.currentTimeMillis() + currentDuration));
+	}
+
+	/**
+	 * Forgets a recorded failure for the given key.
+	 * 
+	 * @param key the key.
+	 */
+	public void remove(final K key) {
+		if (null == key) {
+			return;
+		}
+		this.entries.remove(key);
+	}
+
+	/**
+	 * Gives back the negative caching duration in milliseconds.
+	 */
+	public long getDuration() {
+		return this.duration;
+	}
+
+	/**
+	 * Sets the negative caching duration in milliseconds. Use <code>0</code> to
+	 * disable negative caching.
+	 * 
+	 * @param duration the duration in milliseconds.
+	 */
+	public void setDuration(final long duration) {
+		this.duration = duration;
+		if (duration <= 0) {
+			this.entries.clear();
+		}
+	}
+}
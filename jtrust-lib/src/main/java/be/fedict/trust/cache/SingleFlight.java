@@ -0,0 +1,143 @@
+/*
+ * Java Trust Project.
+ * Copyright (C) 2021 e-Contract.be BV.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.trust.cache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import be.fedict.trust.ServerNotAvailableException;
+import be.fedict.trust.ServerType;
+import be.fedict.trust.ValidationDeadline;
+
+/**
+ * Coalesces concurrent loads of the same key. Only one load per key runs at a
+ * time, and concurrent callers wait on that load and share its result.
+ * 
+ * @param <K> the key type.
+ * @param <V> the value type.
+ */
+public class SingleFlight<K, V> {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(SingleFlight.class);
+
+	private final ConcurrentMap<K, CompletableFuture<V>> inFlight;
+
+	private final ServerType serverType;
+
+	/**
+	 * Main constructor.
+	 * 
+	 * @param serverType the type of server the loads are targeting.
+	 */
+	public SingleFlight(final ServerType serverType) {
+		this.inFlight = new ConcurrentHashMap<>();
+		this.serverType = serverType;
+	}
+
+	/**
+	 * Loader of a single value.
+	 * 
+	 * @param <V> the value type.
+	 */
+	@FunctionalInterface
+	public interface Loader<V> {
+
+		/**
+		 * Loads the value.
+		 * 
+		 * @return the value, can be <code>null</code>.
+		 * @throws ServerNotAvailableException
+		 */
+		V load() throws ServerNotAvailableException;
+	}
+
+	/**
+	 * Runs the given loader, unless a load for the same key is already in flight.
+	 * In the latter case we wait for the running load and give back its result.
+	 * 
+	 * @param key    the key.
+	 * @param loader the loader.
+	 * @return the loaded value.
+	 * @throws ServerNotAvailableException
+	 */
+	public V execute(final K key, final Loader<V> loader) throws ServerNotAvailableException {
+		final CompletableFuture<V> future = new CompletableFuture<>();
+		final CompletableFuture<V> runningFuture = this.inFlight.putIfAbsent(key, future);
+		if (null != runningFuture) {
+			LOGGER.debug("waiting for in-flight load: {}", key);
+			return await(runningFuture);
+		}
+		try {
+			final V value = loader.load();
+			future.complete(value);
+			return value;
+		} catch (final ServerNotAvailableException | RuntimeException | Error e) {
+			future.completeExceptionally(e);
+			throw e;
+		} finally {
+			this.inFlight.remove(key, future);
+		}
+	}
+
+	/**
+	 * Returns whether a load for the given key is in flight.
+	 * 
+	 * @param key the key.
+	 * @return <code>true</code> if a load is running.
+	 */
+	public boolean isInFlight(final K key) {
+		return this.inFlight.containsKey(key);
+	}
+
+	private V await(final CompletableFuture<V> future) throws ServerNotAvailableException {
+		final ValidationDeadline validationDeadline = ValidationDeadline.getCurrent();
+		try {
+			if (null == validationDeadline) {
+				return future.get();
+			}
+			return future.get(validationDeadline.getRemaining(), TimeUnit.MILLISECONDS);
+		} catch (final TimeoutException e) {
+			throw new ServerNotAvailableException("validation deadline exceeded while waiting for in-flight load", this.serverType, e);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ServerNotAvailableException("interrupted while waiting for in-flight load", this.serverType, e);
+		} catch (final ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof ServerNotAvailableException) {
+				final ServerNotAvailableException serverNotAvailableException = (ServerNotAvailableException) cause;
+				throw new ServerNotAvailableException(serverNotAvailableException.getMessage(),
+						serverNotAvailableException.getServerType(), serverNotAvailableException);
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new RuntimeException(cause);
+		}
+	}
+}
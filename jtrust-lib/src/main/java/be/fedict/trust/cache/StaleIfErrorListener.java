@@ -0,0 +1,46 @@
+/*
+ * Java Trust Project.
+ * Copyright (C) 2021 e-Contract.be BV.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.trust.cache;
+
+import java.net.URI;
+import java.util.Date;
+
+import be.fedict.trust.ServerNotAvailableException;
+import be.fedict.trust.ServerType;
+
+/**
+ * Listener that gets notified when a cache serves stale revocation data
+ * because refreshing it failed. The listener is called on the thread that
+ * requested the revocation data.
+ */
+@FunctionalInterface
+public interface StaleIfErrorListener {
+
+	/**
+	 * Called when stale revocation data is served.
+	 * 
+	 * @param serverType the type of revocation data.
+	 * @param uri        the URI of the revocation data, can be
+	 *                   <code>null</code>.
+	 * @param staleSince the date since which the revocation data is considered
+	 *                   stale by the cache.
+	 * @param cause      the error that occurred while refreshing.
+	 */
+	void staleServed(ServerType serverType, URI uri, Date staleSince, ServerNotAvailableException cause);
+}
@@ -0,0 +1,379 @@
+/*
+ * Java Trust Project.
+ * Copyright (C) 2021 e-Contract.be BV.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+
+package be.fedict.trust.cache;
+
+import java.io.IOException;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.X509CRLEntryHolder;
+import org.bouncycastle.cert.X509CRLHolder;
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.bouncycastle.cert.ocsp.OCSPException;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.cert.ocsp.RevokedStatus;
+import org.bouncycastle.cert.ocsp.SingleResp;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import be.fedict.trust.CryptoContext;
+import be.fedict.trust.ocsp.OcspTrustLinker;
+import be.fedict.trust.revocation.CRLRevocationData;
+import be.fedict.trust.revocation.OCSPRevocationData;
+import be.fedict.trust.revocation.RevocationData;
+
+/**
+ * Cache of positive certificate path validation results. Entries are keyed by
+ * the configuration of the trust validator that produced them and the SHA-256
+ * fingerprints of the certificates of the path, and expire at the
+ * earliest of the next update of the revocation evidence behind the result,
+ * extended by the OCSP freshness interval, the end of validity of the
+ * certificates of the path, and the maximum age. A revocation of a
+ * certificate of the path after the validation date, as listed by the
+ * revocation evidence, also ends the validity of the result.
+ * <p>
+ * A cached result applies to validation dates from the validation date that
+ * produced it up to its expiry. The revocation data collected while producing
+ * the result is kept, so that it can be handed out again on cache hits. The
+ * expiry is taken from the one reported by the trust linkers via
+ * {@link RevocationData#limitExpiry(Date)}. Only revocation evidence added
+ * without an expiry gets parsed. Trust linkers that do not report the
+ * revocation data they use only get bounded by the maximum age.
+ * </p>
+ * <p>
+ * The same cache type also holds trust link decisions, where the certificate
+ * path is made up of the child certificate and its issuer certificate.
+ * </p>
+ * <p>
+ * This implementation is thread-safe.
+ * </p>
+ */
+public class ValidationResultCache {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ValidationResultCache.class);
+
+	public static final int DEFAULT_MAX_CACHE_SIZE = 1000;
+
+	/**
+	 * Default maximum age of a cached validation result in milliseconds.
+	 */
+	public static final long DEFAULT_MAX_AGE = 60 * 60 * 1000;
+
+	private final int maxCacheSize;
+
+	private final ConcurrentMap<Key, Entry> entries;
+
+	private volatile long maxAge;
+
+	private volatile long freshnessInterval;
+
+	/**
+	 * Opaque cache key of a certificate path, validated under a given
+	 * configuration.
+	 */
+	public static final class Key {
+
+		private final Object configuration;
+
+		private final byte[] fingerprints;
+
+		private final boolean expiredMode;
+
+		private final int hashCode;
+
+		private Key(final Object configuration, final byte[] fingerprints, final boolean expiredMode) {
+			this.configuration = configuration;
+			this.fingerprints = fingerprints;
+			this.expiredMode = expiredMode;
+			this.hashCode = 31 * (31 * System.identityHashCode(configuration) + Arrays.hashCode(fingerprints))
+					+ Boolean.hashCode(expiredMode);
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hashCode;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (false == obj instanceof Key) {
+				return false;
+			}
+			final Key key = (Key) obj;
+			return this.configuration == key.configuration && this.expiredMode == key.expiredMode
+					&& Arrays.equals(this.fingerprints, key.fingerprints);
+		}
+	}
+
+	private static class Entry {
+
+		private final long validFrom;
+		private final long expiry;
+		private final RevocationData revocationData;
+
+		public Entry(final long validFrom, final long expiry, final RevocationData revocationData) {
+			this.validFrom = validFrom;
+			this.expiry = expiry;
+			this.revocationData = revocationData;
+		}
+	}
+
+	/**
+	 * Default constructor.
+	 */
+	public ValidationResultCache() {
+		this(DEFAULT_MAX_CACHE_SIZE);
+	}
+
+	/**
+	 * Main constructor.
+	 * 
+	 * @param maxCacheSize the maximum number of cached validation results.
+	 */
+	public ValidationResultCache(final int maxCacheSize) {
+		this.maxCacheSize = maxCacheSize;
+		this.entries = new ConcurrentHashMap<>();
+		this.maxAge = DEFAULT_MAX_AGE;
+		this.freshnessInterval = OcspTrustLinker.DEFAULT_FRESHNESS_INTERVAL;
+	}
+
+	/**
+	 * Sets the maximum age of a cached validation result in milliseconds.
+	 * 
+	 * @param maxAge
+	 */
+	public void setMaxAge(final long maxAge) {
+		this.maxAge = maxAge;
+	}
+
+	public long getMaxAge() {
+		return this.maxAge;
+	}
+
+	/**
+	 * Sets the OCSP response freshness interval in milliseconds. Should be equal
+	 * to the one configured on the {@link OcspTrustLinker}. Only applies to OCSP
+	 * responses added to the revocation data without an expiry.
+	 * 
+	 * @param freshnessInterval
+	 */
+	public void setFreshnessInterval(final long freshnessInterval) {
+		this.freshnessInterval = freshnessInterval;
+	}
+
+	/**
+	 * Gives back the cache key of the given certificate path. Validation results
+	 * are only shared between lookups with the same configuration identity, so
+	 * that trust validators with different trust linkers, certificate
+	 * constraints or algorithm policy can share a cache.
+	 * 
+	 * @param configuration   the identity of the configuration validating the
+	 *                        certificate path, compared by reference.
+	 * @param certificatePath the certificate path.
+	 * @param expiredMode     the validation mode of expired certificates.
+	 * @return the cache key, or <code>null</code> if the certificate path cannot
+	 *         be fingerprinted.
+	 */
+	public Key getKey(final Object configuration, final List<X509Certificate> certificatePath,
+			final boolean expiredMode) {
+		final byte[] fingerprints;
+		try {
+			final MessageDigest messageDigest = CryptoContext.getMessageDigest("SHA-256");
+			final int digestLength = messageDigest.getDigestLength();
+			fingerprints = new byte[certificatePath.size() * digestLength];
+			int offset = 0;
+			for (final X509Certificate certificate : certificatePath) {
+				if (null == certificate) {
+					return null;
+				}
+				messageDigest.update(certificate.getEncoded());
+				messageDigest.digest(fingerprints, offset, digestLength);
+				offset += digestLength;
+			}
+		} catch (final NoSuchAlgorithmException | CertificateEncodingException | DigestException e) {
+			LOGGER.warn("could not fingerprint certificate path: {}", e.getMessage());
+			return null;
+		}
+		return new Key(configuration, fingerprints, expiredMode);
+	}
+
+	/**
+	 * Finds a cached positive validation result.
+	 * 
+	 * @param key            the cache key.
+	 * @param validationDate the validation date.
+	 * @return the revocation data behind the cached validation result, or
+	 *         <code>null</code> if no validation result is cached.
+	 */
+	public RevocationData find(final Key key, final Date validationDate) {
+		final Entry entry = this.entries.get(key);
+		if (null == entry) {
+			return null;
+		}
+		final long now = System.currentTimeMillis();
+		if (entry.expiry <= now) {
+			this.entries.remove(key, entry);
+			return null;
+		}
+		final long validationTime = validationDate.getTime();
+		if (validationTime < entry.validFrom || validationTime >= entry.expiry) {
+			return null;
+		}
+		return entry.revocationData;
+	}
+
+	/**
+	 * Caches a positive validation result.
+	 * 
+	 * @param key             the cache key.
+	 * @param certificatePath the validated certificate path.
+	 * @param validationDate  the validation date.
+	 * @param revocationData  the revocation data used by the validation.
+	 */
+	public void put(final Key key, final List<X509Certificate> certificatePath, final Date validationDate,
+			final RevocationData revocationData) {
+		final long validFrom = validationDate.getTime();
+		long expiry = System.currentTimeMillis() + this.maxAge;
+		if (false == key.expiredMode) {
+			for (final X509Certificate certificate : certificatePath) {
+				expiry = Math.min(expiry, certificate.getNotAfter().getTime());
+			}
+		}
+		try {
+			expiry = Math.min(expiry, getRevocationDataExpiry(revocationData, certificatePath));
+		} catch (final IOException | OCSPException | ClassCastException e) {
+			LOGGER.debug("not caching validation result with unparsable revocation data: {}", e.getMessage());
+			return;
+		}
+		if (expiry <= validFrom) {
+			return;
+		}
+		this.entries.put(key, new Entry(validFrom, expiry, revocationData));
+		evict();
+	}
+
+	/**
+	 * Clears all cached validation results.
+	 */
+	public void clear() {
+		this.entries.clear();
+	}
+
+	public int size() {
+		return this.entries.size();
+	}
+
+	/**
+	 * Gives back the expiry of the revocation data. Next to the next updates, a
+	 * revocation listed for a certificate of the path also ends the validity of
+	 * the result, as revocation linkers accept certificates that only get
+	 * revoked after the validation date. The expiry reported by the trust
+	 * linkers already covers both, so only the revocation evidence added without
+	 * an expiry gets parsed.
+	 */
+	private long getRevocationDataExpiry(final RevocationData revocationData,
+			final List<X509Certificate> certificatePath) throws IOException, OCSPException {
+		long expiry = null != revocationData.getExpiry() ? revocationData.getExpiry().getTime() : Long.MAX_VALUE;
+		for (final OCSPRevocationData ocspRevocationData : revocationData.getOcspRevocationData()) {
+			if (null != ocspRevocationData.getExpiry()) {
+				continue;
+			}
+			final OCSPResp ocspResp = new OCSPResp(ocspRevocationData.getOCSP());
+			final BasicOCSPResp basicOCSPResp = (BasicOCSPResp) ocspResp.getResponseObject();
+			if (null == basicOCSPResp) {
+				continue;
+			}
+			for (final SingleResp singleResp : basicOCSPResp.getResponses()) {
+				final Date nextUpdate = null != singleResp.getNextUpdate() ? singleResp.getNextUpdate()
+						: singleResp.getThisUpdate();
+				expiry = Math.min(expiry, nextUpdate.getTime() + this.freshnessInterval);
+				if (singleResp.getCertStatus() instanceof RevokedStatus) {
+					final RevokedStatus revokedStatus = (RevokedStatus) singleResp.getCertStatus();
+					expiry = Math.min(expiry, revokedStatus.getRevocationTime().getTime());
+				}
+			}
+		}
+		for (final CRLRevocationData crlRevocationData : revocationData.getCrlRevocationData()) {
+			if (null != crlRevocationData.getExpiry()) {
+				continue;
+			}
+			final X509CRLHolder crl = new X509CRLHolder(crlRevocationData.getCRL());
+			if (null != crl.getNextUpdate()) {
+				expiry = Math.min(expiry, crl.getNextUpdate().getTime());
+			}
+			for (final X509Certificate certificate : certificatePath) {
+				if (false == crl.getIssuer()
+						.equals(X500Name.getInstance(certificate.getIssuerX500Principal().getEncoded()))) {
+					continue;
+				}
+				final X509CRLEntryHolder crlEntry = crl.getRevokedCertificate(certificate.getSerialNumber());
+				if (null != crlEntry) {
+					expiry = Math.min(expiry, crlEntry.getRevocationDate().getTime());
+				}
+			}
+		}
+		return expiry;
+	}
+
+	/**
+	 * Makes sure we stay within the maximum cache size. First evicts the expired
+	 * validation results, next the validation results that expire first.
+	 */
+	private void evict() {
+		if (this.entries.size() <= this.maxCacheSize) {
+			return;
+		}
+		synchronized (this.entries) {
+			final long now = System.currentTimeMillis();
+			final Iterator<Map.Entry<Key, Entry>> iterator = this.entries.entrySet().iterator();
+			while (iterator.hasNext()) {
+				if (iterator.next().getValue().expiry <= now) {
+					iterator.remove();
+				}
+			}
+			while (this.entries.size() > this.maxCacheSize) {
+				Map.Entry<Key, Entry> victim = null;
+				for (final Map.Entry<Key, Entry> entry : this.entries.entrySet()) {
+					if (null == victim || entry.getValue().expiry < victim.getValue().expiry) {
+						victim = entry;
+					}
+				}
+				if (null == victim) {
+					break;
+				}
+				this.entries.remove(victim.getKey(), victim.getValue());
+			}
+		}
+	}
+}
@@ -0,0 +1,153 @@
+/*
+ * Java Trust Project.
+ * Copyright (C) 2021 e-Contract.be BV.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.trust.cache;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * A thread-safe map that compares its keys by identity, and only weakly
+ * references them. Entries disappear once their key got garbage collected.
+ * <p>
+ * Useful to attach derived state to immutable objects like certificates and
+ * CRLs, without having to hash their (possibly large) encoding.
+ * </p>
+ * 
+ * @param <K> the key type.
+ * @param <V> the value type.
+ */
+public class WeakIdentityMap<K, V> {
+
+	private final ConcurrentMap<IdentityKey<K>, V> map;
+
+	private final ReferenceQueue<K> referenceQueue;
+
+	/**
+	 * Default constructor.
+	 */
+	public WeakIdentityMap() {
+		this.map = new ConcurrentHashMap<>();
+		this.referenceQueue = new ReferenceQueue<>();
+	}
+
+	/**
+	 * Gives back the value for the given key.
+	 * 
+	 * @param key the key.
+	 * @return the value, or <code>null</code> if not present.
+	 */
+	public V get(final K key) {
+		expungeStaleEntries();
+		return this.map.get(new IdentityKey<>(key, null));
+	}
+
+	/**
+	 * Puts a value for the given key.
+	 * 
+	 * @param key   the key.
+	 * @param value the value.
+	 */
+	public void put(final K key, final V value) {
+		expungeStaleEntries();
+		this.map.put(new IdentityKey<>(key, this.referenceQueue), value);
+	}
+
+	/**
+	 * Gives back the value for the given key, computing it first if not yet
+	 * present.
+	 * 
+	 * @param key             the key.
+	 * @param mappingFunction the function to compute the value.
+	 * @return the value.
+	 */
+	public V computeIfAbsent(final K key, final Function<? super K, ? extends V> mappingFunction) {
+		expungeStaleEntries();
+		final V value = this.map.get(new IdentityKey<>(key, null));
+		if (null != value) {
+			return value;
+		}
+		return this.map.computeIfAbsent(new IdentityKey<>(key, this.referenceQueue),
+				identityKey -> mappingFunction.apply(key));
+	}
+
+	/**
+	 * Removes the value for the given key.
+	 * 
+	 * @param key the key.
+	 */
+	public void remove(final K key) {
+		expungeStaleEntries();
+		this.map.remove(new IdentityKey<>(key, null));
+	}
+
+	/**
+	 * Gives back the number of entries. Might include entries of which the key
+	 * just got garbage collected.
+	 */
+	public int size() {
+		expungeStaleEntries();
+		return this.map.size();
+	}
+
+	/**
+	 * Removes all entries.
+	 */
+	public void clear() {
+		this.map.clear();
+		expungeStaleEntries();
+	}
+
+	@SuppressWarnings("unchecked")
+	private void expungeStaleEntries() {
+		IdentityKey<K> identityKey;
+		while (null != (identityKey = (IdentityKey<K>) this.referenceQueue.poll())) {
+			this.map.remove(identityKey);
+		}
+	}
+
+	private static class IdentityKey<K> extends WeakReference<K> {
+
+		private final int hashCode;
+
+		IdentityKey(final K key, final ReferenceQueue<K> referenceQueue) {
+			super(key, referenceQueue);
+			this.hashCode = System.identityHashCode(key);
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hashCode;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (false == obj instanceof IdentityKey) {
+				return false;
+			}
+			final Object key = get();
+			return null != key && key == ((IdentityKey<?>) obj).get();
+		}
+	}
+}
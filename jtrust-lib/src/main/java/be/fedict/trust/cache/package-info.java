@@ -0,0 +1,4 @@
+/**
+ * This package contains the generic caching components.
+ */
+package be.fedict.trust.cache;
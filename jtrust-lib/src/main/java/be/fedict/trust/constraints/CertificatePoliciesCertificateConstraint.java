@@ -19,21 +19,14 @@
 
 package be.fedict.trust.constraints;
 
-import java.io.ByteArrayInputStream;
 import java.security.cert.X509Certificate;
-import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.Set;
 
-import org.bouncycastle.asn1.ASN1InputStream;
-import org.bouncycastle.asn1.ASN1ObjectIdentifier;
-import org.bouncycastle.asn1.ASN1Sequence;
-import org.bouncycastle.asn1.DEROctetString;
-import org.bouncycastle.asn1.x509.Extension;
-import org.bouncycastle.asn1.x509.PolicyInformation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import be.fedict.trust.CertificateProfile;
 import be.fedict.trust.linker.TrustLinkerResultException;
 import be.fedict.trust.linker.TrustLinkerResultReason;
 
@@ -67,26 +60,16 @@ public class CertificatePoliciesCertificateConstraint implements CertificateCons
 
 	@Override
 	public void check(final X509Certificate certificate) throws TrustLinkerResultException, Exception {
-		final byte[] extensionValue = certificate.getExtensionValue(Extension.certificatePolicies.getId());
-		if (null == extensionValue) {
+		final Set<String> policyIds = CertificateProfile.getInstance(certificate).getCertificatePolicies();
+		if (null == policyIds) {
 			throw new TrustLinkerResultException(TrustLinkerResultReason.CONSTRAINT_VIOLATION,
 					"missing certificate policies X509 extension");
 		}
-		try (final ASN1InputStream extensionStream = new ASN1InputStream(new ByteArrayInputStream(extensionValue))) {
-			final DEROctetString octetString = (DEROctetString) extensionStream.readObject();
-			try (final ASN1InputStream octetStream = new ASN1InputStream(octetString.getOctets())) {
-				final ASN1Sequence certPolicies = (ASN1Sequence) octetStream.readObject();
-				final Enumeration<?> certPoliciesEnum = certPolicies.getObjects();
-				while (certPoliciesEnum.hasMoreElements()) {
-					final PolicyInformation policyInfo = PolicyInformation.getInstance(certPoliciesEnum.nextElement());
-					final ASN1ObjectIdentifier policyOid = policyInfo.getPolicyIdentifier();
-					final String policyId = policyOid.getId();
-					LOGGER.debug("present policy OID: " + policyId);
-					if (this.certificatePolicies.contains(policyId)) {
-						LOGGER.debug("matching certificate policy OID: " + policyId);
-						return;
-					}
-				}
+		for (final String policyId : policyIds) {
+			LOGGER.debug("present policy OID: " + policyId);
+			if (this.certificatePolicies.contains(policyId)) {
+				LOGGER.debug("matching certificate policy OID: " + policyId);
+				return;
 			}
 		}
 		throw new TrustLinkerResultException(TrustLinkerResultReason.CONSTRAINT_VIOLATION,
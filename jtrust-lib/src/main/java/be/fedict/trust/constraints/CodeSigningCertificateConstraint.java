@@ -19,15 +19,12 @@
 
 package be.fedict.trust.constraints;
 
-import java.io.ByteArrayInputStream;
 import java.security.cert.X509Certificate;
 
-import org.bouncycastle.asn1.ASN1InputStream;
-import org.bouncycastle.asn1.ASN1OctetString;
-import org.bouncycastle.asn1.x509.ExtendedKeyUsage;
 import org.bouncycastle.asn1.x509.Extension;
 import org.bouncycastle.asn1.x509.KeyPurposeId;
 
+import be.fedict.trust.DerCursor;
 import be.fedict.trust.linker.TrustLinkerResultException;
 import be.fedict.trust.linker.TrustLinkerResultReason;
 
@@ -38,6 +35,9 @@ import be.fedict.trust.linker.TrustLinkerResultReason;
  */
 public class CodeSigningCertificateConstraint implements CertificateConstraint {
 
+	private static final byte[] CODE_SIGNING = DerCursor
+			.getContents(KeyPurposeId.id_kp_codeSigning.toOID());
+
 	@Override
 	public void check(X509Certificate certificate)
 			throws TrustLinkerResultException, Exception {
@@ -54,19 +54,24 @@ public class CodeSigningCertificateConstraint implements CertificateConstraint {
 					TrustLinkerResultReason.CONSTRAINT_VIOLATION,
 					"ExtendedKeyUsage should be critical");
 		}
-		ASN1InputStream asn1InputStream = new ASN1InputStream(
-				new ByteArrayInputStream(extension));
-		asn1InputStream = new ASN1InputStream(new ByteArrayInputStream(
-				((ASN1OctetString) asn1InputStream.readObject()).getOctets()));
-		ExtendedKeyUsage extendedKeyUsage = ExtendedKeyUsage
-				.getInstance(asn1InputStream.readObject());
-		if (false == extendedKeyUsage
-				.hasKeyPurposeId(KeyPurposeId.id_kp_codeSigning)) {
+		DerCursor cursor = DerCursor.openExtensionValue(extension);
+		cursor.next(DerCursor.SEQUENCE);
+		cursor.enter();
+		boolean codeSigning = false;
+		int keyPurposeCount = 0;
+		while (cursor.hasNext()) {
+			cursor.next(DerCursor.OBJECT_IDENTIFIER);
+			keyPurposeCount++;
+			if (cursor.valueEquals(CODE_SIGNING)) {
+				codeSigning = true;
+			}
+		}
+		if (false == codeSigning) {
 			throw new TrustLinkerResultException(
 					TrustLinkerResultReason.CONSTRAINT_VIOLATION,
 					"missing codeSigning ExtendedKeyUsage");
 		}
-		if (1 != extendedKeyUsage.size()) {
+		if (1 != keyPurposeCount) {
 			throw new TrustLinkerResultException(
 					TrustLinkerResultReason.CONSTRAINT_VIOLATION,
 					"ExtendedKeyUsage not solely codeSigning");
@@ -19,20 +19,15 @@
 
 package be.fedict.trust.constraints;
 
-import java.io.ByteArrayInputStream;
 import java.security.cert.X509Certificate;
-import java.util.Enumeration;
+import java.util.Set;
 
-import org.bouncycastle.asn1.ASN1Encodable;
-import org.bouncycastle.asn1.ASN1InputStream;
 import org.bouncycastle.asn1.ASN1ObjectIdentifier;
-import org.bouncycastle.asn1.ASN1Sequence;
-import org.bouncycastle.asn1.DEROctetString;
-import org.bouncycastle.asn1.x509.Extension;
 import org.bouncycastle.asn1.x509.qualified.QCStatement;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import be.fedict.trust.CertificateProfile;
 import be.fedict.trust.linker.TrustLinkerResultException;
 import be.fedict.trust.linker.TrustLinkerResultReason;
 
@@ -81,50 +76,18 @@ public class QCStatementsCertificateConstraint implements CertificateConstraint
 
 	@Override
 	public void check(final X509Certificate certificate) throws TrustLinkerResultException, Exception {
-		final byte[] extensionValue = certificate.getExtensionValue(Extension.qCStatements.getId());
-		if (null == extensionValue) {
+		final CertificateProfile certificateProfile = CertificateProfile.getInstance(certificate);
+		final Set<ASN1ObjectIdentifier> statementIds = certificateProfile.getQcStatementIds();
+		if (null == statementIds) {
 			throw new TrustLinkerResultException(TrustLinkerResultReason.CONSTRAINT_VIOLATION,
 					"missing QCStatements extension");
 		}
+		final Set<ASN1ObjectIdentifier> qcTypes = certificateProfile.getQcTypes();
 
-		boolean qcCompliance = false;
-		boolean qcSSCD = false;
-		boolean eSign = false;
-		boolean eSeal = false;
-
-		try (final ASN1InputStream extensionStream = new ASN1InputStream(new ByteArrayInputStream(extensionValue))) {
-			final DEROctetString octetString = (DEROctetString) extensionStream.readObject();
-			try (final ASN1InputStream octetStream = new ASN1InputStream(octetString.getOctets())) {
-				final ASN1Sequence qcStatements = (ASN1Sequence) octetStream.readObject();
-				final Enumeration<?> qcStatementEnum = qcStatements.getObjects();
-				while (qcStatementEnum.hasMoreElements()) {
-					final QCStatement qcStatement = QCStatement.getInstance(qcStatementEnum.nextElement());
-					final ASN1ObjectIdentifier statementId = qcStatement.getStatementId();
-					LOGGER.debug("statement Id: {}", statementId.getId());
-					if (QCStatement.id_etsi_qcs_QcCompliance.equals(statementId)) {
-						qcCompliance = true;
-					}
-					if (QCStatement.id_etsi_qcs_QcSSCD.equals(statementId)) {
-						qcSSCD = true;
-					}
-					if (id_etsi_qcs_QcType.equals(statementId)) {
-						final ASN1Encodable statementInfo = qcStatement.getStatementInfo();
-						final ASN1Sequence qcTypeSequence = ASN1Sequence.getInstance(statementInfo);
-						final Enumeration<?> qcType = qcTypeSequence.getObjects();
-						while (qcType.hasMoreElements()) {
-							final ASN1ObjectIdentifier qcTypeOID = ASN1ObjectIdentifier.getInstance(qcType.nextElement());
-							LOGGER.debug("QcType: {}", qcTypeOID);
-							if (id_etsi_qcs_QcType_eSign.equals(qcTypeOID)) {
-								eSign = true;
-							}
-							if (id_etsi_qcs_QcType_eSeal.equals(qcTypeOID)) {
-								eSeal = true;
-							}
-						}
-					}
-				}
-			}
-		}
+		final boolean qcCompliance = statementIds.contains(QCStatement.id_etsi_qcs_QcCompliance);
+		final boolean qcSSCD = statementIds.contains(QCStatement.id_etsi_qcs_QcSSCD);
+		final boolean eSign = qcTypes.contains(id_etsi_qcs_QcType_eSign);
+		final boolean eSeal = qcTypes.contains(id_etsi_qcs_QcType_eSeal);
 
 		if (null != this.qcComplianceFilter) {
 			if (qcCompliance != this.qcComplianceFilter) {
@@ -0,0 +1,48 @@
+/*
+ * Java Trust Project.
+ * Copyright (C) 2021 e-Contract.be BV.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.trust.crl;
+
+import java.net.URI;
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+
+import be.fedict.trust.ServerNotAvailableException;
+
+/**
+ * Interface for CRL repository components that can look up CRLs without
+ * blocking the calling thread.
+ * 
+ * @see AsyncCrlRepositoryAdapter
+ */
+public interface AsyncCrlRepository {
+
+	/**
+	 * Finds the requested CRL.
+	 * 
+	 * @param crlUri            the CRL URI.
+	 * @param issuerCertificate the issuer certificate.
+	 * @param validationDate    the validation date.
+	 * @return the future X509 CRL, completing with <code>null</code> if not found,
+	 *         or exceptionally with a {@link ServerNotAvailableException} if the
+	 *         CRL server is not responding.
+	 */
+	CompletableFuture<X509CRL> findCrlAsync(URI crlUri, X509Certificate issuerCertificate, Date validationDate);
+}
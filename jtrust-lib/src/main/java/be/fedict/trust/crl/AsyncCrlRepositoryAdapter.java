@@ -0,0 +1,80 @@
+/*
+ * Java Trust Project.
+ * Copyright (C) 2021 e-Contract.be BV.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.trust.crl;
+
+import java.net.URI;
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import be.fedict.trust.ServerNotAvailableException;
+import be.fedict.trust.ValidationDeadline;
+
+/**
+ * Makes a blocking CRL repository available as {@link AsyncCrlRepository}, by
+ * running its lookups via an executor.
+ */
+public class AsyncCrlRepositoryAdapter implements CrlRepository, AsyncCrlRepository {
+
+	private final CrlRepository crlRepository;
+
+	private final Executor executor;
+
+	/**
+	 * Main constructor.
+	 * 
+	 * @param crlRepository the blocking CRL repository.
+	 * @param executor      the executor running the blocking lookups. If
+	 *                      <code>null</code>, lookups run on the calling thread.
+	 */
+	public AsyncCrlRepositoryAdapter(final CrlRepository crlRepository, final Executor executor) {
+		this.crlRepository = crlRepository;
+		this.executor = executor;
+	}
+
+	/**
+	 * Gives back the given CRL repository as {@link AsyncCrlRepository}, adapting
+	 * it only when it cannot do non-blocking lookups itself.
+	 * 
+	 * @param crlRepository the CRL repository.
+	 * @param executor      the executor running blocking lookups.
+	 * @return the asynchronous CRL repository.
+	 */
+	public static AsyncCrlRepository adapt(final CrlRepository crlRepository, final Executor executor) {
+		if (crlRepository instanceof AsyncCrlRepository) {
+			return (AsyncCrlRepository) crlRepository;
+		}
+		return new AsyncCrlRepositoryAdapter(crlRepository, executor);
+	}
+
+	@Override
+	public X509CRL findCrl(final URI crlUri, final X509Certificate issuerCertificate, final Date validationDate)
+			throws ServerNotAvailableException {
+		return this.crlRepository.findCrl(crlUri, issuerCertificate, validationDate);
+	}
+
+	@Override
+	public CompletableFuture<X509CRL> findCrlAsync(final URI crlUri, final X509Certificate issuerCertificate,
+			final Date validationDate) {
+		return ValidationDeadline.callAsync(() -> this.crlRepository.findCrl(crlUri, issuerCertificate, validationDate),
+				this.executor);
+	}
+}
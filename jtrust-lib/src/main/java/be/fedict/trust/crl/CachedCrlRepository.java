@@ -17,28 +17,68 @@
  * http://www.gnu.org/licenses/.
  */
 
+
 package be.fedict.trust.crl;
 
 import java.lang.ref.SoftReference;
 import java.net.URI;
+import java.security.cert.CRLException;
 import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
-import java.util.Collections;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Date;
-import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import be.fedict.trust.ServerNotAvailableException;
+import be.fedict.trust.ServerType;
+import be.fedict.trust.cache.SingleFlight;
+import be.fedict.trust.cache.StaleIfErrorListener;
 
 /**
  * A cached CRL repository implementation. This CRL repository will cache CRLs
  * in memory. This implementation is thread-safe, as far as the passed
  * {@link CrlRepository} is also thread-safe of course.
+ * <p>
+ * Optionally a background refresh can be started. Cached CRLs then get
+ * downloaded again shortly before they age out, so validations don't have to
+ * wait for a CRL download in steady state.
+ * </p>
+ * <p>
+ * By default the cached CRLs are only softly referenced, so the garbage
+ * collector decides when they get evicted. Alternatively the cache can be given
+ * a memory budget in bytes. In that case the CRLs are strongly referenced and,
+ * when the budget is exceeded, the least frequently requested CRLs are evicted.
+ * </p>
+ * <p>
+ * If the delegated CRL repository is a {@link ConditionalCrlRepository}, an
+ * aged cache entry is only downloaded again when the CRL actually changed.
+ * Otherwise the cache entry simply gets renewed.
+ * </p>
+ * <p>
+ * Optionally a stale-if-error grace period can be configured. When refreshing
+ * an aged cache entry fails because the CRL server is not available, the
+ * cached CRL keeps on being served during the grace period, and a
+ * {@link StaleIfErrorListener} gets notified. The refresh is retried after the
+ * refresh retry period, in the background if the background refresh is
+ * running.
+ * </p>
  * 
  * @author Frank Cornelis
  */
@@ -48,20 +88,73 @@ public class CachedCrlRepository implements CrlRepository {
 
 	public static final int DEFAULT_CACHE_AGING_HOURS = 3;
 
-	private final Map<URI, SoftReference<CacheEntry>> crlCache;
+	public static final int DEFAULT_REFRESH_AHEAD_MINUTES = 15;
+
+	public static final int DEFAULT_REFRESH_JITTER_MINUTES = 5;
+
+	public static final int DEFAULT_REFRESH_RETRY_MINUTES = 5;
+
+	private static final long MIN_REFRESH_DELAY = 1000;
+
+	private static final int DECAY_ACCESS_FACTOR = 10;
+
+	private static final AtomicInteger REFRESH_THREAD_COUNTER = new AtomicInteger();
+
+	private final ConcurrentMap<URI, CacheEntryRef> crlCache;
+
+	private final long maxCacheBytes;
+
+	private final ConcurrentMap<URI, AtomicInteger> accessFrequencies;
+
+	private final Object budgetLock;
+
+	private long cacheBytes;
+
+	private long evictionCount;
+
+	private long accessesSinceDecay;
+
+	private final SingleFlight<URI, X509CRL> singleFlight;
 
 	private final CrlRepository crlRepository;
 
+	private final ConcurrentMap<URI, ScheduledFuture<?>> refreshTasks;
+
 	private int cacheAgingHours;
 
+	private int refreshAheadMinutes;
+
+	private int refreshJitterMinutes;
+
+	private int refreshRetryMinutes;
+
+	private boolean indexCrls;
+
+	private int staleIfErrorMinutes;
+
+	private volatile StaleIfErrorListener staleIfErrorListener;
+
+	private final ConcurrentMap<URI, StaleState> staleStates;
+
+	private volatile ScheduledExecutorService refreshExecutor;
+
 	private static class CacheEntry {
 
 		private final LocalDateTime timestamp;
 		private final X509CRL crl;
+		private final X509Certificate issuerCertificate;
+		private final long size;
+		private final String eTag;
+		private final String lastModified;
 
-		public CacheEntry(final X509CRL crl) {
+		public CacheEntry(final X509CRL crl, final X509Certificate issuerCertificate, final long size,
+				final String eTag, final String lastModified) {
 			this.timestamp = LocalDateTime.now();
 			this.crl = crl;
+			this.issuerCertificate = issuerCertificate;
+			this.size = size;
+			this.eTag = eTag;
+			this.lastModified = lastModified;
 		}
 
 		public LocalDateTime getTimestamp() {
@@ -71,6 +164,68 @@ public class CachedCrlRepository implements CrlRepository {
 		public X509CRL getCRL() {
 			return this.crl;
 		}
+
+		public X509Certificate getIssuerCertificate() {
+			return this.issuerCertificate;
+		}
+
+		public long getSize() {
+			return this.size;
+		}
+
+		public String getETag() {
+			return this.eTag;
+		}
+
+		public String getLastModified() {
+			return this.lastModified;
+		}
+	}
+
+	/**
+	 * A CRL that is served past its refresh date because the CRL server failed,
+	 * together with the failure and the time of the next retry.
+	 */
+	private static class StaleState {
+
+		private final X509CRL crl;
+		private final Date staleSince;
+		private final ServerNotAvailableException cause;
+		private final long retryTime;
+
+		public StaleState(final X509CRL crl, final Date staleSince, final ServerNotAvailableException cause,
+				final long retryTime) {
+			this.crl = crl;
+			this.staleSince = staleSince;
+			this.cause = cause;
+			this.retryTime = retryTime;
+		}
+	}
+
+	/**
+	 * Refers to a cache entry, either softly or strongly.
+	 */
+	private static class CacheEntryRef {
+
+		private final SoftReference<CacheEntry> softReference;
+		private final CacheEntry cacheEntry;
+
+		public CacheEntryRef(final CacheEntry cacheEntry, final boolean soft) {
+			if (soft) {
+				this.softReference = new SoftReference<>(cacheEntry);
+				this.cacheEntry = null;
+			} else {
+				this.softReference = null;
+				this.cacheEntry = cacheEntry;
+			}
+		}
+
+		public CacheEntry get() {
+			if (null != this.softReference) {
+				return this.softReference.get();
+			}
+			return this.cacheEntry;
+		}
 	}
 
 	/**
@@ -79,55 +234,578 @@ public class CachedCrlRepository implements CrlRepository {
 	 * @param crlRepository the delegated CRL repository.
 	 */
 	public CachedCrlRepository(final CrlRepository crlRepository) {
+		this(crlRepository, 0);
+	}
+
+	/**
+	 * Constructor for a cache with a memory budget. The size of a cached CRL is
+	 * measured by its DER encoding, or by its memory size for an
+	 * {@link IndexedX509CRL}.
+	 * 
+	 * @param crlRepository the delegated CRL repository.
+	 * @param maxCacheBytes the maximum total size in bytes of the cached CRLs. Use
+	 *                      <code>0</code> to let the garbage collector decide
+	 *                      instead.
+	 */
+	public CachedCrlRepository(final CrlRepository crlRepository, final long maxCacheBytes) {
+		if (maxCacheBytes < 0) {
+			throw new IllegalArgumentException("negative cache budget");
+		}
 		this.crlRepository = crlRepository;
-		this.crlCache = Collections.synchronizedMap(new HashMap<URI, SoftReference<CacheEntry>>());
+		this.crlCache = new ConcurrentHashMap<>();
+		this.maxCacheBytes = maxCacheBytes;
+		this.accessFrequencies = new ConcurrentHashMap<>();
+		this.budgetLock = new Object();
+		this.singleFlight = new SingleFlight<>(ServerType.CRL);
+		this.refreshTasks = new ConcurrentHashMap<>();
+		this.staleStates = new ConcurrentHashMap<>();
 		this.cacheAgingHours = DEFAULT_CACHE_AGING_HOURS;
+		this.refreshAheadMinutes = DEFAULT_REFRESH_AHEAD_MINUTES;
+		this.refreshJitterMinutes = DEFAULT_REFRESH_JITTER_MINUTES;
+		this.refreshRetryMinutes = DEFAULT_REFRESH_RETRY_MINUTES;
 	}
 
 	@Override
 	public X509CRL findCrl(final URI crlUri, final X509Certificate issuerCertificate, final Date validationDate) throws ServerNotAvailableException {
-		final SoftReference<CacheEntry> cacheEntryRef = this.crlCache.get(crlUri);
-		if (null == cacheEntryRef) {
-			LOGGER.debug("no cache entry ref found: {}", crlUri);
-			return refreshCrl(crlUri, issuerCertificate, validationDate);
+		recordAccess(crlUri);
+		final X509CRL crl = getCachedCrl(crlUri, validationDate);
+		if (null != crl) {
+			LOGGER.debug("using cached CRL: {}", crlUri);
+			return crl;
 		}
-		final CacheEntry cacheEntry = cacheEntryRef.get();
+		final StaleState staleState = getStaleState(crlUri, validationDate);
+		if (null != staleState && System.currentTimeMillis() < staleState.retryTime) {
+			LOGGER.debug("serving stale CRL until retry: {}", crlUri);
+			notifyStaleServed(crlUri, staleState);
+			return staleState.crl;
+		}
+		/*
+		 * Only one thread per CRL URI goes to the delegated CRL repository. All other
+		 * threads wait for it and share its result.
+		 */
+		final X509CRL refreshedCrl = this.singleFlight.execute(crlUri, () -> {
+			// another thread might just have refreshed the cache entry
+			final X509CRL concurrentlyRefreshedCrl = getCachedCrl(crlUri, validationDate);
+			if (null != concurrentlyRefreshedCrl) {
+				LOGGER.debug("using concurrently refreshed CRL: {}", crlUri);
+				return concurrentlyRefreshedCrl;
+			}
+			try {
+				return refreshCrl(crlUri, issuerCertificate, validationDate);
+			} catch (final ServerNotAvailableException e) {
+				final CacheEntry cacheEntry = getCacheEntry(crlUri);
+				if (null == cacheEntry || false == isWithinStaleIfErrorGrace(cacheEntry, validationDate)) {
+					throw e;
+				}
+				LOGGER.warn("CRL server not available, serving stale CRL: {}", crlUri);
+				this.staleStates.put(crlUri, new StaleState(cacheEntry.getCRL(), getStaleDate(cacheEntry), e,
+						System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(this.refreshRetryMinutes)));
+				scheduleRetry(crlUri);
+				return cacheEntry.getCRL();
+			}
+		});
+		final StaleState servedStaleState = this.staleStates.get(crlUri);
+		if (null != servedStaleState && servedStaleState.crl == refreshedCrl) {
+			notifyStaleServed(crlUri, servedStaleState);
+		}
+		return refreshedCrl;
+	}
+
+	/**
+	 * Gives back the stale state of the given CRL, if the cached CRL can still be
+	 * served within the stale-if-error grace period.
+	 */
+	private StaleState getStaleState(final URI crlUri, final Date validationDate) {
+		final StaleState staleState = this.staleStates.get(crlUri);
+		if (null == staleState) {
+			return null;
+		}
+		final CacheEntry cacheEntry = getCacheEntry(crlUri);
+		if (null == cacheEntry || cacheEntry.getCRL() != staleState.crl
+				|| false == isWithinStaleIfErrorGrace(cacheEntry, validationDate)) {
+			return null;
+		}
+		return staleState;
+	}
+
+	private boolean isWithinStaleIfErrorGrace(final CacheEntry cacheEntry, final Date validationDate) {
+		if (this.staleIfErrorMinutes <= 0) {
+			return false;
+		}
+		final long staleDeadline = getStaleDate(cacheEntry).getTime()
+				+ TimeUnit.MINUTES.toMillis(this.staleIfErrorMinutes);
+		return validationDate.getTime() <= staleDeadline;
+	}
+
+	/**
+	 * Gives back the date from which on the cache entry needs a refresh.
+	 */
+	private Date getStaleDate(final CacheEntry cacheEntry) {
+		final Date cacheMaturityDate = getCacheMaturityDate(cacheEntry);
+		final Date nextUpdate = cacheEntry.getCRL().getNextUpdate();
+		if (null != nextUpdate && nextUpdate.before(cacheMaturityDate)) {
+			return nextUpdate;
+		}
+		return cacheMaturityDate;
+	}
+
+	private void notifyStaleServed(final URI crlUri, final StaleState staleState) {
+		final StaleIfErrorListener listener = this.staleIfErrorListener;
+		if (null == listener) {
+			return;
+		}
+		try {
+			listener.staleServed(ServerType.CRL, crlUri, staleState.staleSince, staleState.cause);
+		} catch (final RuntimeException e) {
+			LOGGER.warn("stale-if-error listener error: {}", e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Gives back the cached CRL if it can still be used at the given validation
+	 * date.
+	 * 
+	 * @return the cached CRL, or <code>null</code> if the CRL should be refreshed.
+	 */
+	private X509CRL getCachedCrl(final URI crlUri, final Date validationDate) {
+		final CacheEntry cacheEntry = getCacheEntry(crlUri);
 		if (null == cacheEntry) {
-			LOGGER.debug("cache entry garbage collected: {}", crlUri);
-			return refreshCrl(crlUri, issuerCertificate, validationDate);
+			return null;
 		}
 		final X509CRL crl = cacheEntry.getCRL();
 		if (validationDate.after(crl.getNextUpdate())) {
 			LOGGER.debug("CRL no longer valid: {}", crlUri);
 			LOGGER.debug("validation date: {}", validationDate);
 			LOGGER.debug("CRL next update: {}", crl.getNextUpdate());
-			return refreshCrl(crlUri, issuerCertificate, validationDate);
+			return null;
 		}
 		/*
 		 * The Belgian PKI the nextUpdate CRL extension indicates 7 days. The actual CRL
 		 * refresh rate is every 3 hours. So it's a bit dangerous to only base the CRL
 		 * cache refresh strategy on the nextUpdate field as indicated by the CRL.
 		 */
-		final LocalDateTime cacheMaturityDateTime = cacheEntry.getTimestamp().plusHours(this.cacheAgingHours);
-		if (validationDate.after(Date.from(cacheMaturityDateTime.atZone(ZoneId.systemDefault()).toInstant()))) {
+		if (validationDate.after(getCacheMaturityDate(cacheEntry))) {
 			LOGGER.debug("refreshing the CRL cache: {}", crlUri);
-			return refreshCrl(crlUri, issuerCertificate, validationDate);
+			return null;
 		}
-		LOGGER.debug("using cached CRL: {}", crlUri);
 		return crl;
 	}
 
+	private CacheEntry getCacheEntry(final URI crlUri) {
+		final CacheEntryRef cacheEntryRef = this.crlCache.get(crlUri);
+		if (null == cacheEntryRef) {
+			LOGGER.debug("no cache entry ref found: {}", crlUri);
+			return null;
+		}
+		final CacheEntry cacheEntry = cacheEntryRef.get();
+		if (null == cacheEntry) {
+			LOGGER.debug("cache entry garbage collected: {}", crlUri);
+			return null;
+		}
+		return cacheEntry;
+	}
+
+	private Date getCacheMaturityDate(final CacheEntry cacheEntry) {
+		final LocalDateTime cacheMaturityDateTime = cacheEntry.getTimestamp().plusHours(this.cacheAgingHours);
+		return Date.from(cacheMaturityDateTime.atZone(ZoneId.systemDefault()).toInstant());
+	}
+
 	private X509CRL refreshCrl(final URI crlUri, final X509Certificate issuerCertificate, final Date validationDate) throws ServerNotAvailableException {
-		final X509CRL crl = this.crlRepository.findCrl(crlUri, issuerCertificate, validationDate);
+		final CacheEntry previousCacheEntry = getCacheEntry(crlUri);
+		final ConditionalCrlResult result = fetchCrl(crlUri, issuerCertificate, validationDate, previousCacheEntry);
+		if (result.isNotModified()) {
+			LOGGER.debug("CRL not modified, extending cache entry: {}", crlUri);
+			final CacheEntry renewedCacheEntry = putCacheEntry(crlUri, previousCacheEntry.getCRL(),
+					previousCacheEntry.getIssuerCertificate(), result.getETag(), result.getLastModified());
+			if (null != renewedCacheEntry) {
+				scheduleRefresh(crlUri, renewedCacheEntry);
+			}
+			return previousCacheEntry.getCRL();
+		}
+		final X509CRL crl = index(result.getCrl());
 		if (null == crl) {
 			// we don't want to cache CRL retrieval errors
-			this.crlCache.remove(crlUri);
+			removeCacheEntry(crlUri);
 			return null;
 		}
-		this.crlCache.put(crlUri, new SoftReference<>(new CacheEntry(crl)));
+		final CacheEntry cacheEntry = putCacheEntry(crlUri, crl, issuerCertificate, result.getETag(),
+				result.getLastModified());
+		if (null != cacheEntry) {
+			scheduleRefresh(crlUri, cacheEntry);
+		}
 		return crl;
 	}
 
+	/**
+	 * Retrieves the CRL from the delegated CRL repository. If supported, only
+	 * retrieves the CRL when it changed since the given cache entry was
+	 * retrieved.
+	 */
+	private ConditionalCrlResult fetchCrl(final URI crlUri, final X509Certificate issuerCertificate,
+			final Date validationDate, final CacheEntry previousCacheEntry) throws ServerNotAvailableException {
+		if (false == this.crlRepository instanceof ConditionalCrlRepository) {
+			return ConditionalCrlResult.retrieved(this.crlRepository.findCrl(crlUri, issuerCertificate, validationDate),
+					null, null);
+		}
+		final ConditionalCrlRepository conditionalCrlRepository = (ConditionalCrlRepository) this.crlRepository;
+		final String eTag = null != previousCacheEntry ? previousCacheEntry.getETag() : null;
+		final String lastModified = null != previousCacheEntry ? previousCacheEntry.getLastModified() : null;
+		final ConditionalCrlResult result = conditionalCrlRepository.findCrl(crlUri, issuerCertificate,
+				validationDate, eTag, lastModified);
+		if (result.isNotModified() && null == eTag && null == lastModified) {
+			LOGGER.warn("not modified on an unconditional CRL request: {}", crlUri);
+			return ConditionalCrlResult.retrieved(null, null, null);
+		}
+		return result;
+	}
+
+	private X509CRL index(final X509CRL crl) {
+		if (false == this.indexCrls || null == crl) {
+			return crl;
+		}
+		try {
+			return IndexedX509CRL.getInstance(crl);
+		} catch (final CRLException e) {
+			LOGGER.error("could not index CRL: {}", e.getMessage(), e);
+			return crl;
+		}
+	}
+
+	private boolean isBudgeted() {
+		return this.maxCacheBytes > 0;
+	}
+
+	/**
+	 * Caches the given CRL.
+	 * 
+	 * @return the cache entry, or <code>null</code> if the CRL did not get
+	 *         admitted to the cache.
+	 */
+	private CacheEntry putCacheEntry(final URI crlUri, final X509CRL crl, final X509Certificate issuerCertificate,
+			final String eTag, final String lastModified) {
+		this.staleStates.remove(crlUri);
+		if (false == isBudgeted()) {
+			final CacheEntry cacheEntry = new CacheEntry(crl, issuerCertificate, 0, eTag, lastModified);
+			this.crlCache.put(crlUri, new CacheEntryRef(cacheEntry, true));
+			return cacheEntry;
+		}
+		final long size;
+		try {
+			size = getSize(crl);
+		} catch (final CRLException e) {
+			LOGGER.error("CRL encoding error: {}", e.getMessage(), e);
+			return null;
+		}
+		if (size > this.maxCacheBytes) {
+			LOGGER.debug("CRL larger than cache budget, not caching: {}", crlUri);
+			removeCacheEntry(crlUri);
+			return null;
+		}
+		final CacheEntry cacheEntry = new CacheEntry(crl, issuerCertificate, size, eTag, lastModified);
+		synchronized (this.budgetLock) {
+			final CacheEntry previousCacheEntry = getCacheEntry(crlUri);
+			long requiredBytes = this.cacheBytes + size;
+			if (null != previousCacheEntry) {
+				requiredBytes -= previousCacheEntry.getSize();
+			}
+			if (requiredBytes > this.maxCacheBytes && false == evict(crlUri, requiredBytes - this.maxCacheBytes)) {
+				LOGGER.debug("CRL requested less frequently than cached CRLs, not caching: {}", crlUri);
+				return null;
+			}
+			this.crlCache.put(crlUri, new CacheEntryRef(cacheEntry, false));
+			this.cacheBytes += size;
+			if (null != previousCacheEntry) {
+				this.cacheBytes -= previousCacheEntry.getSize();
+			}
+		}
+		return cacheEntry;
+	}
+
+	private static long getSize(final X509CRL crl) throws CRLException {
+		if (crl instanceof IndexedX509CRL) {
+			return ((IndexedX509CRL) crl).getMemorySize();
+		}
+		return crl.getEncoded().length;
+	}
+
+	/**
+	 * Evicts the least frequently requested CRLs until the given amount of bytes
+	 * got freed. A CRL only gets evicted when it was requested less frequently
+	 * than the CRL that is about to be cached. Nothing gets evicted if not enough
+	 * bytes can be freed that way.
+	 * 
+	 * @return <code>true</code> if enough bytes got freed.
+	 */
+	private boolean evict(final URI candidateCrlUri, final long bytesToFree) {
+		final int candidateFrequency = getAccessFrequency(candidateCrlUri);
+		final List<Map.Entry<URI, CacheEntry>> victims = new ArrayList<>();
+		for (final Map.Entry<URI, CacheEntryRef> entry : this.crlCache.entrySet()) {
+			final URI crlUri = entry.getKey();
+			final CacheEntry cacheEntry = entry.getValue().get();
+			if (crlUri.equals(candidateCrlUri) || null == cacheEntry) {
+				continue;
+			}
+			if (getAccessFrequency(crlUri) < candidateFrequency) {
+				victims.add(new AbstractMap.SimpleImmutableEntry<>(crlUri, cacheEntry));
+			}
+		}
+		victims.sort(Comparator.comparingInt(victim -> getAccessFrequency(victim.getKey())));
+		long freeableBytes = 0;
+		int victimCount = 0;
+		for (final Map.Entry<URI, CacheEntry> victim : victims) {
+			if (freeableBytes >= bytesToFree) {
+				break;
+			}
+			freeableBytes += victim.getValue().getSize();
+			victimCount++;
+		}
+		if (freeableBytes < bytesToFree) {
+			return false;
+		}
+		for (final Map.Entry<URI, CacheEntry> victim : victims.subList(0, victimCount)) {
+			LOGGER.debug("evicting CRL: {}", victim.getKey());
+			this.crlCache.remove(victim.getKey());
+			this.staleStates.remove(victim.getKey());
+			this.cacheBytes -= victim.getValue().getSize();
+			this.evictionCount++;
+			cancelRefresh(victim.getKey());
+		}
+		return true;
+	}
+
+	private void removeCacheEntry(final URI crlUri) {
+		this.staleStates.remove(crlUri);
+		if (false == isBudgeted()) {
+			this.crlCache.remove(crlUri);
+			return;
+		}
+		synchronized (this.budgetLock) {
+			final CacheEntryRef cacheEntryRef = this.crlCache.remove(crlUri);
+			if (null != cacheEntryRef) {
+				this.cacheBytes -= cacheEntryRef.get().getSize();
+			}
+		}
+	}
+
+	private int getAccessFrequency(final URI crlUri) {
+		final AtomicInteger accessFrequency = this.accessFrequencies.get(crlUri);
+		if (null == accessFrequency) {
+			return 0;
+		}
+		return accessFrequency.get();
+	}
+
+	/**
+	 * Keeps track of how frequently a CRL gets requested. Periodically all
+	 * frequencies get halved, so CRLs that used to be popular can age out.
+	 */
+	private void recordAccess(final URI crlUri) {
+		if (false == isBudgeted()) {
+			return;
+		}
+		this.accessFrequencies.computeIfAbsent(crlUri, key -> new AtomicInteger()).incrementAndGet();
+		synchronized (this.budgetLock) {
+			this.accessesSinceDecay++;
+			if (this.accessesSinceDecay < DECAY_ACCESS_FACTOR * Math.max(this.accessFrequencies.size(), 1)) {
+				return;
+			}
+			this.accessesSinceDecay = 0;
+			final Iterator<Map.Entry<URI, AtomicInteger>> iterator = this.accessFrequencies.entrySet().iterator();
+			while (iterator.hasNext()) {
+				final Map.Entry<URI, AtomicInteger> entry = iterator.next();
+				final int frequency = entry.getValue().updateAndGet(value -> value / 2);
+				if (0 == frequency && false == this.crlCache.containsKey(entry.getKey())) {
+					iterator.remove();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gives back the memory budget of this cache in bytes.
+	 * 
+	 * @return the budget, or <code>0</code> if the garbage collector decides on
+	 *         eviction.
+	 */
+	public long getMaxCacheBytes() {
+		return this.maxCacheBytes;
+	}
+
+	/**
+	 * Gives back the total size in bytes of the cached CRLs. Only tracked for a
+	 * cache with a memory budget.
+	 */
+	public long getCacheBytes() {
+		synchronized (this.budgetLock) {
+			return this.cacheBytes;
+		}
+	}
+
+	/**
+	 * Gives back the number of cached CRLs.
+	 */
+	public int getCacheEntryCount() {
+		int count = 0;
+		for (final CacheEntryRef cacheEntryRef : this.crlCache.values()) {
+			if (null != cacheEntryRef.get()) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Gives back the number of CRLs evicted to stay within the memory budget.
+	 */
+	public long getEvictionCount() {
+		synchronized (this.budgetLock) {
+			return this.evictionCount;
+		}
+	}
+
+	/**
+	 * Starts refreshing the cached CRLs in the background, shortly before they
+	 * age out. A refreshed CRL only replaces the cached one after it passed the
+	 * CRL integrity check. Until then the old CRL remains in use.
+	 * 
+	 * @param maxWorkers the maximum number of concurrent CRL downloads.
+	 */
+	public void startBackgroundRefresh(final int maxWorkers) {
+		if (maxWorkers < 1) {
+			throw new IllegalArgumentException("at least one worker required");
+		}
+		final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(maxWorkers, runnable -> {
+			final Thread thread = new Thread(runnable,
+					"jtrust-crl-refresh-" + REFRESH_THREAD_COUNTER.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		executor.setRemoveOnCancelPolicy(true);
+		synchronized (this) {
+			stopBackgroundRefresh();
+			this.refreshExecutor = executor;
+		}
+		for (final URI crlUri : this.crlCache.keySet()) {
+			final CacheEntry cacheEntry = getCacheEntry(crlUri);
+			if (null != cacheEntry) {
+				scheduleRefresh(crlUri, cacheEntry);
+			}
+		}
+	}
+
+	/**
+	 * Stops the background refreshing of the cached CRLs.
+	 */
+	public synchronized void stopBackgroundRefresh() {
+		final ScheduledExecutorService executor = this.refreshExecutor;
+		if (null == executor) {
+			return;
+		}
+		this.refreshExecutor = null;
+		executor.shutdownNow();
+		this.refreshTasks.clear();
+	}
+
+	/**
+	 * Returns whether the cached CRLs are being refreshed in the background.
+	 */
+	public boolean isBackgroundRefreshing() {
+		return null != this.refreshExecutor;
+	}
+
+	private void scheduleRefresh(final URI crlUri, final CacheEntry cacheEntry) {
+		final long dueTime = Math.min(getCacheMaturityDate(cacheEntry).getTime(),
+				cacheEntry.getCRL().getNextUpdate().getTime());
+		final long refreshTime = dueTime - TimeUnit.MINUTES.toMillis(this.refreshAheadMinutes)
+				- jitter(this.refreshJitterMinutes);
+		scheduleRefresh(crlUri, refreshTime - System.currentTimeMillis());
+	}
+
+	private void scheduleRefresh(final URI crlUri, final long delay) {
+		final ScheduledExecutorService executor = this.refreshExecutor;
+		if (null == executor) {
+			return;
+		}
+		final long effectiveDelay = Math.max(delay, MIN_REFRESH_DELAY);
+		LOGGER.debug("scheduling CRL refresh in {} ms: {}", effectiveDelay, crlUri);
+		final ScheduledFuture<?> refreshTask;
+		try {
+			refreshTask = executor.schedule(() -> backgroundRefresh(crlUri), effectiveDelay, TimeUnit.MILLISECONDS);
+		} catch (final RuntimeException e) {
+			LOGGER.debug("could not schedule CRL refresh: {}", e.getMessage());
+			return;
+		}
+		final ScheduledFuture<?> previousRefreshTask = this.refreshTasks.put(crlUri, refreshTask);
+		if (null != previousRefreshTask) {
+			previousRefreshTask.cancel(false);
+		}
+	}
+
+	private void cancelRefresh(final URI crlUri) {
+		final ScheduledFuture<?> refreshTask = this.refreshTasks.remove(crlUri);
+		if (null != refreshTask) {
+			refreshTask.cancel(false);
+		}
+	}
+
+	private void backgroundRefresh(final URI crlUri) {
+		final CacheEntry cacheEntry = getCacheEntry(crlUri);
+		if (null == cacheEntry) {
+			LOGGER.debug("no longer refreshing CRL: {}", crlUri);
+			this.refreshTasks.remove(crlUri);
+			return;
+		}
+		LOGGER.debug("background CRL refresh: {}", crlUri);
+		final X509Certificate issuerCertificate = cacheEntry.getIssuerCertificate();
+		final Date validationDate = new Date();
+		try {
+			this.singleFlight.execute(crlUri, () -> {
+				final ConditionalCrlResult result = fetchCrl(crlUri, issuerCertificate, validationDate, cacheEntry);
+				if (result.isNotModified()) {
+					LOGGER.debug("CRL not modified, extending cache entry: {}", crlUri);
+					final CacheEntry renewedCacheEntry = putCacheEntry(crlUri, cacheEntry.getCRL(), issuerCertificate,
+							result.getETag(), result.getLastModified());
+					if (null != renewedCacheEntry) {
+						scheduleRefresh(crlUri, renewedCacheEntry);
+					}
+					return cacheEntry.getCRL();
+				}
+				final X509CRL crl = index(result.getCrl());
+				if (null == crl) {
+					LOGGER.warn("background CRL refresh failed, keeping cached CRL: {}", crlUri);
+					scheduleRetry(crlUri);
+					return cacheEntry.getCRL();
+				}
+				if (false == CrlTrustLinker.checkCrlIntegrity(crl, issuerCertificate, validationDate)) {
+					LOGGER.warn("refreshed CRL integrity check failed, keeping cached CRL: {}", crlUri);
+					scheduleRetry(crlUri);
+					return cacheEntry.getCRL();
+				}
+				final CacheEntry refreshedCacheEntry = putCacheEntry(crlUri, crl, issuerCertificate, result.getETag(),
+						result.getLastModified());
+				if (null != refreshedCacheEntry) {
+					scheduleRefresh(crlUri, refreshedCacheEntry);
+				}
+				return crl;
+			});
+		} catch (final ServerNotAvailableException | RuntimeException e) {
+			LOGGER.warn("background CRL refresh error for {}: {}", crlUri, e.getMessage());
+			scheduleRetry(crlUri);
+		}
+	}
+
+	private void scheduleRetry(final URI crlUri) {
+		scheduleRefresh(crlUri,
+				TimeUnit.MINUTES.toMillis(this.refreshRetryMinutes) + jitter(this.refreshJitterMinutes));
+	}
+
+	private static long jitter(final int jitterMinutes) {
+		if (jitterMinutes <= 0) {
+			return 0;
+		}
+		return ThreadLocalRandom.current().nextLong(TimeUnit.MINUTES.toMillis(jitterMinutes));
+	}
+
 	/**
 	 * Gives back the CRL cache aging period in hours.
 	 */
@@ -143,4 +821,104 @@ public class CachedCrlRepository implements CrlRepository {
 	public void setCacheAgingHours(final int cacheAgingHours) {
 		this.cacheAgingHours = cacheAgingHours;
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Gives back how many minutes before aging out a cached CRL gets refreshed in
+	 * the background.
+	 */
+	public int getRefreshAheadMinutes() {
+		return this.refreshAheadMinutes;
+	}
+
+	/**
+	 * Sets how many minutes before aging out a cached CRL gets refreshed in the
+	 * background.
+	 * 
+	 * @param refreshAheadMinutes the refresh ahead period in minutes.
+	 */
+	public void setRefreshAheadMinutes(final int refreshAheadMinutes) {
+		this.refreshAheadMinutes = refreshAheadMinutes;
+	}
+
+	/**
+	 * Gives back the maximum random jitter in minutes added to the background
+	 * refresh schedule.
+	 */
+	public int getRefreshJitterMinutes() {
+		return this.refreshJitterMinutes;
+	}
+
+	/**
+	 * Sets the maximum random jitter in minutes added to the background refresh
+	 * schedule. This avoids that all CRLs get downloaded at the same time.
+	 * 
+	 * @param refreshJitterMinutes the maximum jitter in minutes.
+	 */
+	public void setRefreshJitterMinutes(final int refreshJitterMinutes) {
+		this.refreshJitterMinutes = refreshJitterMinutes;
+	}
+
+	/**
+	 * Gives back the period in minutes after which a failed background refresh
+	 * gets retried.
+	 */
+	public int getRefreshRetryMinutes() {
+		return this.refreshRetryMinutes;
+	}
+
+	/**
+	 * Sets the period in minutes after which a failed background refresh gets
+	 * retried.
+	 * 
+	 * @param refreshRetryMinutes the retry period in minutes.
+	 */
+	public void setRefreshRetryMinutes(final int refreshRetryMinutes) {
+		this.refreshRetryMinutes = refreshRetryMinutes;
+	}
+
+	/**
+	 * Returns whether the cached CRLs are converted to {@link IndexedX509CRL}.
+	 */
+	public boolean isIndexCrls() {
+		return this.indexCrls;
+	}
+
+	/**
+	 * Sets whether the cached CRLs should be converted to {@link IndexedX509CRL}.
+	 * This drastically lowers the memory consumption of large CRLs, and speeds up
+	 * the serial number lookups by {@link CrlTrustLinker}.
+	 * 
+	 * @param indexCrls <code>true</code> to index the CRLs.
+	 */
+	public void setIndexCrls(final boolean indexCrls) {
+		this.indexCrls = indexCrls;
+	}
+
+	/**
+	 * Gives back the stale-if-error grace period in minutes.
+	 */
+	public int getStaleIfErrorMinutes() {
+		return this.staleIfErrorMinutes;
+	}
+
+	/**
+	 * Sets the stale-if-error grace period in minutes. Within this period after a
+	 * cached CRL needed a refresh, the cached CRL is still served when the CRL
+	 * server is not available. Defaults to <code>0</code>, disabling the grace
+	 * period. {@link CrlTrustLinker} still rejects CRLs past their nextUpdate.
+	 * 
+	 * @param staleIfErrorMinutes the grace period in minutes.
+	 */
+	public void setStaleIfErrorMinutes(final int staleIfErrorMinutes) {
+		this.staleIfErrorMinutes = staleIfErrorMinutes;
+	}
+
+	/**
+	 * Sets the listener that gets notified when a stale CRL is served.
+	 * 
+	 * @param staleIfErrorListener the listener, can be <code>null</code>.
+	 */
+	public void setStaleIfErrorListener(final StaleIfErrorListener staleIfErrorListener) {
+		this.staleIfErrorListener = staleIfErrorListener;
+	}
+}
@@ -0,0 +1,49 @@
+/*
+ * Java Trust Project.
+ * Copyright (C) 2021 e-Contract.be BV.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.trust.crl;
+
+import java.net.URI;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+
+import be.fedict.trust.ServerNotAvailableException;
+
+/**
+ * CRL repository that supports conditional retrieval of CRLs, based on the
+ * validators (ETag, Last-Modified) of a previously retrieved CRL.
+ */
+public interface ConditionalCrlRepository extends CrlRepository {
+
+	/**
+	 * Finds the requested CRL, unless it did not change since it was retrieved
+	 * with the given validators.
+	 * 
+	 * @param crlUri            the CRL URI.
+	 * @param issuerCertificate the issuer certificate.
+	 * @param validationDate    the validation date.
+	 * @param eTag              the optional ETag of the previously retrieved CRL.
+	 * @param lastModified      the optional Last-Modified value of the previously
+	 *                          retrieved CRL.
+	 * @throws ServerNotAvailableException {@link ServerNotAvailableException} if
+	 *                                     the CRL server is not responding.
+	 * @return the result, never <code>null</code>.
+	 */
+	ConditionalCrlResult findCrl(URI crlUri, X509Certificate issuerCertificate, Date validationDate, String eTag,
+			String lastModified) throws ServerNotAvailableException;
+}
@@ -0,0 +1,99 @@
+/*
+ * Java Trust Project.
+ * Copyright (C) 2021 e-Contract.be BV.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.trust.crl;
+
+import java.security.cert.X509CRL;
+
+/**
+ * Result of a conditional CRL retrieval.
+ * 
+ * @see ConditionalCrlRepository
+ */
+public class ConditionalCrlResult {
+
+	private final X509CRL crl;
+
+	private final boolean notModified;
+
+	private final String eTag;
+
+	private final String lastModified;
+
+	private ConditionalCrlResult(final X509CRL crl, final boolean notModified, final String eTag,
+			final String lastModified) {
+		this.crl = crl;
+		this.notModified = notModified;
+		this.eTag = eTag;
+		this.lastModified = lastModified;
+	}
+
+	/**
+	 * Creates the result for a retrieved CRL.
+	 * 
+	 * @param crl          the CRL, or <code>null</code> if not found.
+	 * @param eTag         the optional ETag of the CRL.
+	 * @param lastModified the optional Last-Modified value of the CRL.
+	 * @return the result.
+	 */
+	public static ConditionalCrlResult retrieved(final X509CRL crl, final String eTag, final String lastModified) {
+		return new ConditionalCrlResult(crl, false, eTag, lastModified);
+	}
+
+	/**
+	 * Creates the result for a CRL that did not change.
+	 * 
+	 * @param eTag         the optional, possibly updated, ETag of the CRL.
+	 * @param lastModified the optional, possibly updated, Last-Modified value of
+	 *                     the CRL.
+	 * @return the result.
+	 */
+	public static ConditionalCrlResult notModified(final String eTag, final String lastModified) {
+		return new ConditionalCrlResult(null, true, eTag, lastModified);
+	}
+
+	/**
+	 * Gives back the retrieved CRL.
+	 * 
+	 * @return the CRL, or <code>null</code> if not found or not modified.
+	 */
+	public X509CRL getCrl() {
+		return this.crl;
+	}
+
+	/**
+	 * Returns whether the CRL did not change since the previous retrieval.
+	 */
+	public boolean isNotModified() {
+		return this.notModified;
+	}
+
+	/**
+	 * Gives back the ETag of the CRL.
+	 */
+	public String getETag() {
+		return this.eTag;
+	}
+
+	/**
+	 * Gives back the Last-Modified value of the CRL.
+	 */
+	public String getLastModified() {
+		return this.lastModified;
+	}
+}
@@ -0,0 +1,313 @@
+/*
+ * Java Trust Project.
+ * Copyright (C) 2021 e-Contract.be BV.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.trust.crl;
+
+import java.math.BigInteger;
+import java.security.cert.CRLReason;
+import java.security.cert.X509CRL;
+import java.security.cert.X509CRLEntry;
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * Compact index of the revoked certificates of a CRL. The serial numbers are
+ * packed, in ascending order, into a single byte array with an offset table.
+ * Revocation dates are kept as longs and reason codes as bytes. Looking up a
+ * serial number is a binary search over primitive arrays.
+ * <p>
+ * Instances are immutable, and thus thread-safe.
+ * </p>
+ */
+public final class CrlIndex {
+
+	/**
+	 * Reason code used for entries without CRL reason code extension.
+	 */
+	public static final int NO_REASON_CODE = -1;
+
+	private final byte[] serials;
+
+	private final int[] offsets;
+
+	private final long[] revocationDates;
+
+	private final byte[] reasonCodes;
+
+	private CrlIndex(final byte[] serials, final int[] offsets, final long[] revocationDates,
+			final byte[] reasonCodes) {
+		this.serials = serials;
+		this.offsets = offsets;
+		this.revocationDates = revocationDates;
+		this.reasonCodes = reasonCodes;
+	}
+
+	/**
+	 * Builds the index for the given CRL.
+	 * 
+	 * @param x509crl the CRL.
+	 * @return the index.
+	 */
+	public static CrlIndex build(final X509CRL x509crl) {
+		final Set<? extends X509CRLEntry> revokedCertificates = x509crl.getRevokedCertificates();
+		if (null == revokedCertificates) {
+			return new Builder(0).build();
+		}
+		final Builder builder = new Builder(revokedCertificates.size());
+		for (final X509CRLEntry revokedCertificate : revokedCertificates) {
+			final CRLReason revocationReason = revokedCertificate.getRevocationReason();
+			builder.add(revokedCertificate.getSerialNumber().toByteArray(),
+					revokedCertificate.getRevocationDate().getTime(),
+					null != revocationReason ? revocationReason.ordinal() : NO_REASON_CODE);
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Gives back the number of revoked certificates.
+	 */
+	public int size() {
+		return this.revocationDates.length;
+	}
+
+	/**
+	 * Gives back an estimate of the memory consumption of this index in bytes.
+	 */
+	public long getMemorySize() {
+		return this.serials.length + this.offsets.length * 4L + this.revocationDates.length * 8L
+				+ this.reasonCodes.length;
+	}
+
+	/**
+	 * Looks up the given serial number.
+	 * 
+	 * @param serialNumber the serial number.
+	 * @return the position of the serial number within this index, or
+	 *         <code>-1</code> if not revoked.
+	 */
+	public int indexOf(final BigInteger serialNumber) {
+		return indexOf(serialNumber.toByteArray());
+	}
+
+	/**
+	 * Looks up the given serial number.
+	 * 
+	 * @param serialNumber the minimal two's-complement encoding of the serial
+	 *                     number, as given by {@link BigInteger#toByteArray()}.
+	 * @return the position of the serial number within this index, or
+	 *         <code>-1</code> if not revoked.
+	 */
+	public int indexOf(final byte[] serialNumber) {
+		int low = 0;
+		int high = size() - 1;
+		while (low <= high) {
+			final int middle = (low + high) >>> 1;
+			final int offset = this.offsets[middle];
+			final int result = compare(this.serials, offset, this.offsets[middle + 1] - offset, serialNumber, 0,
+					serialNumber.length);
+			if (result < 0) {
+				low = middle + 1;
+			} else if (result > 0) {
+				high = middle - 1;
+			} else {
+				return middle;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Gives back the serial number at the given position.
+	 */
+	public BigInteger getSerialNumber(final int index) {
+		return new BigInteger(
+				Arrays.copyOfRange(this.serials, this.offsets[index], this.offsets[index + 1]));
+	}
+
+	/**
+	 * Gives back the revocation date, in milliseconds since the epoch, at the
+	 * given position.
+	 */
+	public long getRevocationDate(final int index) {
+		return this.revocationDates[index];
+	}
+
+	/**
+	 * Gives back the CRL reason code at the given position.
+	 * 
+	 * @return the reason code, or {@link #NO_REASON_CODE}.
+	 */
+	public int getReasonCode(final int index) {
+		return this.reasonCodes[index];
+	}
+
+	/**
+	 * Compares two minimal two's-complement encoded integers.
+	 */
+	static int compare(final byte[] a, final int aOffset, final int aLength, final byte[] b, final int bOffset,
+			final int bLength) {
+		final boolean aNegative = aLength > 0 && a[aOffset] < 0;
+		final boolean bNegative = bLength > 0 && b[bOffset] < 0;
+		if (aNegative != bNegative) {
+			return aNegative ? -1 : 1;
+		}
+		if (aLength != bLength) {
+			// more bytes means a larger magnitude
+			final int result = aLength < bLength ? -1 : 1;
+			return aNegative ? -result : result;
+		}
+		// equal length two's-complement values of the same sign compare unsigned
+		for (int idx = 0; idx < aLength; idx++) {
+			final int result = (a[aOffset + idx] & 0xff) - (b[bOffset + idx] & 0xff);
+			if (0 != result) {
+				return result;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Builder for a CRL index. Entries can be added in any order.
+	 */
+	public static final class Builder {
+
+		private byte[] serials;
+
+		private int serialsLength;
+
+		private int[] offsets;
+
+		private long[] revocationDates;
+
+		private byte[] reasonCodes;
+
+		private int count;
+
+		/**
+		 * Main constructor.
+		 * 
+		 * @param expectedSize the expected number of revoked certificates.
+		 */
+		public Builder(final int expectedSize) {
+			final int capacity = Math.max(expectedSize, 16);
+			this.serials = new byte[capacity * 16];
+			this.offsets = new int[capacity];
+			this.revocationDates = new long[capacity];
+			this.reasonCodes = new byte[capacity];
+		}
+
+		/**
+		 * Adds a revoked certificate.
+		 * 
+		 * @param serialNumber   the minimal two's-complement encoding of the serial
+		 *                       number.
+		 * @param revocationDate the revocation date in milliseconds since the epoch.
+		 * @param reasonCode     the CRL reason code, or {@link #NO_REASON_CODE}.
+		 * @return this builder.
+		 */
+		public Builder add(final byte[] serialNumber, final long revocationDate, final int reasonCode) {
+			return add(serialNumber, 0, serialNumber.length, revocationDate, reasonCode);
+		}
+
+		/**
+		 * Adds a revoked certificate.
+		 * 
+		 * @param buffer         the buffer holding the minimal two's-complement
+		 *                       encoding of the serial number.
+		 * @param offset         the offset of the serial number within the buffer.
+		 * @param length         the length of the serial number.
+		 * @param revocationDate the revocation date in milliseconds since the epoch.
+		 * @param reasonCode     the CRL reason code, or {@link #NO_REASON_CODE}.
+		 * @return this builder.
+		 */
+		public Builder add(final byte[] buffer, final int offset, final int length, final long revocationDate,
+				final int reasonCode) {
+			if (this.count == this.offsets.length) {
+				final int capacity = this.count * 2;
+				this.offsets = Arrays.copyOf(this.offsets, capacity);
+				this.revocationDates = Arrays.copyOf(this.revocationDates, capacity);
+				this.reasonCodes = Arrays.copyOf(this.reasonCodes, capacity);
+			}
+			if (this.serialsLength + length > this.serials.length) {
+				this.serials = Arrays.copyOf(this.serials, Math.max(this.serials.length * 2, this.serialsLength + length));
+			}
+			System.arraycopy(buffer, offset, this.serials, this.serialsLength, length);
+			this.offsets[this.count] = this.serialsLength;
+			this.serialsLength += length;
+			this.revocationDates[this.count] = revocationDate;
+			this.reasonCodes[this.count] = (byte) reasonCode;
+			this.count++;
+			return this;
+		}
+
+		/**
+		 * Builds the index.
+		 * 
+		 * @return the index.
+		 */
+		public CrlIndex build() {
+			final int[] lengths = new int[this.count];
+			final Integer[] order = new Integer[this.count];
+			for (int idx = 0; idx < this.count; idx++) {
+				final int end = idx + 1 < this.count ? this.offsets[idx + 1] : this.serialsLength;
+				lengths[idx] = end - this.offsets[idx];
+				order[idx] = idx;
+			}
+			if (false == isSorted(lengths)) {
+				Arrays.sort(order, (a, b) -> compare(this.serials, this.offsets[a], lengths[a], this.serials,
+						this.offsets[b], lengths[b]));
+			}
+			final byte[] sortedSerials = new byte[this.serialsLength];
+			final int[] sortedOffsets = new int[this.count + 1];
+			final long[] sortedRevocationDates = new long[this.count];
+			final byte[] sortedReasonCodes = new byte[this.count];
+			int serialsOffset = 0;
+			int sortedCount = 0;
+			for (int idx = 0; idx < this.count; idx++) {
+				final int entry = order[idx];
+				if (sortedCount > 0) {
+					final int previousOffset = sortedOffsets[sortedCount - 1];
+					if (0 == compare(sortedSerials, previousOffset, serialsOffset - previousOffset, this.serials,
+							this.offsets[entry], lengths[entry])) {
+						// duplicate entry, keep the first one
+						continue;
+					}
+				}
+				System.arraycopy(this.serials, this.offsets[entry], sortedSerials, serialsOffset, lengths[entry]);
+				sortedOffsets[sortedCount] = serialsOffset;
+				serialsOffset += lengths[entry];
+				sortedRevocationDates[sortedCount] = this.revocationDates[entry];
+				sortedReasonCodes[sortedCount] = this.reasonCodes[entry];
+				sortedCount++;
+			}
+			sortedOffsets[sortedCount] = serialsOffset;
+			return new CrlIndex(Arrays.copyOf(sortedSerials, serialsOffset), Arrays.copyOf(sortedOffsets, sortedCount + 1),
+					Arrays.copyOf(sortedRevocationDates, sortedCount), Arrays.copyOf(sortedReasonCodes, sortedCount));
+		}
+
+		private boolean isSorted(final int[] lengths) {
+			for (int idx = 1; idx < this.count; idx++) {
+				if (compare(this.serials, this.offsets[idx - 1], lengths[idx - 1], this.serials, this.offsets[idx],
+						lengths[idx]) > 0) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+}
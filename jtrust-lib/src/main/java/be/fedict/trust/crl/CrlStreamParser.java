@@ -0,0 +1,692 @@
+/*
+ * Java Trust Project.
+ * Copyright (C) 2021 e-Contract.be BV.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.trust.crl;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.PublicKey;
+import java.security.cert.CRLException;
+import java.text.ParseException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.ASN1Primitive;
+import org.bouncycastle.asn1.ASN1TaggedObject;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.asn1.x509.Time;
+import org.bouncycastle.operator.ContentVerifier;
+import org.bouncycastle.operator.DefaultAlgorithmNameFinder;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import be.fedict.trust.CryptoContext;
+
+/**
+ * Streaming X509 CRL parser. Reads a DER encoded CRL straight into an
+ * {@link IndexedX509CRL}, without ever building an object per revoked
+ * certificate.
+ * <p>
+ * When the issuer public key is given, the TBSCertList is fed into the
+ * signature verification while it is being read, so the signature is checked
+ * right after the last byte arrived. Optionally the DER encoding is not
+ * retained at all, bounding the memory consumption to the compact index.
+ * </p>
+ */
+public class CrlStreamParser {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(CrlStreamParser.class);
+
+	/**
+	 * Maximum size of a single element that gets buffered, like the issuer name,
+	 * a CRL entry, or the CRL extensions.
+	 */
+	private static final int MAX_ELEMENT_SIZE = 1024 * 64;
+
+	private static final int SEQUENCE = 0x30;
+	private static final int INTEGER = 0x02;
+	private static final int BIT_STRING = 0x03;
+	private static final int OCTET_STRING = 0x04;
+	private static final int OBJECT_IDENTIFIER = 0x06;
+	private static final int ENUMERATED = 0x0a;
+	private static final int BOOLEAN = 0x01;
+	private static final int UTC_TIME = 0x17;
+	private static final int GENERALIZED_TIME = 0x18;
+	private static final int CRL_EXTENSIONS = 0xa0;
+
+	private static final byte[] REASON_CODE_OID = { 0x55, 0x1d, 0x15 };
+
+	private final PublicKey issuerPublicKey;
+
+	private boolean retainEncoding;
+
+	/**
+	 * Main constructor.
+	 * 
+	 * @param issuerPublicKey the optional public key of the CRL issuer. If given,
+	 *                        the CRL signature is verified while parsing.
+	 */
+	public CrlStreamParser(final PublicKey issuerPublicKey) {
+		this.issuerPublicKey = issuerPublicKey;
+		this.retainEncoding = true;
+	}
+
+	/**
+	 * Sets whether the DER encoding of the CRL should be retained. Without the
+	 * encoding, the resulting CRL cannot be verified again, nor be added to the
+	 * {@link be.fedict.trust.revocation.RevocationData}. Default is
+	 * <code>true</code>.
+	 * 
+	 * @param retainEncoding
+	 */
+	public void setRetainEncoding(final boolean retainEncoding) {
+		this.retainEncoding = retainEncoding;
+	}
+
+	/**
+	 * Parses the CRL from the given input stream.
+	 * 
+	 * @param inputStream the input stream.
+	 * @return the indexed CRL.
+	 * @throws CRLException in case of an invalid CRL, or an invalid CRL signature.
+	 * @throws IOException  in case of an IO error.
+	 */
+	public IndexedX509CRL parse(final InputStream inputStream) throws CRLException, IOException {
+		final DerReader reader = new DerReader(new BufferedInputStream(inputStream));
+
+		// CertificateList
+		reader.expectTag(SEQUENCE);
+		final int certificateListLength = reader.readLength();
+		if (this.retainEncoding) {
+			reader.startEncoding(certificateListLength);
+		}
+		final long tbsOffset = reader.getPosition();
+
+		// TBSCertList, buffered until we know the signature algorithm
+		final ByteArrayOutputStream pendingTbs = new ByteArrayOutputStream();
+		reader.setTbsSink(pendingTbs);
+		reader.expectTag(SEQUENCE);
+		final int tbsContentLength = reader.readLength();
+		final long tbsContentOffset = reader.getPosition();
+
+		int version = 1;
+		if (INTEGER == reader.peekTag()) {
+			reader.readElement();
+			version = reader.getElementContent()[0] + 1;
+		}
+		reader.readElement(SEQUENCE);
+		final AlgorithmIdentifier signatureAlgorithm = AlgorithmIdentifier
+				.getInstance(toPrimitive(reader.copyElement()));
+
+		final ContentVerifier contentVerifier = createContentVerifier(signatureAlgorithm);
+		final OutputStream verifierStream;
+		if (null != contentVerifier) {
+			verifierStream = contentVerifier.getOutputStream();
+			verifierStream.write(pendingTbs.toByteArray());
+			reader.setTbsSink(verifierStream);
+		} else {
+			verifierStream = null;
+			reader.setTbsSink(null);
+		}
+
+		reader.readElement(SEQUENCE);
+		final X500Principal issuer = new X500Principal(reader.copyElement());
+		final Date thisUpdate = readTime(reader);
+		Date nextUpdate = null;
+		if (reader.hasMore(tbsContentOffset, tbsContentLength)
+				&& (UTC_TIME == reader.peekTag() || GENERALIZED_TIME == reader.peekTag())) {
+			nextUpdate = readTime(reader);
+		}
+
+		final CrlIndex.Builder indexBuilder;
+		if (reader.hasMore(tbsContentOffset, tbsContentLength) && SEQUENCE == reader.peekTag()) {
+			reader.expectTag(SEQUENCE);
+			final int revokedCertificatesLength = reader.readLength();
+			final long revokedCertificatesOffset = reader.getPosition();
+			indexBuilder = new CrlIndex.Builder(revokedCertificatesLength / 32);
+			while (reader.hasMore(revokedCertificatesOffset, revokedCertificatesLength)) {
+				readRevokedCertificate(reader, indexBuilder);
+			}
+			reader.checkEnd(revokedCertificatesOffset, revokedCertificatesLength);
+		} else {
+			indexBuilder = new CrlIndex.Builder(0);
+		}
+
+		final Map<String, byte[]> criticalExtensions = new HashMap<>();
+		final Map<String, byte[]> nonCriticalExtensions = new HashMap<>();
+		if (reader.hasMore(tbsContentOffset, tbsContentLength)) {
+			reader.readElement(CRL_EXTENSIONS);
+			final ASN1Primitive crlExtensionsObject = toPrimitive(reader.copyElement());
+			final Extensions crlExtensions = Extensions
+					.getInstance(ASN1TaggedObject.getInstance(crlExtensionsObject).getObject());
+			for (final ASN1ObjectIdentifier oid : crlExtensions.getExtensionOIDs()) {
+				final Extension extension = crlExtensions.getExtension(oid);
+				final byte[] extensionValue = extension.getExtnValue().getEncoded(ASN1Encoding.DER);
+				if (extension.isCritical()) {
+					criticalExtensions.put(oid.getId(), extensionValue);
+				} else {
+					nonCriticalExtensions.put(oid.getId(), extensionValue);
+				}
+			}
+		}
+		reader.checkEnd(tbsContentOffset, tbsContentLength);
+		final int tbsLength = (int) (reader.getPosition() - tbsOffset);
+		reader.setTbsSink(null);
+
+		reader.readElement(SEQUENCE);
+		final AlgorithmIdentifier outerSignatureAlgorithm = AlgorithmIdentifier
+				.getInstance(toPrimitive(reader.copyElement()));
+		if (false == signatureAlgorithm.equals(outerSignatureAlgorithm)) {
+			throw new CRLException("signature algorithm mismatch");
+		}
+		reader.readElement(BIT_STRING);
+		final byte[] signatureValue = reader.getElementContent();
+		if (0 == signatureValue.length || 0 != signatureValue[0]) {
+			throw new CRLException("invalid signature value");
+		}
+		final byte[] signature = Arrays.copyOfRange(signatureValue, 1, signatureValue.length);
+		reader.checkEnd(tbsOffset, certificateListLength);
+
+		final byte[] encoded = reader.getEncoding();
+		final byte[] sigAlgParams = null != signatureAlgorithm.getParameters()
+				? signatureAlgorithm.getParameters().toASN1Primitive().getEncoded(ASN1Encoding.DER)
+				: null;
+		final IndexedX509CRL crl = new IndexedX509CRL(encoded, null != encoded ? (int) tbsOffset : 0, tbsLength,
+				version, issuer, thisUpdate, nextUpdate,
+				new DefaultAlgorithmNameFinder().getAlgorithmName(signatureAlgorithm),
+				signatureAlgorithm.getAlgorithm().getId(), sigAlgParams, signature,
+				criticalExtensions.isEmpty() ? Collections.emptyMap() : criticalExtensions,
+				nonCriticalExtensions.isEmpty() ? Collections.emptyMap() : nonCriticalExtensions, indexBuilder.build());
+
+		if (null != contentVerifier) {
+			verifierStream.close();
+			if (false == contentVerifier.verify(signature)) {
+				throw new CRLException("CRL signature does not match");
+			}
+			LOGGER.debug("CRL signature verified while parsing");
+			CrlTrustLinker.markSignatureVerified(crl, this.issuerPublicKey);
+		}
+		LOGGER.debug("streamed CRL with {} revoked certificates", crl.getIndex().size());
+		return crl;
+	}
+
+	private ContentVerifier createContentVerifier(final AlgorithmIdentifier signatureAlgorithm) throws CRLException {
+		if (null == this.issuerPublicKey) {
+			return null;
+		}
+		try {
+			return CryptoContext.getContentVerifierProvider(this.issuerPublicKey).get(signatureAlgorithm);
+		} catch (final OperatorCreationException e) {
+			throw new CRLException("cannot verify CRL signature: " + e.getMessage(), e);
+		}
+	}
+
+	private void readRevokedCertificate(final DerReader reader, final CrlIndex.Builder indexBuilder)
+			throws IOException, CRLException {
+		final byte[] entry = reader.readElement(SEQUENCE);
+		final EntryParser entryParser = new EntryParser(entry, reader.getElementContentOffset(),
+				reader.getElementLength());
+		entryParser.expectTag(INTEGER);
+		final int serialLength = entryParser.readLength();
+		final int serialOffset = entryParser.position;
+		entryParser.skip(serialLength);
+		final long revocationDate = entryParser.readTime();
+		int reasonCode = CrlIndex.NO_REASON_CODE;
+		if (entryParser.hasMore()) {
+			reasonCode = entryParser.readReasonCode();
+		}
+		indexBuilder.add(entry, serialOffset, serialLength, revocationDate, reasonCode);
+	}
+
+	private static Date readTime(final DerReader reader) throws IOException, CRLException {
+		final byte[] element = reader.readElement();
+		final int tag = element[0] & 0xff;
+		if (UTC_TIME != tag && GENERALIZED_TIME != tag) {
+			throw new CRLException("time expected");
+		}
+		return new Date(parseTime(element, reader.getElementContentOffset(), reader.getElementLength(), tag));
+	}
+
+	/**
+	 * Parses a DER encoded time, as restricted by RFC 5280.
+	 */
+	private static long parseTime(final byte[] buffer, final int offset, final int length, final int tag)
+			throws CRLException {
+		if (UTC_TIME == tag && 13 == length && 'Z' == buffer[offset + 12]) {
+			int year = digits(buffer, offset, 2);
+			year += year < 50 ? 2000 : 1900;
+			return toMillis(year, buffer, offset + 2);
+		}
+		if (GENERALIZED_TIME == tag && 15 == length && 'Z' == buffer[offset + 14]) {
+			return toMillis(digits(buffer, offset, 4), buffer, offset + 4);
+		}
+		// not DER, but let's be liberal in what we accept
+		try {
+			final ASN1Primitive time = ASN1Primitive.fromByteArray(Arrays.copyOfRange(buffer, offset - 2, offset + length));
+			return Time.getInstance(time).getDate().getTime();
+		} catch (final IOException | IllegalArgumentException | IndexOutOfBoundsException e) {
+			throw new CRLException("invalid time encoding", e);
+		}
+	}
+
+	private static long toMillis(final int year, final byte[] buffer, final int offset) throws CRLException {
+		try {
+			return LocalDateTime
+					.of(year, digits(buffer, offset, 2), digits(buffer, offset + 2, 2), digits(buffer, offset + 4, 2),
+							digits(buffer, offset + 6, 2), digits(buffer, offset + 8, 2))
+					.toInstant(ZoneOffset.UTC).toEpochMilli();
+		} catch (final RuntimeException e) {
+			throw new CRLException("invalid time", e);
+		}
+	}
+
+	private static int digits(final byte[] buffer, final int offset, final int count) throws CRLException {
+		int value = 0;
+		for (int idx = 0; idx < count; idx++) {
+			final int digit = buffer[offset + idx] - '0';
+			if (digit < 0 || digit > 9) {
+				throw new CRLException("invalid time digit");
+			}
+			value = value * 10 + digit;
+		}
+		return value;
+	}
+
+	private static ASN1Primitive toPrimitive(final byte[] element) throws CRLException {
+		try {
+			return ASN1Primitive.fromByteArray(element);
+		} catch (final IOException e) {
+			throw new CRLException("invalid CRL encoding: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Parses a single buffered CRL entry.
+	 */
+	private static class EntryParser {
+
+		private final byte[] buffer;
+
+		private final int end;
+
+		private int position;
+
+		EntryParser(final byte[] buffer, final int offset, final int length) {
+			this.buffer = buffer;
+			this.position = offset;
+			this.end = offset + length;
+		}
+
+		boolean hasMore() {
+			return this.position < this.end;
+		}
+
+		int readTag() throws CRLException {
+			final int tag = peekTag();
+			this.position++;
+			return tag;
+		}
+
+		int peekTag() throws CRLException {
+			if (this.position >= this.end) {
+				throw new CRLException("truncated CRL entry");
+			}
+			return this.buffer[this.position] & 0xff;
+		}
+
+		void expectTag(final int tag) throws CRLException {
+			if (tag != readTag()) {
+				throw new CRLException("unexpected tag within CRL entry");
+			}
+		}
+
+		int readLength() throws CRLException {
+			int length = readTag();
+			if (length > 0x7f) {
+				final int lengthBytes = length & 0x7f;
+				if (0 == lengthBytes || lengthBytes > 3) {
+					throw new CRLException("invalid length within CRL entry");
+				}
+				length = 0;
+				for (int idx = 0; idx < lengthBytes; idx++) {
+					length = (length << 8) | readTag();
+				}
+			}
+			if (this.position + length > this.end) {
+				throw new CRLException("truncated CRL entry");
+			}
+			return length;
+		}
+
+		void skip(final int length) {
+			this.position += length;
+		}
+
+		long readTime() throws CRLException {
+			final int tag = readTag();
+			final int length = readLength();
+			final long time = parseTime(this.buffer, this.position, length, tag);
+			skip(length);
+			return time;
+		}
+
+		/**
+		 * Looks for the reason code within the CRL entry extensions.
+		 */
+		int readReasonCode() throws CRLException {
+			expectTag(SEQUENCE);
+			final int extensionsEnd = readLength() + this.position;
+			while (this.position < extensionsEnd) {
+				expectTag(SEQUENCE);
+				final int extensionEnd = readLength() + this.position;
+				expectTag(OBJECT_IDENTIFIER);
+				final int oidLength = readLength();
+				final boolean reasonCode = isReasonCodeOid(oidLength);
+				skip(oidLength);
+				if (BOOLEAN == peekTag()) {
+					readTag();
+					skip(readLength());
+				}
+				if (reasonCode) {
+					expectTag(OCTET_STRING);
+					readLength();
+					expectTag(ENUMERATED);
+					if (1 != readLength()) {
+						throw new CRLException("invalid CRL reason code");
+					}
+					return peekTag();
+				}
+				this.position = extensionEnd;
+			}
+			return CrlIndex.NO_REASON_CODE;
+		}
+
+		private boolean isReasonCodeOid(final int oidLength) {
+			if (REASON_CODE_OID.length != oidLength) {
+				return false;
+			}
+			for (int idx = 0; idx < oidLength; idx++) {
+				if (REASON_CODE_OID[idx] != this.buffer[this.position + idx]) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Reads DER elements from a stream, while copying all consumed bytes to the
+	 * encoding buffer and the TBSCertList sink.
+	 */
+	private static class DerReader {
+
+		private final InputStream inputStream;
+
+		private byte[] encoding;
+
+		private int encodingLength;
+
+		private int encodingSize;
+
+		private OutputStream tbsSink;
+
+		private long position;
+
+		private int peekedTag = -1;
+
+		private byte[] element = new byte[256];
+
+		private int elementContentOffset;
+
+		private int elementLength;
+
+		DerReader(final InputStream inputStream) {
+			this.inputStream = inputStream;
+		}
+
+		void startEncoding(final int contentLength) throws CRLException {
+			final int headerLength = (int) this.position;
+			if (headerLength != 1 + lengthOfLength(contentLength)) {
+				throw new CRLException("non-DER length encoding");
+			}
+			if (contentLength > Integer.MAX_VALUE - headerLength) {
+				throw new CRLException("CRL too large");
+			}
+			this.encodingSize = headerLength + contentLength;
+			// grow on demand, so a bogus length cannot allocate everything upfront
+			this.encoding = new byte[Math.min(this.encodingSize, 1024 * 64)];
+			// outer header has already been read, re-encode it
+			this.encoding[0] = (byte) SEQUENCE;
+			writeLength(this.encoding, 1, contentLength);
+			this.encodingLength = headerLength;
+		}
+
+		private void writeEncoding(final byte[] buffer, final int offset, final int length) throws CRLException {
+			if (this.encodingLength + length > this.encodingSize) {
+				throw new CRLException("data beyond end of CRL");
+			}
+			if (this.encodingLength + length > this.encoding.length) {
+				final long newCapacity = Math.max((long) this.encoding.length * 2, this.encodingLength + length);
+				this.encoding = Arrays.copyOf(this.encoding, (int) Math.min(newCapacity, this.encodingSize));
+			}
+			System.arraycopy(buffer, offset, this.encoding, this.encodingLength, length);
+			this.encodingLength += length;
+		}
+
+		byte[] getEncoding() {
+			if (null == this.encoding) {
+				return null;
+			}
+			if (this.encodingLength != this.encoding.length) {
+				return Arrays.copyOf(this.encoding, this.encodingLength);
+			}
+			return this.encoding;
+		}
+
+		void setTbsSink(final OutputStream tbsSink) {
+			this.tbsSink = tbsSink;
+		}
+
+		long getPosition() {
+			return this.position;
+		}
+
+		boolean hasMore(final long contentOffset, final int contentLength) {
+			return this.position < contentOffset + contentLength;
+		}
+
+		void checkEnd(final long contentOffset, final int contentLength) throws CRLException {
+			if (this.position != contentOffset + contentLength) {
+				throw new CRLException("invalid CRL structure");
+			}
+		}
+
+		int peekTag() throws IOException {
+			if (-1 == this.peekedTag) {
+				this.peekedTag = this.inputStream.read();
+				if (-1 == this.peekedTag) {
+					throw new EOFException("unexpected end of CRL");
+				}
+			}
+			return this.peekedTag;
+		}
+
+		private final byte[] single = new byte[1];
+
+		private int read() throws IOException, CRLException {
+			final int value;
+			if (-1 != this.peekedTag) {
+				value = this.peekedTag;
+				this.peekedTag = -1;
+			} else {
+				value = this.inputStream.read();
+				if (-1 == value) {
+					throw new EOFException("unexpected end of CRL");
+				}
+			}
+			this.position++;
+			if (null != this.encoding) {
+				this.single[0] = (byte) value;
+				writeEncoding(this.single, 0, 1);
+			}
+			if (null != this.tbsSink) {
+				this.tbsSink.write(value);
+			}
+			return value;
+		}
+
+		private void readFully(final byte[] buffer, final int offset, final int length) throws IOException, CRLException {
+			int count = 0;
+			if (length > 0 && -1 != this.peekedTag) {
+				buffer[offset] = (byte) read();
+				count++;
+			}
+			while (count < length) {
+				final int result = this.inputStream.read(buffer, offset + count, length - count);
+				if (-1 == result) {
+					throw new EOFException("unexpected end of CRL");
+				}
+				if (null != this.encoding) {
+					writeEncoding(buffer, offset + count, result);
+				}
+				if (null != this.tbsSink) {
+					this.tbsSink.write(buffer, offset + count, result);
+				}
+				this.position += result;
+				count += result;
+			}
+		}
+
+		void expectTag(final int tag) throws IOException, CRLException {
+			final int actualTag = read();
+			if (tag != actualTag) {
+				throw new CRLException("unexpected tag: " + Integer.toHexString(actualTag));
+			}
+		}
+
+		int readLength() throws IOException, CRLException {
+			final int length = read();
+			if (length < 0x80) {
+				return length;
+			}
+			final int lengthBytes = length & 0x7f;
+			if (0 == lengthBytes) {
+				throw new CRLException("indefinite length not allowed");
+			}
+			if (lengthBytes > 4) {
+				throw new CRLException("length too large");
+			}
+			long result = 0;
+			for (int idx = 0; idx < lengthBytes; idx++) {
+				result = (result << 8) | read();
+			}
+			if (result > Integer.MAX_VALUE) {
+				throw new CRLException("length too large");
+			}
+			return (int) result;
+		}
+
+		byte[] readElement(final int tag) throws IOException, CRLException {
+			if (tag != peekTag()) {
+				throw new CRLException("unexpected tag: " + Integer.toHexString(peekTag()));
+			}
+			return readElement();
+		}
+
+		/**
+		 * Reads a complete element into the element buffer. The returned buffer is
+		 * reused by the next read, and can be larger than the element.
+		 */
+		byte[] readElement() throws IOException, CRLException {
+			final int tag = read();
+			final int length = readLength();
+			if (length > MAX_ELEMENT_SIZE) {
+				throw new CRLException("CRL element too large");
+			}
+			final int headerLength = 1 + lengthOfLength(length);
+			if (this.element.length < headerLength + length) {
+				this.element = new byte[Math.max(headerLength + length, this.element.length * 2)];
+			}
+			this.element[0] = (byte) tag;
+			writeLength(this.element, 1, length);
+			readFully(this.element, headerLength, length);
+			this.elementContentOffset = headerLength;
+			this.elementLength = length;
+			return this.element;
+		}
+
+		/**
+		 * Gives back a copy of the element that was read last, header included.
+		 */
+		byte[] copyElement() {
+			return Arrays.copyOf(this.element, this.elementContentOffset + this.elementLength);
+		}
+
+		int getElementContentOffset() {
+			return this.elementContentOffset;
+		}
+
+		int getElementLength() {
+			return this.elementLength;
+		}
+
+		byte[] getElementContent() {
+			return Arrays.copyOfRange(this.element, this.elementContentOffset,
+					this.elementContentOffset + this.elementLength);
+		}
+
+		private static int lengthOfLength(final int length) {
+			if (length < 0x80) {
+				return 1;
+			}
+			int count = 1;
+			for (int value = length; value > 0; value >>>= 8) {
+				count++;
+			}
+			return count;
+		}
+
+		private static void writeLength(final byte[] buffer, final int offset, final int length) {
+			final int lengthOfLength = lengthOfLength(length);
+			if (1 == lengthOfLength) {
+				buffer[offset] = (byte) length;
+				return;
+			}
+			buffer[offset] = (byte) (0x80 | (lengthOfLength - 1));
+			for (int idx = lengthOfLength - 1; idx > 0; idx--) {
+				buffer[offset + idx] = (byte) (length >>> (8 * (lengthOfLength - 1 - idx)));
+			}
+		}
+	}
+}
@@ -19,37 +19,34 @@
 
 package be.fedict.trust.crl;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.math.BigInteger;
 import java.net.URI;
-import java.net.URISyntaxException;
-import java.security.InvalidParameterException;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
 import java.security.cert.CRLException;
 import java.security.cert.X509CRL;
 import java.security.cert.X509CRLEntry;
 import java.security.cert.X509Certificate;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
 
-import org.bouncycastle.asn1.ASN1Enumerated;
-import org.bouncycastle.asn1.ASN1InputStream;
-import org.bouncycastle.asn1.ASN1Integer;
-import org.bouncycastle.asn1.ASN1OctetString;
-import org.bouncycastle.asn1.ASN1Sequence;
-import org.bouncycastle.asn1.DERIA5String;
-import org.bouncycastle.asn1.DEROctetString;
-import org.bouncycastle.asn1.x509.CRLDistPoint;
 import org.bouncycastle.asn1.x509.CRLReason;
-import org.bouncycastle.asn1.x509.DistributionPoint;
-import org.bouncycastle.asn1.x509.DistributionPointName;
 import org.bouncycastle.asn1.x509.Extension;
-import org.bouncycastle.asn1.x509.GeneralName;
-import org.bouncycastle.asn1.x509.GeneralNames;
-import org.bouncycastle.asn1.x509.IssuingDistributionPoint;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import be.fedict.trust.CertificateProfile;
+import be.fedict.trust.DerCursor;
 import be.fedict.trust.ServerNotAvailableException;
+import be.fedict.trust.cache.WeakIdentityMap;
+import be.fedict.trust.linker.AsyncTrustLinker;
+import be.fedict.trust.linker.AsyncTrustLinkerAdapter;
 import be.fedict.trust.linker.TrustLinker;
 import be.fedict.trust.linker.TrustLinkerResult;
 import be.fedict.trust.linker.TrustLinkerResultException;
@@ -64,10 +61,32 @@ import be.fedict.trust.revocation.RevocationData;
  * @author Frank Cornelis
  * 
  */
-public class CrlTrustLinker implements TrustLinker {
+public class CrlTrustLinker implements TrustLinker, AsyncTrustLinker {
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(CrlTrustLinker.class);
 
+	/**
+	 * The implicitly tagged fields of the issuing distribution point limiting the
+	 * scope of a CRL.
+	 */
+	private static final int ONLY_CONTAINS_USER_CERTS_TAG = 0x81;
+
+	private static final int ONLY_CONTAINS_CA_CERTS_TAG = 0x82;
+
+	private static final int ONLY_SOME_REASONS_TAG = 0x83;
+
+	private static final int ONLY_SOME_REASONS_CONSTRUCTED_TAG = 0xa3;
+
+	private static final int INDIRECT_CRL_TAG = 0x84;
+
+	private static final int ONLY_CONTAINS_ATTRIBUTE_CERTS_TAG = 0x85;
+
+	/**
+	 * Per CRL instance, the encoded public keys against which its signature has
+	 * been verified successfully.
+	 */
+	private static final WeakIdentityMap<X509CRL, List<byte[]>> VERIFIED_CRLS = new WeakIdentityMap<>();
+
 	private final CrlRepository crlRepository;
 
 	/**
@@ -97,6 +116,68 @@ public class CrlTrustLinker implements TrustLinker {
 		} catch (final ServerNotAvailableException e) {
 			throw new TrustLinkerResultException(TrustLinkerResultReason.CRL_UNAVAILABLE, "CRL server is unavailable!", e);
 		}
+		return checkCrl(x509crl, crlUri, childCertificate, certificate, validationDate, revocationData,
+				algorithmPolicy);
+	}
+
+	/**
+	 * Non-blocking when the CRL repository is an {@link AsyncCrlRepository}.
+	 * Otherwise the CRL repository is queried on the calling thread.
+	 */
+	@Override
+	public CompletableFuture<TrustLinkerResult> hasTrustLinkAsync(final X509Certificate childCertificate,
+			final X509Certificate certificate, final Date validationDate, final RevocationData revocationData,
+			final AlgorithmPolicy algorithmPolicy) {
+		return hasTrustLinkAsync(childCertificate, certificate, validationDate, revocationData, algorithmPolicy,
+				null);
+	}
+
+	/**
+	 * Non-blocking when the CRL repository is an {@link AsyncCrlRepository}.
+	 * Otherwise the CRL repository is queried via the given executor.
+	 */
+	@Override
+	public CompletableFuture<TrustLinkerResult> hasTrustLinkAsync(final X509Certificate childCertificate,
+			final X509Certificate certificate, final Date validationDate, final RevocationData revocationData,
+			final AlgorithmPolicy algorithmPolicy, final Executor executor) {
+		if (false == this.crlRepository instanceof AsyncCrlRepository) {
+			return new AsyncTrustLinkerAdapter(this, executor).hasTrustLinkAsync(childCertificate, certificate,
+					validationDate, revocationData, algorithmPolicy);
+		}
+		final URI crlUri = getCrlUri(childCertificate);
+		if (null == crlUri) {
+			LOGGER.debug("no CRL uri in certificate: {}", childCertificate.getSubjectX500Principal());
+			return CompletableFuture.completedFuture(TrustLinkerResult.UNDECIDED);
+		}
+		LOGGER.debug("CRL URI: " + crlUri);
+		final CompletableFuture<TrustLinkerResult> result = new CompletableFuture<>();
+		((AsyncCrlRepository) this.crlRepository).findCrlAsync(crlUri, certificate, validationDate)
+				.whenComplete((x509crl, error) -> {
+					if (null != error) {
+						final Throwable cause = error instanceof CompletionException && null != error.getCause()
+								? error.getCause()
+								: error;
+						if (cause instanceof ServerNotAvailableException) {
+							result.completeExceptionally(new TrustLinkerResultException(
+									TrustLinkerResultReason.CRL_UNAVAILABLE, "CRL server is unavailable!", cause));
+						} else {
+							result.completeExceptionally(cause);
+						}
+						return;
+					}
+					try {
+						result.complete(checkCrl(x509crl, crlUri, childCertificate, certificate, validationDate,
+								revocationData, algorithmPolicy));
+					} catch (final Exception e) {
+						result.completeExceptionally(e);
+					}
+				});
+		return result;
+	}
+
+	private TrustLinkerResult checkCrl(final X509CRL x509crl, final URI crlUri, final X509Certificate childCertificate,
+			final X509Certificate certificate, final Date validationDate, final RevocationData revocationData,
+			final AlgorithmPolicy algorithmPolicy) throws TrustLinkerResultException, Exception {
 		if (null == x509crl) {
 			LOGGER.debug("CRL not found");
 			return TrustLinkerResult.UNDECIDED;
@@ -112,27 +193,23 @@ public class CrlTrustLinker implements TrustLinker {
 		// check CRL signature algorithm
 		algorithmPolicy.checkSignatureAlgorithm(x509crl.getSigAlgOID(), validationDate);
 
-		// we don't support indirect CRLs
-		if (isIndirectCRL(x509crl)) {
-			LOGGER.debug("indirect CRL detected");
+		// we don't support indirect CRLs, nor CRLs not covering the child certificate
+		if (false == isInScope(x509crl, childCertificate)) {
 			return TrustLinkerResult.UNDECIDED;
 		}
 
 		LOGGER.debug("CRL number: {}", getCrlNumber(x509crl));
 
-		// fill up revocation data if not null with this valid CRL
-		if (null != revocationData) {
-			try {
-				final CRLRevocationData crlRevocationData = new CRLRevocationData(x509crl.getEncoded(), crlUri.toString());
-				revocationData.getCrlRevocationData().add(crlRevocationData);
-			} catch (final CRLException e) {
-				LOGGER.error("CRLException: " + e.getMessage(), e);
-				throw new TrustLinkerResultException(TrustLinkerResultReason.UNSPECIFIED,
-						"CRLException : " + e.getMessage(), e);
-			}
+		if (x509crl instanceof IndexedX509CRL) {
+			final CrlIndex crlIndex = ((IndexedX509CRL) x509crl).getIndex();
+			final int idx = crlIndex.indexOf(childCertificate.getSerialNumber());
+			addRevocationData(revocationData, x509crl, crlUri,
+					-1 == idx ? null : new Date(crlIndex.getRevocationDate(idx)));
+			return checkRevocationStatus(crlIndex, idx, childCertificate, validationDate);
 		}
 
 		final X509CRLEntry crlEntry = x509crl.getRevokedCertificate(childCertificate.getSerialNumber());
+		addRevocationData(revocationData, x509crl, crlUri, null == crlEntry ? null : crlEntry.getRevocationDate());
 		if (null == crlEntry) {
 			LOGGER.debug("CRL OK for: {}", childCertificate.getSubjectX500Principal());
 			return TrustLinkerResult.TRUSTED;
@@ -147,16 +224,14 @@ public class CrlTrustLinker implements TrustLinker {
 			LOGGER.debug("non-critical extensions: " + crlEntry.getNonCriticalExtensionOIDs());
 			final byte[] reasonCodeExtension = crlEntry.getExtensionValue(Extension.reasonCode.getId());
 			if (null != reasonCodeExtension) {
-				try (final ASN1InputStream reasonCodeStream = new ASN1InputStream(new ByteArrayInputStream(reasonCodeExtension))) {
-					final DEROctetString octetString = (DEROctetString) (reasonCodeStream.readObject());
-					try (final ASN1InputStream octetStream = new ASN1InputStream(octetString.getOctets())) {
-						final CRLReason crlReason = CRLReason.getInstance(ASN1Enumerated.getInstance(octetStream.readObject()));
-						final BigInteger crlReasonValue = crlReason != null ? crlReason.getValue() : null;
-						LOGGER.debug("CRL reason value: " + crlReasonValue);
-						if (crlReasonValue != null && crlReasonValue.intValue() == CRLReason.certificateHold) {
-							throw new TrustLinkerResultException(TrustLinkerResultReason.INVALID_REVOCATION_STATUS,
-									"certificate suspended by CRL=" + crlEntry.getSerialNumber());
-						}
+				try {
+					final DerCursor reasonCodeCursor = DerCursor.openExtensionValue(reasonCodeExtension);
+					reasonCodeCursor.next(DerCursor.ENUMERATED);
+					final int crlReasonValue = reasonCodeCursor.getInt();
+					LOGGER.debug("CRL reason value: " + crlReasonValue);
+					if (crlReasonValue == CRLReason.certificateHold) {
+						throw new TrustLinkerResultException(TrustLinkerResultReason.INVALID_REVOCATION_STATUS,
+								"certificate suspended by CRL=" + crlEntry.getSerialNumber());
 					}
 				} catch (final IOException e) {
 					throw new TrustLinkerResultException(TrustLinkerResultReason.UNSPECIFIED, "IO error: " + e.getMessage(), e);
@@ -169,6 +244,63 @@ public class CrlTrustLinker implements TrustLinker {
 
 	}
 
+	/**
+	 * Checks the revocation status using the compact CRL index, without
+	 * materializing CRL entry objects.
+	 */
+	private TrustLinkerResult checkRevocationStatus(final CrlIndex crlIndex, final int idx,
+			final X509Certificate childCertificate, final Date validationDate) throws TrustLinkerResultException {
+		final BigInteger serialNumber = childCertificate.getSerialNumber();
+		if (-1 == idx) {
+			LOGGER.debug("CRL OK for: {}", childCertificate.getSubjectX500Principal());
+			return TrustLinkerResult.TRUSTED;
+		}
+		final long revocationDate = crlIndex.getRevocationDate(idx);
+		if (revocationDate > validationDate.getTime()) {
+			LOGGER.debug("CRL OK for: {} at {}", childCertificate.getSubjectX500Principal(), validationDate);
+			return TrustLinkerResult.TRUSTED;
+		}
+		LOGGER.debug("certificate revoked/suspended at: {}", new Date(revocationDate));
+		final int reasonCode = crlIndex.getReasonCode(idx);
+		LOGGER.debug("CRL reason value: {}", reasonCode);
+		if (reasonCode == CRLReason.certificateHold) {
+			throw new TrustLinkerResultException(TrustLinkerResultReason.INVALID_REVOCATION_STATUS,
+					"certificate suspended by CRL=" + serialNumber);
+		}
+		throw new TrustLinkerResultException(TrustLinkerResultReason.INVALID_REVOCATION_STATUS,
+				"certificate revoked by CRL=" + serialNumber);
+	}
+
+	/**
+	 * Fills up the revocation data, if not null, with this valid CRL. The CRL
+	 * stops being valid evidence at its next update, or once the child
+	 * certificate gets revoked. The CRL encoding itself is only added when the
+	 * revocation data retains the evidence.
+	 */
+	private static void addRevocationData(final RevocationData revocationData, final X509CRL x509crl,
+			final URI crlUri, final Date revocationDate) throws TrustLinkerResultException {
+		if (null == revocationData) {
+			return;
+		}
+		Date expiry = x509crl.getNextUpdate();
+		if (null != revocationDate && (null == expiry || revocationDate.before(expiry))) {
+			expiry = revocationDate;
+		}
+		revocationData.limitExpiry(expiry);
+		if (false == revocationData.isRetainEvidence()) {
+			return;
+		}
+		try {
+			final CRLRevocationData crlRevocationData = new CRLRevocationData(x509crl.getEncoded(), crlUri.toString(),
+					expiry);
+			revocationData.getCrlRevocationData().add(crlRevocationData);
+		} catch (final CRLException e) {
+			LOGGER.error("CRLException: " + e.getMessage(), e);
+			throw new TrustLinkerResultException(TrustLinkerResultReason.UNSPECIFIED,
+					"CRLException : " + e.getMessage(), e);
+		}
+	}
+
 	/**
 	 * Checks the integrity of the given X509 CRL.
 	 * 
@@ -196,7 +328,7 @@ public class CrlTrustLinker implements TrustLinker {
 			return false;
 		}
 		try {
-			x509crl.verify(issuerCertificate.getPublicKey());
+			verifySignature(x509crl, issuerCertificate.getPublicKey());
 		} catch (final Exception e) {
 			LOGGER.warn("CRL signature verification failed");
 			LOGGER.warn("exception: " + e.getMessage(), e);
@@ -236,6 +368,41 @@ public class CrlTrustLinker implements TrustLinker {
 		return true;
 	}
 
+	/**
+	 * Verifies the signature of the given CRL. A cached CRL instance only gets
+	 * verified once per public key, as this requires hashing the entire CRL.
+	 */
+	private static void verifySignature(final X509CRL x509crl, final PublicKey publicKey) throws GeneralSecurityException {
+		final byte[] encodedPublicKey = publicKey.getEncoded();
+		if (null == encodedPublicKey) {
+			x509crl.verify(publicKey);
+			return;
+		}
+		final List<byte[]> verifiedPublicKeys = VERIFIED_CRLS.get(x509crl);
+		if (null != verifiedPublicKeys) {
+			for (final byte[] verifiedPublicKey : verifiedPublicKeys) {
+				if (Arrays.equals(verifiedPublicKey, encodedPublicKey)) {
+					LOGGER.debug("CRL signature already verified");
+					return;
+				}
+			}
+		}
+		x509crl.verify(publicKey);
+		VERIFIED_CRLS.computeIfAbsent(x509crl, key -> new CopyOnWriteArrayList<>()).add(encodedPublicKey);
+	}
+
+	/**
+	 * Records that the signature of the given CRL has been verified against the
+	 * given public key, e.g. while parsing.
+	 */
+	static void markSignatureVerified(final X509CRL x509crl, final PublicKey publicKey) {
+		final byte[] encodedPublicKey = publicKey.getEncoded();
+		if (null == encodedPublicKey) {
+			return;
+		}
+		VERIFIED_CRLS.computeIfAbsent(x509crl, key -> new CopyOnWriteArrayList<>()).add(encodedPublicKey);
+	}
+
 	/**
 	 * Gives back the CRL URI meta-data found within the given X509 certificate.
 	 * 
@@ -243,90 +410,91 @@ public class CrlTrustLinker implements TrustLinker {
 	 * @return the CRL URI, or <code>null</code> if the extension is not present.
 	 */
 	public static URI getCrlUri(final X509Certificate certificate) {
-		final byte[] crlDistributionPointsValue = certificate.getExtensionValue(Extension.cRLDistributionPoints.getId());
-		if (null == crlDistributionPointsValue) {
-			return null;
-		}
-		final ASN1Sequence seq;
-		try (final ASN1InputStream crlDistPointsStream = new ASN1InputStream(new ByteArrayInputStream(crlDistributionPointsValue))) {
-			final DEROctetString octetString = (DEROctetString) crlDistPointsStream.readObject();
-			try (final ASN1InputStream octetStream = new ASN1InputStream(octetString.getOctets())) {
-				seq = (ASN1Sequence) octetStream.readObject();
-			}
-		} catch (final IOException e) {
-			throw new RuntimeException("IO error: " + e.getMessage(), e);
-		}
-		final CRLDistPoint distPoint = CRLDistPoint.getInstance(seq);
-		final DistributionPoint[] distributionPoints = distPoint.getDistributionPoints();
-		for (final DistributionPoint distributionPoint : distributionPoints) {
-			final DistributionPointName distributionPointName = distributionPoint.getDistributionPoint();
-			if (DistributionPointName.FULL_NAME != distributionPointName.getType()) {
-				continue;
-			}
-			final GeneralNames generalNames = (GeneralNames) distributionPointName.getName();
-			final GeneralName[] names = generalNames.getNames();
-			for (final GeneralName name : names) {
-				if (name.getTagNo() != GeneralName.uniformResourceIdentifier) {
-					LOGGER.debug("not a uniform resource identifier");
-					continue;
-				}
-				final DERIA5String derStr = DERIA5String.getInstance(name.getName());
-				final String str = derStr.getString();
-				if (false == str.startsWith("http")) {
-					/*
-					 * skip ldap:// protocols
-					 */
-					LOGGER.debug("not HTTP/HTTPS: {}", str);
-					continue;
-				}
-				final URI uri = toURI(str);
-				return uri;
-			}
-		}
-		return null;
+		return CertificateProfile.getInstance(certificate).getCrlUri();
 	}
 
-/**
+	/**
 	 * Gives back the CRL number of the given X509 CRL.
 	 * 
 	 * @param crl the X509 CRL.
 	 * @return the CRL number, or <code>null</code> if not specified.
 	 */
 	public static BigInteger getCrlNumber(final X509CRL crl) {
-		final byte[] crlNumberExtensionValue = crl
-				.getExtensionValue(Extension.cRLNumber.getId());
-		if (null == crlNumberExtensionValue) {
-			return null;
-		}
-		try (final ASN1InputStream crlNumberStream = new ASN1InputStream(new ByteArrayInputStream(crlNumberExtensionValue))) {
-			final ASN1OctetString octetString = (ASN1OctetString) (crlNumberStream
-					.readObject());
-			try (final ASN1InputStream octetStream = new ASN1InputStream(octetString.getOctets())) {
-				final ASN1Integer integer = (ASN1Integer) octetStream.readObject();
-				final BigInteger crlNumber = integer.getPositiveValue();
-				return crlNumber;
+		try {
+			final DerCursor crlNumberCursor = getExtensionCursor(crl, Extension.cRLNumber.getId());
+			if (null == crlNumberCursor) {
+				return null;
 			}
+			crlNumberCursor.next(DerCursor.INTEGER);
+			return crlNumberCursor.getPositiveValue();
 		} catch (final IOException e) {
 			throw new RuntimeException("IO error: " + e.getMessage(), e);
 		}
 	}
 
-	private boolean isIndirectCRL(final X509CRL crl) {
-		final byte[] idp = crl.getExtensionValue(Extension.issuingDistributionPoint.getId());
-		boolean isIndirect = false;
-		if (idp != null) {
-			isIndirect = IssuingDistributionPoint.getInstance(idp).isIndirectCRL();
+	/**
+	 * Checks whether the CRL lists all revoked certificates of its issuer that
+	 * are like the given certificate. Indirect CRLs, CRLs partitioned by reason
+	 * code and CRLs only covering another kind of certificates are out of scope.
+	 */
+	private boolean isInScope(final X509CRL crl, final X509Certificate certificate) {
+		try {
+			final DerCursor idpCursor = getExtensionCursor(crl, Extension.issuingDistributionPoint.getId());
+			if (null == idpCursor) {
+				return true;
+			}
+			final boolean caCertificate = -1 != certificate.getBasicConstraints();
+			idpCursor.next(DerCursor.SEQUENCE);
+			idpCursor.enter();
+			while (idpCursor.hasNext()) {
+				switch (idpCursor.next()) {
+				case ONLY_CONTAINS_USER_CERTS_TAG:
+					if (idpCursor.getBoolean() && caCertificate) {
+						LOGGER.debug("CRL only contains user certificates");
+						return false;
+					}
+					break;
+				case ONLY_CONTAINS_CA_CERTS_TAG:
+					if (idpCursor.getBoolean() && false == caCertificate) {
+						LOGGER.debug("CRL only contains CA certificates");
+						return false;
+					}
+					break;
+				case ONLY_SOME_REASONS_TAG:
+				case ONLY_SOME_REASONS_CONSTRUCTED_TAG:
+					LOGGER.debug("CRL only contains some revocation reasons");
+					return false;
+				case INDIRECT_CRL_TAG:
+					if (idpCursor.getBoolean()) {
+						LOGGER.debug("indirect CRL detected");
+						return false;
+					}
+					break;
+				case ONLY_CONTAINS_ATTRIBUTE_CERTS_TAG:
+					if (idpCursor.getBoolean()) {
+						LOGGER.debug("CRL only contains attribute certificates");
+						return false;
+					}
+					break;
+				default:
+					break;
+				}
+			}
+			return true;
+		} catch (final IOException e) {
+			throw new RuntimeException("IO error: " + e.getMessage(), e);
 		}
-
-		return isIndirect;
 	}
 
-	private static URI toURI(final String str) {
-		try {
-			final URI uri = new URI(str);
-			return uri;
-		} catch (final URISyntaxException e) {
-			throw new InvalidParameterException("CRL URI syntax error: " + e.getMessage());
+	private static DerCursor getExtensionCursor(final X509CRL crl, final String oid) throws IOException {
+		if (crl instanceof IndexedX509CRL) {
+			return ((IndexedX509CRL) crl).getExtensionCursor(oid);
 		}
+		final byte[] extensionValue = crl.getExtensionValue(oid);
+		if (null == extensionValue) {
+			return null;
+		}
+		return DerCursor.openExtensionValue(extensionValue);
 	}
+
 }
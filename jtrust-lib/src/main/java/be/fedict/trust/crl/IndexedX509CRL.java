@@ -0,0 +1,540 @@
+/*
+ * Java Trust Project.
+ * Copyright (C) 2021 e-Contract.be BV.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.trust.crl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.Principal;
+import java.security.Provider;
+import java.security.PublicKey;
+import java.security.SignatureException;
+import java.security.cert.CRLException;
+import java.security.cert.Certificate;
+import java.security.cert.X509CRL;
+import java.security.cert.X509CRLEntry;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.bouncycastle.asn1.ASN1EncodableVector;
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.ASN1Primitive;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.asn1.x509.Time;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.ContentVerifier;
+import org.bouncycastle.operator.ContentVerifierProvider;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.jcajce.JcaContentVerifierProviderBuilder;
+
+import be.fedict.trust.DerCursor;
+
+/**
+ * Memory efficient X509 CRL. Instead of an object graph per revoked
+ * certificate, the revoked certificates are kept within a {@link CrlIndex}.
+ * Next to the index, only the DER encoding of the CRL is retained. A CRL
+ * parsed by {@link CrlStreamParser} might not even retain its encoding.
+ * <p>
+ * {@link CrlTrustLinker} directly uses the index to look up serial numbers.
+ * Other callers of {@link #getRevokedCertificate(BigInteger)} get a
+ * lightweight CRL entry that is created on demand.
+ * </p>
+ */
+public class IndexedX509CRL extends X509CRL {
+
+	private final byte[] encoded;
+
+	private final int tbsOffset;
+
+	private final int tbsLength;
+
+	private final int version;
+
+	private final X500Principal issuer;
+
+	private final long thisUpdate;
+
+	private final Long nextUpdate;
+
+	private final String sigAlgName;
+
+	private final String sigAlgOID;
+
+	private final byte[] sigAlgParams;
+
+	private final byte[] signature;
+
+	private final Map<String, byte[]> criticalExtensions;
+
+	private final Map<String, byte[]> nonCriticalExtensions;
+
+	private final CrlIndex index;
+
+	private int hashCode;
+
+	IndexedX509CRL(final byte[] encoded, final int tbsOffset, final int tbsLength, final int version,
+			final X500Principal issuer, final Date thisUpdate, final Date nextUpdate, final String sigAlgName,
+			final String sigAlgOID, final byte[] sigAlgParams, final byte[] signature,
+			final Map<String, byte[]> criticalExtensions, final Map<String, byte[]> nonCriticalExtensions,
+			final CrlIndex index) {
+		this.encoded = encoded;
+		this.tbsOffset = tbsOffset;
+		this.tbsLength = tbsLength;
+		this.version = version;
+		this.issuer = issuer;
+		this.thisUpdate = thisUpdate.getTime();
+		this.nextUpdate = null != nextUpdate ? nextUpdate.getTime() : null;
+		this.sigAlgName = sigAlgName;
+		this.sigAlgOID = sigAlgOID;
+		this.sigAlgParams = sigAlgParams;
+		this.signature = signature;
+		this.criticalExtensions = criticalExtensions;
+		this.nonCriticalExtensions = nonCriticalExtensions;
+		this.index = index;
+	}
+
+	/**
+	 * Gives back the indexed variant of the given CRL.
+	 * 
+	 * @param x509crl the CRL.
+	 * @return the indexed CRL.
+	 * @throws CRLException in case of an invalid CRL encoding.
+	 */
+	public static IndexedX509CRL getInstance(final X509CRL x509crl) throws CRLException {
+		if (x509crl instanceof IndexedX509CRL) {
+			return (IndexedX509CRL) x509crl;
+		}
+		final byte[] encoded = x509crl.getEncoded();
+		final byte[] tbsCertList = x509crl.getTBSCertList();
+		// the TBSCertList directly follows the CertificateList SEQUENCE header
+		final int tbsOffset = getHeaderLength(encoded);
+		if (tbsOffset + tbsCertList.length > encoded.length) {
+			throw new CRLException("invalid CRL encoding");
+		}
+		return new IndexedX509CRL(encoded, tbsOffset, tbsCertList.length, x509crl.getVersion(),
+				x509crl.getIssuerX500Principal(), x509crl.getThisUpdate(), x509crl.getNextUpdate(),
+				x509crl.getSigAlgName(), x509crl.getSigAlgOID(), x509crl.getSigAlgParams(), x509crl.getSignature(),
+				getExtensions(x509crl, x509crl.getCriticalExtensionOIDs()),
+				getExtensions(x509crl, x509crl.getNonCriticalExtensionOIDs()), CrlIndex.build(x509crl));
+	}
+
+	private static Map<String, byte[]> getExtensions(final X509CRL x509crl, final Set<String> oids) {
+		if (null == oids || oids.isEmpty()) {
+			return Collections.emptyMap();
+		}
+		final Map<String, byte[]> extensions = new HashMap<>();
+		for (final String oid : oids) {
+			extensions.put(oid, x509crl.getExtensionValue(oid));
+		}
+		return extensions;
+	}
+
+	private static int getHeaderLength(final byte[] encoded) throws CRLException {
+		if (encoded.length < 2) {
+			throw new CRLException("invalid CRL encoding");
+		}
+		final int lengthByte = encoded[1] & 0xff;
+		if (lengthByte < 0x80) {
+			return 2;
+		}
+		return 2 + (lengthByte & 0x7f);
+	}
+
+	/**
+	 * Gives back the index of the revoked certificates.
+	 */
+	public CrlIndex getIndex() {
+		return this.index;
+	}
+
+	/**
+	 * Returns whether the DER encoding of this CRL has been retained.
+	 */
+	public boolean hasEncoding() {
+		return null != this.encoded;
+	}
+
+	/**
+	 * Gives back an estimate of the memory consumption of this CRL in bytes.
+	 */
+	public long getMemorySize() {
+		return (null != this.encoded ? this.encoded.length : 0) + this.signature.length + this.index.getMemorySize();
+	}
+
+	@Override
+	public byte[] getEncoded() throws CRLException {
+		if (null == this.encoded) {
+			throw new CRLException("CRL encoding not retained");
+		}
+		return this.encoded.clone();
+	}
+
+	@Override
+	public void verify(final PublicKey key)
+			throws CRLException, NoSuchAlgorithmException, InvalidKeyException, NoSuchProviderException, SignatureException {
+		verify(key, BouncyCastleProvider.PROVIDER_NAME);
+	}
+
+	@Override
+	public void verify(final PublicKey key, final String sigProvider)
+			throws CRLException, NoSuchAlgorithmException, InvalidKeyException, NoSuchProviderException, SignatureException {
+		final JcaContentVerifierProviderBuilder builder = new JcaContentVerifierProviderBuilder();
+		if (null != sigProvider) {
+			builder.setProvider(sigProvider);
+		}
+		verify(builder, key);
+	}
+
+	@Override
+	public void verify(final PublicKey key, final Provider sigProvider)
+			throws CRLException, NoSuchAlgorithmException, InvalidKeyException, SignatureException {
+		final JcaContentVerifierProviderBuilder builder = new JcaContentVerifierProviderBuilder();
+		if (null != sigProvider) {
+			builder.setProvider(sigProvider);
+		}
+		verify(builder, key);
+	}
+
+	private void verify(final JcaContentVerifierProviderBuilder builder, final PublicKey key)
+			throws CRLException, InvalidKeyException, SignatureException {
+		if (null == this.encoded) {
+			throw new SignatureException("CRL encoding not retained");
+		}
+		final ContentVerifier contentVerifier;
+		try {
+			final ContentVerifierProvider contentVerifierProvider = builder.build(key);
+			contentVerifier = contentVerifierProvider.get(getSignatureAlgorithm());
+		} catch (final OperatorCreationException e) {
+			throw new InvalidKeyException("cannot verify CRL signature: " + e.getMessage(), e);
+		}
+		try (final OutputStream outputStream = contentVerifier.getOutputStream()) {
+			outputStream.write(this.encoded, this.tbsOffset, this.tbsLength);
+		} catch (final IOException e) {
+			throw new SignatureException("CRL signature error: " + e.getMessage(), e);
+		}
+		if (false == contentVerifier.verify(this.signature)) {
+			throw new SignatureException("CRL signature does not match");
+		}
+	}
+
+	private AlgorithmIdentifier getSignatureAlgorithm() throws CRLException {
+		final ASN1ObjectIdentifier algorithm = new ASN1ObjectIdentifier(this.sigAlgOID);
+		if (null == this.sigAlgParams) {
+			return new AlgorithmIdentifier(algorithm);
+		}
+		try {
+			return new AlgorithmIdentifier(algorithm, ASN1Primitive.fromByteArray(this.sigAlgParams));
+		} catch (final IOException e) {
+			throw new CRLException("invalid signature algorithm parameters", e);
+		}
+	}
+
+	@Override
+	public int getVersion() {
+		return this.version;
+	}
+
+	@Override
+	@SuppressWarnings("deprecation")
+	public Principal getIssuerDN() {
+		return this.issuer;
+	}
+
+	@Override
+	public X500Principal getIssuerX500Principal() {
+		return this.issuer;
+	}
+
+	@Override
+	public Date getThisUpdate() {
+		return new Date(this.thisUpdate);
+	}
+
+	@Override
+	public Date getNextUpdate() {
+		if (null == this.nextUpdate) {
+			return null;
+		}
+		return new Date(this.nextUpdate);
+	}
+
+	@Override
+	public X509CRLEntry getRevokedCertificate(final BigInteger serialNumber) {
+		final int idx = this.index.indexOf(serialNumber);
+		if (-1 == idx) {
+			return null;
+		}
+		return new IndexedX509CRLEntry(this.index, idx);
+	}
+
+	@Override
+	public X509CRLEntry getRevokedCertificate(final X509Certificate certificate) {
+		return getRevokedCertificate(certificate.getSerialNumber());
+	}
+
+	@Override
+	public Set<? extends X509CRLEntry> getRevokedCertificates() {
+		final int size = this.index.size();
+		if (0 == size) {
+			return null;
+		}
+		final Set<X509CRLEntry> revokedCertificates = new HashSet<>();
+		for (int idx = 0; idx < size; idx++) {
+			revokedCertificates.add(new IndexedX509CRLEntry(this.index, idx));
+		}
+		return Collections.unmodifiableSet(revokedCertificates);
+	}
+
+	@Override
+	public byte[] getTBSCertList() throws CRLException {
+		if (null == this.encoded) {
+			throw new CRLException("CRL encoding not retained");
+		}
+		return Arrays.copyOfRange(this.encoded, this.tbsOffset, this.tbsOffset + this.tbsLength);
+	}
+
+	@Override
+	public byte[] getSignature() {
+		return this.signature.clone();
+	}
+
+	@Override
+	public String getSigAlgName() {
+		return this.sigAlgName;
+	}
+
+	@Override
+	public String getSigAlgOID() {
+		return this.sigAlgOID;
+	}
+
+	@Override
+	public byte[] getSigAlgParams() {
+		if (null == this.sigAlgParams) {
+			return null;
+		}
+		return this.sigAlgParams.clone();
+	}
+
+	@Override
+	public boolean isRevoked(final Certificate cert) {
+		if (false == cert instanceof X509Certificate) {
+			return false;
+		}
+		return -1 != this.index.indexOf(((X509Certificate) cert).getSerialNumber());
+	}
+
+	@Override
+	public boolean hasUnsupportedCriticalExtension() {
+		for (final String oid : this.criticalExtensions.keySet()) {
+			if (false == Extension.deltaCRLIndicator.getId().equals(oid)
+					&& false == Extension.issuingDistributionPoint.getId().equals(oid)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public Set<String> getCriticalExtensionOIDs() {
+		if (this.criticalExtensions.isEmpty() && this.nonCriticalExtensions.isEmpty()) {
+			return null;
+		}
+		return Collections.unmodifiableSet(this.criticalExtensions.keySet());
+	}
+
+	@Override
+	public Set<String> getNonCriticalExtensionOIDs() {
+		if (this.criticalExtensions.isEmpty() && this.nonCriticalExtensions.isEmpty()) {
+			return null;
+		}
+		return Collections.unmodifiableSet(this.nonCriticalExtensions.keySet());
+	}
+
+	@Override
+	public byte[] getExtensionValue(final String oid) {
+		byte[] value = this.criticalExtensions.get(oid);
+		if (null == value) {
+			value = this.nonCriticalExtensions.get(oid);
+		}
+		if (null == value) {
+			return null;
+		}
+		return value.clone();
+	}
+
+	/**
+	 * Gives back a cursor over the DER encoded value of the given extension. As
+	 * opposed to {@link #getExtensionValue(String)}, the retained extension value
+	 * is not copied.
+	 * 
+	 * @param oid the extension OID.
+	 * @return the cursor, or <code>null</code> if the extension is not present.
+	 * @throws IOException in case of an invalid extension encoding.
+	 */
+	public DerCursor getExtensionCursor(final String oid) throws IOException {
+		byte[] value = this.criticalExtensions.get(oid);
+		if (null == value) {
+			value = this.nonCriticalExtensions.get(oid);
+		}
+		if (null == value) {
+			return null;
+		}
+		return DerCursor.openExtensionValue(value);
+	}
+
+	@Override
+	public int hashCode() {
+		if (null == this.encoded) {
+			return System.identityHashCode(this);
+		}
+		int result = this.hashCode;
+		if (0 == result) {
+			result = Arrays.hashCode(this.encoded);
+			this.hashCode = result;
+		}
+		return result;
+	}
+
+	@Override
+	public boolean equals(final Object other) {
+		if (this == other) {
+			return true;
+		}
+		if (null == this.encoded) {
+			return false;
+		}
+		if (other instanceof IndexedX509CRL) {
+			final byte[] otherEncoded = ((IndexedX509CRL) other).encoded;
+			return null != otherEncoded && Arrays.equals(this.encoded, otherEncoded);
+		}
+		return super.equals(other);
+	}
+
+	@Override
+	public String toString() {
+		return "IndexedX509CRL [issuer=" + this.issuer + ", thisUpdate=" + getThisUpdate() + ", nextUpdate="
+				+ getNextUpdate() + ", revoked certificates=" + this.index.size() + "]";
+	}
+
+	/**
+	 * CRL entry that is backed by a CRL index.
+	 */
+	private static class IndexedX509CRLEntry extends X509CRLEntry {
+
+		private final CrlIndex index;
+
+		private final int idx;
+
+		IndexedX509CRLEntry(final CrlIndex index, final int idx) {
+			this.index = index;
+			this.idx = idx;
+		}
+
+		@Override
+		public byte[] getEncoded() throws CRLException {
+			final ASN1EncodableVector vector = new ASN1EncodableVector();
+			vector.add(new ASN1Integer(getSerialNumber()));
+			vector.add(new Time(getRevocationDate()));
+			final int reasonCode = this.index.getReasonCode(this.idx);
+			try {
+				if (CrlIndex.NO_REASON_CODE != reasonCode) {
+					vector.add(new Extensions(new Extension(Extension.reasonCode, false,
+							CRLReason.lookup(reasonCode).getEncoded(ASN1Encoding.DER))));
+				}
+				return new DERSequence(vector).getEncoded(ASN1Encoding.DER);
+			} catch (final IOException e) {
+				throw new CRLException("CRL entry encoding error", e);
+			}
+		}
+
+		@Override
+		public BigInteger getSerialNumber() {
+			return this.index.getSerialNumber(this.idx);
+		}
+
+		@Override
+		public Date getRevocationDate() {
+			return new Date(this.index.getRevocationDate(this.idx));
+		}
+
+		@Override
+		public boolean hasExtensions() {
+			return CrlIndex.NO_REASON_CODE != this.index.getReasonCode(this.idx);
+		}
+
+		@Override
+		public String toString() {
+			return "IndexedX509CRLEntry [serial=" + getSerialNumber() + ", revocationDate=" + getRevocationDate()
+					+ ", reasonCode=" + this.index.getReasonCode(this.idx) + "]";
+		}
+
+		@Override
+		public boolean hasUnsupportedCriticalExtension() {
+			return false;
+		}
+
+		@Override
+		public Set<String> getCriticalExtensionOIDs() {
+			if (false == hasExtensions()) {
+				return null;
+			}
+			return Collections.emptySet();
+		}
+
+		@Override
+		public Set<String> getNonCriticalExtensionOIDs() {
+			if (false == hasExtensions()) {
+				return null;
+			}
+			return Collections.singleton(Extension.reasonCode.getId());
+		}
+
+		@Override
+		public byte[] getExtensionValue(final String oid) {
+			final int reasonCode = this.index.getReasonCode(this.idx);
+			if (CrlIndex.NO_REASON_CODE == reasonCode || false == Extension.reasonCode.getId().equals(oid)) {
+				return null;
+			}
+			try {
+				return new DEROctetString(CRLReason.lookup(reasonCode)).getEncoded(ASN1Encoding.DER);
+			} catch (final IOException e) {
+				throw new RuntimeException("CRL reason encoding error", e);
+			}
+		}
+	}
+}
@@ -30,25 +30,29 @@ import java.security.cert.CertificateFactory;
 import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
 import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
-import org.apache.http.HttpHost;
+import org.apache.http.HttpHeaders;
 import org.apache.http.HttpResponse;
 import org.apache.http.StatusLine;
-import org.apache.http.client.HttpClient;
-import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
-import org.apache.http.client.protocol.HttpClientContext;
-import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.util.EntityUtils;
 import org.bouncycastle.x509.NoSuchParserException;
 import org.bouncycastle.x509.util.StreamParsingException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import be.fedict.trust.Credentials;
+import be.fedict.trust.HttpTransport;
 import be.fedict.trust.NetworkConfig;
 import be.fedict.trust.ServerNotAvailableException;
 import be.fedict.trust.ServerType;
+import be.fedict.trust.cache.NegativeCache;
 
 /**
  * Online CRL repository. This CRL repository implementation will download the
@@ -56,17 +60,23 @@ import be.fedict.trust.ServerType;
  * 
  * @author Frank Cornelis
  */
-public class OnlineCrlRepository implements CrlRepository {
+public class OnlineCrlRepository implements ConditionalCrlRepository, AsyncCrlRepository {
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(OnlineCrlRepository.class);
 
-	private final static int CONNECTION_TIMEOUT_DURATION = 1000;
+	private final NetworkConfig networkConfig;
 
-	private final static int SOCKET_TIMEOUT_DURATION = 2000;
+	private final boolean sharedHttpTransport;
 
-	private final NetworkConfig networkConfig;
+	private HttpTransport httpTransport;
+
+	private boolean streamingParser;
 
-	private Credentials credentials;
+	private boolean retainCrlEncoding = true;
+
+	private final NegativeCache<URI> negativeCache = new NegativeCache<>();
+
+	private Executor parserExecutor = ForkJoinPool.commonPool();
 
 	/**
 	 * Main construtor.
@@ -76,13 +86,27 @@ public class OnlineCrlRepository implements CrlRepository {
 	 */
 	public OnlineCrlRepository(final NetworkConfig networkConfig) {
 		this.networkConfig = networkConfig;
+		this.httpTransport = new HttpTransport(networkConfig);
+		this.sharedHttpTransport = false;
 	}
 
 	/**
 	 * Default constructor.
 	 */
 	public OnlineCrlRepository() {
-		this(null);
+		this((NetworkConfig) null);
+	}
+
+	/**
+	 * Constructor using a shared HTTP transport. The network configuration and
+	 * credentials should be configured on the HTTP transport itself.
+	 * 
+	 * @param httpTransport the shared HTTP transport used for downloading CRLs.
+	 */
+	public OnlineCrlRepository(final HttpTransport httpTransport) {
+		this.networkConfig = null;
+		this.httpTransport = httpTransport;
+		this.sharedHttpTransport = true;
 	}
 
 	/**
@@ -91,58 +115,176 @@ public class OnlineCrlRepository implements CrlRepository {
 	 * @param credentials
 	 */
 	public void setCredentials(final Credentials credentials) {
-		this.credentials = credentials;
+		if (this.sharedHttpTransport) {
+			throw new IllegalStateException("credentials should be configured on the shared HTTP transport");
+		}
+		final HttpTransport previousHttpTransport = this.httpTransport;
+		this.httpTransport = new HttpTransport(this.networkConfig, credentials);
+		previousHttpTransport.close();
+	}
+
+	/**
+	 * Gives back the HTTP transport used by this CRL repository.
+	 * 
+	 * @return the HTTP transport.
+	 */
+	public HttpTransport getHttpTransport() {
+		return this.httpTransport;
+	}
+
+	/**
+	 * Sets the duration in milliseconds during which an unavailable CRL server is
+	 * remembered. During this period, downloads from the CRL server fail fast with
+	 * a {@link ServerNotAvailableException}. Defaults to <code>0</code>, disabling
+	 * negative caching.
+	 * 
+	 * @param negativeCacheDuration
+	 */
+	public void setNegativeCacheDuration(final long negativeCacheDuration) {
+		this.negativeCache.setDuration(negativeCacheDuration);
+	}
+
+	public long getNegativeCacheDuration() {
+		return this.negativeCache.getDuration();
 	}
 
 	@Override
 	public X509CRL findCrl(final URI crlUri, final X509Certificate issuerCertificate, final Date validationDate) throws ServerNotAvailableException {
+		return findCrl(crlUri, issuerCertificate, validationDate, null, null).getCrl();
+	}
+
+	@Override
+	public ConditionalCrlResult findCrl(final URI crlUri, final X509Certificate issuerCertificate,
+			final Date validationDate, final String eTag, final String lastModified) throws ServerNotAvailableException {
+		this.negativeCache.check(crlUri);
 		try {
-			return getCrl(crlUri);
+			final ConditionalCrlResult result = getCrl(crlUri, issuerCertificate, eTag, lastModified);
+			this.negativeCache.remove(crlUri);
+			return result;
+		} catch (final ServerNotAvailableException e) {
+			this.negativeCache.put(crlUri, e);
+			throw e;
 		} catch (final CRLException | NoSuchParserException | StreamParsingException e) {
 			LOGGER.debug("error parsing CRL: {}", e.getMessage(), e);
-			return null;
+			return ConditionalCrlResult.retrieved(null, null, null);
 		} catch (final IOException | CertificateException | NoSuchProviderException e) {
 			LOGGER.error("find CRL error: {}", e.getMessage(), e);
-			return null;
+			return ConditionalCrlResult.retrieved(null, null, null);
 		}
 	}
 
-	private X509CRL getCrl(final URI crlUri) throws IOException, CertificateException, CRLException, NoSuchProviderException,
-			NoSuchParserException, StreamParsingException, ServerNotAvailableException {
-		final RequestConfig.Builder requestConfigBuilder = RequestConfig.custom().setConnectTimeout(CONNECTION_TIMEOUT_DURATION)
-				.setConnectionRequestTimeout(CONNECTION_TIMEOUT_DURATION).setSocketTimeout(SOCKET_TIMEOUT_DURATION);
+	/**
+	 * Downloads the CRL without blocking the calling thread. The downloaded CRL is
+	 * parsed via the parser executor.
+	 * 
+	 * @see #setParserExecutor(Executor)
+	 */
+	@Override
+	public CompletableFuture<X509CRL> findCrlAsync(final URI crlUri, final X509Certificate issuerCertificate,
+			final Date validationDate) {
+		final CompletableFuture<X509CRL> result = new CompletableFuture<>();
+		final HttpGet httpGet;
+		try {
+			this.negativeCache.check(crlUri);
+			httpGet = createHttpGet(crlUri, null, null);
+		} catch (final ServerNotAvailableException e) {
+			result.completeExceptionally(e);
+			return result;
+		} catch (final IOException e) {
+			LOGGER.error("find CRL error: {}", e.getMessage(), e);
+			result.complete(null);
+			return result;
+		}
+		this.httpTransport.executeAsync(httpGet).whenCompleteAsync((httpResponse, error) -> {
+			try {
+				if (null != error) {
+					throw new ServerNotAvailableException("CRL server is down", ServerType.CRL, error);
+				}
+				final X509CRL crl = processCrlResponse(httpResponse, crlUri, issuerCertificate, null, null).getCrl();
+				this.negativeCache.remove(crlUri);
+				result.complete(crl);
+			} catch (final ServerNotAvailableException e) {
+				this.negativeCache.put(crlUri, e);
+				result.completeExceptionally(e);
+			} catch (final CRLException e) {
+				LOGGER.debug("error parsing CRL: {}", e.getMessage(), e);
+				result.complete(null);
+			} catch (final IOException | CertificateException | NoSuchProviderException e) {
+				LOGGER.error("find CRL error: {}", e.getMessage(), e);
+				result.complete(null);
+			} catch (final RuntimeException e) {
+				result.completeExceptionally(e);
+			}
+		}, this.parserExecutor);
+		return result;
+	}
+
+	/**
+	 * Sets the executor parsing CRLs downloaded via
+	 * {@link #findCrlAsync(URI, X509Certificate, Date)}, so that parsing large
+	 * CRLs does not hold up the non-blocking I/O. Defaults to the common
+	 * fork/join pool.
+	 * 
+	 * @param parserExecutor
+	 */
+	public void setParserExecutor(final Executor parserExecutor) {
+		this.parserExecutor = parserExecutor;
+	}
 
-		if (null != this.networkConfig) {
-			final HttpHost proxy = new HttpHost(this.networkConfig.getProxyHost(), this.networkConfig.getProxyPort());
-			requestConfigBuilder.setProxy(proxy);
+	private ConditionalCrlResult getCrl(final URI crlUri, final X509Certificate issuerCertificate, final String eTag,
+			final String lastModified) throws IOException, CertificateException, CRLException, NoSuchProviderException,
+			NoSuchParserException, StreamParsingException, ServerNotAvailableException {
+		final HttpGet httpGet = createHttpGet(crlUri, eTag, lastModified);
+		final CloseableHttpResponse httpResponse;
+		try {
+			httpResponse = this.httpTransport.execute(httpGet);
+		} catch (final IOException e) {
+			throw new ServerNotAvailableException("CRL server is down", ServerType.CRL, e);
 		}
-		final HttpClientContext httpClientContext = HttpClientContext.create();
-		if (null != this.credentials) {
-			this.credentials.init(httpClientContext);
+		try {
+			return processCrlResponse(httpResponse, crlUri, issuerCertificate, eTag, lastModified);
+		} finally {
+			httpResponse.close();
 		}
-		final RequestConfig requestConfig = requestConfigBuilder.build();
-		final HttpClientBuilder httpClientBuilder = HttpClientBuilder.create();
-		httpClientBuilder.setDefaultRequestConfig(requestConfig);
-		final HttpClient httpClient = httpClientBuilder.build();
+	}
 
+	private static HttpGet createHttpGet(final URI crlUri, final String eTag, final String lastModified)
+			throws IOException {
 		final String downloadUrl = crlUri.toURL().toString();
 		LOGGER.debug("downloading CRL from: {}", downloadUrl);
 		final HttpGet httpGet = new HttpGet(downloadUrl);
 		httpGet.addHeader("User-Agent", "jTrust CRL Client");
-
-		final HttpResponse httpResponse;
-		final int statusCode;
-		try {
-			httpResponse = httpClient.execute(httpGet);
-			final StatusLine statusLine = httpResponse.getStatusLine();
-			statusCode = statusLine.getStatusCode();
-		} catch (final IOException e) {
-			throw new ServerNotAvailableException("CRL server is down", ServerType.CRL, e);
+		if (null != eTag) {
+			httpGet.addHeader(HttpHeaders.IF_NONE_MATCH, eTag);
 		}
+		if (null != lastModified) {
+			httpGet.addHeader(HttpHeaders.IF_MODIFIED_SINCE, lastModified);
+		}
+		return httpGet;
+	}
 
+	private ConditionalCrlResult processCrlResponse(final HttpResponse httpResponse, final URI crlUri,
+			final X509Certificate issuerCertificate, final String eTag, final String lastModified)
+			throws IOException, CertificateException, CRLException, NoSuchProviderException,
+			ServerNotAvailableException {
+		final StatusLine statusLine = httpResponse.getStatusLine();
+		final int statusCode = statusLine.getStatusCode();
+		if (HttpURLConnection.HTTP_NOT_MODIFIED == statusCode && (null != eTag || null != lastModified)) {
+			LOGGER.debug("CRL not modified: {}", crlUri);
+			EntityUtils.consume(httpResponse.getEntity());
+			return ConditionalCrlResult.notModified(getHeader(httpResponse, HttpHeaders.ETAG, eTag),
+					getHeader(httpResponse, HttpHeaders.LAST_MODIFIED, lastModified));
+		}
 		if (HttpURLConnection.HTTP_OK != statusCode) {
 			throw new ServerNotAvailableException("CRL server responded with status code " + statusCode, ServerType.CRL);
 		}
+		final String responseETag = getHeader(httpResponse, HttpHeaders.ETAG, null);
+		final String responseLastModified = getHeader(httpResponse, HttpHeaders.LAST_MODIFIED, null);
+
+		if (this.streamingParser) {
+			return ConditionalCrlResult.retrieved(parseCrl(httpResponse.getEntity(), issuerCertificate),
+					responseETag, responseLastModified);
+		}
 
 		final CertificateFactory certificateFactory = CertificateFactory.getInstance("X.509", "BC");
 		LOGGER.debug("certificate factory provider: {}", certificateFactory.getProvider().getName());
@@ -156,9 +298,71 @@ public class OnlineCrlRepository implements CrlRepository {
 			} else {
 				LOGGER.error("null CRL");
 			}
+			// make sure the connection can be reused
+			EntityUtils.consume(httpEntity);
+			return ConditionalCrlResult.retrieved(crl, responseETag, responseLastModified);
+		}
+	}
+
+	private static String getHeader(final HttpResponse httpResponse, final String name, final String defaultValue) {
+		final Header header = httpResponse.getFirstHeader(name);
+		if (null == header) {
+			return defaultValue;
+		}
+		return header.getValue();
+	}
+
+	private X509CRL parseCrl(final HttpEntity httpEntity, final X509Certificate issuerCertificate)
+			throws IOException, CRLException {
+		final CrlStreamParser crlStreamParser = new CrlStreamParser(
+				null != issuerCertificate ? issuerCertificate.getPublicKey() : null);
+		crlStreamParser.setRetainEncoding(this.retainCrlEncoding);
+		try (final InputStream content = httpEntity.getContent()) {
+			final X509CRL crl = crlStreamParser.parse(content);
+			// make sure the connection can be reused
+			EntityUtils.consume(httpEntity);
 			return crl;
-		} finally {
-			httpGet.releaseConnection();
 		}
 	}
+
+	/**
+	 * Returns whether the downloaded CRLs are parsed by the
+	 * {@link CrlStreamParser}.
+	 */
+	public boolean isStreamingParser() {
+		return this.streamingParser;
+	}
+
+	/**
+	 * Sets whether the downloaded CRLs should be parsed by the
+	 * {@link CrlStreamParser}. The CRL is then directly read into an
+	 * {@link IndexedX509CRL}, and its signature is verified against the issuer
+	 * certificate while downloading. CRLs with an invalid signature are not
+	 * returned at all.
+	 * 
+	 * @param streamingParser
+	 */
+	public void setStreamingParser(final boolean streamingParser) {
+		this.streamingParser = streamingParser;
+	}
+
+	/**
+	 * Returns whether the streaming parser retains the CRL encoding.
+	 */
+	public boolean isRetainCrlEncoding() {
+		return this.retainCrlEncoding;
+	}
+
+	/**
+	 * Sets whether the streaming parser should retain the DER encoding of the CRL.
+	 * Without it, memory consumption only depends on the number of revoked
+	 * certificates, but the CRL cannot be added to the
+	 * {@link be.fedict.trust.revocation.RevocationData}. Default is
+	 * <code>true</code>.
+	 * 
+	 * @param retainCrlEncoding
+	 */
+	public void setRetainCrlEncoding(final boolean retainCrlEncoding) {
+		this.retainCrlEncoding = retainCrlEncoding;
+	}
 }
@@ -0,0 +1,79 @@
+/*
+ * Java Trust Project.
+ * Copyright (C) 2021 e-Contract.be BV.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.trust.linker;
+
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import be.fedict.trust.policy.AlgorithmPolicy;
+import be.fedict.trust.revocation.RevocationData;
+
+/**
+ * Interface for trust linker components that can verify a trust link without
+ * blocking the calling thread.
+ * 
+ * @see AsyncTrustLinkerAdapter
+ */
+public interface AsyncTrustLinker {
+
+	/**
+	 * Verifies whether there is a trust link between the given certificates at the
+	 * given validation date.
+	 * 
+	 * @param childCertificate the X509 child certificate.
+	 * @param certificate      the X509 parent certificate.
+	 * @param validationDate   the validation date.
+	 * @param revocationData   optional OCSP or CRL revocation data. Is
+	 *                         <code>null</code> if not specified.
+	 * @param algorithmPolicy  the algorithm policy to be used to validate used
+	 *                         signature algorithms.
+	 * @return the future trust linker result, completing exceptionally with a
+	 *         {@link TrustLinkerResultException} if there is no trust link.
+	 */
+	CompletableFuture<TrustLinkerResult> hasTrustLinkAsync(X509Certificate childCertificate,
+			X509Certificate certificate, Date validationDate, RevocationData revocationData,
+			AlgorithmPolicy algorithmPolicy);
+
+	/**
+	 * Verifies whether there is a trust link between the given certificates at the
+	 * given validation date. Trust linkers that can only verify some trust links
+	 * in a non-blocking way should run their blocking work via the given
+	 * executor.
+	 * 
+	 * @param childCertificate the X509 child certificate.
+	 * @param certificate      the X509 parent certificate.
+	 * @param validationDate   the validation date.
+	 * @param revocationData   optional OCSP or CRL revocation data. Is
+	 *                         <code>null</code> if not specified.
+	 * @param algorithmPolicy  the algorithm policy to be used to validate used
+	 *                         signature algorithms.
+	 * @param executor         the executor for blocking work. If
+	 *                         <code>null</code>, blocking work runs on the calling
+	 *                         thread.
+	 * @return the future trust linker result, completing exceptionally with a
+	 *         {@link TrustLinkerResultException} if there is no trust link.
+	 */
+	default CompletableFuture<TrustLinkerResult> hasTrustLinkAsync(final X509Certificate childCertificate,
+			final X509Certificate certificate, final Date validationDate, final RevocationData revocationData,
+			final AlgorithmPolicy algorithmPolicy, final Executor executor) {
+		return hasTrustLinkAsync(childCertificate, certificate, validationDate, revocationData, algorithmPolicy);
+	}
+}
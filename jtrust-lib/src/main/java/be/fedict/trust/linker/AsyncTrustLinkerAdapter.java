@@ -0,0 +1,126 @@
+/*
+ * Java Trust Project.
+ * Copyright (C) 2021 e-Contract.be BV.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.trust.linker;
+
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import be.fedict.trust.ValidationDeadline;
+import be.fedict.trust.policy.AlgorithmPolicy;
+import be.fedict.trust.revocation.RevocationData;
+
+/**
+ * Makes a blocking trust linker available as {@link AsyncTrustLinker}, by
+ * running it via an executor.
+ */
+public class AsyncTrustLinkerAdapter implements TrustLinker, AsyncTrustLinker {
+
+	/**
+	 * Maximum number of threads of the default executor.
+	 */
+	public static final int DEFAULT_EXECUTOR_THREADS = 32;
+
+	private static final Executor DEFAULT_EXECUTOR = createDefaultExecutor();
+
+	private final TrustLinker trustLinker;
+
+	private final Executor executor;
+
+	/**
+	 * Main constructor.
+	 * 
+	 * @param trustLinker the blocking trust linker.
+	 * @param executor    the executor running the blocking trust linker. If
+	 *                    <code>null</code>, the trust linker runs on the calling
+	 *                    thread.
+	 */
+	public AsyncTrustLinkerAdapter(final TrustLinker trustLinker, final Executor executor) {
+		this.trustLinker = trustLinker;
+		this.executor = executor;
+	}
+
+	/**
+	 * Gives back the default executor for running blocking trust linkers, shared by
+	 * the trust validators and trust linkers that have not been given an executor
+	 * of their own. It is a pool of at most {@link #DEFAULT_EXECUTOR_THREADS}
+	 * daemon threads. Additional tasks wait in a queue, so a burst of validations
+	 * against a slow revocation service cannot create an unbounded number of
+	 * threads. Trust linkers running on this executor should therefore not block
+	 * on other tasks of this executor.
+	 * 
+	 * @return the default executor.
+	 */
+	public static Executor getDefaultExecutor() {
+		return DEFAULT_EXECUTOR;
+	}
+
+	private static Executor createDefaultExecutor() {
+		final ThreadPoolExecutor executor = new ThreadPoolExecutor(DEFAULT_EXECUTOR_THREADS,
+				DEFAULT_EXECUTOR_THREADS, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+					final Thread thread = new Thread(runnable, "jtrust-trust-linker");
+					thread.setDaemon(true);
+					return thread;
+				});
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	/**
+	 * Gives back the given trust linker as {@link AsyncTrustLinker}, adapting it
+	 * only when it cannot verify trust links in a non-blocking way itself. An
+	 * {@link AsyncTrustLinker} gets the executor passed for its own blocking work.
+	 * 
+	 * @param trustLinker the trust linker.
+	 * @param executor    the executor running blocking trust linkers.
+	 * @return the asynchronous trust linker.
+	 */
+	public static AsyncTrustLinker adapt(final TrustLinker trustLinker, final Executor executor) {
+		if (trustLinker instanceof AsyncTrustLinker) {
+			final AsyncTrustLinker asyncTrustLinker = (AsyncTrustLinker) trustLinker;
+			if (null == executor) {
+				return asyncTrustLinker;
+			}
+			return (childCertificate, certificate, validationDate, revocationData,
+					algorithmPolicy) -> asyncTrustLinker.hasTrustLinkAsync(childCertificate, certificate,
+							validationDate, revocationData, algorithmPolicy, executor);
+		}
+		return new AsyncTrustLinkerAdapter(trustLinker, executor);
+	}
+
+	@Override
+	public TrustLinkerResult hasTrustLink(final X509Certificate childCertificate, final X509Certificate certificate,
+			final Date validationDate, final RevocationData revocationData, final AlgorithmPolicy algorithmPolicy)
+			throws TrustLinkerResultException, Exception {
+		return this.trustLinker.hasTrustLink(childCertificate, certificate, validationDate, revocationData,
+				algorithmPolicy);
+	}
+
+	@Override
+	public CompletableFuture<TrustLinkerResult> hasTrustLinkAsync(final X509Certificate childCertificate,
+			final X509Certificate certificate, final Date validationDate, final RevocationData revocationData,
+			final AlgorithmPolicy algorithmPolicy) {
+		return ValidationDeadline.callAsync(() -> this.trustLinker.hasTrustLink(childCertificate, certificate,
+				validationDate, revocationData, algorithmPolicy), this.executor);
+	}
+}
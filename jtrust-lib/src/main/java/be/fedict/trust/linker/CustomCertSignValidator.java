@@ -8,6 +8,8 @@ import java.security.cert.CertificateEncodingException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 
+import be.fedict.trust.CryptoContext;
+
 /**
  * Custom validator to validate the signature on a certificate.
  */
@@ -78,7 +80,7 @@ public class CustomCertSignValidator {
             certificateSignatureAlgorithm = certificateSignatureAlgorithm + "Encryption";
         }
 
-        final Signature signature = Signature.getInstance(certificateSignatureAlgorithm);
+        final Signature signature = CryptoContext.getSignature(certificateSignatureAlgorithm);
         LOG.debug("Using " + signature.getAlgorithm() + " algorithm for signature verification.");
         signature.initVerify(certificate.getPublicKey());
         final byte[] encodedInfo = childCertificate.getTBSCertificate();
@@ -21,8 +21,13 @@ package be.fedict.trust.linker;
 
 import java.security.cert.X509Certificate;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -36,12 +41,14 @@ import be.fedict.trust.revocation.RevocationData;
  * @author Frank Cornelis
  * 
  */
-public class FallbackTrustLinker implements TrustLinker {
+public class FallbackTrustLinker implements TrustLinker, AsyncTrustLinker {
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(FallbackTrustLinker.class);
 
 	private final List<TrustLinker> trustLinkers;
 
+	private boolean fallbackOnUnavailable;
+
 	/**
 	 * Default constructor.
 	 */
@@ -60,14 +67,41 @@ public class FallbackTrustLinker implements TrustLinker {
 		this.trustLinkers.add(trustLinker);
 	}
 
+	/**
+	 * Sets whether to fall back to the next trust linker when a trust linker
+	 * reports its revocation service as being unavailable. When none of the
+	 * remaining trust linkers can decide, the last unavailability is reported.
+	 * Defaults to <code>false</code>.
+	 * 
+	 * @param fallbackOnUnavailable
+	 */
+	public void setFallbackOnUnavailable(final boolean fallbackOnUnavailable) {
+		this.fallbackOnUnavailable = fallbackOnUnavailable;
+	}
+
+	public boolean isFallbackOnUnavailable() {
+		return this.fallbackOnUnavailable;
+	}
+
 	@Override
 	public TrustLinkerResult hasTrustLink(X509Certificate childCertificate, X509Certificate certificate,
 			Date validationDate, RevocationData revocationData, AlgorithmPolicy algorithmPolicy)
 			throws TrustLinkerResultException, Exception {
+		TrustLinkerResultException unavailableException = null;
 		for (TrustLinker trustLinker : this.trustLinkers) {
 			LOGGER.debug("trying trust linker: {}", trustLinker.getClass().getSimpleName());
-			TrustLinkerResult result = trustLinker.hasTrustLink(childCertificate, certificate, validationDate,
-					revocationData, algorithmPolicy);
+			TrustLinkerResult result;
+			try {
+				result = trustLinker.hasTrustLink(childCertificate, certificate, validationDate, revocationData,
+						algorithmPolicy);
+			} catch (final TrustLinkerResultException e) {
+				if (this.fallbackOnUnavailable && isUnavailable(e)) {
+					LOGGER.debug("revocation service unavailable, falling back: {}", e.getMessage());
+					unavailableException = e;
+					continue;
+				}
+				throw e;
+			}
 			if (null == result) {
 				continue;
 			}
@@ -76,6 +110,73 @@ public class FallbackTrustLinker implements TrustLinker {
 			}
 			return result;
 		}
+		if (null != unavailableException) {
+			throw unavailableException;
+		}
 		return TrustLinkerResult.UNDECIDED;
 	}
+
+	@Override
+	public CompletableFuture<TrustLinkerResult> hasTrustLinkAsync(final X509Certificate childCertificate,
+			final X509Certificate certificate, final Date validationDate, final RevocationData revocationData,
+			final AlgorithmPolicy algorithmPolicy) {
+		return hasTrustLinkAsync(childCertificate, certificate, validationDate, revocationData, algorithmPolicy,
+				null);
+	}
+
+	/**
+	 * Runs blocking trust linkers via the given executor.
+	 */
+	@Override
+	public CompletableFuture<TrustLinkerResult> hasTrustLinkAsync(final X509Certificate childCertificate,
+			final X509Certificate certificate, final Date validationDate, final RevocationData revocationData,
+			final AlgorithmPolicy algorithmPolicy, final Executor executor) {
+		return hasTrustLinkAsync(this.trustLinkers.iterator(), null, childCertificate, certificate, validationDate,
+				revocationData, algorithmPolicy, executor);
+	}
+
+	private CompletableFuture<TrustLinkerResult> hasTrustLinkAsync(final Iterator<TrustLinker> trustLinkerIterator,
+			final TrustLinkerResultException unavailableException, final X509Certificate childCertificate,
+			final X509Certificate certificate, final Date validationDate, final RevocationData revocationData,
+			final AlgorithmPolicy algorithmPolicy, final Executor executor) {
+		if (false == trustLinkerIterator.hasNext()) {
+			if (null != unavailableException) {
+				final CompletableFuture<TrustLinkerResult> result = new CompletableFuture<>();
+				result.completeExceptionally(unavailableException);
+				return result;
+			}
+			return CompletableFuture.completedFuture(TrustLinkerResult.UNDECIDED);
+		}
+		final TrustLinker trustLinker = trustLinkerIterator.next();
+		LOGGER.debug("trying trust linker: {}", trustLinker.getClass().getSimpleName());
+		return AsyncTrustLinkerAdapter.adapt(trustLinker, executor)
+				.hasTrustLinkAsync(childCertificate, certificate, validationDate, revocationData, algorithmPolicy)
+				.handle((result, error) -> {
+					if (null != error) {
+						final Throwable cause = error instanceof CompletionException && null != error.getCause()
+								? error.getCause()
+								: error;
+						if (this.fallbackOnUnavailable && cause instanceof TrustLinkerResultException
+								&& isUnavailable((TrustLinkerResultException) cause)) {
+							LOGGER.debug("revocation service unavailable, falling back: {}", cause.getMessage());
+							return hasTrustLinkAsync(trustLinkerIterator, (TrustLinkerResultException) cause,
+									childCertificate, certificate, validationDate, revocationData, algorithmPolicy,
+									executor);
+						}
+						final CompletableFuture<TrustLinkerResult> failedResult = new CompletableFuture<>();
+						failedResult.completeExceptionally(cause);
+						return failedResult;
+					}
+					if (null == result || TrustLinkerResult.UNDECIDED == result) {
+						return hasTrustLinkAsync(trustLinkerIterator, unavailableException, childCertificate,
+								certificate, validationDate, revocationData, algorithmPolicy, executor);
+					}
+					return CompletableFuture.completedFuture(result);
+				}).thenCompose(Function.identity());
+	}
+
+	private static boolean isUnavailable(final TrustLinkerResultException e) {
+		final TrustLinkerResultReason reason = e.getReason();
+		return TrustLinkerResultReason.CRL_UNAVAILABLE == reason || TrustLinkerResultReason.OCSP_UNAVAILABLE == reason;
+	}
 }
@@ -0,0 +1,360 @@
+/*
+ * Java Trust Project.
+ * Copyright (C) 2021 e-Contract.be BV.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+
+package be.fedict.trust.linker;
+
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import be.fedict.trust.ValidationDeadline;
+import be.fedict.trust.policy.AlgorithmPolicy;
+import be.fedict.trust.revocation.RevocationData;
+
+/**
+ * Hedging trust linker. Starts a secondary trust linker next to the primary
+ * trust linker when the latter has not decided within a given delay, and takes
+ * the first decisive result. Typically combines an OCSP trust linker with a CRL
+ * trust linker backed by a warm CRL cache, so that a slow OCSP responder does
+ * not delay the CRL fallback by the full OCSP timeout.
+ * <p>
+ * A result is decisive when the trust link is trusted, or when it is rejected,
+ * e.g. because of a revoked certificate. An undecided result, an unavailable
+ * revocation service or any other error is not decisive, and makes the
+ * secondary trust linker start right away. Once a result is decisive, the
+ * revocation data of the other trust linker is discarded. When neither trust
+ * linker decides, the error of the primary trust linker, else the error of the
+ * secondary trust linker, is reported.
+ * </p>
+ * <p>
+ * Both trust linkers are started via the executor, so that a trust linker
+ * blocking the calling thread cannot hold up the other one. Cancelling the
+ * other trust linker is best-effort: it is skipped when it has not started yet
+ * and its future is cancelled, but a trust linker that is already running is
+ * not interrupted, nor is the underlying HTTP request aborted.
+ * </p>
+ */
+public class HedgedTrustLinker implements TrustLinker, AsyncTrustLinker {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(HedgedTrustLinker.class);
+
+	/**
+	 * Default hedge delay in milliseconds.
+	 */
+	public static final long DEFAULT_HEDGE_DELAY = 500;
+
+	private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		final Thread thread = new Thread(runnable, "jtrust-hedge");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final TrustLinker primaryTrustLinker;
+
+	private final TrustLinker secondaryTrustLinker;
+
+	private long hedgeDelay;
+
+	private Executor executor;
+
+	/**
+	 * Main constructor.
+	 * 
+	 * @param primaryTrustLinker   the trust linker that is tried first.
+	 * @param secondaryTrustLinker the trust linker that is started when the
+	 *                             primary trust linker is slow or cannot decide.
+	 */
+	public HedgedTrustLinker(final TrustLinker primaryTrustLinker, final TrustLinker secondaryTrustLinker) {
+		this.primaryTrustLinker = primaryTrustLinker;
+		this.secondaryTrustLinker = secondaryTrustLinker;
+		this.hedgeDelay = DEFAULT_HEDGE_DELAY;
+		this.executor = AsyncTrustLinkerAdapter.getDefaultExecutor();
+	}
+
+	/**
+	 * Sets the delay after which the secondary trust linker is started when the
+	 * primary trust linker has not decided yet.
+	 * 
+	 * @param hedgeDelay the delay in milliseconds. <code>0</code> starts both trust
+	 *                   linkers right away.
+	 */
+	public void setHedgeDelay(final long hedgeDelay) {
+		this.hedgeDelay = hedgeDelay;
+	}
+
+	public long getHedgeDelay() {
+		return this.hedgeDelay;
+	}
+
+	/**
+	 * Sets the executor starting both trust linkers, and running the blocking work
+	 * of the trust linkers. Defaults to the bounded pool of
+	 * {@link AsyncTrustLinkerAdapter#getDefaultExecutor()}, shared with the trust
+	 * validators.
+	 * 
+	 * @param executor
+	 */
+	public void setExecutor(final Executor executor) {
+		this.executor = executor;
+	}
+
+	@Override
+	public TrustLinkerResult hasTrustLink(final X509Certificate childCertificate, final X509Certificate certificate,
+			final Date validationDate, final RevocationData revocationData, final AlgorithmPolicy algorithmPolicy)
+			throws TrustLinkerResultException, Exception {
+		final CompletableFuture<TrustLinkerResult> result = hasTrustLinkAsync(childCertificate, certificate,
+				validationDate, revocationData, algorithmPolicy);
+		try {
+			return result.get();
+		} catch (final InterruptedException e) {
+			result.cancel(false);
+			Thread.currentThread().interrupt();
+			throw e;
+		} catch (final ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof Exception) {
+				throw (Exception) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw e;
+		}
+	}
+
+	@Override
+	public CompletableFuture<TrustLinkerResult> hasTrustLinkAsync(final X509Certificate childCertificate,
+			final X509Certificate certificate, final Date validationDate, final RevocationData revocationData,
+			final AlgorithmPolicy algorithmPolicy) {
+		final Race race = new Race(childCertificate, certificate, validationDate, revocationData, algorithmPolicy);
+		race.start();
+		return race.result;
+	}
+
+	private static boolean isDecisive(final TrustLinkerResult result, final Throwable error) {
+		if (null == error) {
+			return TrustLinkerResult.TRUSTED == result;
+		}
+		if (false == error instanceof TrustLinkerResultException) {
+			return false;
+		}
+		final TrustLinkerResultReason reason = ((TrustLinkerResultException) error).getReason();
+		return TrustLinkerResultReason.CRL_UNAVAILABLE != reason && TrustLinkerResultReason.OCSP_UNAVAILABLE != reason;
+	}
+
+	private final class Race {
+
+		private final X509Certificate childCertificate;
+
+		private final X509Certificate certificate;
+
+		private final Date validationDate;
+
+		private final RevocationData revocationData;
+
+		private final AlgorithmPolicy algorithmPolicy;
+
+		private final ValidationDeadline validationDeadline;
+
+		private final CompletableFuture<TrustLinkerResult> result;
+
+		private final AtomicBoolean secondaryStarted;
+
+		private volatile CompletableFuture<TrustLinkerResult> primaryResult;
+
+		private volatile CompletableFuture<TrustLinkerResult> secondaryResult;
+
+		private volatile ScheduledFuture<?> hedgeTimer;
+
+		private boolean primaryDone;
+
+		private boolean secondaryDone;
+
+		private Throwable primaryError;
+
+		private Throwable secondaryError;
+
+		Race(final X509Certificate childCertificate, final X509Certificate certificate, final Date validationDate,
+				final RevocationData revocationData, final AlgorithmPolicy algorithmPolicy) {
+			this.childCertificate = childCertificate;
+			this.certificate = certificate;
+			this.validationDate = validationDate;
+			this.revocationData = revocationData;
+			this.algorithmPolicy = algorithmPolicy;
+			this.validationDeadline = ValidationDeadline.getCurrent();
+			this.result = new CompletableFuture<>();
+			this.secondaryStarted = new AtomicBoolean();
+			// whatever completes the race, including the caller cancelling it, stops
+			// the remaining trust linker
+			this.result.whenComplete((trustLinkerResult, error) -> cancelRemaining());
+		}
+
+		void start() {
+			final RevocationData primaryRevocationData = newRevocationData();
+			this.primaryResult = run(HedgedTrustLinker.this.primaryTrustLinker, primaryRevocationData);
+			this.primaryResult.whenComplete(
+					(trustLinkerResult, error) -> complete(true, trustLinkerResult, error, primaryRevocationData));
+			if (HedgedTrustLinker.this.hedgeDelay <= 0) {
+				startSecondary();
+			} else if (false == this.result.isDone()) {
+				this.hedgeTimer = SCHEDULER.schedule(this::startSecondary, HedgedTrustLinker.this.hedgeDelay,
+						TimeUnit.MILLISECONDS);
+			}
+		}
+
+		private void startSecondary() {
+			if (this.result.isDone() || false == this.secondaryStarted.compareAndSet(false, true)) {
+				return;
+			}
+			LOGGER.debug("starting secondary trust linker: {}",
+					HedgedTrustLinker.this.secondaryTrustLinker.getClass().getSimpleName());
+			final RevocationData secondaryRevocationData = newRevocationData();
+			final ValidationDeadline previousValidationDeadline = ValidationDeadline
+					.setCurrent(this.validationDeadline);
+			try {
+				this.secondaryResult = run(HedgedTrustLinker.this.secondaryTrustLinker, secondaryRevocationData);
+			} finally {
+				ValidationDeadline.setCurrent(previousValidationDeadline);
+			}
+			this.secondaryResult
+					.whenComplete((trustLinkerResult, error) -> complete(false, trustLinkerResult, error,
+							secondaryRevocationData));
+			if (this.result.isDone()) {
+				this.secondaryResult.cancel(false);
+			}
+		}
+
+		private CompletableFuture<TrustLinkerResult> run(final TrustLinker trustLinker,
+				final RevocationData revocationData) {
+			final Executor executor = HedgedTrustLinker.this.executor;
+			// even an asynchronous trust linker might block before giving back its future
+			final CompletableFuture<CompletableFuture<TrustLinkerResult>> started = ValidationDeadline
+					.callAsync(() -> {
+						if (this.result.isDone()) {
+							final CompletableFuture<TrustLinkerResult> skipped = new CompletableFuture<>();
+							skipped.cancel(false);
+							return skipped;
+						}
+						if (trustLinker instanceof AsyncTrustLinker) {
+							return ((AsyncTrustLinker) trustLinker).hasTrustLinkAsync(this.childCertificate,
+									this.certificate, this.validationDate, revocationData, this.algorithmPolicy,
+									executor);
+						}
+						return CompletableFuture.completedFuture(trustLinker.hasTrustLink(this.childCertificate,
+								this.certificate, this.validationDate, revocationData, this.algorithmPolicy));
+					}, executor);
+			final CompletableFuture<TrustLinkerResult> trustLinkerResultFuture = started
+					.thenCompose(Function.identity());
+			trustLinkerResultFuture.whenComplete((trustLinkerResult, error) -> {
+				if (trustLinkerResultFuture.isCancelled()) {
+					started.thenAccept(future -> future.cancel(false));
+				}
+			});
+			return trustLinkerResultFuture;
+		}
+
+		private RevocationData newRevocationData() {
+			if (null == this.revocationData) {
+				return null;
+			}
+			return new RevocationData(this.revocationData.isRetainEvidence());
+		}
+
+		private void complete(final boolean primary, final TrustLinkerResult trustLinkerResult,
+				final Throwable error, final RevocationData linkerRevocationData) {
+			final Throwable cause = error instanceof CompletionException && null != error.getCause()
+					? error.getCause()
+					: error;
+			final boolean startSecondary;
+			synchronized (this) {
+				if (this.result.isDone()) {
+					return;
+				}
+				if (isDecisive(trustLinkerResult, cause)) {
+					LOGGER.debug("{} trust linker decided", primary ? "primary" : "secondary");
+					if (null != linkerRevocationData) {
+						this.revocationData.getOcspRevocationData()
+								.addAll(linkerRevocationData.getOcspRevocationData());
+						this.revocationData.getCrlRevocationData().addAll(linkerRevocationData.getCrlRevocationData());
+						this.revocationData.limitExpiry(linkerRevocationData.getExpiry());
+					}
+					if (null == cause) {
+						this.result.complete(trustLinkerResult);
+					} else {
+						this.result.completeExceptionally(cause);
+					}
+					return;
+				}
+				if (primary) {
+					this.primaryDone = true;
+					this.primaryError = cause;
+				} else {
+					this.secondaryDone = true;
+					this.secondaryError = cause;
+				}
+				if (this.primaryDone && this.secondaryDone) {
+					final Throwable reportedError = null != this.primaryError ? this.primaryError
+							: this.secondaryError;
+					if (null == reportedError) {
+						this.result.complete(TrustLinkerResult.UNDECIDED);
+					} else {
+						this.result.completeExceptionally(reportedError);
+					}
+					return;
+				}
+				startSecondary = primary;
+			}
+			if (startSecondary) {
+				LOGGER.debug("primary trust linker did not decide: {}", null != cause ? cause.getMessage() : null);
+				final ScheduledFuture<?> timer = this.hedgeTimer;
+				if (null != timer) {
+					timer.cancel(false);
+				}
+				startSecondary();
+			}
+		}
+
+		private void cancelRemaining() {
+			final ScheduledFuture<?> timer = this.hedgeTimer;
+			if (null != timer) {
+				timer.cancel(false);
+			}
+			final CompletableFuture<TrustLinkerResult> primary = this.primaryResult;
+			if (null != primary) {
+				primary.cancel(false);
+			}
+			final CompletableFuture<TrustLinkerResult> secondary = this.secondaryResult;
+			if (null != secondary) {
+				secondary.cancel(false);
+			}
+		}
+	}
+}
@@ -19,22 +19,16 @@
 
 package be.fedict.trust.linker;
 
-import java.io.IOException;
 import java.security.cert.X509Certificate;
 import java.util.Arrays;
 import java.util.Date;
 
-import org.bouncycastle.asn1.ASN1Encodable;
-import org.bouncycastle.asn1.ASN1Sequence;
 import org.bouncycastle.asn1.x509.AuthorityKeyIdentifier;
-import org.bouncycastle.asn1.x509.BasicConstraints;
-import org.bouncycastle.asn1.x509.Extension;
 import org.bouncycastle.asn1.x509.SubjectKeyIdentifier;
-import org.bouncycastle.cert.jcajce.JcaX509ExtensionUtils;
-import org.bouncycastle.x509.extension.X509ExtensionUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import be.fedict.trust.CertificateProfile;
 import be.fedict.trust.policy.AlgorithmPolicy;
 import be.fedict.trust.revocation.RevocationData;
 
@@ -130,31 +124,28 @@ public class PublicKeyTrustLinker implements TrustLinker {
 		/*
 		 * SKID/AKID sanity check
 		 */
-		final boolean isCa = isCa(certificate);
-		final boolean isChildCa = isCa(childCertificate);
+		final CertificateProfile certificateProfile = CertificateProfile.getInstance(certificate);
+		final CertificateProfile childCertificateProfile = CertificateProfile.getInstance(childCertificate);
+		final boolean isCa = certificateProfile.isCa();
+		final boolean isChildCa = childCertificateProfile.isCa();
 
-		final byte[] subjectKeyIdentifierData = certificate.getExtensionValue(Extension.subjectKeyIdentifier.getId());
-		final byte[] authorityKeyIdentifierData = childCertificate
-				.getExtensionValue(Extension.authorityKeyIdentifier.getId());
+		final SubjectKeyIdentifier subjectKeyIdentifier = certificateProfile.getSubjectKeyIdentifier();
+		final AuthorityKeyIdentifier authorityKeyIdentifier = childCertificateProfile.getAuthorityKeyIdentifier();
 
-		if (isCa && null == subjectKeyIdentifierData) {
+		if (isCa && null == subjectKeyIdentifier) {
 			LOGGER.error("certificate is CA and MUST contain a Subject Key Identifier");
 			throw new TrustLinkerResultException(TrustLinkerResultReason.NO_TRUST,
 					"certificate is CA and  MUST contain a Subject Key Identifier");
 		}
 
-		if (isChildCa && null == authorityKeyIdentifierData && null != subjectKeyIdentifierData) {
+		if (isChildCa && null == authorityKeyIdentifier && null != subjectKeyIdentifier) {
 			LOGGER.error("child certificate is CA and MUST contain an Authority Key Identifier");
 			// return new TrustLinkerResult(false,
 			// TrustLinkerResultReason.INVALID_TRUST,
 			// "child certificate is CA and MUST contain an Authority Key Identifier");
 		}
 
-		if (null != subjectKeyIdentifierData && null != authorityKeyIdentifierData) {
-			final AuthorityKeyIdentifier authorityKeyIdentifier = AuthorityKeyIdentifier
-					.getInstance(JcaX509ExtensionUtils.parseExtensionValue(authorityKeyIdentifierData));
-			final SubjectKeyIdentifier subjectKeyIdentifier = SubjectKeyIdentifier
-					.getInstance(JcaX509ExtensionUtils.parseExtensionValue(subjectKeyIdentifierData));
+		if (null != subjectKeyIdentifier && null != authorityKeyIdentifier) {
 			if (!Arrays.equals(authorityKeyIdentifier.getKeyIdentifier(), subjectKeyIdentifier.getKeyIdentifier())) {
 				LOGGER.error(
 						"certificate's subject key identifier does not match child certificate's authority key identifier");
@@ -172,26 +163,4 @@ public class PublicKeyTrustLinker implements TrustLinker {
 		 */
 		return TrustLinkerResult.UNDECIDED;
 	}
-
-	private boolean isCa(final X509Certificate certificate) {
-		final byte[] basicConstraintsValue = certificate.getExtensionValue(Extension.basicConstraints.getId());
-		if (null == basicConstraintsValue) {
-			return false;
-		}
-
-		ASN1Encodable basicConstraintsDecoded;
-		try {
-			basicConstraintsDecoded = X509ExtensionUtil.fromExtensionValue(basicConstraintsValue);
-		} catch (final IOException e) {
-			LOGGER.error("IO error", e);
-			return false;
-		}
-		if (false == basicConstraintsDecoded instanceof ASN1Sequence) {
-			LOGGER.debug("basic constraints extension is not an ASN1 sequence");
-			return false;
-		}
-		final ASN1Sequence basicConstraintsSequence = (ASN1Sequence) basicConstraintsDecoded;
-		final BasicConstraints basicConstraints = BasicConstraints.getInstance(basicConstraintsSequence);
-		return basicConstraints.isCA();
-	}
 }
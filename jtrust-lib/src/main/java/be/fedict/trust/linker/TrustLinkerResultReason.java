@@ -77,5 +77,10 @@ public enum TrustLinkerResultReason {
 	/**
 	 * Indicates that the OCSP server is unavailable.
 	 */
-	OCSP_UNAVAILABLE
+	OCSP_UNAVAILABLE,
+
+	/**
+	 * Indicates that the validation did not complete within its time budget.
+	 */
+	VALIDATION_TIMEOUT
 }
@@ -0,0 +1,82 @@
+/*
+ * Java Trust Project.
+ * Copyright (C) 2021 e-Contract.be BV.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.trust.ocsp;
+
+import java.net.URI;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import org.bouncycastle.cert.ocsp.OCSPResp;
+
+import be.fedict.trust.ServerNotAvailableException;
+import be.fedict.trust.ValidationDeadline;
+
+/**
+ * Makes a blocking OCSP repository available as {@link AsyncOcspRepository}, by
+ * running its lookups via an executor.
+ */
+public class AsyncOcspRepositoryAdapter implements OcspRepository, AsyncOcspRepository {
+
+	private final OcspRepository ocspRepository;
+
+	private final Executor executor;
+
+	/**
+	 * Main constructor.
+	 * 
+	 * @param ocspRepository the blocking OCSP repository.
+	 * @param executor       the executor running the blocking lookups. If
+	 *                       <code>null</code>, lookups run on the calling thread.
+	 */
+	public AsyncOcspRepositoryAdapter(final OcspRepository ocspRepository, final Executor executor) {
+		this.ocspRepository = ocspRepository;
+		this.executor = executor;
+	}
+
+	/**
+	 * Gives back the given OCSP repository as {@link AsyncOcspRepository}, adapting
+	 * it only when it cannot do non-blocking lookups itself.
+	 * 
+	 * @param ocspRepository the OCSP repository.
+	 * @param executor       the executor running blocking lookups.
+	 * @return the asynchronous OCSP repository.
+	 */
+	public static AsyncOcspRepository adapt(final OcspRepository ocspRepository, final Executor executor) {
+		if (ocspRepository instanceof AsyncOcspRepository) {
+			return (AsyncOcspRepository) ocspRepository;
+		}
+		return new AsyncOcspRepositoryAdapter(ocspRepository, executor);
+	}
+
+	@Override
+	public OCSPResp findOcspResponse(final URI ocspUri, final X509Certificate certificate,
+			final X509Certificate issuerCertificate, final Date validationDate) throws ServerNotAvailableException {
+		return this.ocspRepository.findOcspResponse(ocspUri, certificate, issuerCertificate, validationDate);
+	}
+
+	@Override
+	public CompletableFuture<OCSPResp> findOcspResponseAsync(final URI ocspUri, final X509Certificate certificate,
+			final X509Certificate issuerCertificate, final Date validationDate) {
+		return ValidationDeadline.callAsync(
+				() -> this.ocspRepository.findOcspResponse(ocspUri, certificate, issuerCertificate, validationDate),
+				this.executor);
+	}
+}
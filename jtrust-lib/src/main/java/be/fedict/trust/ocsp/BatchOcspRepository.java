@@ -0,0 +1,51 @@
+/*
+ * Java Trust Project.
+ * Copyright (C) 2021 e-Contract.be BV.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.trust.ocsp;
+
+import java.net.URI;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.List;
+
+import org.bouncycastle.cert.ocsp.OCSPResp;
+
+import be.fedict.trust.ServerNotAvailableException;
+
+/**
+ * OCSP repository that supports retrieving the status of multiple certificates
+ * of the same issuer via a single OCSP request.
+ */
+public interface BatchOcspRepository extends OcspRepository {
+
+	/**
+	 * Finds a single OCSP response covering all given certificates. The OCSP
+	 * response contains a single response per certificate that the OCSP responder
+	 * was able to answer.
+	 * 
+	 * @param ocspUri           the OCSP responder URI.
+	 * @param certificates      the certificates, all issued by the given issuer.
+	 * @param issuerCertificate the issuer certificate.
+	 * @param validationDate    the validation date.
+	 * @throws ServerNotAvailableException {@link ServerNotAvailableException} if
+	 *                                     the OCSP responder is not responding.
+	 * @return the OCSP response, or <code>null</code> if not found.
+	 */
+	OCSPResp findOcspResponses(URI ocspUri, List<X509Certificate> certificates, X509Certificate issuerCertificate,
+			Date validationDate) throws ServerNotAvailableException;
+}
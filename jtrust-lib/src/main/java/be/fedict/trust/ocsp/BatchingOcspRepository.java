@@ -0,0 +1,261 @@
+/*
+ * Java Trust Project.
+ * Copyright (C) 2021 e-Contract.be BV.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.trust.ocsp;
+
+import java.math.BigInteger;
+import java.net.URI;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import be.fedict.trust.ServerNotAvailableException;
+import be.fedict.trust.ServerType;
+import be.fedict.trust.ValidationDeadline;
+
+/**
+ * OCSP repository that groups concurrent OCSP lookups for certificates of the
+ * same issuer towards the same OCSP responder into multi-certificate OCSP
+ * requests. The first lookup of a batch waits for at most the linger time for
+ * other lookups to join, after which the batch is sent to the delegated
+ * {@link BatchOcspRepository}. All lookups of the batch receive the same OCSP
+ * response, from which {@link OcspTrustLinker} selects the matching single
+ * response.
+ * <p>
+ * The delegated OCSP repository is queried using the validation date of the
+ * first lookup of a batch.
+ * </p>
+ */
+public class BatchingOcspRepository implements OcspRepository {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(BatchingOcspRepository.class);
+
+	public static final int DEFAULT_MAX_BATCH_SIZE = 16;
+
+	public static final long DEFAULT_LINGER_TIME = 10;
+
+	private final BatchOcspRepository ocspRepository;
+
+	private final int maxBatchSize;
+
+	private final long lingerTime;
+
+	private final ConcurrentMap<BatchKey, Batch> pendingBatches;
+
+	private static class BatchKey {
+
+		private final URI ocspUri;
+		private final X509Certificate issuerCertificate;
+
+		public BatchKey(final URI ocspUri, final X509Certificate issuerCertificate) {
+			this.ocspUri = ocspUri;
+			this.issuerCertificate = issuerCertificate;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * this.ocspUri.hashCode() + this.issuerCertificate.hashCode();
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof BatchKey)) {
+				return false;
+			}
+			final BatchKey batchKey = (BatchKey) obj;
+			return this.ocspUri.equals(batchKey.ocspUri) && this.issuerCertificate.equals(batchKey.issuerCertificate);
+		}
+	}
+
+	private static class Batch {
+
+		private final int maxBatchSize;
+		private final Map<BigInteger, X509Certificate> certificates;
+		private final CompletableFuture<OCSPResp> future;
+		private boolean closed;
+
+		public Batch(final int maxBatchSize) {
+			this.maxBatchSize = maxBatchSize;
+			this.certificates = new LinkedHashMap<>();
+			this.future = new CompletableFuture<>();
+		}
+
+		public synchronized boolean add(final X509Certificate certificate) {
+			if (this.closed || this.certificates.size() >= this.maxBatchSize) {
+				return false;
+			}
+			this.certificates.putIfAbsent(certificate.getSerialNumber(), certificate);
+			if (this.certificates.size() >= this.maxBatchSize) {
+				notifyAll();
+			}
+			return true;
+		}
+
+		public synchronized List<X509Certificate> close(final long lingerTime) {
+			final long deadline = System.currentTimeMillis() + lingerTime;
+			long remaining = lingerTime;
+			while (remaining > 0 && this.certificates.size() < this.maxBatchSize) {
+				try {
+					wait(remaining);
+				} catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+				remaining = deadline - System.currentTimeMillis();
+			}
+			this.closed = true;
+			return new ArrayList<>(this.certificates.values());
+		}
+
+		public CompletableFuture<OCSPResp> getFuture() {
+			return this.future;
+		}
+	}
+
+	/**
+	 * Main constructor.
+	 * 
+	 * @param ocspRepository the delegated batch OCSP repository.
+	 */
+	public BatchingOcspRepository(final BatchOcspRepository ocspRepository) {
+		this(ocspRepository, DEFAULT_MAX_BATCH_SIZE, DEFAULT_LINGER_TIME);
+	}
+
+	/**
+	 * Main constructor.
+	 * 
+	 * @param ocspRepository the delegated batch OCSP repository.
+	 * @param maxBatchSize   the maximum number of certificates per OCSP request.
+	 * @param lingerTime     the maximum time in milliseconds to wait for other
+	 *                       lookups to join a batch.
+	 */
+	public BatchingOcspRepository(final BatchOcspRepository ocspRepository, final int maxBatchSize,
+			final long lingerTime) {
+		if (maxBatchSize < 1) {
+			throw new IllegalArgumentException("invalid maximum batch size");
+		}
+		this.ocspRepository = ocspRepository;
+		this.maxBatchSize = maxBatchSize;
+		this.lingerTime = lingerTime;
+		this.pendingBatches = new ConcurrentHashMap<>();
+	}
+
+	@Override
+	public OCSPResp findOcspResponse(final URI ocspUri, final X509Certificate certificate,
+			final X509Certificate issuerCertificate, final Date validationDate) throws ServerNotAvailableException {
+		if (null == ocspUri || null == issuerCertificate) {
+			return this.ocspRepository.findOcspResponse(ocspUri, certificate, issuerCertificate, validationDate);
+		}
+		final BatchKey batchKey = new BatchKey(ocspUri, issuerCertificate);
+		while (true) {
+			final Batch newBatch = new Batch(this.maxBatchSize);
+			newBatch.add(certificate);
+			final Batch batch = this.pendingBatches.putIfAbsent(batchKey, newBatch);
+			if (null == batch) {
+				return executeBatch(batchKey, newBatch, validationDate);
+			}
+			if (batch.add(certificate)) {
+				LOGGER.debug("joined pending OCSP batch for: {}", ocspUri);
+				return await(batch.getFuture());
+			}
+			// batch already closed or full
+			this.pendingBatches.remove(batchKey, batch);
+		}
+	}
+
+	private OCSPResp executeBatch(final BatchKey batchKey, final Batch batch, final Date validationDate)
+			throws ServerNotAvailableException {
+		final List<X509Certificate> certificates;
+		try {
+			certificates = batch.close(this.lingerTime);
+		} finally {
+			this.pendingBatches.remove(batchKey, batch);
+		}
+		LOGGER.debug("OCSP batch size: {}", certificates.size());
+		final CompletableFuture<OCSPResp> future = batch.getFuture();
+		try {
+			final OCSPResp ocspResp = this.ocspRepository.findOcspResponses(batchKey.ocspUri, certificates,
+					batchKey.issuerCertificate, validationDate);
+			future.complete(ocspResp);
+			return ocspResp;
+		} catch (final ServerNotAvailableException | RuntimeException | Error e) {
+			future.completeExceptionally(e);
+			throw e;
+		}
+	}
+
+	private OCSPResp await(final CompletableFuture<OCSPResp> future) throws ServerNotAvailableException {
+		final ValidationDeadline validationDeadline = ValidationDeadline.getCurrent();
+		try {
+			if (null == validationDeadline) {
+				return future.get();
+			}
+			return future.get(validationDeadline.getRemaining(), TimeUnit.MILLISECONDS);
+		} catch (final TimeoutException e) {
+			throw new ServerNotAvailableException("validation deadline exceeded while waiting for OCSP batch", ServerType.OCSP, e);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ServerNotAvailableException("interrupted while waiting for OCSP batch", ServerType.OCSP, e);
+		} catch (final ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof ServerNotAvailableException) {
+				final ServerNotAvailableException serverNotAvailableException = (ServerNotAvailableException) cause;
+				throw new ServerNotAvailableException(serverNotAvailableException.getMessage(),
+						serverNotAvailableException.getServerType(), serverNotAvailableException);
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new RuntimeException(cause);
+		}
+	}
+
+	/**
+	 * Gives back the maximum number of certificates per OCSP request.
+	 */
+	public int getMaxBatchSize() {
+		return this.maxBatchSize;
+	}
+
+	/**
+	 * Gives back the maximum time in milliseconds to wait for other lookups to
+	 * join a batch.
+	 */
+	public long getLingerTime() {
+		return this.lingerTime;
+	}
+}
@@ -0,0 +1,424 @@
+/*
+ * Java Trust Project.
+ * Copyright (C) 2021 e-Contract.be BV.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.trust.ocsp;
+
+import java.io.IOException;
+import java.net.URI;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.cert.ocsp.OCSPException;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.cert.ocsp.OCSPRespBuilder;
+import org.bouncycastle.cert.ocsp.SingleResp;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import be.fedict.trust.CryptoContext;
+import be.fedict.trust.ServerNotAvailableException;
+import be.fedict.trust.ServerType;
+import be.fedict.trust.cache.SingleFlight;
+import be.fedict.trust.cache.StaleIfErrorListener;
+
+/**
+ * A cached OCSP repository implementation. OCSP responses are cached per
+ * certificate, as identified by the OCSP certificate identifier (issuer name
+ * hash, issuer key hash and serial number). A cached OCSP response is only
+ * used for validation dates within the validity window of its single response,
+ * extended by the freshness interval, as accepted by {@link OcspTrustLinker}.
+ * <p>
+ * This implementation is thread-safe, as far as the passed
+ * {@link OcspRepository} is also thread-safe. Concurrent requests for the same
+ * certificate result in a single request towards the delegated OCSP
+ * repository.
+ * </p>
+ * <p>
+ * Optionally a stale-if-error grace period can be configured. When the OCSP
+ * responder is not available, an expired cached OCSP response keeps on being
+ * served during the grace period, and a {@link StaleIfErrorListener} gets
+ * notified. This is only useful when {@link OcspTrustLinker} is configured
+ * with a larger freshness interval than this cache.
+ * </p>
+ */
+public class CachedOcspRepository implements OcspRepository {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(CachedOcspRepository.class);
+
+	public static final int DEFAULT_MAX_CACHE_SIZE = 1000;
+
+	public static final int DEFAULT_RETRY_MINUTES = 5;
+
+	private final OcspRepository ocspRepository;
+
+	private final int maxCacheSize;
+
+	private final ConcurrentMap<CertificateID, CacheEntry> ocspCache;
+
+	private final SingleFlight<CertificateID, OCSPResp> singleFlight;
+
+	private long freshnessInterval;
+
+	private int staleIfErrorMinutes;
+
+	private int retryMinutes;
+
+	private volatile StaleIfErrorListener staleIfErrorListener;
+
+	private final ConcurrentMap<CertificateID, StaleState> staleStates;
+
+	private static class StaleState {
+
+		private final OCSPResp ocspResp;
+		private final Date staleSince;
+		private final ServerNotAvailableException cause;
+		private final long retryTime;
+
+		public StaleState(final OCSPResp ocspResp, final Date staleSince, final ServerNotAvailableException cause,
+				final long retryTime) {
+			this.ocspResp = ocspResp;
+			this.staleSince = staleSince;
+			this.cause = cause;
+			this.retryTime = retryTime;
+		}
+	}
+
+	private static class CacheEntry {
+
+		private final OCSPResp ocspResp;
+		private final long beginValidity;
+		private final long endValidity;
+
+		public CacheEntry(final OCSPResp ocspResp, final long beginValidity, final long endValidity) {
+			this.ocspResp = ocspResp;
+			this.beginValidity = beginValidity;
+			this.endValidity = endValidity;
+		}
+
+		public OCSPResp getOcspResp() {
+			return this.ocspResp;
+		}
+
+		public long getBeginValidity() {
+			return this.beginValidity;
+		}
+
+		public long getEndValidity() {
+			return this.endValidity;
+		}
+
+		public boolean isValid(final Date validationDate) {
+			final long time = validationDate.getTime();
+			return time >= this.beginValidity && time <= this.endValidity;
+		}
+	}
+
+	/**
+	 * Main constructor.
+	 * 
+	 * @param ocspRepository the delegated OCSP repository.
+	 */
+	public CachedOcspRepository(final OcspRepository ocspRepository) {
+		this(ocspRepository, DEFAULT_MAX_CACHE_SIZE);
+	}
+
+	/**
+	 * Main constructor.
+	 * 
+	 * @param ocspRepository the delegated OCSP repository.
+	 * @param maxCacheSize   the maximum number of cached OCSP responses.
+	 */
+	public CachedOcspRepository(final OcspRepository ocspRepository, final int maxCacheSize) {
+		if (maxCacheSize < 1) {
+			throw new IllegalArgumentException("invalid maximum cache size");
+		}
+		this.ocspRepository = ocspRepository;
+		this.maxCacheSize = maxCacheSize;
+		this.ocspCache = new ConcurrentHashMap<>();
+		this.singleFlight = new SingleFlight<>(ServerType.OCSP);
+		this.freshnessInterval = OcspTrustLinker.DEFAULT_FRESHNESS_INTERVAL;
+		this.retryMinutes = DEFAULT_RETRY_MINUTES;
+		this.staleStates = new ConcurrentHashMap<>();
+	}
+
+	@Override
+	public OCSPResp findOcspResponse(final URI ocspUri, final X509Certificate certificate,
+			final X509Certificate issuerCertificate, final Date validationDate) throws ServerNotAvailableException {
+		final CertificateID certificateId = getCertificateId(certificate, issuerCertificate);
+		if (null == certificateId) {
+			return this.ocspRepository.findOcspResponse(ocspUri, certificate, issuerCertificate, validationDate);
+		}
+		final OCSPResp cachedOcspResp = getCachedOcspResponse(certificateId, validationDate);
+		if (null != cachedOcspResp) {
+			LOGGER.debug("using cached OCSP response for: {}", certificate.getSubjectX500Principal());
+			return cachedOcspResp;
+		}
+		final StaleState staleState = getStaleState(certificateId, validationDate);
+		if (null != staleState && System.currentTimeMillis() < staleState.retryTime) {
+			LOGGER.debug("serving stale OCSP response until retry for: {}", certificate.getSubjectX500Principal());
+			notifyStaleServed(ocspUri, staleState);
+			return staleState.ocspResp;
+		}
+		final OCSPResp result = this.singleFlight.execute(certificateId, () -> {
+			// another thread might just have fetched the OCSP response
+			final OCSPResp refreshedOcspResp = getCachedOcspResponse(certificateId, validationDate);
+			if (null != refreshedOcspResp) {
+				return refreshedOcspResp;
+			}
+			final OCSPResp ocspResp;
+			try {
+				ocspResp = this.ocspRepository.findOcspResponse(ocspUri, certificate, issuerCertificate,
+						validationDate);
+			} catch (final ServerNotAvailableException e) {
+				final CacheEntry cacheEntry = this.ocspCache.get(certificateId);
+				if (null == cacheEntry || false == isWithinStaleIfErrorGrace(cacheEntry, validationDate)) {
+					throw e;
+				}
+				LOGGER.warn("OCSP responder not available, serving stale OCSP response for: {}",
+						certificate.getSubjectX500Principal());
+				this.staleStates.put(certificateId,
+						new StaleState(cacheEntry.getOcspResp(), new Date(cacheEntry.getEndValidity()), e,
+								System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(this.retryMinutes)));
+				return cacheEntry.getOcspResp();
+			}
+			this.staleStates.remove(certificateId);
+			cacheOcspResponse(certificateId, ocspResp);
+			return ocspResp;
+		});
+		final StaleState servedStaleState = this.staleStates.get(certificateId);
+		if (null != servedStaleState && servedStaleState.ocspResp == result) {
+			notifyStaleServed(ocspUri, servedStaleState);
+		}
+		return result;
+	}
+
+	private StaleState getStaleState(final CertificateID certificateId, final Date validationDate) {
+		final StaleState staleState = this.staleStates.get(certificateId);
+		if (null == staleState) {
+			return null;
+		}
+		final CacheEntry cacheEntry = this.ocspCache.get(certificateId);
+		if (null == cacheEntry || cacheEntry.getOcspResp() != staleState.ocspResp
+				|| false == isWithinStaleIfErrorGrace(cacheEntry, validationDate)) {
+			return null;
+		}
+		return staleState;
+	}
+
+	private boolean isWithinStaleIfErrorGrace(final CacheEntry cacheEntry, final Date validationDate) {
+		if (this.staleIfErrorMinutes <= 0) {
+			return false;
+		}
+		final long time = validationDate.getTime();
+		return time >= cacheEntry.getBeginValidity() && time <= getStaleDeadline(cacheEntry);
+	}
+
+	private long getStaleDeadline(final CacheEntry cacheEntry) {
+		return cacheEntry.getEndValidity() + TimeUnit.MINUTES.toMillis(this.staleIfErrorMinutes);
+	}
+
+	private void notifyStaleServed(final URI ocspUri, final StaleState staleState) {
+		final StaleIfErrorListener listener = this.staleIfErrorListener;
+		if (null == listener) {
+			return;
+		}
+		try {
+			listener.staleServed(ServerType.OCSP, ocspUri, staleState.staleSince, staleState.cause);
+		} catch (final RuntimeException e) {
+			LOGGER.warn("stale-if-error listener error: {}", e.getMessage(), e);
+		}
+	}
+
+	private OCSPResp getCachedOcspResponse(final CertificateID certificateId, final Date validationDate) {
+		final CacheEntry cacheEntry = this.ocspCache.get(certificateId);
+		if (null == cacheEntry) {
+			return null;
+		}
+		if (false == cacheEntry.isValid(validationDate)) {
+			LOGGER.debug("cached OCSP response not valid at: {}", validationDate);
+			return null;
+		}
+		return cacheEntry.getOcspResp();
+	}
+
+	private void cacheOcspResponse(final CertificateID certificateId, final OCSPResp ocspResp) {
+		if (null == ocspResp) {
+			return;
+		}
+		if (OCSPRespBuilder.SUCCESSFUL != ocspResp.getStatus()) {
+			LOGGER.debug("not caching OCSP response with status: {}", ocspResp.getStatus());
+			return;
+		}
+		final BasicOCSPResp basicOCSPResp;
+		try {
+			basicOCSPResp = (BasicOCSPResp) ocspResp.getResponseObject();
+		} catch (final OCSPException | ClassCastException e) {
+			LOGGER.debug("not caching invalid OCSP response: {}", e.getMessage());
+			return;
+		}
+		if (null == basicOCSPResp) {
+			return;
+		}
+		for (final SingleResp singleResp : basicOCSPResp.getResponses()) {
+			if (false == certificateId.equals(singleResp.getCertID())) {
+				continue;
+			}
+			final long thisUpdate = singleResp.getThisUpdate().getTime();
+			final long nextUpdate = null != singleResp.getNextUpdate() ? singleResp.getNextUpdate().getTime()
+					: thisUpdate;
+			final CacheEntry cacheEntry = new CacheEntry(ocspResp, thisUpdate - this.freshnessInterval,
+					nextUpdate + this.freshnessInterval);
+			this.ocspCache.put(certificateId, cacheEntry);
+			evict();
+			return;
+		}
+		LOGGER.debug("no matching single response, not caching OCSP response");
+	}
+
+	/**
+	 * Makes sure we stay within the maximum cache size. First evicts the expired
+	 * OCSP responses, next the OCSP responses that expire first.
+	 */
+	private void evict() {
+		if (this.ocspCache.size() <= this.maxCacheSize) {
+			return;
+		}
+		synchronized (this.ocspCache) {
+			final long now = System.currentTimeMillis();
+			final Iterator<Map.Entry<CertificateID, CacheEntry>> iterator = this.ocspCache.entrySet().iterator();
+			while (iterator.hasNext()) {
+				final Map.Entry<CertificateID, CacheEntry> entry = iterator.next();
+				if (getStaleDeadline(entry.getValue()) < now) {
+					iterator.remove();
+					this.staleStates.remove(entry.getKey());
+				}
+			}
+			while (this.ocspCache.size() > this.maxCacheSize) {
+				Map.Entry<CertificateID, CacheEntry> victim = null;
+				for (final Map.Entry<CertificateID, CacheEntry> entry : this.ocspCache.entrySet()) {
+					if (null == victim || entry.getValue().getEndValidity() < victim.getValue().getEndValidity()) {
+						victim = entry;
+					}
+				}
+				if (null == victim) {
+					break;
+				}
+				this.ocspCache.remove(victim.getKey(), victim.getValue());
+				this.staleStates.remove(victim.getKey());
+			}
+		}
+	}
+
+	private CertificateID getCertificateId(final X509Certificate certificate,
+			final X509Certificate issuerCertificate) {
+		if (null == certificate || null == issuerCertificate) {
+			return null;
+		}
+		try {
+			return CryptoContext.createCertificateID(issuerCertificate, certificate.getSerialNumber());
+		} catch (final CertificateEncodingException | IOException e) {
+			LOGGER.warn("could not create OCSP certificate identifier: {}", e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Gives back the number of cached OCSP responses.
+	 */
+	public int getCacheSize() {
+		return this.ocspCache.size();
+	}
+
+	/**
+	 * Gives back the maximum number of cached OCSP responses.
+	 */
+	public int getMaxCacheSize() {
+		return this.maxCacheSize;
+	}
+
+	/**
+	 * Sets the OCSP response freshness interval in milliseconds. Should be equal
+	 * to the freshness interval of the {@link OcspTrustLinker}.
+	 * 
+	 * @param freshnessInterval
+	 */
+	public void setFreshnessInterval(final long freshnessInterval) {
+		this.freshnessInterval = freshnessInterval;
+	}
+
+	/**
+	 * Gives back the OCSP response freshness interval in milliseconds.
+	 */
+	public long getFreshnessInterval() {
+		return this.freshnessInterval;
+	}
+
+	/**
+	 * Gives back the stale-if-error grace period in minutes.
+	 */
+	public int getStaleIfErrorMinutes() {
+		return this.staleIfErrorMinutes;
+	}
+
+	/**
+	 * Sets the stale-if-error grace period in minutes. Within this period after
+	 * a cached OCSP response expired, the cached OCSP response is still served
+	 * when the OCSP responder is not available. Defaults to <code>0</code>,
+	 * disabling the grace period.
+	 * 
+	 * @param staleIfErrorMinutes the grace period in minutes.
+	 */
+	public void setStaleIfErrorMinutes(final int staleIfErrorMinutes) {
+		this.staleIfErrorMinutes = staleIfErrorMinutes;
+	}
+
+	/**
+	 * Gives back the period in minutes after which the OCSP responder is
+	 * contacted again while serving a stale OCSP response.
+	 */
+	public int getRetryMinutes() {
+		return this.retryMinutes;
+	}
+
+	/**
+	 * Sets the period in minutes after which the OCSP responder is contacted
+	 * again while serving a stale OCSP response.
+	 * 
+	 * @param retryMinutes the retry period in minutes.
+	 */
+	public void setRetryMinutes(final int retryMinutes) {
+		this.retryMinutes = retryMinutes;
+	}
+
+	/**
+	 * Sets the listener that gets notified when a stale OCSP response is served.
+	 * 
+	 * @param staleIfErrorListener the listener, can be <code>null</code>.
+	 */
+	public void setStaleIfErrorListener(final StaleIfErrorListener staleIfErrorListener) {
+		this.staleIfErrorListener = staleIfErrorListener;
+	}
+}
@@ -19,48 +19,48 @@
 
 package be.fedict.trust.ocsp;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.security.cert.CertificateFactory;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
 import java.security.cert.X509Certificate;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.temporal.ChronoUnit;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
+import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.codec.digest.DigestUtils;
-import org.bouncycastle.asn1.ASN1InputStream;
-import org.bouncycastle.asn1.ASN1ObjectIdentifier;
-import org.bouncycastle.asn1.DERIA5String;
-import org.bouncycastle.asn1.DEROctetString;
 import org.bouncycastle.asn1.ocsp.OCSPObjectIdentifiers;
 import org.bouncycastle.asn1.ocsp.OCSPResponseStatus;
-import org.bouncycastle.asn1.x509.AccessDescription;
-import org.bouncycastle.asn1.x509.AuthorityInformationAccess;
-import org.bouncycastle.asn1.x509.Extension;
-import org.bouncycastle.asn1.x509.GeneralName;
 import org.bouncycastle.asn1.x509.KeyPurposeId;
-import org.bouncycastle.asn1.x509.X509ObjectIdentifiers;
 import org.bouncycastle.cert.X509CertificateHolder;
-import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
 import org.bouncycastle.cert.ocsp.BasicOCSPResp;
 import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.cert.ocsp.OCSPException;
 import org.bouncycastle.cert.ocsp.OCSPResp;
 import org.bouncycastle.cert.ocsp.RevokedStatus;
 import org.bouncycastle.cert.ocsp.SingleResp;
-import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.bouncycastle.operator.ContentVerifierProvider;
-import org.bouncycastle.operator.DigestCalculatorProvider;
-import org.bouncycastle.operator.jcajce.JcaContentVerifierProviderBuilder;
-import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+import org.bouncycastle.operator.OperatorCreationException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import be.fedict.trust.CertificateProfile;
+import be.fedict.trust.CryptoContext;
 import be.fedict.trust.ServerNotAvailableException;
+import be.fedict.trust.linker.AsyncTrustLinker;
+import be.fedict.trust.linker.AsyncTrustLinkerAdapter;
 import be.fedict.trust.linker.PublicKeyTrustLinker;
 import be.fedict.trust.linker.TrustLinker;
 import be.fedict.trust.linker.TrustLinkerResult;
@@ -76,10 +76,21 @@ import be.fedict.trust.revocation.RevocationData;
  * @author Frank Cornelis
  * 
  */
-public class OcspTrustLinker implements TrustLinker {
+public class OcspTrustLinker implements TrustLinker, AsyncTrustLinker {
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(OcspTrustLinker.class);
 
+	/**
+	 * Verified OCSP Responder certificates, per OCSP Responder certificate and
+	 * issuing CA certificate digest. Only the validity period is checked again.
+	 */
+	private static final Map<String, X509Certificate> VERIFIED_OCSP_RESPONDERS = createLruMap(256);
+
+	/**
+	 * Digests of OCSP responses of which the signature has been verified.
+	 */
+	private static final Map<String, Boolean> VERIFIED_OCSP_RESPONSES = createLruMap(4096);
+
 	private final OcspRepository ocspRepository;
 
 	/**
@@ -132,6 +143,72 @@ public class OcspTrustLinker implements TrustLinker {
 		} catch (final ServerNotAvailableException e) {
 			throw new TrustLinkerResultException(TrustLinkerResultReason.OCSP_UNAVAILABLE, "OCSP server is unavailable!", e);
 		}
+		return checkOcspResponse(ocspResp, ocspUri, childCertificate, certificate, validationDate, revocationData,
+				algorithmPolicy);
+	}
+
+	/**
+	 * Non-blocking when the OCSP repository is an {@link AsyncOcspRepository}.
+	 * Otherwise the OCSP repository is queried on the calling thread.
+	 */
+	@Override
+	public CompletableFuture<TrustLinkerResult> hasTrustLinkAsync(final X509Certificate childCertificate,
+			final X509Certificate certificate, final Date validationDate, final RevocationData revocationData,
+			final AlgorithmPolicy algorithmPolicy) {
+		return hasTrustLinkAsync(childCertificate, certificate, validationDate, revocationData, algorithmPolicy,
+				null);
+	}
+
+	/**
+	 * Non-blocking when the OCSP repository is an {@link AsyncOcspRepository}.
+	 * Otherwise the OCSP repository is queried via the given executor.
+	 */
+	@Override
+	public CompletableFuture<TrustLinkerResult> hasTrustLinkAsync(final X509Certificate childCertificate,
+			final X509Certificate certificate, final Date validationDate, final RevocationData revocationData,
+			final AlgorithmPolicy algorithmPolicy, final Executor executor) {
+		if (false == this.ocspRepository instanceof AsyncOcspRepository) {
+			return new AsyncTrustLinkerAdapter(this, executor).hasTrustLinkAsync(childCertificate, certificate,
+					validationDate, revocationData, algorithmPolicy);
+		}
+		final CompletableFuture<TrustLinkerResult> result = new CompletableFuture<>();
+		final URI ocspUri;
+		try {
+			ocspUri = getOcspUri(childCertificate);
+		} catch (final IOException | URISyntaxException e) {
+			result.completeExceptionally(e);
+			return result;
+		}
+		LOGGER.debug("OCSP URI: {}", ocspUri);
+		((AsyncOcspRepository) this.ocspRepository)
+				.findOcspResponseAsync(ocspUri, childCertificate, certificate, validationDate)
+				.whenComplete((ocspResp, error) -> {
+					if (null != error) {
+						final Throwable cause = error instanceof CompletionException && null != error.getCause()
+								? error.getCause()
+								: error;
+						if (cause instanceof ServerNotAvailableException) {
+							result.completeExceptionally(new TrustLinkerResultException(
+									TrustLinkerResultReason.OCSP_UNAVAILABLE, "OCSP server is unavailable!", cause));
+						} else {
+							result.completeExceptionally(cause);
+						}
+						return;
+					}
+					try {
+						result.complete(checkOcspResponse(ocspResp, ocspUri, childCertificate, certificate,
+								validationDate, revocationData, algorithmPolicy));
+					} catch (final Exception e) {
+						result.completeExceptionally(e);
+					}
+				});
+		return result;
+	}
+
+	private TrustLinkerResult checkOcspResponse(final OCSPResp ocspResp, final URI ocspUri,
+			final X509Certificate childCertificate, final X509Certificate certificate, final Date validationDate,
+			final RevocationData revocationData, final AlgorithmPolicy algorithmPolicy)
+			throws TrustLinkerResultException, Exception {
 		if (null == ocspResp) {
 			LOGGER.debug("OCSP response not found");
 			return TrustLinkerResult.UNDECIDED;
@@ -158,9 +235,7 @@ public class OcspTrustLinker implements TrustLinker {
 			/*
 			 * This means that the OCSP response has been signed by the issuing CA itself.
 			 */
-			final ContentVerifierProvider contentVerifierProvider = new JcaContentVerifierProviderBuilder()
-					.setProvider(BouncyCastleProvider.PROVIDER_NAME).build(certificate.getPublicKey());
-			final boolean verificationResult = basicOCSPResp.isSignatureValid(contentVerifierProvider);
+			final boolean verificationResult = isSignatureValid(basicOCSPResp, certificate.getPublicKey());
 			if (false == verificationResult) {
 				LOGGER.debug("OCSP response signature invalid");
 				return TrustLinkerResult.UNDECIDED;
@@ -171,21 +246,31 @@ public class OcspTrustLinker implements TrustLinker {
 			 * course with a CA that issues the OCSP Responses itself.
 			 */
 
-			final X509CertificateHolder ocspResponderCertificate = responseCertificates[0];
-			final ContentVerifierProvider contentVerifierProvider = new JcaContentVerifierProviderBuilder()
-					.setProvider(BouncyCastleProvider.PROVIDER_NAME).build(ocspResponderCertificate);
+			final X509CertificateHolder ocspResponderCertificateHolder = responseCertificates[0];
+			final byte[] encodedCertificate = certificate.getEncoded();
+			final boolean caIsOcspResponder = Arrays.equals(encodedCertificate,
+					ocspResponderCertificateHolder.getEncoded());
+			final String ocspResponderKey = getOcspResponderKey(ocspResponderCertificateHolder, encodedCertificate);
+			final X509Certificate verifiedOcspResponderCertificate = VERIFIED_OCSP_RESPONDERS.get(ocspResponderKey);
+			final X509Certificate ocspResponderCertificate;
+			if (caIsOcspResponder) {
+				ocspResponderCertificate = certificate;
+			} else if (null != verifiedOcspResponderCertificate) {
+				ocspResponderCertificate = verifiedOcspResponderCertificate;
+			} else {
+				ocspResponderCertificate = CryptoContext.generateCertificate(ocspResponderCertificateHolder.getEncoded());
+			}
 
-			final boolean verificationResult = basicOCSPResp.isSignatureValid(contentVerifierProvider);
+			final boolean verificationResult = isSignatureValid(basicOCSPResp, ocspResponderCertificate.getPublicKey());
 			if (false == verificationResult) {
 				LOGGER.debug("OCSP Responser response signature invalid");
 				return TrustLinkerResult.UNDECIDED;
 			}
-			if (false == Arrays.equals(certificate.getEncoded(), ocspResponderCertificate.getEncoded())) {
+			if (false == caIsOcspResponder) {
 				// check certificate signature algorithm
 				algorithmPolicy.checkSignatureAlgorithm(
-						ocspResponderCertificate.getSignatureAlgorithm().getAlgorithm().getId(), validationDate);
+						ocspResponderCertificateHolder.getSignatureAlgorithm().getAlgorithm().getId(), validationDate);
 
-				X509Certificate issuingCaCertificate;
 				if (responseCertificates.length < 2) {
 					// so the OCSP certificate chain only contains a single
 					// entry
@@ -193,48 +278,47 @@ public class OcspTrustLinker implements TrustLinker {
 					/*
 					 * Here we assume that the OCSP Responder is directly signed by the CA.
 					 */
-					issuingCaCertificate = certificate;
 				} else {
-					final CertificateFactory certificateFactory = CertificateFactory.getInstance("X.509");
-					issuingCaCertificate = (X509Certificate) certificateFactory
-							.generateCertificate(new ByteArrayInputStream(responseCertificates[1].getEncoded()));
 					/*
 					 * Is next check really required?
 					 */
-					if (false == certificate.equals(issuingCaCertificate)) {
+					if (false == Arrays.equals(encodedCertificate, responseCertificates[1].getEncoded())) {
 						LOGGER.debug("OCSP responder certificate not issued by CA");
 						return TrustLinkerResult.UNDECIDED;
 					}
 				}
+				final X509Certificate issuingCaCertificate = certificate;
 				// check certificate signature
 				algorithmPolicy.checkSignatureAlgorithm(issuingCaCertificate.getSigAlgOID(), validationDate);
 
-				final PublicKeyTrustLinker publicKeyTrustLinker = new PublicKeyTrustLinker();
-				final CertificateFactory certificateFactory = CertificateFactory.getInstance("X.509");
-				final X509Certificate x509OcspResponderCertificate = (X509Certificate) certificateFactory
-						.generateCertificate(new ByteArrayInputStream(ocspResponderCertificate.getEncoded()));
-				LOGGER.debug("OCSP Responder public key fingerprint: {}",
-						DigestUtils.sha1Hex(x509OcspResponderCertificate.getPublicKey().getEncoded()));
-				publicKeyTrustLinker.hasTrustLink(x509OcspResponderCertificate, issuingCaCertificate, validationDate,
-						revocationData, algorithmPolicy);
-				if (null == x509OcspResponderCertificate
-						.getExtensionValue(OCSPObjectIdentifiers.id_pkix_ocsp_nocheck.getId())) {
-					LOGGER.debug("OCSP Responder certificate should have id-pkix-ocsp-nocheck");
-					/*
-					 * TODO: perform CRL validation on the OCSP Responder certificate. On the other
-					 * hand, do we really want to check the checker?
-					 */
-					return TrustLinkerResult.UNDECIDED;
-				}
-				final List<String> extendedKeyUsage = x509OcspResponderCertificate
-						.getExtendedKeyUsage();
-				if (null == extendedKeyUsage) {
-					LOGGER.debug("OCSP Responder certificate has no extended key usage extension");
-					return TrustLinkerResult.UNDECIDED;
-				}
-				if (false == extendedKeyUsage.contains(KeyPurposeId.id_kp_OCSPSigning.getId())) {
-					LOGGER.debug("OCSP Responder certificate should have a OCSPSigning extended key usage");
-					return TrustLinkerResult.UNDECIDED;
+				if (null != verifiedOcspResponderCertificate) {
+					LOGGER.debug("OCSP Responder certificate already verified");
+					checkValidity(verifiedOcspResponderCertificate, validationDate);
+				} else {
+					final PublicKeyTrustLinker publicKeyTrustLinker = new PublicKeyTrustLinker();
+					LOGGER.debug("OCSP Responder public key fingerprint: {}",
+							DigestUtils.sha1Hex(ocspResponderCertificate.getPublicKey().getEncoded()));
+					publicKeyTrustLinker.hasTrustLink(ocspResponderCertificate, issuingCaCertificate, validationDate,
+							revocationData, algorithmPolicy);
+					if (null == ocspResponderCertificate
+							.getExtensionValue(OCSPObjectIdentifiers.id_pkix_ocsp_nocheck.getId())) {
+						LOGGER.debug("OCSP Responder certificate should have id-pkix-ocsp-nocheck");
+						/*
+						 * TODO: perform CRL validation on the OCSP Responder certificate. On the other
+						 * hand, do we really want to check the checker?
+						 */
+						return TrustLinkerResult.UNDECIDED;
+					}
+					final List<String> extendedKeyUsage = ocspResponderCertificate.getExtendedKeyUsage();
+					if (null == extendedKeyUsage) {
+						LOGGER.debug("OCSP Responder certificate has no extended key usage extension");
+						return TrustLinkerResult.UNDECIDED;
+					}
+					if (false == extendedKeyUsage.contains(KeyPurposeId.id_kp_OCSPSigning.getId())) {
+						LOGGER.debug("OCSP Responder certificate should have a OCSPSigning extended key usage");
+						return TrustLinkerResult.UNDECIDED;
+					}
+					VERIFIED_OCSP_RESPONDERS.put(ocspResponderKey, ocspResponderCertificate);
 				}
 			} else {
 				LOGGER.debug("OCSP Responder certificate equals the CA certificate");
@@ -242,10 +326,8 @@ public class OcspTrustLinker implements TrustLinker {
 			}
 		}
 
-		final DigestCalculatorProvider digCalcProv = new JcaDigestCalculatorProviderBuilder()
-				.setProvider(BouncyCastleProvider.PROVIDER_NAME).build();
-		final CertificateID certificateId = new CertificateID(digCalcProv.get(CertificateID.HASH_SHA1),
-				new JcaX509CertificateHolder(certificate), childCertificate.getSerialNumber());
+		final CertificateID certificateId = CryptoContext.createCertificateID(certificate,
+				childCertificate.getSerialNumber());
 
 		final SingleResp[] singleResps = basicOCSPResp.getResponses();
 		for (final SingleResp singleResp : singleResps) {
@@ -278,16 +360,17 @@ public class OcspTrustLinker implements TrustLinker {
 				LOGGER.warn("OCSP response expired");
 				continue;
 			}
+			final Date expiry = Date.from(endValidity.atZone(ZoneId.systemDefault()).toInstant());
 			if (null == singleResp.getCertStatus()) {
 				LOGGER.debug("OCSP OK for: {}", childCertificate.getSubjectX500Principal());
-				addRevocationData(revocationData, ocspResp, ocspUri);
+				addRevocationData(revocationData, ocspResp, ocspUri, expiry);
 				return TrustLinkerResult.TRUSTED;
 			} else {
 				LOGGER.debug("OCSP certificate status: {}", singleResp.getCertStatus().getClass().getName());
 				if (singleResp.getCertStatus() instanceof RevokedStatus) {
 					LOGGER.debug("OCSP status revoked");
 				}
-				addRevocationData(revocationData, ocspResp, ocspUri);
+				addRevocationData(revocationData, ocspResp, ocspUri, expiry);
 				throw new TrustLinkerResultException(TrustLinkerResultReason.INVALID_REVOCATION_STATUS,
 						"certificate revoked by OCSP");
 			}
@@ -297,55 +380,91 @@ public class OcspTrustLinker implements TrustLinker {
 		return TrustLinkerResult.UNDECIDED;
 	}
 
-	private void addRevocationData(final RevocationData revocationData, final OCSPResp ocspResp, final URI uri) throws IOException {
-		if (null == revocationData) {
-			return;
+	/**
+	 * Verifies the signature of the given OCSP response. Successful verifications
+	 * are memoized per digest of the OCSP response and verification key.
+	 */
+	private static boolean isSignatureValid(final BasicOCSPResp basicOCSPResp, final PublicKey publicKey)
+			throws OperatorCreationException, OCSPException, IOException, NoSuchAlgorithmException {
+		final byte[] encodedPublicKey = publicKey.getEncoded();
+		final String responseKey;
+		if (null != encodedPublicKey) {
+			final MessageDigest messageDigest = CryptoContext.getMessageDigest("SHA-256");
+			messageDigest.update(basicOCSPResp.getEncoded());
+			messageDigest.update(encodedPublicKey);
+			responseKey = Hex.encodeHexString(messageDigest.digest());
+			if (VERIFIED_OCSP_RESPONSES.containsKey(responseKey)) {
+				LOGGER.debug("OCSP response signature already verified");
+				return true;
+			}
+		} else {
+			responseKey = null;
 		}
-		final OCSPRevocationData ocspRevocationData = new OCSPRevocationData(ocspResp.getEncoded(), uri.toString());
-		revocationData.getOcspRevocationData().add(ocspRevocationData);
+		final ContentVerifierProvider contentVerifierProvider = CryptoContext.getContentVerifierProvider(publicKey);
+		final boolean verificationResult = basicOCSPResp.isSignatureValid(contentVerifierProvider);
+		if (verificationResult && null != responseKey) {
+			VERIFIED_OCSP_RESPONSES.put(responseKey, Boolean.TRUE);
+		}
+		return verificationResult;
 	}
 
-	private URI getOcspUri(final X509Certificate certificate) throws IOException, URISyntaxException {
-		final URI ocspURI = getAccessLocation(certificate, X509ObjectIdentifiers.ocspAccessMethod);
-		return ocspURI;
+	private static String getOcspResponderKey(final X509CertificateHolder ocspResponderCertificate,
+			final byte[] encodedIssuingCaCertificate) throws IOException, NoSuchAlgorithmException {
+		final MessageDigest messageDigest = CryptoContext.getMessageDigest("SHA-256");
+		final String ocspResponderDigest = Hex.encodeHexString(messageDigest.digest(ocspResponderCertificate.getEncoded()));
+		return ocspResponderDigest + ":" + Hex.encodeHexString(messageDigest.digest(encodedIssuingCaCertificate));
 	}
 
-	private URI getAccessLocation(final X509Certificate certificate, final ASN1ObjectIdentifier accessMethod)
-			throws IOException, URISyntaxException {
-		final byte[] authInfoAccessExtensionValue = certificate.getExtensionValue(Extension.authorityInfoAccess.getId());
-		if (null == authInfoAccessExtensionValue) {
-			return null;
+	/**
+	 * Checks the validity period of an already verified OCSP Responder
+	 * certificate, like {@link PublicKeyTrustLinker} does.
+	 */
+	private static void checkValidity(final X509Certificate ocspResponderCertificate, final Date validationDate)
+			throws TrustLinkerResultException {
+		if (validationDate.before(ocspResponderCertificate.getNotBefore())) {
+			LOGGER.debug("OCSP Responder certificate is not yet valid");
+			throw new TrustLinkerResultException(TrustLinkerResultReason.INVALID_VALIDITY_INTERVAL,
+					"certificate is not yet valid");
 		}
-		AuthorityInformationAccess authorityInformationAccess;
-		try (final ASN1InputStream authInfoStream = new ASN1InputStream(new ByteArrayInputStream(authInfoAccessExtensionValue))) {
-			final DEROctetString oct = (DEROctetString) (authInfoStream.readObject());
-			try (final ASN1InputStream octStream = new ASN1InputStream(oct.getOctets())) {
-				authorityInformationAccess = AuthorityInformationAccess.getInstance(octStream.readObject());
-			}
+		if (validationDate.after(ocspResponderCertificate.getNotAfter())) {
+			LOGGER.debug("OCSP Responder certificate already expired");
+			throw new TrustLinkerResultException(TrustLinkerResultReason.INVALID_VALIDITY_INTERVAL,
+					"certificate already expired");
 		}
-		final AccessDescription[] accessDescriptions = authorityInformationAccess.getAccessDescriptions();
-		for (final AccessDescription accessDescription : accessDescriptions) {
-			LOGGER.debug("access method: " + accessDescription.getAccessMethod());
-			final boolean correctAccessMethod = accessDescription.getAccessMethod().equals(accessMethod);
-			if (!correctAccessMethod) {
-				continue;
-			}
-			final GeneralName gn = accessDescription.getAccessLocation();
-			if (gn.getTagNo() != GeneralName.uniformResourceIdentifier) {
-				LOGGER.debug("not a uniform resource identifier");
-				continue;
+	}
+
+	private static <K, V> Map<K, V> createLruMap(final int maxSize) {
+		return Collections.synchronizedMap(new LinkedHashMap<K, V>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<K, V> eldest) {
+				return size() > maxSize;
 			}
-			final DERIA5String str = DERIA5String.getInstance(gn.getName());
-			final String accessLocation = str.getString();
-			LOGGER.debug("access location: {}", accessLocation);
-			final URI uri = toURI(accessLocation);
-			return uri;
+		});
+	}
+
+	/**
+	 * Fills up the revocation data, if not null, with the used OCSP response. The
+	 * encoded OCSP response is only added when the revocation data retains the
+	 * evidence.
+	 */
+	private void addRevocationData(final RevocationData revocationData, final OCSPResp ocspResp, final URI uri,
+			final Date expiry) throws IOException {
+		if (null == revocationData) {
+			return;
 		}
-		return null;
+		revocationData.limitExpiry(expiry);
+		if (false == revocationData.isRetainEvidence()) {
+			return;
+		}
+		final OCSPRevocationData ocspRevocationData = new OCSPRevocationData(ocspResp.getEncoded(), uri.toString(),
+				expiry);
+		revocationData.getOcspRevocationData().add(ocspRevocationData);
 	}
 
-	private URI toURI(final String str) throws URISyntaxException {
-		final URI uri = new URI(str);
-		return uri;
+	private URI getOcspUri(final X509Certificate certificate) throws IOException, URISyntaxException {
+		return CertificateProfile.getInstance(certificate).getOcspUri();
 	}
 }
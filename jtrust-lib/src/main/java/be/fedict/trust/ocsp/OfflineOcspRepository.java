@@ -26,19 +26,16 @@ import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
 
-import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
 import org.bouncycastle.cert.ocsp.BasicOCSPResp;
 import org.bouncycastle.cert.ocsp.CertificateID;
 import org.bouncycastle.cert.ocsp.OCSPException;
 import org.bouncycastle.cert.ocsp.OCSPResp;
 import org.bouncycastle.cert.ocsp.SingleResp;
-import org.bouncycastle.jce.provider.BouncyCastleProvider;
-import org.bouncycastle.operator.DigestCalculatorProvider;
-import org.bouncycastle.operator.OperatorCreationException;
-import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import be.fedict.trust.CryptoContext;
+
 /**
  * Off line OCSP repository. This implementation receives a list of
  * {@link OCSPResp} objects.
@@ -77,18 +74,9 @@ public class OfflineOcspRepository implements OcspRepository {
 
 		LOGGER.debug("find OCSP response");
 
-		DigestCalculatorProvider digCalcProv;
-		try {
-			digCalcProv = new JcaDigestCalculatorProviderBuilder().setProvider(BouncyCastleProvider.PROVIDER_NAME)
-					.build();
-		} catch (OperatorCreationException e) {
-			throw new RuntimeException(e);
-		}
-
 		CertificateID certId;
 		try {
-			certId = new CertificateID(digCalcProv.get(CertificateID.HASH_SHA1),
-					new JcaX509CertificateHolder(issuerCertificate), certificate.getSerialNumber());
+			certId = CryptoContext.createCertificateID(issuerCertificate, certificate.getSerialNumber());
 		} catch (Exception e) {
 			throw new RuntimeException(e);
 		}
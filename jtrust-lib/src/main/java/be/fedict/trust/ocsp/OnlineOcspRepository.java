@@ -22,23 +22,25 @@ package be.fedict.trust.ocsp;
 import java.io.IOException;
 import java.net.HttpURLConnection;
 import java.net.URI;
+import java.net.URLEncoder;
 import java.security.SecureRandom;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
-import org.apache.http.HttpHost;
 import org.apache.http.HttpResponse;
 import org.apache.http.StatusLine;
-import org.apache.http.client.HttpClient;
-import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
-import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.ContentType;
-import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.util.EntityUtils;
 import org.bouncycastle.asn1.ASN1OctetString;
 import org.bouncycastle.asn1.ASN1Primitive;
@@ -47,25 +49,25 @@ import org.bouncycastle.asn1.ocsp.OCSPObjectIdentifiers;
 import org.bouncycastle.asn1.ocsp.OCSPResponseStatus;
 import org.bouncycastle.asn1.x509.Extension;
 import org.bouncycastle.asn1.x509.Extensions;
-import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
 import org.bouncycastle.cert.ocsp.BasicOCSPResp;
 import org.bouncycastle.cert.ocsp.CertificateID;
 import org.bouncycastle.cert.ocsp.OCSPException;
 import org.bouncycastle.cert.ocsp.OCSPReq;
 import org.bouncycastle.cert.ocsp.OCSPReqBuilder;
 import org.bouncycastle.cert.ocsp.OCSPResp;
-import org.bouncycastle.jce.provider.BouncyCastleProvider;
-import org.bouncycastle.operator.DigestCalculatorProvider;
 import org.bouncycastle.operator.OperatorCreationException;
-import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
 import org.bouncycastle.util.Arrays;
+import org.bouncycastle.util.encoders.Base64;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import be.fedict.trust.Credentials;
+import be.fedict.trust.CryptoContext;
+import be.fedict.trust.HttpTransport;
 import be.fedict.trust.NetworkConfig;
 import be.fedict.trust.ServerNotAvailableException;
 import be.fedict.trust.ServerType;
+import be.fedict.trust.cache.NegativeCache;
 
 /**
  * Online OCSP repository. This implementation will contact the OCSP Responder
@@ -74,17 +76,27 @@ import be.fedict.trust.ServerType;
  * @author Frank Cornelis
  * 
  */
-public class OnlineOcspRepository implements OcspRepository {
+public class OnlineOcspRepository implements BatchOcspRepository, AsyncOcspRepository {
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(OnlineOcspRepository.class);
 
-    private final static int CONNECTION_TIMEOUT_DURATION = 1000;
-
-    private final static int SOCKET_TIMEOUT_DURATION = 2000;
+	/**
+	 * Maximum size of an encoded OCSP request sent via HTTP GET, as recommended
+	 * by RFC 5019.
+	 */
+	public static final int MAX_GET_REQUEST_SIZE = 255;
 
 	private final NetworkConfig networkConfig;
 
-	private Credentials credentials;
+	private final boolean sharedHttpTransport;
+
+	private HttpTransport httpTransport;
+
+	private boolean useHttpGet;
+
+	private boolean useNonce = true;
+
+	private final NegativeCache<URI> negativeCache = new NegativeCache<>();
 
 	/**
 	 * Main construtor.
@@ -95,13 +107,29 @@ public class OnlineOcspRepository implements OcspRepository {
 	 */
 	public OnlineOcspRepository(final NetworkConfig networkConfig) {
 		this.networkConfig = networkConfig;
+		this.httpTransport = new HttpTransport(networkConfig);
+		this.sharedHttpTransport = false;
 	}
 
 	/**
 	 * Default constructor.
 	 */
 	public OnlineOcspRepository() {
-		this(null);
+		this((NetworkConfig) null);
+	}
+
+	/**
+	 * Constructor using a shared HTTP transport. The network configuration and
+	 * credentials should be configured on the HTTP transport itself.
+	 * 
+	 * @param httpTransport
+	 *            the shared HTTP transport used during OCSP Responder
+	 *            communication.
+	 */
+	public OnlineOcspRepository(final HttpTransport httpTransport) {
+		this.networkConfig = null;
+		this.httpTransport = httpTransport;
+		this.sharedHttpTransport = true;
 	}
 
 	/**
@@ -110,7 +138,76 @@ public class OnlineOcspRepository implements OcspRepository {
 	 * @param credentials
 	 */
 	public void setCredentials(final Credentials credentials) {
-		this.credentials = credentials;
+		if (this.sharedHttpTransport) {
+			throw new IllegalStateException("credentials should be configured on the shared HTTP transport");
+		}
+		final HttpTransport previousHttpTransport = this.httpTransport;
+		this.httpTransport = new HttpTransport(this.networkConfig, credentials);
+		previousHttpTransport.close();
+	}
+
+	/**
+	 * Gives back the HTTP transport used by this OCSP repository.
+	 * 
+	 * @return the HTTP transport.
+	 */
+	public HttpTransport getHttpTransport() {
+		return this.httpTransport;
+	}
+
+	/**
+	 * Enables sending OCSP requests via HTTP GET, as defined in RFC 5019, when
+	 * the encoded OCSP request is small enough. Such requests can be served by
+	 * intermediate HTTP caches. Defaults to <code>false</code>.
+	 * 
+	 * @param useHttpGet
+	 */
+	public void setUseHttpGet(final boolean useHttpGet) {
+		this.useHttpGet = useHttpGet;
+	}
+
+	public boolean isUseHttpGet() {
+		return this.useHttpGet;
+	}
+
+	/**
+	 * Sets whether a nonce extension is added to the OCSP requests. Disabling the
+	 * nonce allows OCSP responders to return pre-signed OCSP responses, and HTTP
+	 * caches to serve them. Defaults to <code>true</code>.
+	 * 
+	 * @param useNonce
+	 */
+	public void setUseNonce(final boolean useNonce) {
+		this.useNonce = useNonce;
+	}
+
+	public boolean isUseNonce() {
+		return this.useNonce;
+	}
+
+	/**
+	 * Sets the duration in milliseconds during which an unavailable OCSP
+	 * responder is remembered. During this period, requests towards the OCSP
+	 * responder fail fast with a {@link ServerNotAvailableException}. Defaults to
+	 * <code>0</code>, disabling negative caching.
+	 * 
+	 * @param negativeCacheDuration
+	 */
+	public void setNegativeCacheDuration(final long negativeCacheDuration) {
+		this.negativeCache.setDuration(negativeCacheDuration);
+	}
+
+	public long getNegativeCacheDuration() {
+		return this.negativeCache.getDuration();
+	}
+
+	/**
+	 * Configures this OCSP repository for the RFC 5019 lightweight OCSP profile:
+	 * requests via HTTP GET without a nonce.
+	 */
+	public void setLightweight() {
+		setUseHttpGet(true);
+		setUseNonce(false);
 	}
 
 	@Override
@@ -119,71 +216,141 @@ public class OnlineOcspRepository implements OcspRepository {
 		if (null == ocspUri) {
 			return null;
 		}
+		return findOcspResponses(ocspUri, Collections.singletonList(certificate), issuerCertificate, validationDate);
+	}
+
+	@Override
+	public OCSPResp findOcspResponses(final URI ocspUri, final List<X509Certificate> certificates,
+			final X509Certificate issuerCertificate, final Date validationDate) throws ServerNotAvailableException {
+		if (null == ocspUri) {
+			return null;
+		}
+		this.negativeCache.check(ocspUri);
 		OCSPResp ocspResp = null;
 		try {
-			ocspResp = getOcspResponse(ocspUri, certificate, issuerCertificate);
+			ocspResp = getOcspResponse(ocspUri, certificates, issuerCertificate);
+		} catch (final ServerNotAvailableException e) {
+			this.negativeCache.put(ocspUri, e);
+			throw e;
 		} catch (OperatorCreationException | CertificateEncodingException | OCSPException | IOException e) {
 			throw new RuntimeException(e);
 		}
+		this.negativeCache.remove(ocspUri);
 		return ocspResp;
 	}
 
-	private OCSPResp getOcspResponse(final URI ocspUri, final X509Certificate certificate,
+	@Override
+	public CompletableFuture<OCSPResp> findOcspResponseAsync(final URI ocspUri, final X509Certificate certificate,
+			final X509Certificate issuerCertificate, final Date validationDate) {
+		if (null == ocspUri) {
+			return CompletableFuture.completedFuture(null);
+		}
+		final CompletableFuture<OCSPResp> result = new CompletableFuture<>();
+		final OcspRequest ocspRequest;
+		try {
+			this.negativeCache.check(ocspUri);
+			ocspRequest = createOcspRequest(ocspUri, Collections.singletonList(certificate), issuerCertificate);
+		} catch (final ServerNotAvailableException e) {
+			result.completeExceptionally(e);
+			return result;
+		} catch (OperatorCreationException | CertificateEncodingException | OCSPException | IOException e) {
+			result.completeExceptionally(new RuntimeException(e));
+			return result;
+		}
+		this.httpTransport.executeAsync(ocspRequest.httpRequest).whenComplete((httpResponse, error) -> {
+			try {
+				if (null != error) {
+					throw new ServerNotAvailableException("OCSP responder is down", ServerType.OCSP, error);
+				}
+				final OCSPResp ocspResp = processOcspResponse(httpResponse, ocspRequest.nonce);
+				this.negativeCache.remove(ocspUri);
+				result.complete(ocspResp);
+			} catch (final ServerNotAvailableException e) {
+				this.negativeCache.put(ocspUri, e);
+				result.completeExceptionally(e);
+			} catch (final OCSPException | IOException | RuntimeException e) {
+				result.completeExceptionally(e);
+			}
+		});
+		return result;
+	}
+
+	private OCSPResp getOcspResponse(final URI ocspUri, final List<X509Certificate> certificates,
 			final X509Certificate issuerCertificate) throws OperatorCreationException,
 			CertificateEncodingException, OCSPException, IOException, ServerNotAvailableException {
+		final OcspRequest ocspRequest = createOcspRequest(ocspUri, certificates, issuerCertificate);
+		final CloseableHttpResponse httpResponse;
+		try {
+			httpResponse = this.httpTransport.execute(ocspRequest.httpRequest);
+		} catch (final IOException e) {
+			throw new ServerNotAvailableException("OCSP responder is down", ServerType.OCSP, e);
+		}
+		try {
+			return processOcspResponse(httpResponse, ocspRequest.nonce);
+		} finally {
+			httpResponse.close();
+		}
+	}
+
+	private OcspRequest createOcspRequest(final URI ocspUri, final List<X509Certificate> certificates,
+			final X509Certificate issuerCertificate)
+			throws OperatorCreationException, CertificateEncodingException, OCSPException, IOException {
 		LOGGER.debug("OCSP URI: {}", ocspUri);
 		final OCSPReqBuilder ocspReqBuilder = new OCSPReqBuilder();
-		final DigestCalculatorProvider digCalcProv = new JcaDigestCalculatorProviderBuilder()
-				.setProvider(BouncyCastleProvider.PROVIDER_NAME).build();
-		final CertificateID certId = new CertificateID(digCalcProv.get(CertificateID.HASH_SHA1),
-				new JcaX509CertificateHolder(issuerCertificate), certificate.getSerialNumber());
-		ocspReqBuilder.addRequest(certId);
-
-		final byte[] nonce = new byte[20];
-		final SecureRandom secureRandom = new SecureRandom();
-		secureRandom.nextBytes(nonce);
-		final DEROctetString encodedNonceValue = new DEROctetString(new DEROctetString(nonce).getEncoded());
-		final Extension extension = new Extension(OCSPObjectIdentifiers.id_pkix_ocsp_nonce, false, encodedNonceValue);
-		final Extensions extensions = new Extensions(extension);
-		ocspReqBuilder.setRequestExtensions(extensions);
+		for (final X509Certificate certificate : certificates) {
+			final CertificateID certId = CryptoContext.createCertificateID(issuerCertificate,
+					certificate.getSerialNumber());
+			ocspReqBuilder.addRequest(certId);
+		}
+
+		final byte[] nonce;
+		if (this.useNonce) {
+			nonce = new byte[20];
+			final SecureRandom secureRandom = new SecureRandom();
+			secureRandom.nextBytes(nonce);
+			final DEROctetString encodedNonceValue = new DEROctetString(new DEROctetString(nonce).getEncoded());
+			final Extension extension = new Extension(OCSPObjectIdentifiers.id_pkix_ocsp_nonce, false,
+					encodedNonceValue);
+			final Extensions extensions = new Extensions(extension);
+			ocspReqBuilder.setRequestExtensions(extensions);
+		} else {
+			nonce = null;
+		}
 
 		final OCSPReq ocspReq = ocspReqBuilder.build();
 		final byte[] ocspReqData = ocspReq.getEncoded();
 
+		final HttpUriRequest httpRequest = createHttpRequest(ocspUri, ocspReqData);
+		httpRequest.addHeader("User-Agent", "jTrust OCSP Client");
+		return new OcspRequest(httpRequest, nonce);
+	}
+
+	private HttpUriRequest createHttpRequest(final URI ocspUri, final byte[] ocspReqData) throws IOException {
+		if (this.useHttpGet) {
+			final String encodedOcspReq = URLEncoder.encode(Base64.toBase64String(ocspReqData), "UTF-8");
+			if (encodedOcspReq.length() <= MAX_GET_REQUEST_SIZE) {
+				String ocspUrl = ocspUri.toString();
+				if (!ocspUrl.endsWith("/")) {
+					ocspUrl += "/";
+				}
+				return new HttpGet(ocspUrl + encodedOcspReq);
+			}
+			LOGGER.debug("OCSP request too large for HTTP GET: {} bytes", encodedOcspReq.length());
+		}
 		final HttpPost httpPost = new HttpPost(ocspUri.toString());
 		final ContentType contentType = ContentType.create("application/ocsp-request");
 		final HttpEntity requestEntity = new ByteArrayEntity(ocspReqData, contentType);
-		httpPost.addHeader("User-Agent", "jTrust OCSP Client");
 		httpPost.setEntity(requestEntity);
+		return httpPost;
+	}
 
-		final RequestConfig.Builder requestConfigBuilder = RequestConfig.custom().setConnectTimeout(CONNECTION_TIMEOUT_DURATION)
-				.setConnectionRequestTimeout(CONNECTION_TIMEOUT_DURATION).setSocketTimeout(SOCKET_TIMEOUT_DURATION);
-
-		if (null != this.networkConfig) {
-			final HttpHost proxy = new HttpHost(this.networkConfig.getProxyHost(), this.networkConfig.getProxyPort());
-			requestConfigBuilder.setProxy(proxy);
-		}
-		final HttpClientContext httpClientContext = HttpClientContext.create();
-		if (null != this.credentials) {
-			this.credentials.init(httpClientContext);
-		}
-		final RequestConfig requestConfig = requestConfigBuilder.build();
-		final HttpClientBuilder httpClientBuilder = HttpClientBuilder.create();
-		httpClientBuilder.setDefaultRequestConfig(requestConfig);
-		final HttpClient httpClient = httpClientBuilder.build();
-
-		HttpResponse httpResponse;
-		int responseCode;
-		try {
-			httpResponse = httpClient.execute(httpPost, httpClientContext);
-			final StatusLine statusLine = httpResponse.getStatusLine();
-			responseCode = statusLine.getStatusCode();
-		} catch (final IOException e) {
-			throw new ServerNotAvailableException("OCSP responder is down", ServerType.OCSP, e);
-		}
-
+	private OCSPResp processOcspResponse(final HttpResponse httpResponse, final byte[] nonce)
+			throws IOException, OCSPException, ServerNotAvailableException {
+		final StatusLine statusLine = httpResponse.getStatusLine();
+		final int responseCode = statusLine.getStatusCode();
 		if (HttpURLConnection.HTTP_OK != responseCode) {
-			throw new ServerNotAvailableException("OCSP server responded with status code " + responseCode, ServerType.OCSP);
+			throw new ServerNotAvailableException("OCSP server responded with status code " + responseCode,
+					ServerType.OCSP);
 		}
 
 		final Header responseContentTypeHeader = httpResponse.getFirstHeader("Content-Type");
@@ -211,9 +378,8 @@ public class OnlineOcspRepository implements OcspRepository {
 		}
 
 		final HttpEntity httpEntity = httpResponse.getEntity();
-		final OCSPResp ocspResp = new OCSPResp(httpEntity.getContent());
+		final OCSPResp ocspResp = new OCSPResp(EntityUtils.toByteArray(httpEntity));
 		LOGGER.debug("OCSP response size: {} bytes", ocspResp.getEncoded().length);
-		httpPost.releaseConnection();
 
 		final int ocspRespStatus = ocspResp.getStatus();
 		if (OCSPResponseStatus.SUCCESSFUL != ocspRespStatus) {
@@ -228,8 +394,12 @@ public class OnlineOcspRepository implements OcspRepository {
 			LOGGER.debug("no nonce extension in response");
 			return ocspResp;
 		}
+		if (null == nonce) {
+			LOGGER.debug("no nonce requested, ignoring nonce extension in response");
+			return ocspResp;
+		}
 
-		final ASN1OctetString nonceExtensionValue = extension.getExtnValue();
+		final ASN1OctetString nonceExtensionValue = nonceExtension.getExtnValue();
 		final ASN1Primitive nonceValue = ASN1Primitive.fromByteArray(nonceExtensionValue.getOctets());
 		final byte[] responseNonce = ((DEROctetString) nonceValue).getOctets();
 		if (!Arrays.areEqual(nonce, responseNonce)) {
@@ -240,4 +410,16 @@ public class OnlineOcspRepository implements OcspRepository {
 
 		return ocspResp;
 	}
+
+	private static class OcspRequest {
+
+		private final HttpUriRequest httpRequest;
+
+		private final byte[] nonce;
+
+		OcspRequest(final HttpUriRequest httpRequest, final byte[] nonce) {
+			this.httpRequest = httpRequest;
+			this.nonce = nonce;
+		}
+	}
 }
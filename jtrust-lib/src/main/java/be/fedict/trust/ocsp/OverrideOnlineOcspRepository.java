@@ -29,6 +29,7 @@ import org.bouncycastle.cert.ocsp.OCSPResp;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import be.fedict.trust.HttpTransport;
 import be.fedict.trust.NetworkConfig;
 import be.fedict.trust.ServerNotAvailableException;
 
@@ -55,6 +56,11 @@ public class OverrideOnlineOcspRepository extends OnlineOcspRepository {
 		this.overrideURIs = new HashMap<>();
 	}
 
+	public OverrideOnlineOcspRepository(final HttpTransport httpTransport) {
+		super(httpTransport);
+		this.overrideURIs = new HashMap<>();
+	}
+
 	public void overrideOCSP(final URI originalOcspUri, final URI newOcspUri) {
 		this.overrideURIs.put(originalOcspUri, newOcspUri);
 	}
@@ -21,27 +21,50 @@ package be.fedict.trust.repository;
 
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
-import java.util.Arrays;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.codec.digest.DigestUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import be.fedict.trust.cache.WeakIdentityMap;
+import be.fedict.trust.linker.CustomCertSignValidator;
 
 /**
  * In-Memory Certificate Repository implementation.
+ * <p>
+ * The self-signature of a trust point is verified once, when it is added.
+ * Trust points are looked up by certificate instance first, and next by SHA-256
+ * fingerprint. This implementation is thread-safe.
+ * </p>
  * 
  * @author Frank Cornelis
  * 
  */
-public class MemoryCertificateRepository implements CertificateRepository {
+public class MemoryCertificateRepository implements VerifiedCertificateRepository {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(MemoryCertificateRepository.class);
+
+	private final Map<String, TrustPoint> trustPoints;
 
-	private final Map<String, X509Certificate> trustPoints;
+	private final WeakIdentityMap<X509Certificate, TrustPoint> trustPointInstances;
+
+	private static class TrustPoint {
+
+		private final boolean verified;
+
+		public TrustPoint(boolean verified) {
+			this.verified = verified;
+		}
+	}
 
 	/**
 	 * Default constructor.
 	 */
 	public MemoryCertificateRepository() {
-		this.trustPoints = new HashMap<>();
+		this.trustPoints = new ConcurrentHashMap<>();
+		this.trustPointInstances = new WeakIdentityMap<>();
 	}
 
 	/**
@@ -52,27 +75,52 @@ public class MemoryCertificateRepository implements CertificateRepository {
 	 */
 	public void addTrustPoint(X509Certificate certificate) {
 		String fingerprint = getFingerprint(certificate);
-		this.trustPoints.put(fingerprint, certificate);
+		TrustPoint trustPoint = new TrustPoint(verifySelfSigned(certificate));
+		this.trustPoints.put(fingerprint, trustPoint);
+		this.trustPointInstances.put(certificate, trustPoint);
 	}
 
 	@Override
 	public boolean isTrustPoint(X509Certificate certificate) {
+		return null != getTrustPoint(certificate);
+	}
+
+	@Override
+	public boolean isVerifiedTrustPoint(X509Certificate certificate) {
+		TrustPoint trustPoint = getTrustPoint(certificate);
+		return null != trustPoint && trustPoint.verified;
+	}
+
+	private TrustPoint getTrustPoint(X509Certificate certificate) {
+		TrustPoint trustPoint = this.trustPointInstances.get(certificate);
+		if (null != trustPoint) {
+			return trustPoint;
+		}
+		/*
+		 * We cannot used certificate.equals(trustPoint) here as the
+		 * certificates might be loaded by different security providers.
+		 */
 		String fingerprint = getFingerprint(certificate);
-		X509Certificate trustPoint = this.trustPoints.get(fingerprint);
+		trustPoint = this.trustPoints.get(fingerprint);
 		if (null == trustPoint) {
+			return null;
+		}
+		this.trustPointInstances.put(certificate, trustPoint);
+		return trustPoint;
+	}
+
+	private static boolean verifySelfSigned(X509Certificate certificate) {
+		if (false == certificate.getIssuerX500Principal().equals(certificate.getSubjectX500Principal())) {
+			LOGGER.warn("trust point not self-signed: {}", certificate.getSubjectX500Principal());
 			return false;
 		}
 		try {
-			/*
-			 * We cannot used certificate.equals(trustPoint) here as the
-			 * certificates might be loaded by different security providers.
-			 */
-			return Arrays.equals(certificate.getEncoded(),
-					trustPoint.getEncoded());
-		} catch (CertificateEncodingException e) {
-			throw new IllegalArgumentException("certificate encoding error: "
-					+ e.getMessage(), e);
+			CustomCertSignValidator.verify(certificate);
+		} catch (Exception e) {
+			LOGGER.warn("trust point self-signature error: {}", e.getMessage());
+			return false;
 		}
+		return true;
 	}
 
 	private String getFingerprint(X509Certificate certificate) {
@@ -83,7 +131,7 @@ public class MemoryCertificateRepository implements CertificateRepository {
 			throw new IllegalArgumentException("certificate encoding error: "
 					+ e.getMessage(), e);
 		}
-		String fingerprint = DigestUtils.sha1Hex(encodedCertificate);
+		String fingerprint = DigestUtils.sha256Hex(encodedCertificate);
 		return fingerprint;
 	}
 }
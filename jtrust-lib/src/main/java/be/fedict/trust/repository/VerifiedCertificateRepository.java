@@ -0,0 +1,39 @@
+/*
+ * Java Trust Project.
+ * Copyright (C) 2021 e-Contract.be BV.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+
+package be.fedict.trust.repository;
+
+import java.security.cert.X509Certificate;
+
+/**
+ * Certificate repository that verifies the self-signature of its trust points
+ * once, when they are added. Allows the trust validator to skip the signature
+ * verification of the root certificate for every validation.
+ */
+public interface VerifiedCertificateRepository extends CertificateRepository {
+
+	/**
+	 * Checks whether the given X509 certificate is a trust point with a verified
+	 * self-signature.
+	 * 
+	 * @param certificate the X509 certificate.
+	 * @return true or false
+	 */
+	boolean isVerifiedTrustPoint(X509Certificate certificate);
+}
@@ -18,6 +18,8 @@
 
 package be.fedict.trust.revocation;
 
+import java.util.Date;
+
 /**
  * Data object for CRL revocation data.
  * 
@@ -30,9 +32,24 @@ public class CRLRevocationData {
 
 	private final String uri;
 
+	private final Date expiry;
+
 	public CRLRevocationData(byte[] crl, String uri) {
+		this(crl, uri, null);
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param crl    the encoded CRL.
+	 * @param uri    the URI it was retrieved from.
+	 * @param expiry the date at which it stops being valid evidence for the
+	 *               checked certificate, or <code>null</code> if unknown.
+	 */
+	public CRLRevocationData(final byte[] crl, final String uri, final Date expiry) {
 		this.crl = crl;
 		this.uri = uri;
+		this.expiry = expiry;
 	}
 
 	public byte[] getCRL() {
@@ -42,4 +59,14 @@ public class CRLRevocationData {
 	public String getURI() {
 		return this.uri;
 	}
+
+	/**
+	 * Gives back the date at which this revocation evidence stops being valid for
+	 * the checked certificate.
+	 * 
+	 * @return the expiry, or <code>null</code> if unknown.
+	 */
+	public Date getExpiry() {
+		return this.expiry;
+	}
 }
@@ -18,6 +18,8 @@
 
 package be.fedict.trust.revocation;
 
+import java.util.Date;
+
 /**
  * Data object for OCSP revocation data.
  * 
@@ -30,9 +32,24 @@ public class OCSPRevocationData {
 
 	private final String uri;
 
+	private final Date expiry;
+
 	public OCSPRevocationData(byte[] ocsp, String uri) {
+		this(ocsp, uri, null);
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param ocsp   the encoded OCSP response.
+	 * @param uri    the URI it was retrieved from.
+	 * @param expiry the date at which it stops being valid evidence for the
+	 *               checked certificate, or <code>null</code> if unknown.
+	 */
+	public OCSPRevocationData(final byte[] ocsp, final String uri, final Date expiry) {
 		this.ocsp = ocsp;
 		this.uri = uri;
+		this.expiry = expiry;
 	}
 
 	public byte[] getOCSP() {
@@ -42,4 +59,14 @@ public class OCSPRevocationData {
 	public String getURI() {
 		return this.uri;
 	}
+
+	/**
+	 * Gives back the date at which this revocation evidence stops being valid for
+	 * the checked certificate.
+	 * 
+	 * @return the expiry, or <code>null</code> if unknown.
+	 */
+	public Date getExpiry() {
+		return this.expiry;
+	}
 }
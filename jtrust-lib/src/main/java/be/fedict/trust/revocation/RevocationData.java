@@ -19,11 +19,17 @@
 
 package be.fedict.trust.revocation;
 
+import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
 
 /**
  * Contains the used OCSP and CRL revocation data.
+ * <p>
+ * Next to the encoded revocation evidence, trust linkers can report until when
+ * the revocation evidence they used remains valid. Revocation data that does
+ * not retain the evidence only tracks the latter.
+ * </p>
  * 
  * @author Frank Cornelis
  */
@@ -33,13 +39,60 @@ public class RevocationData {
 
 	private final List<CRLRevocationData> crlRevocationData;
 
+	private final boolean retainEvidence;
+
+	private Date expiry;
+
 	/**
 	 * Main constructor.
 	 */
 	public RevocationData() {
+		this(true);
+	}
 
+	/**
+	 * Constructor.
+	 * 
+	 * @param retainEvidence set to <code>false</code> when only the expiry of the
+	 *                       used revocation evidence is of interest. Trust linkers
+	 *                       then do not add the encoded OCSP responses and CRLs.
+	 */
+	public RevocationData(final boolean retainEvidence) {
 		this.ocspRevocationData = new LinkedList<>();
 		this.crlRevocationData = new LinkedList<>();
+		this.retainEvidence = retainEvidence;
+	}
+
+	/**
+	 * Returns whether trust linkers should add the encoded revocation evidence.
+	 */
+	public boolean isRetainEvidence() {
+		return this.retainEvidence;
+	}
+
+	/**
+	 * Limits the expiry of the used revocation evidence to the given date.
+	 * 
+	 * @param expiry the date at which some used revocation evidence stops being
+	 *               valid, or <code>null</code> for no limit.
+	 */
+	public synchronized void limitExpiry(final Date expiry) {
+		if (null == expiry) {
+			return;
+		}
+		if (null == this.expiry || expiry.before(this.expiry)) {
+			this.expiry = expiry;
+		}
+	}
+
+	/**
+	 * Gives back the expiry of the used revocation evidence, as reported by the
+	 * trust linkers.
+	 * 
+	 * @return the expiry, or <code>null</code> if none was reported.
+	 */
+	public synchronized Date getExpiry() {
+		return this.expiry;
 	}
 
 	/**
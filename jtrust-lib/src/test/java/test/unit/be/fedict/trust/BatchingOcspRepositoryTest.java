@@ -0,0 +1,164 @@
+/*
+ * Java Trust Project.
+ * Copyright (C) 2009 FedICT.
+ * Copyright (C) 2015-2021 e-Contract.be BV.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.unit.be.fedict.trust;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.net.URI;
+import java.security.KeyPair;
+import java.security.Security;
+import java.security.cert.X509Certificate;
+import java.time.LocalDateTime;
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.easymock.Capture;
+import org.easymock.EasyMock;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import be.fedict.trust.ServerNotAvailableException;
+import be.fedict.trust.ServerType;
+import be.fedict.trust.ocsp.BatchOcspRepository;
+import be.fedict.trust.ocsp.BatchingOcspRepository;
+import be.fedict.trust.test.PKITestUtils;
+
+public class BatchingOcspRepositoryTest {
+
+	private X509Certificate rootCertificate;
+	private KeyPair rootKeyPair;
+	private List<X509Certificate> certificates;
+
+	@BeforeEach
+	public void setup() throws Exception {
+		Security.addProvider(new BouncyCastleProvider());
+		this.rootKeyPair = PKITestUtils.generateKeyPair();
+		LocalDateTime notBefore = LocalDateTime.now();
+		LocalDateTime notAfter = notBefore.plusMonths(1);
+		this.rootCertificate = PKITestUtils.generateSelfSignedCertificate(this.rootKeyPair, "CN=TestRoot", notBefore,
+				notAfter);
+		KeyPair keyPair = PKITestUtils.generateKeyPair();
+		this.certificates = new LinkedList<>();
+		for (int idx = 0; idx < 3; idx++) {
+			this.certificates.add(PKITestUtils.generateCertificate(keyPair.getPublic(), "CN=Test" + idx, notBefore,
+					notAfter, this.rootCertificate, this.rootKeyPair.getPrivate()));
+		}
+	}
+
+	@Test
+	public void concurrentLookupsBatched() throws Exception {
+		// setup
+		BatchOcspRepository mockOcspRepository = EasyMock.createMock(BatchOcspRepository.class);
+		URI ocspUri = new URI("urn:test:ocsp");
+		Date validationDate = new Date();
+		OCSPResp ocspResp = PKITestUtils.createOcspResp(this.certificates.get(0), false, this.rootCertificate,
+				this.rootCertificate, this.rootKeyPair.getPrivate());
+
+		BatchingOcspRepository testedInstance = new BatchingOcspRepository(mockOcspRepository, 3, 10000);
+
+		// expectations
+		Capture<List<X509Certificate>> certificatesCapture = Capture.newInstance();
+		EasyMock.expect(mockOcspRepository.findOcspResponses(EasyMock.eq(ocspUri),
+				EasyMock.capture(certificatesCapture), EasyMock.eq(this.rootCertificate), EasyMock.eq(validationDate)))
+				.andReturn(ocspResp);
+
+		// prepare
+		EasyMock.replay(mockOcspRepository);
+
+		// operate
+		ExecutorService executorService = Executors.newFixedThreadPool(3);
+		List<Future<OCSPResp>> futures = new LinkedList<>();
+		for (X509Certificate certificate : this.certificates) {
+			futures.add(executorService.submit(() -> testedInstance.findOcspResponse(ocspUri, certificate,
+					this.rootCertificate, validationDate)));
+		}
+
+		// verify
+		for (Future<OCSPResp> future : futures) {
+			assertSame(ocspResp, future.get(5, TimeUnit.SECONDS));
+		}
+		executorService.shutdown();
+		EasyMock.verify(mockOcspRepository);
+		assertEquals(3, certificatesCapture.getValue().size());
+	}
+
+	@Test
+	public void singleLookup() throws Exception {
+		// setup
+		BatchOcspRepository mockOcspRepository = EasyMock.createMock(BatchOcspRepository.class);
+		URI ocspUri = new URI("urn:test:ocsp");
+		Date validationDate = new Date();
+		X509Certificate certificate = this.certificates.get(0);
+		OCSPResp ocspResp = PKITestUtils.createOcspResp(certificate, false, this.rootCertificate,
+				this.rootCertificate, this.rootKeyPair.getPrivate());
+
+		BatchingOcspRepository testedInstance = new BatchingOcspRepository(mockOcspRepository, 3, 0);
+
+		// expectations
+		List<X509Certificate> expectedCertificates = new LinkedList<>();
+		expectedCertificates.add(certificate);
+		EasyMock.expect(mockOcspRepository.findOcspResponses(ocspUri, expectedCertificates, this.rootCertificate,
+				validationDate)).andReturn(ocspResp);
+
+		// prepare
+		EasyMock.replay(mockOcspRepository);
+
+		// operate
+		OCSPResp result = testedInstance.findOcspResponse(ocspUri, certificate, this.rootCertificate,
+				validationDate);
+
+		// verify
+		EasyMock.verify(mockOcspRepository);
+		assertSame(ocspResp, result);
+	}
+
+	@Test
+	public void serverNotAvailable() throws Exception {
+		// setup
+		BatchOcspRepository mockOcspRepository = EasyMock.createMock(BatchOcspRepository.class);
+		URI ocspUri = new URI("urn:test:ocsp");
+		Date validationDate = new Date();
+		X509Certificate certificate = this.certificates.get(0);
+
+		BatchingOcspRepository testedInstance = new BatchingOcspRepository(mockOcspRepository, 3, 0);
+
+		// expectations
+		EasyMock.expect(mockOcspRepository.findOcspResponses(EasyMock.eq(ocspUri), EasyMock.anyObject(),
+				EasyMock.eq(this.rootCertificate), EasyMock.eq(validationDate)))
+				.andThrow(new ServerNotAvailableException("down", ServerType.OCSP));
+
+		// prepare
+		EasyMock.replay(mockOcspRepository);
+
+		// operate & verify
+		assertThrows(ServerNotAvailableException.class, () -> testedInstance.findOcspResponse(ocspUri, certificate,
+				this.rootCertificate, validationDate));
+		EasyMock.verify(mockOcspRepository);
+	}
+}
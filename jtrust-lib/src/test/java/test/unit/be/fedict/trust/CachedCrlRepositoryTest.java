@@ -20,7 +20,11 @@
 package test.unit.be.fedict.trust;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.net.URI;
 import java.security.KeyPair;
@@ -29,13 +33,26 @@ import java.security.cert.X509Certificate;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.easymock.EasyMock;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import be.fedict.trust.ServerNotAvailableException;
+import be.fedict.trust.ServerType;
 import be.fedict.trust.crl.CachedCrlRepository;
+import be.fedict.trust.crl.ConditionalCrlRepository;
+import be.fedict.trust.crl.ConditionalCrlResult;
 import be.fedict.trust.crl.CrlRepository;
+import be.fedict.trust.crl.IndexedX509CRL;
 import be.fedict.trust.test.PKITestUtils;
 
 public class CachedCrlRepositoryTest {
@@ -228,4 +245,342 @@ public class CachedCrlRepositoryTest {
 		assertEquals(this.testCrl, resultCrl);
 		assertEquals(this.testCrl, resultCrl2);
 	}
+
+	@Test
+	public void concurrentRequestsCoalesced() throws Exception {
+		// setup
+		URI crlUri = new URI("urn:test:crl");
+		Date validationDate = new Date();
+		AtomicInteger fetchCount = new AtomicInteger();
+		CountDownLatch fetchStarted = new CountDownLatch(1);
+		CountDownLatch releaseFetch = new CountDownLatch(1);
+		CrlRepository slowCrlRepository = new CrlRepository() {
+
+			@Override
+			public X509CRL findCrl(URI uri, X509Certificate issuerCertificate, Date date)
+					throws ServerNotAvailableException {
+				fetchCount.incrementAndGet();
+				fetchStarted.countDown();
+				try {
+					releaseFetch.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+				return CachedCrlRepositoryTest.this.testCrl;
+			}
+		};
+
+		CachedCrlRepository testedInstance = new CachedCrlRepository(slowCrlRepository);
+		int threadCount = 8;
+		ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
+		CountDownLatch waitersStarted = new CountDownLatch(threadCount - 1);
+
+		// operate
+		List<Future<X509CRL>> results = new LinkedList<>();
+		try {
+			results.add(executorService
+					.submit(() -> testedInstance.findCrl(crlUri, this.testCertificate, validationDate)));
+			fetchStarted.await(10, TimeUnit.SECONDS);
+			for (int idx = 1; idx < threadCount; idx++) {
+				results.add(executorService.submit(() -> {
+					waitersStarted.countDown();
+					return testedInstance.findCrl(crlUri, this.testCertificate, validationDate);
+				}));
+			}
+			waitersStarted.await(10, TimeUnit.SECONDS);
+			// give the waiting threads the chance to join the running fetch
+			Thread.sleep(200);
+			releaseFetch.countDown();
+
+			// verify
+			for (Future<X509CRL> result : results) {
+				assertEquals(this.testCrl, result.get(10, TimeUnit.SECONDS));
+			}
+		} finally {
+			executorService.shutdownNow();
+		}
+		assertEquals(1, fetchCount.get());
+	}
+
+	@Test
+	public void backgroundRefresh() throws Exception {
+		// setup
+		URI crlUri = new URI("urn:test:crl");
+		AtomicInteger fetchCount = new AtomicInteger();
+		CrlRepository crlRepository = (uri, issuerCertificate, date) -> {
+			if (fetchCount.incrementAndGet() == 1) {
+				return this.testCrl;
+			}
+			return this.testCrl2;
+		};
+
+		CachedCrlRepository testedInstance = new CachedCrlRepository(crlRepository);
+		// refresh as soon as possible
+		testedInstance.setRefreshAheadMinutes(testedInstance.getCacheAgingHours() * 60);
+		testedInstance.setRefreshJitterMinutes(0);
+
+		// operate
+		testedInstance.startBackgroundRefresh(1);
+		try {
+			assertTrue(testedInstance.isBackgroundRefreshing());
+			X509CRL resultCrl = testedInstance.findCrl(crlUri, this.testCertificate, new Date());
+			assertEquals(this.testCrl, resultCrl);
+
+			X509CRL refreshedCrl = resultCrl;
+			long timeout = System.currentTimeMillis() + 10 * 1000;
+			while (refreshedCrl == this.testCrl && System.currentTimeMillis() < timeout) {
+				Thread.sleep(100);
+				refreshedCrl = testedInstance.findCrl(crlUri, this.testCertificate, new Date());
+			}
+
+			// verify
+			assertEquals(this.testCrl2, refreshedCrl);
+			assertTrue(fetchCount.get() >= 2);
+		} finally {
+			testedInstance.stopBackgroundRefresh();
+		}
+		assertFalse(testedInstance.isBackgroundRefreshing());
+	}
+
+	@Test
+	public void backgroundRefreshKeepsCrlOnIntegrityFailure() throws Exception {
+		// setup
+		KeyPair otherKeyPair = PKITestUtils.generateKeyPair();
+		LocalDateTime thisUpdate = LocalDateTime.now();
+		X509CRL invalidCrl = PKITestUtils.generateCrl(otherKeyPair.getPrivate(), this.testCertificate, thisUpdate,
+				thisUpdate.plusHours(1));
+		URI crlUri = new URI("urn:test:crl");
+		AtomicInteger fetchCount = new AtomicInteger();
+		CountDownLatch refreshed = new CountDownLatch(1);
+		CrlRepository crlRepository = (uri, issuerCertificate, date) -> {
+			if (fetchCount.incrementAndGet() == 1) {
+				return this.testCrl;
+			}
+			refreshed.countDown();
+			return invalidCrl;
+		};
+
+		CachedCrlRepository testedInstance = new CachedCrlRepository(crlRepository);
+		testedInstance.setRefreshAheadMinutes(testedInstance.getCacheAgingHours() * 60);
+		testedInstance.setRefreshJitterMinutes(0);
+
+		// operate
+		testedInstance.startBackgroundRefresh(1);
+		try {
+			testedInstance.findCrl(crlUri, this.testCertificate, new Date());
+			assertTrue(refreshed.await(10, TimeUnit.SECONDS));
+			// give the refresh the chance to complete
+			Thread.sleep(200);
+			X509CRL resultCrl = testedInstance.findCrl(crlUri, this.testCertificate, new Date());
+
+			// verify
+			assertEquals(this.testCrl, resultCrl);
+		} finally {
+			testedInstance.stopBackgroundRefresh();
+		}
+	}
+
+	@Test
+	public void budgetedCacheEvictsLeastFrequentlyUsed() throws Exception {
+		// setup
+		URI crlUri = new URI("urn:test:crl");
+		URI crlUri2 = new URI("urn:test:crl2");
+		AtomicInteger fetchCount = new AtomicInteger();
+		AtomicInteger fetchCount2 = new AtomicInteger();
+		CrlRepository crlRepository = (uri, issuerCertificate, date) -> {
+			if (uri.equals(crlUri)) {
+				fetchCount.incrementAndGet();
+				return this.testCrl;
+			}
+			fetchCount2.incrementAndGet();
+			return this.testCrl2;
+		};
+		long crlSize = Math.max(this.testCrl.getEncoded().length, this.testCrl2.getEncoded().length);
+		Date validationDate = new Date();
+
+		// only room for a single CRL
+		CachedCrlRepository testedInstance = new CachedCrlRepository(crlRepository, crlSize + 10);
+
+		// operate
+		for (int idx = 0; idx < 3; idx++) {
+			assertEquals(this.testCrl, testedInstance.findCrl(crlUri, this.testCertificate, validationDate));
+		}
+
+		// verify
+		assertEquals(1, fetchCount.get());
+		assertEquals(1, testedInstance.getCacheEntryCount());
+		assertEquals(this.testCrl.getEncoded().length, testedInstance.getCacheBytes());
+		assertEquals(crlSize + 10, testedInstance.getMaxCacheBytes());
+
+		// operate: less frequently requested CRL does not push out the cached one
+		for (int idx = 0; idx < 3; idx++) {
+			assertEquals(this.testCrl2, testedInstance.findCrl(crlUri2, this.testCertificate, validationDate));
+		}
+
+		// verify
+		assertEquals(3, fetchCount2.get());
+		assertEquals(0, testedInstance.getEvictionCount());
+		assertEquals(this.testCrl, testedInstance.findCrl(crlUri, this.testCertificate, validationDate));
+		assertEquals(1, fetchCount.get());
+
+		// operate: more frequently requested CRL takes over
+		for (int idx = 0; idx < 3; idx++) {
+			assertEquals(this.testCrl2, testedInstance.findCrl(crlUri2, this.testCertificate, validationDate));
+		}
+
+		// verify
+		assertEquals(5, fetchCount2.get());
+		assertEquals(1, testedInstance.getEvictionCount());
+		assertEquals(1, testedInstance.getCacheEntryCount());
+		assertEquals(this.testCrl2.getEncoded().length, testedInstance.getCacheBytes());
+	}
+
+	@Test
+	public void indexedCrlCached() throws Exception {
+		// setup
+		CrlRepository mockCrlRepository = EasyMock.createMock(CrlRepository.class);
+		URI crlUri = new URI("urn:test:crl");
+		Date validationDate = new Date();
+
+		CachedCrlRepository testedInstance = new CachedCrlRepository(mockCrlRepository);
+		testedInstance.setIndexCrls(true);
+
+		// expectations
+		EasyMock.expect(mockCrlRepository.findCrl(crlUri, this.testCertificate, validationDate))
+				.andReturn(this.testCrl);
+
+		// prepare
+		EasyMock.replay(mockCrlRepository);
+
+		// operate
+		X509CRL resultCrl = testedInstance.findCrl(crlUri, this.testCertificate, validationDate);
+		X509CRL resultCrl2 = testedInstance.findCrl(crlUri, this.testCertificate, validationDate);
+
+		// verify
+		EasyMock.verify(mockCrlRepository);
+		assertTrue(testedInstance.isIndexCrls());
+		assertTrue(resultCrl instanceof IndexedX509CRL);
+		assertEquals(this.testCrl, resultCrl);
+		assertSame(resultCrl, resultCrl2);
+	}
+
+	@Test
+	public void conditionalRefreshNotModified() throws Exception {
+		// setup
+		LocalDateTime thisUpdate = LocalDateTime.now();
+		LocalDateTime nextUpdate = thisUpdate.plusDays(7);
+		this.testCrl = PKITestUtils.generateCrl(this.testKeyPair.getPrivate(), this.testCertificate, thisUpdate,
+				nextUpdate);
+		ConditionalCrlRepository mockCrlRepository = EasyMock.createMock(ConditionalCrlRepository.class);
+		URI crlUri = new URI("urn:test:crl");
+		Date validationDate = new Date();
+		Date expiredCacheValidationDate = Date
+				.from(LocalDateTime.now().plusHours(4).atZone(ZoneId.systemDefault()).toInstant());
+
+		CachedCrlRepository testedInstance = new CachedCrlRepository(mockCrlRepository);
+
+		// expectations
+		EasyMock.expect(mockCrlRepository.findCrl(crlUri, this.testCertificate, validationDate, null, null))
+				.andReturn(ConditionalCrlResult.retrieved(this.testCrl, "\"crl-1\"", null));
+		EasyMock.expect(mockCrlRepository.findCrl(crlUri, this.testCertificate, expiredCacheValidationDate,
+				"\"crl-1\"", null)).andReturn(ConditionalCrlResult.notModified("\"crl-1\"", null));
+
+		// prepare
+		EasyMock.replay(mockCrlRepository);
+
+		// operate
+		X509CRL resultCrl = testedInstance.findCrl(crlUri, this.testCertificate, validationDate);
+		X509CRL resultCrl2 = testedInstance.findCrl(crlUri, this.testCertificate, expiredCacheValidationDate);
+		X509CRL resultCrl3 = testedInstance.findCrl(crlUri, this.testCertificate, validationDate);
+
+		// verify
+		EasyMock.verify(mockCrlRepository);
+		assertSame(this.testCrl, resultCrl);
+		assertSame(this.testCrl, resultCrl2);
+		assertSame(this.testCrl, resultCrl3);
+	}
+
+	@Test
+	public void conditionalRefreshModified() throws Exception {
+		// setup
+		LocalDateTime thisUpdate = LocalDateTime.now();
+		LocalDateTime nextUpdate = thisUpdate.plusDays(7);
+		this.testCrl = PKITestUtils.generateCrl(this.testKeyPair.getPrivate(), this.testCertificate, thisUpdate,
+				nextUpdate);
+		this.testCrl2 = PKITestUtils.generateCrl(this.testKeyPair.getPrivate(), this.testCertificate, thisUpdate,
+				nextUpdate);
+		ConditionalCrlRepository mockCrlRepository = EasyMock.createMock(ConditionalCrlRepository.class);
+		URI crlUri = new URI("urn:test:crl");
+		Date validationDate = new Date();
+		Date expiredCacheValidationDate = Date
+				.from(LocalDateTime.now().plusHours(4).atZone(ZoneId.systemDefault()).toInstant());
+
+		CachedCrlRepository testedInstance = new CachedCrlRepository(mockCrlRepository);
+
+		// expectations
+		EasyMock.expect(mockCrlRepository.findCrl(crlUri, this.testCertificate, validationDate, null, null))
+				.andReturn(ConditionalCrlResult.retrieved(this.testCrl, null, "Mon, 01 Jan 2024 00:00:00 GMT"));
+		EasyMock.expect(mockCrlRepository.findCrl(crlUri, this.testCertificate, expiredCacheValidationDate, null,
+				"Mon, 01 Jan 2024 00:00:00 GMT"))
+				.andReturn(ConditionalCrlResult.retrieved(this.testCrl2, null, "Tue, 02 Jan 2024 00:00:00 GMT"));
+
+		// prepare
+		EasyMock.replay(mockCrlRepository);
+
+		// operate
+		X509CRL resultCrl = testedInstance.findCrl(crlUri, this.testCertificate, validationDate);
+		X509CRL resultCrl2 = testedInstance.findCrl(crlUri, this.testCertificate, expiredCacheValidationDate);
+
+		// verify
+		EasyMock.verify(mockCrlRepository);
+		assertSame(this.testCrl, resultCrl);
+		assertSame(this.testCrl2, resultCrl2);
+	}
+
+	@Test
+	public void staleIfErrorServesCachedCrl() throws Exception {
+		// setup
+		CrlRepository mockCrlRepository = EasyMock.createMock(CrlRepository.class);
+		URI crlUri = new URI("urn:test:crl");
+		Date validationDate = new Date();
+		// past the CRL nextUpdate of one hour, but within the grace period
+		Date staleValidationDate = new Date(validationDate.getTime() + TimeUnit.MINUTES.toMillis(70));
+		Date tooStaleValidationDate = new Date(validationDate.getTime() + TimeUnit.MINUTES.toMillis(120));
+
+		CachedCrlRepository testedInstance = new CachedCrlRepository(mockCrlRepository);
+		testedInstance.setStaleIfErrorMinutes(30);
+		List<Date> staleSinceDates = new LinkedList<>();
+		testedInstance.setStaleIfErrorListener((serverType, uri, staleSince, cause) -> {
+			assertEquals(ServerType.CRL, serverType);
+			assertEquals(crlUri, uri);
+			staleSinceDates.add(staleSince);
+		});
+
+		// expectations
+		EasyMock.expect(mockCrlRepository.findCrl(crlUri, this.testCertificate, validationDate))
+				.andReturn(this.testCrl);
+		EasyMock.expect(mockCrlRepository.findCrl(crlUri, this.testCertificate, staleValidationDate))
+				.andThrow(new ServerNotAvailableException("down", ServerType.CRL));
+		EasyMock.expect(mockCrlRepository.findCrl(crlUri, this.testCertificate, tooStaleValidationDate))
+				.andThrow(new ServerNotAvailableException("down", ServerType.CRL));
+
+		// prepare
+		EasyMock.replay(mockCrlRepository);
+
+		// operate
+		X509CRL resultCrl = testedInstance.findCrl(crlUri, this.testCertificate, validationDate);
+		X509CRL staleCrl = testedInstance.findCrl(crlUri, this.testCertificate, staleValidationDate);
+		// retry not due yet, so no request towards the CRL repository
+		X509CRL staleCrl2 = testedInstance.findCrl(crlUri, this.testCertificate, staleValidationDate);
+		assertThrows(ServerNotAvailableException.class,
+				() -> testedInstance.findCrl(crlUri, this.testCertificate, tooStaleValidationDate));
+
+		// verify
+		EasyMock.verify(mockCrlRepository);
+		assertSame(this.testCrl, resultCrl);
+		assertSame(this.testCrl, staleCrl);
+		assertSame(this.testCrl, staleCrl2);
+		assertEquals(2, staleSinceDates.size());
+		assertEquals(this.testCrl.getNextUpdate(), staleSinceDates.get(0));
+	}
 }
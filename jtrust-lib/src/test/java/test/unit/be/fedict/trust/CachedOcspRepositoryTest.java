@@ -0,0 +1,258 @@
+/*
+ * Java Trust Project.
+ * Copyright (C) 2009 FedICT.
+ * Copyright (C) 2015-2021 e-Contract.be BV.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.unit.be.fedict.trust;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.net.URI;
+import java.security.KeyPair;
+import java.security.Security;
+import java.security.cert.X509Certificate;
+import java.time.LocalDateTime;
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.easymock.EasyMock;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import be.fedict.trust.ServerNotAvailableException;
+import be.fedict.trust.ServerType;
+import be.fedict.trust.ocsp.CachedOcspRepository;
+import be.fedict.trust.ocsp.OcspRepository;
+import be.fedict.trust.test.PKITestUtils;
+
+public class CachedOcspRepositoryTest {
+
+	private X509Certificate rootCertificate;
+	private KeyPair rootKeyPair;
+	private X509Certificate certificate;
+	private X509Certificate certificate2;
+	private OCSPResp ocspResp;
+	private OCSPResp ocspResp2;
+
+	@BeforeEach
+	public void setup() throws Exception {
+		Security.addProvider(new BouncyCastleProvider());
+		this.rootKeyPair = PKITestUtils.generateKeyPair();
+		LocalDateTime notBefore = LocalDateTime.now();
+		LocalDateTime notAfter = notBefore.plusMonths(1);
+		this.rootCertificate = PKITestUtils.generateSelfSignedCertificate(this.rootKeyPair, "CN=TestRoot", notBefore,
+				notAfter);
+		KeyPair keyPair = PKITestUtils.generateKeyPair();
+		this.certificate = PKITestUtils.generateCertificate(keyPair.getPublic(), "CN=Test", notBefore, notAfter,
+				this.rootCertificate, this.rootKeyPair.getPrivate());
+		this.certificate2 = PKITestUtils.generateCertificate(keyPair.getPublic(), "CN=Test2", notBefore, notAfter,
+				this.rootCertificate, this.rootKeyPair.getPrivate());
+		this.ocspResp = PKITestUtils.createOcspResp(this.certificate, false, this.rootCertificate,
+				this.rootCertificate, this.rootKeyPair.getPrivate());
+		this.ocspResp2 = PKITestUtils.createOcspResp(this.certificate2, false, this.rootCertificate,
+				this.rootCertificate, this.rootKeyPair.getPrivate());
+	}
+
+	@Test
+	public void cacheBeingUsed() throws Exception {
+		// setup
+		OcspRepository mockOcspRepository = EasyMock.createMock(OcspRepository.class);
+		URI ocspUri = new URI("urn:test:ocsp");
+		Date validationDate = new Date();
+
+		CachedOcspRepository testedInstance = new CachedOcspRepository(mockOcspRepository);
+
+		// expectations
+		EasyMock.expect(mockOcspRepository.findOcspResponse(ocspUri, this.certificate, this.rootCertificate,
+				validationDate)).andReturn(this.ocspResp);
+
+		// prepare
+		EasyMock.replay(mockOcspRepository);
+
+		// operate
+		OCSPResp result = testedInstance.findOcspResponse(ocspUri, this.certificate, this.rootCertificate,
+				validationDate);
+		OCSPResp result2 = testedInstance.findOcspResponse(ocspUri, this.certificate, this.rootCertificate,
+				validationDate);
+
+		// verify
+		EasyMock.verify(mockOcspRepository);
+		assertSame(this.ocspResp, result);
+		assertSame(this.ocspResp, result2);
+		assertEquals(1, testedInstance.getCacheSize());
+	}
+
+	@Test
+	public void validationDateOutsideOfFreshnessWindow() throws Exception {
+		// setup
+		OcspRepository mockOcspRepository = EasyMock.createMock(OcspRepository.class);
+		URI ocspUri = new URI("urn:test:ocsp");
+		Date validationDate = new Date();
+		Date laterValidationDate = new Date(validationDate.getTime() + 1000 * 60 * 60);
+
+		CachedOcspRepository testedInstance = new CachedOcspRepository(mockOcspRepository);
+
+		// expectations
+		EasyMock.expect(mockOcspRepository.findOcspResponse(ocspUri, this.certificate, this.rootCertificate,
+				validationDate)).andReturn(this.ocspResp);
+		EasyMock.expect(mockOcspRepository.findOcspResponse(ocspUri, this.certificate, this.rootCertificate,
+				laterValidationDate)).andReturn(this.ocspResp2);
+
+		// prepare
+		EasyMock.replay(mockOcspRepository);
+
+		// operate
+		OCSPResp result = testedInstance.findOcspResponse(ocspUri, this.certificate, this.rootCertificate,
+				validationDate);
+		OCSPResp result2 = testedInstance.findOcspResponse(ocspUri, this.certificate, this.rootCertificate,
+				laterValidationDate);
+
+		// verify
+		EasyMock.verify(mockOcspRepository);
+		assertSame(this.ocspResp, result);
+		// non-matching response is returned, but not cached
+		assertSame(this.ocspResp2, result2);
+	}
+
+	@Test
+	public void missingOcspResponseNotCached() throws Exception {
+		// setup
+		OcspRepository mockOcspRepository = EasyMock.createMock(OcspRepository.class);
+		URI ocspUri = new URI("urn:test:ocsp");
+		Date validationDate = new Date();
+
+		CachedOcspRepository testedInstance = new CachedOcspRepository(mockOcspRepository);
+
+		// expectations
+		EasyMock.expect(mockOcspRepository.findOcspResponse(ocspUri, this.certificate, this.rootCertificate,
+				validationDate)).andReturn(null);
+		EasyMock.expect(mockOcspRepository.findOcspResponse(ocspUri, this.certificate, this.rootCertificate,
+				validationDate)).andReturn(this.ocspResp);
+
+		// prepare
+		EasyMock.replay(mockOcspRepository);
+
+		// operate
+		OCSPResp result = testedInstance.findOcspResponse(ocspUri, this.certificate, this.rootCertificate,
+				validationDate);
+		OCSPResp result2 = testedInstance.findOcspResponse(ocspUri, this.certificate, this.rootCertificate,
+				validationDate);
+
+		// verify
+		EasyMock.verify(mockOcspRepository);
+		assertNull(result);
+		assertSame(this.ocspResp, result2);
+	}
+
+	@Test
+	public void maxCacheSize() throws Exception {
+		// setup
+		OcspRepository mockOcspRepository = EasyMock.createMock(OcspRepository.class);
+		URI ocspUri = new URI("urn:test:ocsp");
+		Date validationDate = new Date();
+
+		CachedOcspRepository testedInstance = new CachedOcspRepository(mockOcspRepository, 1);
+
+		// expectations
+		EasyMock.expect(mockOcspRepository.findOcspResponse(ocspUri, this.certificate, this.rootCertificate,
+				validationDate)).andReturn(this.ocspResp);
+		EasyMock.expect(mockOcspRepository.findOcspResponse(ocspUri, this.certificate2, this.rootCertificate,
+				validationDate)).andReturn(this.ocspResp2);
+
+		// prepare
+		EasyMock.replay(mockOcspRepository);
+
+		// operate
+		testedInstance.findOcspResponse(ocspUri, this.certificate, this.rootCertificate, validationDate);
+		testedInstance.findOcspResponse(ocspUri, this.certificate2, this.rootCertificate, validationDate);
+
+		// verify
+		EasyMock.verify(mockOcspRepository);
+		assertEquals(1, testedInstance.getCacheSize());
+	}
+
+	@Test
+	public void staleIfErrorServesCachedOcspResponse() throws Exception {
+		// setup
+		OcspRepository mockOcspRepository = EasyMock.createMock(OcspRepository.class);
+		URI ocspUri = new URI("urn:test:ocsp");
+		Date validationDate = new Date();
+		Date staleValidationDate = new Date(validationDate.getTime() + 1000 * 60 * 10);
+
+		CachedOcspRepository testedInstance = new CachedOcspRepository(mockOcspRepository);
+		testedInstance.setStaleIfErrorMinutes(30);
+		List<ServerType> staleServerTypes = new LinkedList<>();
+		testedInstance.setStaleIfErrorListener(
+				(serverType, uri, staleSince, cause) -> staleServerTypes.add(serverType));
+
+		// expectations
+		EasyMock.expect(mockOcspRepository.findOcspResponse(ocspUri, this.certificate, this.rootCertificate,
+				validationDate)).andReturn(this.ocspResp);
+		EasyMock.expect(mockOcspRepository.findOcspResponse(ocspUri, this.certificate, this.rootCertificate,
+				staleValidationDate)).andThrow(new ServerNotAvailableException("down", ServerType.OCSP));
+
+		// prepare
+		EasyMock.replay(mockOcspRepository);
+
+		// operate
+		OCSPResp result = testedInstance.findOcspResponse(ocspUri, this.certificate, this.rootCertificate,
+				validationDate);
+		OCSPResp staleResult = testedInstance.findOcspResponse(ocspUri, this.certificate, this.rootCertificate,
+				staleValidationDate);
+
+		// verify
+		EasyMock.verify(mockOcspRepository);
+		assertSame(this.ocspResp, result);
+		assertSame(this.ocspResp, staleResult);
+		assertEquals(1, staleServerTypes.size());
+		assertEquals(ServerType.OCSP, staleServerTypes.get(0));
+	}
+
+	@Test
+	public void noStaleIfErrorByDefault() throws Exception {
+		// setup
+		OcspRepository mockOcspRepository = EasyMock.createMock(OcspRepository.class);
+		URI ocspUri = new URI("urn:test:ocsp");
+		Date validationDate = new Date();
+		Date staleValidationDate = new Date(validationDate.getTime() + 1000 * 60 * 10);
+
+		CachedOcspRepository testedInstance = new CachedOcspRepository(mockOcspRepository);
+
+		// expectations
+		EasyMock.expect(mockOcspRepository.findOcspResponse(ocspUri, this.certificate, this.rootCertificate,
+				validationDate)).andReturn(this.ocspResp);
+		EasyMock.expect(mockOcspRepository.findOcspResponse(ocspUri, this.certificate, this.rootCertificate,
+				staleValidationDate)).andThrow(new ServerNotAvailableException("down", ServerType.OCSP));
+
+		// prepare
+		EasyMock.replay(mockOcspRepository);
+
+		// operate
+		testedInstance.findOcspResponse(ocspUri, this.certificate, this.rootCertificate, validationDate);
+		assertThrows(ServerNotAvailableException.class, () -> testedInstance.findOcspResponse(ocspUri,
+				this.certificate, this.rootCertificate, staleValidationDate));
+
+		// verify
+		EasyMock.verify(mockOcspRepository);
+	}
+}
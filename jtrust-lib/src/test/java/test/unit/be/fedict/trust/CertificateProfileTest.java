@@ -0,0 +1,122 @@
+/*
+ * Java Trust Project.
+ * Copyright (C) 2009 FedICT.
+ * Copyright (C) 2015-2021 e-Contract.be BV.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.unit.be.fedict.trust;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.lang.ref.WeakReference;
+import java.net.URI;
+import java.security.KeyPair;
+import java.security.Security;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.time.LocalDateTime;
+import java.util.Collections;
+
+import org.bouncycastle.asn1.x509.qualified.QCStatement;
+import org.bouncycastle.cert.jcajce.JcaX509ExtensionUtils;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import be.fedict.trust.CertificateProfile;
+import be.fedict.trust.test.PKITestUtils;
+
+public class CertificateProfileTest {
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		Security.addProvider(new BouncyCastleProvider());
+	}
+
+	@Test
+	public void testProfile() throws Exception {
+		// setup
+		KeyPair rootKeyPair = PKITestUtils.generateKeyPair();
+		LocalDateTime notBefore = LocalDateTime.now();
+		LocalDateTime notAfter = notBefore.plusMonths(1);
+		X509Certificate rootCertificate = PKITestUtils.generateSelfSignedCertificate(rootKeyPair, "CN=TestRoot",
+				notBefore, notAfter);
+		KeyPair keyPair = PKITestUtils.generateKeyPair();
+		X509Certificate certificate = PKITestUtils.generateCertificate(keyPair.getPublic(), "CN=Test", notBefore,
+				notAfter, rootCertificate, rootKeyPair.getPrivate(), false, -1, "http://crl.test", "http://ocsp.test",
+				null, "SHA256withRSA", false, true, true, null, "1.2.3.4", true, false, true);
+
+		// operate
+		CertificateProfile profile = CertificateProfile.getInstance(certificate);
+		CertificateProfile profile2 = CertificateProfile.getInstance(certificate);
+		CertificateProfile rootProfile = CertificateProfile.getInstance(rootCertificate);
+
+		// verify
+		assertSame(profile, profile2);
+		assertNotSame(profile, rootProfile);
+		assertEquals(new URI("http://crl.test"), profile.getCrlUri());
+		assertEquals(new URI("http://ocsp.test"), profile.getOcspUri());
+		assertFalse(profile.isCa());
+		assertArrayEquals(new JcaX509ExtensionUtils().createSubjectKeyIdentifier(keyPair.getPublic()).getKeyIdentifier(),
+				profile.getSubjectKeyIdentifier().getKeyIdentifier());
+		assertArrayEquals(
+				new JcaX509ExtensionUtils().createSubjectKeyIdentifier(rootKeyPair.getPublic()).getKeyIdentifier(),
+				profile.getAuthorityKeyIdentifier().getKeyIdentifier());
+		assertEquals(Collections.singleton("1.2.3.4"), profile.getCertificatePolicies());
+		assertTrue(profile.getQcStatementIds().contains(QCStatement.id_etsi_qcs_QcCompliance));
+		assertTrue(profile.getQcStatementIds().contains(QCStatement.id_etsi_qcs_QcSSCD));
+		assertTrue(profile.getQcTypes().isEmpty());
+		assertSame(profile.getCertificatePolicies(), profile2.getCertificatePolicies());
+
+		assertTrue(rootProfile.isCa());
+		assertNull(rootProfile.getCrlUri());
+		assertNull(rootProfile.getOcspUri());
+		assertNull(rootProfile.getCertificatePolicies());
+		assertNull(rootProfile.getQcStatementIds());
+	}
+
+	@Test
+	public void testProfileDoesNotRetainCertificate() throws Exception {
+		// setup
+		KeyPair keyPair = PKITestUtils.generateKeyPair();
+		LocalDateTime notBefore = LocalDateTime.now();
+		// the BC certificate factory, as opposed to the JDK one, does not cache
+		X509Certificate certificate = (X509Certificate) CertificateFactory
+				.getInstance("X.509", BouncyCastleProvider.PROVIDER_NAME)
+				.generateCertificate(new ByteArrayInputStream(PKITestUtils
+						.generateSelfSignedCertificate(keyPair, "CN=Test", notBefore, notBefore.plusMonths(1))
+						.getEncoded()));
+		CertificateProfile.getInstance(certificate).isCa();
+		WeakReference<X509Certificate> certificateReference = new WeakReference<>(certificate);
+
+		// operate
+		certificate = null;
+		for (int idx = 0; idx < 50 && null != certificateReference.get(); idx++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+
+		// verify
+		assertNull(certificateReference.get());
+	}
+}
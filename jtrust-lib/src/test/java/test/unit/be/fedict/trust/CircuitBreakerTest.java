@@ -0,0 +1,158 @@
+/*
+ * Java Trust Project.
+ * Copyright (C) 2009 FedICT.
+ * Copyright (C) 2015-2021 e-Contract.be BV.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+package test.unit.be.fedict.trust;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+
+import org.apache.http.client.methods.HttpGet;
+import org.junit.jupiter.api.Test;
+
+import be.fedict.trust.CircuitBreaker;
+import be.fedict.trust.HttpTransport;
+import be.fedict.trust.ValidationDeadline;
+import be.fedict.trust.ValidationDeadlineExceededException;
+
+public class CircuitBreakerTest {
+
+	@Test
+	public void opensAfterFailureThreshold() throws Exception {
+		// setup
+		CircuitBreaker testedInstance = new CircuitBreaker(2, 60 * 1000);
+
+		// operate
+		assertTrue(testedInstance.allowRequest());
+		testedInstance.recordFailure();
+		assertTrue(testedInstance.allowRequest());
+		testedInstance.recordFailure();
+
+		// verify
+		assertEquals(CircuitBreaker.State.OPEN, testedInstance.getState());
+		assertFalse(testedInstance.allowRequest());
+	}
+
+	@Test
+	public void successResetsFailureCount() throws Exception {
+		// setup
+		CircuitBreaker testedInstance = new CircuitBreaker(2, 60 * 1000);
+
+		// operate
+		testedInstance.recordFailure();
+		testedInstance.recordSuccess();
+		testedInstance.recordFailure();
+
+		// verify
+		assertEquals(CircuitBreaker.State.CLOSED, testedInstance.getState());
+		assertTrue(testedInstance.allowRequest());
+	}
+
+	@Test
+	public void halfOpenProbe() throws Exception {
+		// setup
+		CircuitBreaker testedInstance = new CircuitBreaker(1, 0);
+		testedInstance.recordFailure();
+
+		// operate & verify
+		assertTrue(testedInstance.allowRequest());
+		assertEquals(CircuitBreaker.State.HALF_OPEN, testedInstance.getState());
+		assertFalse(testedInstance.allowRequest());
+
+		testedInstance.recordFailure();
+		assertEquals(CircuitBreaker.State.OPEN, testedInstance.getState());
+
+		assertTrue(testedInstance.allowRequest());
+		testedInstance.recordSuccess();
+		assertEquals(CircuitBreaker.State.CLOSED, testedInstance.getState());
+		assertTrue(testedInstance.allowRequest());
+	}
+
+	@Test
+	public void inconclusiveProbeReopens() throws Exception {
+		// setup
+		CircuitBreaker testedInstance = new CircuitBreaker(2, 0);
+		testedInstance.recordFailure();
+
+		// operate & verify: inconclusive outcomes do not count as failures
+		testedInstance.recordInconclusive();
+		assertEquals(CircuitBreaker.State.CLOSED, testedInstance.getState());
+		testedInstance.recordFailure();
+		assertEquals(CircuitBreaker.State.OPEN, testedInstance.getState());
+
+		// operate & verify: but an inconclusive probe releases the half-open state
+		assertTrue(testedInstance.allowRequest());
+		testedInstance.recordInconclusive();
+		assertEquals(CircuitBreaker.State.OPEN, testedInstance.getState());
+		assertTrue(testedInstance.allowRequest());
+	}
+
+	@Test
+	public void connectionRefusedWithinDeadlineIsFailure() throws Exception {
+		// setup
+		int port;
+		try (ServerSocket serverSocket = new ServerSocket(0)) {
+			port = serverSocket.getLocalPort();
+		}
+		HttpTransport testedInstance = new HttpTransport();
+		testedInstance.setCircuitBreakerFailureThreshold(1);
+		URI uri = new URI("http://localhost:" + port + "/ocsp");
+		ValidationDeadline previousValidationDeadline = ValidationDeadline.setCurrent(new ValidationDeadline(500));
+
+		// operate
+		try {
+			IOException result = assertThrows(IOException.class, () -> testedInstance.execute(new HttpGet(uri)));
+			assertFalse(result instanceof ValidationDeadlineExceededException);
+		} finally {
+			ValidationDeadline.setCurrent(previousValidationDeadline);
+			testedInstance.close();
+		}
+
+		// verify
+		assertEquals(CircuitBreaker.State.OPEN, testedInstance.getCircuitBreakerState(uri));
+	}
+
+	@Test
+	public void deadlineTimeoutIsNoFailure() throws Exception {
+		// setup
+		try (ServerSocket serverSocket = new ServerSocket(0)) {
+			HttpTransport testedInstance = new HttpTransport();
+			testedInstance.setCircuitBreakerFailureThreshold(1);
+			URI uri = new URI("http://localhost:" + serverSocket.getLocalPort() + "/ocsp");
+			ValidationDeadline previousValidationDeadline = ValidationDeadline
+					.setCurrent(new ValidationDeadline(200));
+
+			// operate: the server accepts, but never responds
+			try {
+				assertThrows(ValidationDeadlineExceededException.class,
+						() -> testedInstance.execute(new HttpGet(uri)));
+			} finally {
+				ValidationDeadline.setCurrent(previousValidationDeadline);
+				testedInstance.close();
+			}
+
+			// verify
+			assertEquals(CircuitBreaker.State.CLOSED, testedInstance.getCircuitBreakerState(uri));
+		}
+	}
+}
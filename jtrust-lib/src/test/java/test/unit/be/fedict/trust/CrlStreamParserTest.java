@@ -0,0 +1,189 @@
+/*
+ * Java Trust Project.
+ * Copyright (C) 2021 e-Contract.be BV.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.unit.be.fedict.trust;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.Security;
+import java.security.cert.CRLException;
+import java.security.cert.X509CRL;
+import java.security.cert.X509CRLEntry;
+import java.security.cert.X509Certificate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.DERBitString;
+import org.bouncycastle.asn1.DERNull;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.KeyUsage;
+import org.bouncycastle.asn1.x509.Time;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import be.fedict.trust.crl.CrlStreamParser;
+import be.fedict.trust.crl.CrlTrustLinker;
+import be.fedict.trust.crl.IndexedX509CRL;
+import be.fedict.trust.test.PKITestUtils;
+
+public class CrlStreamParserTest {
+
+	private KeyPair rootKeyPair;
+
+	private X509Certificate rootCertificate;
+
+	private LocalDateTime notBefore;
+
+	private LocalDateTime notAfter;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		Security.addProvider(new BouncyCastleProvider());
+		this.rootKeyPair = PKITestUtils.generateKeyPair();
+		this.notBefore = LocalDateTime.now();
+		this.notAfter = this.notBefore.plusMonths(1);
+		this.rootCertificate = PKITestUtils.generateSelfSignedCertificate(this.rootKeyPair, "CN=TestRoot",
+				this.notBefore, this.notAfter, true, 0, null, new KeyUsage(KeyUsage.cRLSign));
+	}
+
+	@Test
+	public void parseCrl() throws Exception {
+		// setup
+		List<PKITestUtils.RevokedCertificate> revokedCertificates = new LinkedList<>();
+		for (int idx = 0; idx < 2000; idx++) {
+			revokedCertificates.add(new PKITestUtils.RevokedCertificate(
+					BigInteger.ONE.shiftLeft(idx % 100).add(BigInteger.valueOf(idx * 7919L)), this.notBefore.minusMinutes(idx)));
+		}
+		X509CRL x509crl = PKITestUtils.generateCrl(this.rootKeyPair.getPrivate(), this.rootCertificate,
+				this.notBefore, this.notAfter, null, false, revokedCertificates, "SHA256withRSA");
+		CrlStreamParser testedInstance = new CrlStreamParser(this.rootKeyPair.getPublic());
+
+		// operate
+		IndexedX509CRL result = testedInstance.parse(new ByteArrayInputStream(x509crl.getEncoded()));
+
+		// verify
+		assertArrayEquals(x509crl.getEncoded(), result.getEncoded());
+		assertArrayEquals(x509crl.getTBSCertList(), result.getTBSCertList());
+		assertArrayEquals(x509crl.getSignature(), result.getSignature());
+		assertEquals(x509crl, result);
+		assertEquals(x509crl.getVersion(), result.getVersion());
+		assertEquals(x509crl.getIssuerX500Principal(), result.getIssuerX500Principal());
+		assertEquals(x509crl.getThisUpdate(), result.getThisUpdate());
+		assertEquals(x509crl.getNextUpdate(), result.getNextUpdate());
+		assertEquals(x509crl.getSigAlgOID(), result.getSigAlgOID());
+		assertEquals(x509crl.getSigAlgName().toUpperCase(), result.getSigAlgName().toUpperCase());
+		assertEquals(x509crl.getNonCriticalExtensionOIDs(), result.getNonCriticalExtensionOIDs());
+		assertArrayEquals(x509crl.getExtensionValue(Extension.cRLNumber.getId()),
+				result.getExtensionValue(Extension.cRLNumber.getId()));
+		assertEquals(x509crl.getRevokedCertificates().size(), result.getIndex().size());
+		for (X509CRLEntry expectedEntry : x509crl.getRevokedCertificates()) {
+			X509CRLEntry entry = result.getRevokedCertificate(expectedEntry.getSerialNumber());
+			assertEquals(expectedEntry.getRevocationDate(), entry.getRevocationDate());
+			assertEquals(expectedEntry.getRevocationReason(), entry.getRevocationReason());
+		}
+		assertNull(result.getRevokedCertificate(BigInteger.valueOf(3)));
+		result.verify(this.rootKeyPair.getPublic());
+		assertTrue(CrlTrustLinker.checkCrlIntegrity(result, this.rootCertificate, new Date()));
+	}
+
+	@Test
+	public void parseCrlWithoutEncoding() throws Exception {
+		// setup
+		X509CRL x509crl = PKITestUtils.generateCrl(this.rootKeyPair.getPrivate(), this.rootCertificate,
+				this.notBefore, this.notAfter, BigInteger.ONE);
+		CrlStreamParser testedInstance = new CrlStreamParser(this.rootKeyPair.getPublic());
+		testedInstance.setRetainEncoding(false);
+
+		// operate
+		IndexedX509CRL result = testedInstance.parse(new ByteArrayInputStream(x509crl.getEncoded()));
+
+		// verify
+		assertFalse(result.hasEncoding());
+		assertThrows(CRLException.class, () -> result.getEncoded());
+		assertEquals(1, result.getIndex().size());
+		// signature has been verified while parsing
+		assertTrue(CrlTrustLinker.checkCrlIntegrity(result, this.rootCertificate, new Date()));
+	}
+
+	@Test
+	public void parseCrlInvalidSignature() throws Exception {
+		// setup
+		KeyPair otherKeyPair = PKITestUtils.generateKeyPair();
+		X509CRL x509crl = PKITestUtils.generateCrl(otherKeyPair.getPrivate(), this.rootCertificate, this.notBefore,
+				this.notAfter, BigInteger.ONE);
+		CrlStreamParser testedInstance = new CrlStreamParser(this.rootKeyPair.getPublic());
+
+		// operate & verify
+		assertThrows(CRLException.class,
+				() -> testedInstance.parse(new ByteArrayInputStream(x509crl.getEncoded())));
+	}
+
+	@Test
+	public void parseTruncatedCrl() throws Exception {
+		// setup
+		X509CRL x509crl = PKITestUtils.generateCrl(this.rootKeyPair.getPrivate(), this.rootCertificate,
+				this.notBefore, this.notAfter, BigInteger.ONE);
+		byte[] encoded = x509crl.getEncoded();
+		CrlStreamParser testedInstance = new CrlStreamParser(null);
+
+		// operate & verify
+		assertThrows(Exception.class, () -> testedInstance
+				.parse(new ByteArrayInputStream(Arrays.copyOf(encoded, encoded.length - 10))));
+	}
+
+	@Test
+	public void parseTruncatedCrlEntry() throws Exception {
+		// setup
+		AlgorithmIdentifier signatureAlgorithm = new AlgorithmIdentifier(
+				PKCSObjectIdentifiers.sha256WithRSAEncryption, DERNull.INSTANCE);
+		// CRL entry extension that ends right after its extnID
+		DERSequence entryExtensions = new DERSequence(new DERSequence(Extension.invalidityDate));
+		DERSequence entry = new DERSequence(new ASN1Encodable[] { new ASN1Integer(BigInteger.ONE),
+				new Time(new Date()), entryExtensions });
+		DERSequence tbsCertList = new DERSequence(new ASN1Encodable[] { new ASN1Integer(1), signatureAlgorithm,
+				X500Name.getInstance(this.rootCertificate.getSubjectX500Principal().getEncoded()),
+				new Time(new Date()), new DERSequence(entry) });
+		byte[] encoded = new DERSequence(
+				new ASN1Encodable[] { tbsCertList, signatureAlgorithm, new DERBitString(new byte[] { 0 }) })
+						.getEncoded();
+		CrlStreamParser testedInstance = new CrlStreamParser(null);
+
+		// operate & verify
+		CRLException e = assertThrows(CRLException.class,
+				() -> testedInstance.parse(new ByteArrayInputStream(encoded)));
+		assertEquals("truncated CRL entry", e.getMessage());
+	}
+}
@@ -20,6 +20,8 @@
 package test.unit.be.fedict.trust;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
 import java.net.URI;
@@ -32,8 +34,15 @@ import java.time.ZoneId;
 import java.util.Collections;
 import java.util.Date;
 
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.IssuingDistributionPoint;
 import org.bouncycastle.asn1.x509.KeyUsage;
+import org.bouncycastle.asn1.x509.ReasonFlags;
+import org.bouncycastle.cert.jcajce.JcaX509CRLConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v2CRLBuilder;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
 import org.easymock.EasyMock;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -472,4 +481,113 @@ public class CrlTrustLinkerTest {
 
 		assertEquals(TrustLinkerResult.UNDECIDED, result);
 	}
+
+	@Test
+	public void crlIntegrityVerifiedPerIssuerKey() throws Exception {
+		final KeyPair rootKeyPair = PKITestUtils.generateKeyPair();
+		final LocalDateTime notBefore = LocalDateTime.now();
+		final LocalDateTime notAfter = notBefore.plusMonths(1);
+		final X509Certificate rootCertificate = PKITestUtils.generateSelfSignedCertificate(rootKeyPair, "CN=TestRoot",
+				notBefore, notAfter, true, 0, null, new KeyUsage(KeyUsage.cRLSign));
+		final KeyPair otherRootKeyPair = PKITestUtils.generateKeyPair();
+		final X509Certificate otherRootCertificate = PKITestUtils.generateSelfSignedCertificate(otherRootKeyPair,
+				"CN=TestRoot", notBefore, notAfter, true, 0, null, new KeyUsage(KeyUsage.cRLSign));
+
+		final LocalDateTime thisUpdate = LocalDateTime.now();
+		final LocalDateTime nextUpdate = thisUpdate.plusHours(1);
+		final X509CRL x509crl = PKITestUtils.generateCrl(rootKeyPair.getPrivate(), rootCertificate, thisUpdate,
+				nextUpdate);
+		final Date validationDate = new Date();
+
+		assertTrue(CrlTrustLinker.checkCrlIntegrity(x509crl, rootCertificate, validationDate));
+		assertTrue(CrlTrustLinker.checkCrlIntegrity(x509crl, rootCertificate, validationDate));
+		// a verified CRL does not verify against another issuer key
+		assertFalse(CrlTrustLinker.checkCrlIntegrity(x509crl, otherRootCertificate, validationDate));
+		// the time window is checked on every call
+		assertFalse(CrlTrustLinker.checkCrlIntegrity(x509crl, rootCertificate,
+				Date.from(nextUpdate.plusHours(1).atZone(ZoneId.systemDefault()).toInstant())));
+	}
+
+	@Test
+	public void partitionedCrlUndecided() throws Exception {
+		final KeyPair rootKeyPair = PKITestUtils.generateKeyPair();
+		final LocalDateTime notBefore = LocalDateTime.now();
+		final LocalDateTime notAfter = notBefore.plusMonths(1);
+		final X509Certificate rootCertificate = PKITestUtils.generateSelfSignedCertificate(rootKeyPair, "CN=TestRoot",
+				notBefore, notAfter, true, 0, null, new KeyUsage(KeyUsage.cRLSign));
+
+		final KeyPair keyPair = PKITestUtils.generateKeyPair();
+		final X509Certificate certificate = PKITestUtils.generateCertificate(keyPair.getPublic(), "CN=Test", notBefore,
+				notAfter, rootCertificate, rootKeyPair.getPrivate(), false, -1, "http://crl-uri");
+
+		final Date validationDate = Date.from(notBefore.plusDays(1).atZone(ZoneId.systemDefault()).toInstant());
+
+		final IssuingDistributionPoint[] partitions = {
+				// only some reasons
+				new IssuingDistributionPoint(null, false, false, new ReasonFlags(ReasonFlags.keyCompromise), false,
+						false),
+				// only CA certificates, while the child is a leaf
+				new IssuingDistributionPoint(null, false, true, null, false, false),
+				// only attribute certificates
+				new IssuingDistributionPoint(null, false, false, null, false, true) };
+		for (final IssuingDistributionPoint partition : partitions) {
+			final X509CRL x509crl = generateCrl(rootKeyPair, rootCertificate, notBefore, notAfter, partition);
+			final CrlRepository mockCrlRepository = EasyMock.createMock(CrlRepository.class);
+			EasyMock.expect(mockCrlRepository.findCrl(new URI("http://crl-uri"), rootCertificate, validationDate))
+					.andReturn(x509crl);
+
+			EasyMock.replay(mockCrlRepository);
+
+			final CrlTrustLinker crlTrustLinker = new CrlTrustLinker(mockCrlRepository);
+
+			final TrustLinkerResult result = crlTrustLinker.hasTrustLink(certificate, rootCertificate, validationDate,
+					new RevocationData(), new DefaultAlgorithmPolicy());
+
+			assertEquals(TrustLinkerResult.UNDECIDED, result);
+			EasyMock.verify(mockCrlRepository);
+		}
+	}
+
+	@Test
+	public void userCertificatesCrlPasses() throws Exception {
+		final KeyPair rootKeyPair = PKITestUtils.generateKeyPair();
+		final LocalDateTime notBefore = LocalDateTime.now();
+		final LocalDateTime notAfter = notBefore.plusMonths(1);
+		final X509Certificate rootCertificate = PKITestUtils.generateSelfSignedCertificate(rootKeyPair, "CN=TestRoot",
+				notBefore, notAfter, true, 0, null, new KeyUsage(KeyUsage.cRLSign));
+
+		final KeyPair keyPair = PKITestUtils.generateKeyPair();
+		final X509Certificate certificate = PKITestUtils.generateCertificate(keyPair.getPublic(), "CN=Test", notBefore,
+				notAfter, rootCertificate, rootKeyPair.getPrivate(), false, -1, "http://crl-uri");
+
+		final Date validationDate = Date.from(notBefore.plusDays(1).atZone(ZoneId.systemDefault()).toInstant());
+
+		final X509CRL x509crl = generateCrl(rootKeyPair, rootCertificate, notBefore, notAfter,
+				new IssuingDistributionPoint(null, true, false, null, false, false));
+		final CrlRepository mockCrlRepository = EasyMock.createMock(CrlRepository.class);
+		EasyMock.expect(mockCrlRepository.findCrl(new URI("http://crl-uri"), rootCertificate, validationDate))
+				.andReturn(x509crl);
+
+		EasyMock.replay(mockCrlRepository);
+
+		final CrlTrustLinker crlTrustLinker = new CrlTrustLinker(mockCrlRepository);
+
+		final TrustLinkerResult result = crlTrustLinker.hasTrustLink(certificate, rootCertificate, validationDate,
+				new RevocationData(), new DefaultAlgorithmPolicy());
+
+		assertEquals(TrustLinkerResult.TRUSTED, result);
+		EasyMock.verify(mockCrlRepository);
+	}
+
+	private static X509CRL generateCrl(final KeyPair issuerKeyPair, final X509Certificate issuerCertificate,
+			final LocalDateTime thisUpdate, final LocalDateTime nextUpdate,
+			final IssuingDistributionPoint issuingDistributionPoint) throws Exception {
+		final JcaX509v2CRLBuilder crlBuilder = new JcaX509v2CRLBuilder(issuerCertificate.getSubjectX500Principal(),
+				Date.from(thisUpdate.atZone(ZoneId.systemDefault()).toInstant()));
+		crlBuilder.setNextUpdate(Date.from(nextUpdate.atZone(ZoneId.systemDefault()).toInstant()));
+		crlBuilder.addExtension(Extension.issuingDistributionPoint, true, issuingDistributionPoint);
+		final ContentSigner contentSigner = new JcaContentSignerBuilder("SHA256withRSA")
+				.build(issuerKeyPair.getPrivate());
+		return new JcaX509CRLConverter().getCRL(crlBuilder.build(contentSigner));
+	}
 }
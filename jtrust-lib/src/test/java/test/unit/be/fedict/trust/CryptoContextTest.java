@@ -0,0 +1,99 @@
+/*
+ * Java Trust Project.
+ * Copyright (C) 2009 FedICT.
+ * Copyright (C) 2015-2021 e-Contract.be BV.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.unit.be.fedict.trust;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.MessageDigest;
+import java.security.Security;
+import java.security.Signature;
+import java.security.cert.X509Certificate;
+import java.time.LocalDateTime;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import be.fedict.trust.CryptoContext;
+import be.fedict.trust.test.PKITestUtils;
+
+public class CryptoContextTest {
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		Security.addProvider(new BouncyCastleProvider());
+	}
+
+	@Test
+	public void testCreateCertificateID() throws Exception {
+		// setup
+		KeyPair keyPair = PKITestUtils.generateKeyPair();
+		LocalDateTime notBefore = LocalDateTime.now();
+		X509Certificate certificate = PKITestUtils.generateSelfSignedCertificate(keyPair, "CN=Test", notBefore,
+				notBefore.plusMonths(1));
+		BigInteger serialNumber = BigInteger.valueOf(1234);
+
+		CertificateID expectedCertificateId = new CertificateID(
+				new JcaDigestCalculatorProviderBuilder().setProvider(BouncyCastleProvider.PROVIDER_NAME).build()
+						.get(CertificateID.HASH_SHA1),
+				new JcaX509CertificateHolder(certificate), serialNumber);
+
+		// operate
+		CertificateID result = CryptoContext.createCertificateID(certificate, serialNumber);
+		CertificateID result2 = CryptoContext.createCertificateID(certificate, serialNumber);
+
+		// verify
+		assertEquals(expectedCertificateId, result);
+		assertEquals(expectedCertificateId, result2);
+		assertEquals(serialNumber, result.getSerialNumber());
+	}
+
+	@Test
+	public void testPooledPrimitivesPerThread() throws Exception {
+		// operate
+		MessageDigest messageDigest = CryptoContext.getMessageDigest("SHA-256");
+		messageDigest.update((byte) 0x01);
+		MessageDigest messageDigest2 = CryptoContext.getMessageDigest("SHA-256");
+		Signature signature = CryptoContext.getSignature("SHA256withRSA");
+		Signature signature2 = CryptoContext.getSignature("SHA256withRSA");
+
+		ExecutorService executorService = Executors.newSingleThreadExecutor();
+		MessageDigest otherThreadMessageDigest = executorService
+				.submit(() -> CryptoContext.getMessageDigest("SHA-256")).get();
+		executorService.shutdown();
+
+		// verify
+		assertSame(messageDigest, messageDigest2);
+		assertSame(signature, signature2);
+		assertNotSame(messageDigest, otherThreadMessageDigest);
+		// reset on reuse
+		assertEquals(new BigInteger(1, MessageDigest.getInstance("SHA-256").digest()),
+				new BigInteger(1, messageDigest2.digest()));
+	}
+}
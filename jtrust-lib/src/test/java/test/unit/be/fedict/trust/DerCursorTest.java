@@ -0,0 +1,115 @@
+/*
+ * Java Trust Project.
+ * Copyright (C) 2009 FedICT.
+ * Copyright (C) 2015-2021 e-Contract.be BV.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.unit.be.fedict.trust;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.x509.BasicConstraints;
+import org.bouncycastle.asn1.x509.CRLNumber;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.asn1.x509.ExtendedKeyUsage;
+import org.bouncycastle.asn1.x509.IssuingDistributionPoint;
+import org.bouncycastle.asn1.x509.KeyPurposeId;
+import org.junit.jupiter.api.Test;
+
+import be.fedict.trust.DerCursor;
+
+public class DerCursorTest {
+
+	@Test
+	public void testExtensionValues() throws Exception {
+		// setup
+		byte[] crlNumber = toExtensionValue(new CRLNumber(new BigInteger("123456789012345678901234567890")));
+		byte[] reasonCode = toExtensionValue(CRLReason.lookup(CRLReason.certificateHold));
+		byte[] basicConstraints = toExtensionValue(new BasicConstraints(2));
+
+		// operate
+		DerCursor crlNumberCursor = DerCursor.openExtensionValue(crlNumber);
+		crlNumberCursor.next(DerCursor.INTEGER);
+		DerCursor reasonCodeCursor = DerCursor.openExtensionValue(reasonCode);
+		reasonCodeCursor.next(DerCursor.ENUMERATED);
+		DerCursor basicConstraintsCursor = DerCursor.openExtensionValue(basicConstraints);
+		basicConstraintsCursor.next(DerCursor.SEQUENCE);
+		basicConstraintsCursor.enter();
+
+		// verify
+		assertEquals(new BigInteger("123456789012345678901234567890"), crlNumberCursor.getPositiveValue());
+		assertFalse(crlNumberCursor.hasNext());
+		assertEquals(CRLReason.certificateHold, reasonCodeCursor.getInt());
+		assertEquals(DerCursor.BOOLEAN, basicConstraintsCursor.next());
+		assertTrue(basicConstraintsCursor.getBoolean());
+		assertEquals(DerCursor.INTEGER, basicConstraintsCursor.next());
+		assertEquals(2, basicConstraintsCursor.getInt());
+		assertFalse(basicConstraintsCursor.hasNext());
+	}
+
+	@Test
+	public void testNestedElements() throws Exception {
+		// setup
+		byte[] extendedKeyUsage = toExtensionValue(new ExtendedKeyUsage(
+				new KeyPurposeId[] { KeyPurposeId.id_kp_serverAuth, KeyPurposeId.id_kp_codeSigning }));
+		byte[] codeSigning = DerCursor.getContents(KeyPurposeId.id_kp_codeSigning.toOID());
+		byte[] idp = toExtensionValue(new IssuingDistributionPoint(null, false, false, null, true, false));
+
+		// operate
+		DerCursor cursor = DerCursor.openExtensionValue(extendedKeyUsage);
+		cursor.next(DerCursor.SEQUENCE);
+		cursor.enter();
+		cursor.next(DerCursor.OBJECT_IDENTIFIER);
+		boolean first = cursor.valueEquals(codeSigning);
+		cursor.exit();
+		DerCursor idpCursor = DerCursor.openExtensionValue(idp);
+		idpCursor.next(DerCursor.SEQUENCE);
+		idpCursor.enter();
+
+		// verify
+		assertFalse(first);
+		assertFalse(cursor.hasNext());
+		assertEquals(0x84, idpCursor.next());
+		assertTrue(idpCursor.getBoolean());
+	}
+
+	@Test
+	public void testInvalidEncoding() throws Exception {
+		// setup
+		byte[] crlNumber = toExtensionValue(new CRLNumber(BigInteger.TEN));
+		byte[] truncated = Arrays.copyOf(crlNumber, crlNumber.length - 1);
+
+		// operate & verify
+		assertThrows(IOException.class, () -> DerCursor.openExtensionValue(truncated));
+		DerCursor cursor = DerCursor.openExtensionValue(crlNumber);
+		assertThrows(IOException.class, () -> cursor.next(DerCursor.SEQUENCE));
+		assertThrows(IOException.class, () -> cursor.enter());
+	}
+
+	private static byte[] toExtensionValue(final ASN1Encodable value) throws IOException {
+		return new DEROctetString(value).getEncoded(ASN1Encoding.DER);
+	}
+}
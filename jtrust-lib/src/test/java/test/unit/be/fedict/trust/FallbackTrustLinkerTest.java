@@ -129,4 +129,97 @@ public class FallbackTrustLinkerTest {
 		assertEquals(TrustLinkerResult.TRUSTED, result);
 		EasyMock.verify(mockTrustLinker1, mockTrustLinker2);
 	}
+
+	@Test
+	public void fallbackOnUnavailable() throws Exception {
+		// setup
+		Date validationDate = new Date();
+		TrustLinker mockTrustLinker1 = EasyMock.createMock(TrustLinker.class);
+		EasyMock.expect(mockTrustLinker1.hasTrustLink(EasyMock.eq((X509Certificate) null),
+				EasyMock.eq((X509Certificate) null), EasyMock.eq(validationDate), EasyMock.eq((RevocationData) null),
+				EasyMock.anyObject(AlgorithmPolicy.class)))
+				.andThrow(new TrustLinkerResultException(TrustLinkerResultReason.OCSP_UNAVAILABLE));
+		TrustLinker mockTrustLinker2 = EasyMock.createMock(TrustLinker.class);
+		EasyMock.expect(mockTrustLinker2.hasTrustLink(EasyMock.eq((X509Certificate) null),
+				EasyMock.eq((X509Certificate) null), EasyMock.eq(validationDate), EasyMock.eq((RevocationData) null),
+				EasyMock.anyObject(AlgorithmPolicy.class))).andReturn(TrustLinkerResult.TRUSTED);
+
+		FallbackTrustLinker fallbackTrustLinker = new FallbackTrustLinker();
+		fallbackTrustLinker.setFallbackOnUnavailable(true);
+		fallbackTrustLinker.addTrustLinker(mockTrustLinker1);
+		fallbackTrustLinker.addTrustLinker(mockTrustLinker2);
+
+		EasyMock.replay(mockTrustLinker1, mockTrustLinker2);
+
+		// operate
+		TrustLinkerResult result = fallbackTrustLinker.hasTrustLink(null, null, validationDate, null,
+				new DefaultAlgorithmPolicy());
+
+		// verify
+		assertEquals(TrustLinkerResult.TRUSTED, result);
+		EasyMock.verify(mockTrustLinker1, mockTrustLinker2);
+	}
+
+	@Test
+	public void allUnavailable() throws Exception {
+		// setup
+		Date validationDate = new Date();
+		TrustLinker mockTrustLinker1 = EasyMock.createMock(TrustLinker.class);
+		EasyMock.expect(mockTrustLinker1.hasTrustLink(EasyMock.eq((X509Certificate) null),
+				EasyMock.eq((X509Certificate) null), EasyMock.eq(validationDate), EasyMock.eq((RevocationData) null),
+				EasyMock.anyObject(AlgorithmPolicy.class)))
+				.andThrow(new TrustLinkerResultException(TrustLinkerResultReason.OCSP_UNAVAILABLE));
+		TrustLinker mockTrustLinker2 = EasyMock.createMock(TrustLinker.class);
+		EasyMock.expect(mockTrustLinker2.hasTrustLink(EasyMock.eq((X509Certificate) null),
+				EasyMock.eq((X509Certificate) null), EasyMock.eq(validationDate), EasyMock.eq((RevocationData) null),
+				EasyMock.anyObject(AlgorithmPolicy.class)))
+				.andThrow(new TrustLinkerResultException(TrustLinkerResultReason.CRL_UNAVAILABLE));
+
+		FallbackTrustLinker fallbackTrustLinker = new FallbackTrustLinker();
+		fallbackTrustLinker.setFallbackOnUnavailable(true);
+		fallbackTrustLinker.addTrustLinker(mockTrustLinker1);
+		fallbackTrustLinker.addTrustLinker(mockTrustLinker2);
+
+		EasyMock.replay(mockTrustLinker1, mockTrustLinker2);
+
+		// operate
+		try {
+			fallbackTrustLinker.hasTrustLink(null, null, validationDate, null, new DefaultAlgorithmPolicy());
+			fail();
+		} catch (TrustLinkerResultException e) {
+			// verify
+			assertEquals(TrustLinkerResultReason.CRL_UNAVAILABLE, e.getReason());
+		}
+		EasyMock.verify(mockTrustLinker1, mockTrustLinker2);
+	}
+
+	@Test
+	public void fallbackAsync() throws Exception {
+		// setup
+		Date validationDate = new Date();
+		TrustLinker mockTrustLinker1 = EasyMock.createMock(TrustLinker.class);
+		EasyMock.expect(mockTrustLinker1.hasTrustLink(EasyMock.eq((X509Certificate) null),
+				EasyMock.eq((X509Certificate) null), EasyMock.eq(validationDate), EasyMock.eq((RevocationData) null),
+				EasyMock.anyObject(AlgorithmPolicy.class)))
+				.andThrow(new TrustLinkerResultException(TrustLinkerResultReason.CRL_UNAVAILABLE));
+		TrustLinker mockTrustLinker2 = EasyMock.createMock(TrustLinker.class);
+		EasyMock.expect(mockTrustLinker2.hasTrustLink(EasyMock.eq((X509Certificate) null),
+				EasyMock.eq((X509Certificate) null), EasyMock.eq(validationDate), EasyMock.eq((RevocationData) null),
+				EasyMock.anyObject(AlgorithmPolicy.class))).andReturn(TrustLinkerResult.TRUSTED);
+
+		FallbackTrustLinker fallbackTrustLinker = new FallbackTrustLinker();
+		fallbackTrustLinker.setFallbackOnUnavailable(true);
+		fallbackTrustLinker.addTrustLinker(mockTrustLinker1);
+		fallbackTrustLinker.addTrustLinker(mockTrustLinker2);
+
+		EasyMock.replay(mockTrustLinker1, mockTrustLinker2);
+
+		// operate
+		TrustLinkerResult result = fallbackTrustLinker
+				.hasTrustLinkAsync(null, null, validationDate, null, new DefaultAlgorithmPolicy()).get();
+
+		// verify
+		assertEquals(TrustLinkerResult.TRUSTED, result);
+		EasyMock.verify(mockTrustLinker1, mockTrustLinker2);
+	}
 }
@@ -0,0 +1,297 @@
+/*
+ * Java Trust Project.
+ * Copyright (C) 2009 FedICT.
+ * Copyright (C) 2015-2021 e-Contract.be BV.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.unit.be.fedict.trust;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.easymock.EasyMock;
+import org.junit.jupiter.api.Test;
+
+import be.fedict.trust.linker.AsyncTrustLinker;
+import be.fedict.trust.linker.AsyncTrustLinkerAdapter;
+import be.fedict.trust.linker.HedgedTrustLinker;
+import be.fedict.trust.linker.TrustLinker;
+import be.fedict.trust.linker.TrustLinkerResult;
+import be.fedict.trust.linker.TrustLinkerResultException;
+import be.fedict.trust.linker.TrustLinkerResultReason;
+import be.fedict.trust.policy.AlgorithmPolicy;
+import be.fedict.trust.policy.DefaultAlgorithmPolicy;
+import be.fedict.trust.revocation.CRLRevocationData;
+import be.fedict.trust.revocation.RevocationData;
+
+public class HedgedTrustLinkerTest {
+
+	@Test
+	public void primaryTrusts() throws Exception {
+		// setup
+		Date validationDate = new Date();
+		TrustLinker mockPrimaryTrustLinker = EasyMock.createMock(TrustLinker.class);
+		TrustLinker mockSecondaryTrustLinker = EasyMock.createMock(TrustLinker.class);
+		EasyMock.expect(mockPrimaryTrustLinker.hasTrustLink(EasyMock.eq((X509Certificate) null),
+				EasyMock.eq((X509Certificate) null), EasyMock.eq(validationDate),
+				EasyMock.anyObject(RevocationData.class), EasyMock.anyObject(AlgorithmPolicy.class)))
+				.andReturn(TrustLinkerResult.TRUSTED);
+
+		HedgedTrustLinker hedgedTrustLinker = new HedgedTrustLinker(mockPrimaryTrustLinker,
+				mockSecondaryTrustLinker);
+
+		EasyMock.replay(mockPrimaryTrustLinker, mockSecondaryTrustLinker);
+
+		// operate
+		TrustLinkerResult result = hedgedTrustLinker.hasTrustLink(null, null, validationDate, new RevocationData(),
+				new DefaultAlgorithmPolicy());
+
+		// verify
+		assertEquals(TrustLinkerResult.TRUSTED, result);
+		EasyMock.verify(mockPrimaryTrustLinker, mockSecondaryTrustLinker);
+	}
+
+	@Test
+	public void slowPrimaryHedged() throws Exception {
+		// setup
+		Date validationDate = new Date();
+		CountDownLatch primaryLatch = new CountDownLatch(1);
+		TrustLinker primaryTrustLinker = (childCertificate, certificate, date, revocationData, algorithmPolicy) -> {
+			primaryLatch.await(5, TimeUnit.SECONDS);
+			revocationData.getCrlRevocationData().add(new CRLRevocationData(new byte[] { 1 }, "urn:primary"));
+			return TrustLinkerResult.TRUSTED;
+		};
+		TrustLinker secondaryTrustLinker = (childCertificate, certificate, date, revocationData,
+				algorithmPolicy) -> {
+			revocationData.getCrlRevocationData().add(new CRLRevocationData(new byte[] { 2 }, "urn:secondary"));
+			throw new TrustLinkerResultException(TrustLinkerResultReason.INVALID_REVOCATION_STATUS);
+		};
+
+		HedgedTrustLinker hedgedTrustLinker = new HedgedTrustLinker(primaryTrustLinker, secondaryTrustLinker);
+		hedgedTrustLinker.setHedgeDelay(50);
+		RevocationData revocationData = new RevocationData();
+
+		// operate
+		long start = System.currentTimeMillis();
+		try {
+			hedgedTrustLinker.hasTrustLink(null, null, validationDate, revocationData, new DefaultAlgorithmPolicy());
+			fail();
+		} catch (TrustLinkerResultException e) {
+			// verify
+			assertEquals(TrustLinkerResultReason.INVALID_REVOCATION_STATUS, e.getReason());
+		} finally {
+			primaryLatch.countDown();
+		}
+		assertTrue(System.currentTimeMillis() - start < 5000);
+		assertEquals(1, revocationData.getCrlRevocationData().size());
+		assertEquals("urn:secondary", revocationData.getCrlRevocationData().get(0).getURI());
+	}
+
+	@Test
+	public void primaryUnavailable() throws Exception {
+		// setup
+		Date validationDate = new Date();
+		TrustLinker mockPrimaryTrustLinker = EasyMock.createMock(TrustLinker.class);
+		TrustLinker mockSecondaryTrustLinker = EasyMock.createMock(TrustLinker.class);
+		EasyMock.expect(mockPrimaryTrustLinker.hasTrustLink(EasyMock.eq((X509Certificate) null),
+				EasyMock.eq((X509Certificate) null), EasyMock.eq(validationDate), EasyMock.eq((RevocationData) null),
+				EasyMock.anyObject(AlgorithmPolicy.class)))
+				.andThrow(new TrustLinkerResultException(TrustLinkerResultReason.OCSP_UNAVAILABLE));
+		EasyMock.expect(mockSecondaryTrustLinker.hasTrustLink(EasyMock.eq((X509Certificate) null),
+				EasyMock.eq((X509Certificate) null), EasyMock.eq(validationDate), EasyMock.eq((RevocationData) null),
+				EasyMock.anyObject(AlgorithmPolicy.class))).andReturn(TrustLinkerResult.TRUSTED);
+
+		HedgedTrustLinker hedgedTrustLinker = new HedgedTrustLinker(mockPrimaryTrustLinker,
+				mockSecondaryTrustLinker);
+		// the secondary trust linker has to start as soon as the primary one gives up
+		hedgedTrustLinker.setHedgeDelay(60000);
+
+		EasyMock.replay(mockPrimaryTrustLinker, mockSecondaryTrustLinker);
+
+		// operate
+		TrustLinkerResult result = hedgedTrustLinker.hasTrustLink(null, null, validationDate, null,
+				new DefaultAlgorithmPolicy());
+
+		// verify
+		assertEquals(TrustLinkerResult.TRUSTED, result);
+		EasyMock.verify(mockPrimaryTrustLinker, mockSecondaryTrustLinker);
+	}
+
+	@Test
+	public void noneDecides() throws Exception {
+		// setup
+		Date validationDate = new Date();
+		TrustLinker mockPrimaryTrustLinker = EasyMock.createMock(TrustLinker.class);
+		TrustLinker mockSecondaryTrustLinker = EasyMock.createMock(TrustLinker.class);
+		EasyMock.expect(mockPrimaryTrustLinker.hasTrustLink(EasyMock.eq((X509Certificate) null),
+				EasyMock.eq((X509Certificate) null), EasyMock.eq(validationDate), EasyMock.eq((RevocationData) null),
+				EasyMock.anyObject(AlgorithmPolicy.class)))
+				.andThrow(new TrustLinkerResultException(TrustLinkerResultReason.OCSP_UNAVAILABLE));
+		EasyMock.expect(mockSecondaryTrustLinker.hasTrustLink(EasyMock.eq((X509Certificate) null),
+				EasyMock.eq((X509Certificate) null), EasyMock.eq(validationDate), EasyMock.eq((RevocationData) null),
+				EasyMock.anyObject(AlgorithmPolicy.class))).andReturn(TrustLinkerResult.UNDECIDED);
+
+		HedgedTrustLinker hedgedTrustLinker = new HedgedTrustLinker(mockPrimaryTrustLinker,
+				mockSecondaryTrustLinker);
+		hedgedTrustLinker.setHedgeDelay(0);
+
+		EasyMock.replay(mockPrimaryTrustLinker, mockSecondaryTrustLinker);
+
+		// operate
+		try {
+			hedgedTrustLinker.hasTrustLink(null, null, validationDate, null, new DefaultAlgorithmPolicy());
+			fail();
+		} catch (TrustLinkerResultException e) {
+			// verify
+			assertEquals(TrustLinkerResultReason.OCSP_UNAVAILABLE, e.getReason());
+		}
+		EasyMock.verify(mockPrimaryTrustLinker, mockSecondaryTrustLinker);
+	}
+
+	@Test
+	public void blockingAsyncPrimaryHedged() throws Exception {
+		// setup
+		Date validationDate = new Date();
+		CountDownLatch primaryLatch = new CountDownLatch(1);
+		TrustLinker primaryTrustLinker = new BlockingAsyncTrustLinker(primaryLatch);
+		TrustLinker secondaryTrustLinker = (childCertificate, certificate, date, revocationData,
+				algorithmPolicy) -> TrustLinkerResult.TRUSTED;
+
+		HedgedTrustLinker hedgedTrustLinker = new HedgedTrustLinker(primaryTrustLinker, secondaryTrustLinker);
+		hedgedTrustLinker.setHedgeDelay(50);
+
+		// operate
+		long start = System.currentTimeMillis();
+		try {
+			CompletableFuture<TrustLinkerResult> result = hedgedTrustLinker.hasTrustLinkAsync(null, null,
+					validationDate, null, new DefaultAlgorithmPolicy());
+
+			// verify
+			assertEquals(TrustLinkerResult.TRUSTED, result.get(5, TimeUnit.SECONDS));
+		} finally {
+			primaryLatch.countDown();
+		}
+		assertTrue(System.currentTimeMillis() - start < 5000);
+	}
+
+	@Test
+	public void pendingSecondarySkipped() throws Exception {
+		// setup
+		Date validationDate = new Date();
+		TrustLinker primaryTrustLinker = (childCertificate, certificate, date, revocationData,
+				algorithmPolicy) -> TrustLinkerResult.TRUSTED;
+		AtomicBoolean secondaryCalled = new AtomicBoolean();
+		TrustLinker secondaryTrustLinker = (childCertificate, certificate, date, revocationData,
+				algorithmPolicy) -> {
+			secondaryCalled.set(true);
+			return TrustLinkerResult.TRUSTED;
+		};
+
+		HedgedTrustLinker hedgedTrustLinker = new HedgedTrustLinker(primaryTrustLinker, secondaryTrustLinker);
+		hedgedTrustLinker.setHedgeDelay(0);
+		// the secondary trust linker queues up behind the primary one
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		hedgedTrustLinker.setExecutor(executor);
+
+		try {
+			// operate
+			TrustLinkerResult result = hedgedTrustLinker.hasTrustLink(null, null, validationDate, null,
+					new DefaultAlgorithmPolicy());
+			executor.shutdown();
+			assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+
+			// verify
+			assertEquals(TrustLinkerResult.TRUSTED, result);
+			assertFalse(secondaryCalled.get());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void defaultExecutorShared() throws Exception {
+		// setup
+		AtomicReference<Thread> primaryThread = new AtomicReference<>();
+		TrustLinker primaryTrustLinker = (childCertificate, certificate, date, revocationData, algorithmPolicy) -> {
+			primaryThread.set(Thread.currentThread());
+			return TrustLinkerResult.TRUSTED;
+		};
+		TrustLinker mockSecondaryTrustLinker = EasyMock.createMock(TrustLinker.class);
+
+		HedgedTrustLinker hedgedTrustLinker = new HedgedTrustLinker(primaryTrustLinker, mockSecondaryTrustLinker);
+		hedgedTrustLinker.setHedgeDelay(60000);
+
+		EasyMock.replay(mockSecondaryTrustLinker);
+
+		// operate
+		TrustLinkerResult result = hedgedTrustLinker.hasTrustLink(null, null, new Date(), null,
+				new DefaultAlgorithmPolicy());
+
+		// verify
+		assertEquals(TrustLinkerResult.TRUSTED, result);
+		AtomicReference<Thread> defaultExecutorThread = new AtomicReference<>();
+		CountDownLatch latch = new CountDownLatch(1);
+		AsyncTrustLinkerAdapter.getDefaultExecutor().execute(() -> {
+			defaultExecutorThread.set(Thread.currentThread());
+			latch.countDown();
+		});
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		assertEquals(defaultExecutorThread.get().getName(), primaryThread.get().getName());
+		EasyMock.verify(mockSecondaryTrustLinker);
+	}
+
+	private static class BlockingAsyncTrustLinker implements TrustLinker, AsyncTrustLinker {
+
+		private final CountDownLatch latch;
+
+		BlockingAsyncTrustLinker(final CountDownLatch latch) {
+			this.latch = latch;
+		}
+
+		@Override
+		public TrustLinkerResult hasTrustLink(final X509Certificate childCertificate,
+				final X509Certificate certificate, final Date validationDate, final RevocationData revocationData,
+				final AlgorithmPolicy algorithmPolicy) throws Exception {
+			return hasTrustLinkAsync(childCertificate, certificate, validationDate, revocationData, algorithmPolicy)
+					.get();
+		}
+
+		@Override
+		public CompletableFuture<TrustLinkerResult> hasTrustLinkAsync(final X509Certificate childCertificate,
+				final X509Certificate certificate, final Date validationDate, final RevocationData revocationData,
+				final AlgorithmPolicy algorithmPolicy) {
+			// blocks the calling thread before giving back its future
+			try {
+				this.latch.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return CompletableFuture.completedFuture(TrustLinkerResult.UNDECIDED);
+		}
+	}
+}
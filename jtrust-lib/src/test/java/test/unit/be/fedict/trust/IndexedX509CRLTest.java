@@ -0,0 +1,217 @@
+/*
+ * Java Trust Project.
+ * Copyright (C) 2021 e-Contract.be BV.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.unit.be.fedict.trust;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.math.BigInteger;
+import java.net.URI;
+import java.security.KeyPair;
+import java.security.Security;
+import java.security.SignatureException;
+import java.security.cert.X509CRL;
+import java.security.cert.X509CRLEntry;
+import java.security.cert.X509Certificate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Date;
+
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.asn1.x509.KeyUsage;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.easymock.EasyMock;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import be.fedict.trust.crl.CrlIndex;
+import be.fedict.trust.crl.CrlRepository;
+import be.fedict.trust.crl.CrlTrustLinker;
+import be.fedict.trust.crl.IndexedX509CRL;
+import be.fedict.trust.linker.TrustLinkerResult;
+import be.fedict.trust.linker.TrustLinkerResultException;
+import be.fedict.trust.linker.TrustLinkerResultReason;
+import be.fedict.trust.policy.DefaultAlgorithmPolicy;
+import be.fedict.trust.revocation.RevocationData;
+import be.fedict.trust.test.PKITestUtils;
+
+public class IndexedX509CRLTest {
+
+	private KeyPair rootKeyPair;
+
+	private X509Certificate rootCertificate;
+
+	private LocalDateTime notBefore;
+
+	private LocalDateTime notAfter;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		Security.addProvider(new BouncyCastleProvider());
+		this.rootKeyPair = PKITestUtils.generateKeyPair();
+		this.notBefore = LocalDateTime.now();
+		this.notAfter = this.notBefore.plusMonths(1);
+		this.rootCertificate = PKITestUtils.generateSelfSignedCertificate(this.rootKeyPair, "CN=TestRoot",
+				this.notBefore, this.notAfter, true, 0, null, new KeyUsage(KeyUsage.cRLSign));
+	}
+
+	@Test
+	public void indexedCrl() throws Exception {
+		// setup
+		X509CRL x509crl = PKITestUtils.generateCrl(this.rootKeyPair.getPrivate(), this.rootCertificate,
+				this.notBefore, this.notAfter, BigInteger.valueOf(1000), BigInteger.valueOf(5),
+				new BigInteger("123456789012345678901234567890"), BigInteger.valueOf(255));
+
+		// operate
+		IndexedX509CRL result = IndexedX509CRL.getInstance(x509crl);
+
+		// verify
+		assertEquals(4, result.getIndex().size());
+		assertTrue(Arrays.equals(x509crl.getEncoded(), result.getEncoded()));
+		assertTrue(Arrays.equals(x509crl.getTBSCertList(), result.getTBSCertList()));
+		assertEquals(x509crl, result);
+		assertEquals(x509crl.getIssuerX500Principal(), result.getIssuerX500Principal());
+		assertEquals(x509crl.getThisUpdate(), result.getThisUpdate());
+		assertEquals(x509crl.getNextUpdate(), result.getNextUpdate());
+		assertEquals(x509crl.getSigAlgOID(), result.getSigAlgOID());
+		assertTrue(Arrays.equals(x509crl.getExtensionValue("2.5.29.20"), result.getExtensionValue("2.5.29.20")));
+		result.verify(this.rootKeyPair.getPublic());
+		assertTrue(CrlTrustLinker.checkCrlIntegrity(result, this.rootCertificate, new Date()));
+
+		for (X509CRLEntry expectedEntry : x509crl.getRevokedCertificates()) {
+			X509CRLEntry entry = result.getRevokedCertificate(expectedEntry.getSerialNumber());
+			assertNotNull(entry);
+			assertEquals(expectedEntry.getSerialNumber(), entry.getSerialNumber());
+			assertEquals(expectedEntry.getRevocationDate(), entry.getRevocationDate());
+			assertEquals(expectedEntry.getRevocationReason(), entry.getRevocationReason());
+			int idx = result.getIndex().indexOf(expectedEntry.getSerialNumber());
+			assertEquals(CRLReason.privilegeWithdrawn, result.getIndex().getReasonCode(idx));
+		}
+		assertNull(result.getRevokedCertificate(BigInteger.valueOf(6)));
+		assertNull(result.getRevokedCertificate(BigInteger.valueOf(256)));
+		assertEquals(-1, result.getIndex().indexOf(BigInteger.valueOf(-5)));
+	}
+
+	@Test
+	public void indexedCrlWrongSignature() throws Exception {
+		// setup
+		KeyPair otherKeyPair = PKITestUtils.generateKeyPair();
+		X509CRL x509crl = PKITestUtils.generateCrl(otherKeyPair.getPrivate(), this.rootCertificate, this.notBefore,
+				this.notAfter);
+
+		// operate
+		IndexedX509CRL result = IndexedX509CRL.getInstance(x509crl);
+
+		// verify
+		assertThrows(SignatureException.class, () -> result.verify(this.rootKeyPair.getPublic()));
+		assertFalse(CrlTrustLinker.checkCrlIntegrity(result, this.rootCertificate, new Date()));
+	}
+
+	@Test
+	public void indexOrdering() throws Exception {
+		// setup
+		BigInteger[] serialNumbers = { BigInteger.valueOf(-129), BigInteger.valueOf(-1), BigInteger.ZERO,
+				BigInteger.valueOf(127), BigInteger.valueOf(128), BigInteger.valueOf(65536),
+				new BigInteger("987654321987654321987654321") };
+		CrlIndex.Builder builder = new CrlIndex.Builder(1);
+		for (int idx = serialNumbers.length - 1; idx >= 0; idx--) {
+			builder.add(serialNumbers[idx].toByteArray(), idx, CrlIndex.NO_REASON_CODE);
+		}
+		// duplicate entry
+		builder.add(BigInteger.valueOf(128).toByteArray(), 1234, CRLReason.keyCompromise);
+
+		// operate
+		CrlIndex crlIndex = builder.build();
+
+		// verify
+		assertEquals(serialNumbers.length, crlIndex.size());
+		for (int idx = 0; idx < serialNumbers.length; idx++) {
+			assertEquals(serialNumbers[idx], crlIndex.getSerialNumber(idx));
+			assertEquals(idx, crlIndex.indexOf(serialNumbers[idx]));
+			assertEquals(idx, crlIndex.getRevocationDate(idx));
+			assertEquals(CrlIndex.NO_REASON_CODE, crlIndex.getReasonCode(idx));
+		}
+		assertEquals(-1, crlIndex.indexOf(BigInteger.valueOf(129)));
+		assertEquals(-1, crlIndex.indexOf(BigInteger.valueOf(-2)));
+	}
+
+	@Test
+	public void crlTrustLinkerRevokedByIndexedCrl() throws Exception {
+		// setup
+		KeyPair keyPair = PKITestUtils.generateKeyPair();
+		X509Certificate certificate = PKITestUtils.generateCertificate(keyPair.getPublic(), "CN=Test",
+				this.notBefore, this.notAfter, this.rootCertificate, this.rootKeyPair.getPrivate(), false, -1,
+				"http://crl-uri");
+		X509CRL x509crl = IndexedX509CRL.getInstance(PKITestUtils.generateCrl(this.rootKeyPair.getPrivate(),
+				this.rootCertificate, this.notBefore, this.notAfter, certificate.getSerialNumber()));
+		Date validationDate = Date.from(this.notBefore.plusDays(1).atZone(ZoneId.systemDefault()).toInstant());
+
+		CrlRepository mockCrlRepository = EasyMock.createMock(CrlRepository.class);
+		EasyMock.expect(mockCrlRepository.findCrl(new URI("http://crl-uri"), this.rootCertificate, validationDate))
+				.andReturn(x509crl);
+		EasyMock.replay(mockCrlRepository);
+
+		CrlTrustLinker crlTrustLinker = new CrlTrustLinker(mockCrlRepository);
+
+		// operate
+		try {
+			crlTrustLinker.hasTrustLink(certificate, this.rootCertificate, validationDate, new RevocationData(),
+					new DefaultAlgorithmPolicy());
+			fail();
+		} catch (TrustLinkerResultException e) {
+			// verify
+			assertEquals(TrustLinkerResultReason.INVALID_REVOCATION_STATUS, e.getReason());
+		}
+		EasyMock.verify(mockCrlRepository);
+	}
+
+	@Test
+	public void crlTrustLinkerTrustedByIndexedCrl() throws Exception {
+		// setup
+		KeyPair keyPair = PKITestUtils.generateKeyPair();
+		X509Certificate certificate = PKITestUtils.generateCertificate(keyPair.getPublic(), "CN=Test",
+				this.notBefore, this.notAfter, this.rootCertificate, this.rootKeyPair.getPrivate(), false, -1,
+				"http://crl-uri");
+		X509CRL x509crl = IndexedX509CRL.getInstance(PKITestUtils.generateCrl(this.rootKeyPair.getPrivate(),
+				this.rootCertificate, this.notBefore, this.notAfter,
+				certificate.getSerialNumber().add(BigInteger.ONE)));
+		Date validationDate = Date.from(this.notBefore.plusDays(1).atZone(ZoneId.systemDefault()).toInstant());
+
+		CrlRepository mockCrlRepository = EasyMock.createMock(CrlRepository.class);
+		EasyMock.expect(mockCrlRepository.findCrl(new URI("http://crl-uri"), this.rootCertificate, validationDate))
+				.andReturn(x509crl);
+		EasyMock.replay(mockCrlRepository);
+
+		CrlTrustLinker crlTrustLinker = new CrlTrustLinker(mockCrlRepository);
+
+		// operate
+		TrustLinkerResult result = crlTrustLinker.hasTrustLink(certificate, this.rootCertificate, validationDate,
+				new RevocationData(), new DefaultAlgorithmPolicy());
+
+		// verify
+		assertEquals(TrustLinkerResult.TRUSTED, result);
+		EasyMock.verify(mockCrlRepository);
+	}
+}
@@ -99,4 +99,48 @@ public class MemoryCertificateRepositoryTest {
 		assertFalse(certificate.getClass().equals(trustPoint.getClass()));
 		assertTrue(testedInstance.isTrustPoint(certificate));
 	}
+
+	@Test
+	public void verifiedTrustPoint() throws Exception {
+
+		// setup
+		LocalDateTime notBefore = LocalDateTime.now();
+		LocalDateTime notAfter = notBefore.plusMonths(1);
+		KeyPair keyPair = PKITestUtils.generateKeyPair();
+		X509Certificate trustPoint = PKITestUtils.generateSelfSignedCertificate(keyPair, "CN=Test", notBefore,
+				notAfter);
+
+		MemoryCertificateRepository testedInstance = new MemoryCertificateRepository();
+		testedInstance.addTrustPoint(trustPoint);
+
+		CertificateFactory certificateFactory = CertificateFactory.getInstance("X.509", new BouncyCastleProvider());
+		X509Certificate certificate = (X509Certificate) certificateFactory
+				.generateCertificate(new ByteArrayInputStream(trustPoint.getEncoded()));
+
+		// operate & verify
+		assertTrue(testedInstance.isVerifiedTrustPoint(trustPoint));
+		assertTrue(testedInstance.isVerifiedTrustPoint(certificate));
+	}
+
+	@Test
+	public void notSelfSignedTrustPointNotVerified() throws Exception {
+
+		// setup
+		LocalDateTime notBefore = LocalDateTime.now();
+		LocalDateTime notAfter = notBefore.plusMonths(1);
+		KeyPair rootKeyPair = PKITestUtils.generateKeyPair();
+		X509Certificate rootCertificate = PKITestUtils.generateSelfSignedCertificate(rootKeyPair, "CN=TestRoot",
+				notBefore, notAfter);
+		KeyPair keyPair = PKITestUtils.generateKeyPair();
+		X509Certificate certificate = PKITestUtils.generateCertificate(keyPair.getPublic(), "CN=Test", notBefore,
+				notAfter, rootCertificate, rootKeyPair.getPrivate());
+
+		MemoryCertificateRepository testedInstance = new MemoryCertificateRepository();
+		testedInstance.addTrustPoint(certificate);
+
+		// operate & verify
+		assertTrue(testedInstance.isTrustPoint(certificate));
+		assertFalse(testedInstance.isVerifiedTrustPoint(certificate));
+		assertFalse(testedInstance.isVerifiedTrustPoint(rootCertificate));
+	}
 }
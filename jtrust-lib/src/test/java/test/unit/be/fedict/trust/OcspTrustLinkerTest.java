@@ -402,6 +402,56 @@ public class OcspTrustLinkerTest {
 		EasyMock.verify(mockOcspRepository);
 	}
 
+	@Test
+	public void verifiedOcspResponderStillChecksValidity() throws Exception {
+
+		final LocalDateTime notBefore = LocalDateTime.now();
+		final LocalDateTime notAfter = notBefore.plusMonths(1);
+
+		final KeyPair rootKeyPair = PKITestUtils.generateKeyPair();
+		final X509Certificate rootCertificate = PKITestUtils.generateSelfSignedCertificate(rootKeyPair, "CN=TestRoot",
+				notBefore, notAfter.plusMonths(2));
+
+		final KeyPair ocspResponderKeyPair = PKITestUtils.generateKeyPair();
+		final X509Certificate ocspResponderCertificate = PKITestUtils.generateCertificate(ocspResponderKeyPair.getPublic(),
+				"CN=OCSPResp", notBefore, notAfter, rootCertificate, rootKeyPair.getPrivate(), false, -1, null, null,
+				null, "SHA1withRSA", false, false, false, null, null, null, true);
+
+		final KeyPair keyPair = PKITestUtils.generateKeyPair();
+		final X509Certificate certificate = PKITestUtils.generateCertificate(keyPair.getPublic(), "CN=Test", notBefore,
+				notAfter, rootCertificate, rootKeyPair.getPrivate(), false, -1, null, "ocsp-uri");
+
+		final OCSPResp ocspResp = PKITestUtils.createOcspResp(certificate, false, rootCertificate, ocspResponderCertificate,
+				ocspResponderKeyPair.getPrivate());
+
+		final OcspRepository mockOcspRepository = EasyMock.createMock(OcspRepository.class);
+		EasyMock.expect(mockOcspRepository.findOcspResponse(EasyMock.eq(new URI("ocsp-uri")), EasyMock.eq(certificate),
+				EasyMock.eq(rootCertificate), EasyMock.anyObject(Date.class))).andReturn(ocspResp).times(3);
+
+		final OcspTrustLinker ocspTrustLinker = new OcspTrustLinker(mockOcspRepository);
+
+		EasyMock.replay(mockOcspRepository);
+
+		final Date validationDate = new Date();
+		final Date expiredValidationDate = Date
+				.from(notAfter.plusDays(1).atZone(ZoneId.systemDefault()).toInstant());
+
+		// operate
+		final TrustLinkerResult result = ocspTrustLinker.hasTrustLink(certificate, rootCertificate, validationDate,
+				new RevocationData(), new DefaultAlgorithmPolicy());
+		final TrustLinkerResult result2 = ocspTrustLinker.hasTrustLink(certificate, rootCertificate, validationDate,
+				new RevocationData(), new DefaultAlgorithmPolicy());
+		final TrustLinkerResultException exception = assertThrows(TrustLinkerResultException.class,
+				() -> ocspTrustLinker.hasTrustLink(certificate, rootCertificate, expiredValidationDate,
+						new RevocationData(), new DefaultAlgorithmPolicy()));
+
+		// verify
+		assertEquals(TrustLinkerResult.TRUSTED, result);
+		assertEquals(TrustLinkerResult.TRUSTED, result2);
+		assertEquals(TrustLinkerResultReason.INVALID_VALIDITY_INTERVAL, exception.getReason());
+		EasyMock.verify(mockOcspRepository);
+	}
+
 	@Test
 	public void rootCAIssuesOcspResponseNoCertInResponse() throws Exception {
 
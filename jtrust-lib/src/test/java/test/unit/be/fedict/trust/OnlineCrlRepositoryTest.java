@@ -21,20 +21,29 @@ package test.unit.be.fedict.trust;
 
 import static be.fedict.trust.test.World.getFreePort;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.math.BigInteger;
 import java.net.URI;
 import java.security.KeyPair;
 import java.security.Security;
 import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
 import java.time.LocalDateTime;
+import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -52,7 +61,10 @@ import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import be.fedict.trust.HttpTransport;
 import be.fedict.trust.ServerNotAvailableException;
+import be.fedict.trust.crl.ConditionalCrlResult;
+import be.fedict.trust.crl.IndexedX509CRL;
 import be.fedict.trust.crl.OnlineCrlRepository;
 import be.fedict.trust.test.PKITestUtils;
 
@@ -164,6 +176,179 @@ public class OnlineCrlRepositoryTest {
 		assertArrayEquals(crl.getEncoded(), result.getEncoded());
 	}
 
+	@Test
+	public void testDownloadCrlAsync() throws Exception {
+		// setup
+		final KeyPair keyPair = PKITestUtils.generateKeyPair();
+		final LocalDateTime notBefore = LocalDateTime.now();
+		final LocalDateTime notAfter = notBefore.plusMonths(1);
+		final X509Certificate certificate = PKITestUtils.generateSelfSignedCertificate(keyPair, "CN=Test", notBefore,
+				notAfter);
+		final X509CRL crl = PKITestUtils.generateCrl(keyPair.getPrivate(), certificate, notBefore, notAfter);
+		CrlRepositoryTestServlet.setCrlData(crl.getEncoded());
+
+		// operate
+		final X509CRL result;
+		try {
+			result = this.testedInstance.findCrlAsync(this.crlUri, certificate, this.validationDate).get();
+		} finally {
+			this.testedInstance.getHttpTransport().close();
+		}
+
+		// verify
+		assertNotNull(result);
+		assertArrayEquals(crl.getEncoded(), result.getEncoded());
+	}
+
+	@Test
+	public void testDownloadCrlStreaming() throws Exception {
+		// setup
+		final KeyPair keyPair = PKITestUtils.generateKeyPair();
+		final LocalDateTime notBefore = LocalDateTime.now();
+		final LocalDateTime notAfter = notBefore.plusMonths(1);
+		final X509Certificate certificate = PKITestUtils.generateSelfSignedCertificate(keyPair, "CN=Test", notBefore,
+				notAfter);
+		final X509CRL crl = PKITestUtils.generateCrl(keyPair.getPrivate(), certificate, notBefore, notAfter,
+				BigInteger.ONE, BigInteger.TEN);
+		CrlRepositoryTestServlet.setCrlData(crl.getEncoded());
+		this.testedInstance.setStreamingParser(true);
+
+		// operate
+		final X509CRL result = this.testedInstance.findCrl(this.crlUri, certificate, this.validationDate);
+
+		// verify
+		assertTrue(result instanceof IndexedX509CRL);
+		assertArrayEquals(crl.getEncoded(), result.getEncoded());
+		assertNotNull(result.getRevokedCertificate(BigInteger.TEN));
+
+		// operate: CRL not signed by the given issuer
+		final KeyPair otherKeyPair = PKITestUtils.generateKeyPair();
+		final X509Certificate otherCertificate = PKITestUtils.generateSelfSignedCertificate(otherKeyPair, "CN=Test",
+				notBefore, notAfter);
+		final X509CRL result2 = this.testedInstance.findCrl(this.crlUri, otherCertificate, this.validationDate);
+
+		// verify
+		assertNull(result2);
+	}
+
+	@Test
+	public void testConditionalDownloadCrl() throws Exception {
+		// setup
+		final KeyPair keyPair = PKITestUtils.generateKeyPair();
+		final LocalDateTime notBefore = LocalDateTime.now();
+		final LocalDateTime notAfter = notBefore.plusMonths(1);
+		final X509Certificate certificate = PKITestUtils.generateSelfSignedCertificate(keyPair, "CN=Test", notBefore,
+				notAfter);
+		final X509CRL crl = PKITestUtils.generateCrl(keyPair.getPrivate(), certificate, notBefore, notAfter);
+		CrlRepositoryTestServlet.setCrlData(crl.getEncoded());
+		CrlRepositoryTestServlet.setETag("\"crl-1\"");
+
+		// operate
+		final ConditionalCrlResult result = this.testedInstance.findCrl(this.crlUri, certificate, this.validationDate,
+				null, null);
+
+		// verify
+		assertFalse(result.isNotModified());
+		assertArrayEquals(crl.getEncoded(), result.getCrl().getEncoded());
+		assertEquals("\"crl-1\"", result.getETag());
+
+		// operate
+		final ConditionalCrlResult result2 = this.testedInstance.findCrl(this.crlUri, certificate,
+				this.validationDate, result.getETag(), result.getLastModified());
+
+		// verify
+		assertTrue(result2.isNotModified());
+		assertNull(result2.getCrl());
+		assertEquals("\"crl-1\"", result2.getETag());
+	}
+
+	@Test
+	public void testSharedHttpTransportReusesConnection() throws Exception {
+		// setup
+		final KeyPair keyPair = PKITestUtils.generateKeyPair();
+		final LocalDateTime notBefore = LocalDateTime.now();
+		final LocalDateTime notAfter = notBefore.plusMonths(1);
+		final X509Certificate certificate = PKITestUtils.generateSelfSignedCertificate(keyPair, "CN=Test", notBefore,
+				notAfter);
+		final X509CRL crl = PKITestUtils.generateCrl(keyPair.getPrivate(), certificate, notBefore, notAfter);
+		CrlRepositoryTestServlet.setCrlData(crl.getEncoded());
+
+		try (final HttpTransport httpTransport = new HttpTransport()) {
+			final OnlineCrlRepository crlRepository = new OnlineCrlRepository(httpTransport);
+
+			// operate
+			final X509CRL result = crlRepository.findCrl(this.crlUri, certificate, this.validationDate);
+			final X509CRL result2 = crlRepository.findCrl(this.crlUri, certificate, this.validationDate);
+
+			// verify
+			assertNotNull(result);
+			assertNotNull(result2);
+		}
+		final List<Integer> remotePorts = CrlRepositoryTestServlet.getRemotePorts();
+		assertEquals(2, remotePorts.size());
+		assertEquals(remotePorts.get(0), remotePorts.get(1));
+	}
+
+	@Test
+	public void testAsyncConnectionsLimitedPerRoute() throws Exception {
+		// setup
+		final KeyPair keyPair = PKITestUtils.generateKeyPair();
+		final LocalDateTime notBefore = LocalDateTime.now();
+		final LocalDateTime notAfter = notBefore.plusMonths(1);
+		final X509Certificate certificate = PKITestUtils.generateSelfSignedCertificate(keyPair, "CN=Test", notBefore,
+				notAfter);
+		final X509CRL crl = PKITestUtils.generateCrl(keyPair.getPrivate(), certificate, notBefore, notAfter);
+		CrlRepositoryTestServlet.setCrlData(crl.getEncoded());
+		CrlRepositoryTestServlet.setResponseDelay(200);
+
+		try (final HttpTransport httpTransport = new HttpTransport()) {
+			httpTransport.setMaxConnectionsPerRoute(1);
+			final OnlineCrlRepository crlRepository = new OnlineCrlRepository(httpTransport);
+
+			// operate
+			final CompletableFuture<X509CRL> result = crlRepository.findCrlAsync(this.crlUri, certificate,
+					this.validationDate);
+			final CompletableFuture<X509CRL> result2 = crlRepository.findCrlAsync(this.crlUri, certificate,
+					this.validationDate);
+
+			// verify
+			assertNotNull(result.get());
+			assertNotNull(result2.get());
+		}
+		final List<Integer> remotePorts = CrlRepositoryTestServlet.getRemotePorts();
+		assertEquals(2, remotePorts.size());
+		assertEquals(remotePorts.get(0), remotePorts.get(1));
+	}
+
+	@Test
+	public void testAsyncIdleConnectionsEvicted() throws Exception {
+		// setup
+		final KeyPair keyPair = PKITestUtils.generateKeyPair();
+		final LocalDateTime notBefore = LocalDateTime.now();
+		final LocalDateTime notAfter = notBefore.plusMonths(1);
+		final X509Certificate certificate = PKITestUtils.generateSelfSignedCertificate(keyPair, "CN=Test", notBefore,
+				notAfter);
+		final X509CRL crl = PKITestUtils.generateCrl(keyPair.getPrivate(), certificate, notBefore, notAfter);
+		CrlRepositoryTestServlet.setCrlData(crl.getEncoded());
+
+		try (final HttpTransport httpTransport = new HttpTransport()) {
+			final OnlineCrlRepository crlRepository = new OnlineCrlRepository(httpTransport);
+			assertNotNull(crlRepository.findCrlAsync(this.crlUri, certificate, this.validationDate).get());
+
+			// operate
+			Thread.sleep(100);
+			httpTransport.setIdleConnectionTimeout(0);
+			httpTransport.evictIdleConnections();
+			final X509CRL result = crlRepository.findCrlAsync(this.crlUri, certificate, this.validationDate).get();
+
+			// verify
+			assertNotNull(result);
+		}
+		final List<Integer> remotePorts = CrlRepositoryTestServlet.getRemotePorts();
+		assertEquals(2, remotePorts.size());
+		assertNotEquals(remotePorts.get(0), remotePorts.get(1));
+	}
+
 	public static class CrlRepositoryTestServlet extends HttpServlet {
 
 		private static final long serialVersionUID = 1L;
@@ -174,9 +359,30 @@ public class OnlineCrlRepositoryTest {
 
 		private static byte[] crlData;
 
+		private static final List<Integer> remotePorts = Collections.synchronizedList(new LinkedList<>());
+
+		private static long responseDelay;
+
+		private static String eTag;
+
 		public static void reset() {
 			CrlRepositoryTestServlet.responseStatus = 0;
 			CrlRepositoryTestServlet.crlData = null;
+			CrlRepositoryTestServlet.remotePorts.clear();
+			CrlRepositoryTestServlet.eTag = null;
+			CrlRepositoryTestServlet.responseDelay = 0;
+		}
+
+		public static void setResponseDelay(final long responseDelay) {
+			CrlRepositoryTestServlet.responseDelay = responseDelay;
+		}
+
+		public static void setETag(final String eTag) {
+			CrlRepositoryTestServlet.eTag = eTag;
+		}
+
+		public static List<Integer> getRemotePorts() {
+			return CrlRepositoryTestServlet.remotePorts;
 		}
 
 		public static void setResponseStatus(final int responseStatus) {
@@ -191,6 +397,21 @@ public class OnlineCrlRepositoryTest {
 		protected void doGet(final HttpServletRequest request, final HttpServletResponse response)
 				throws ServletException, IOException {
 			LOG.debug("doGet");
+			CrlRepositoryTestServlet.remotePorts.add(request.getRemotePort());
+			if (0 != CrlRepositoryTestServlet.responseDelay) {
+				try {
+					Thread.sleep(CrlRepositoryTestServlet.responseDelay);
+				} catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			if (null != CrlRepositoryTestServlet.eTag) {
+				response.setHeader("ETag", CrlRepositoryTestServlet.eTag);
+				if (CrlRepositoryTestServlet.eTag.equals(request.getHeader("If-None-Match"))) {
+					response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+					return;
+				}
+			}
 			if (null != CrlRepositoryTestServlet.crlData) {
 				final OutputStream outputStream = response.getOutputStream();
 				IOUtils.write(CrlRepositoryTestServlet.crlData, outputStream);
@@ -20,19 +20,25 @@
 package test.unit.be.fedict.trust;
 
 import static be.fedict.trust.test.World.getFreePort;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.net.SocketTimeoutException;
 import java.net.URI;
+import java.net.URLDecoder;
 import java.security.KeyPair;
 import java.security.Security;
 import java.security.cert.X509Certificate;
 import java.time.LocalDateTime;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.concurrent.ExecutionException;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -42,15 +48,34 @@ import javax.servlet.http.HttpServletResponse;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.ocsp.OCSPObjectIdentifiers;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.bouncycastle.cert.ocsp.BasicOCSPRespBuilder;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.cert.ocsp.CertificateStatus;
+import org.bouncycastle.cert.ocsp.OCSPReq;
 import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.cert.ocsp.OCSPRespBuilder;
+import org.bouncycastle.cert.ocsp.jcajce.JcaBasicOCSPRespBuilder;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.DigestCalculatorProvider;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+import org.bouncycastle.util.encoders.Base64;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.servlet.ServletContextHandler;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import be.fedict.trust.CircuitBreaker;
+import be.fedict.trust.CircuitBreakerOpenException;
 import be.fedict.trust.ServerNotAvailableException;
+import be.fedict.trust.ValidationDeadline;
 import be.fedict.trust.ocsp.OnlineOcspRepository;
 import be.fedict.trust.test.PKITestUtils;
 
@@ -76,7 +101,7 @@ public class OnlineOcspRepositoryTest {
 		servletContextHandler.setContextPath("/pki");
 		this.server.setHandler(servletContextHandler);
 		final String pathSpec = "/test.ocsp";
-		servletContextHandler.addServlet(OcspResponderTestServlet.class, pathSpec);
+		servletContextHandler.addServlet(OcspResponderTestServlet.class, pathSpec + "/*");
 		this.server.start();
 
 		final String servletUrl = "http://localhost:" + freePort + "/pki";
@@ -207,6 +232,239 @@ public class OnlineOcspRepositoryTest {
 		assertNotNull(resultOcspResp);
 	}
 
+	@Test
+	public void testOcspResponseHttpGet() throws Exception {
+		// setup
+		OcspResponderTestServlet.setResponseStatus(HttpServletResponse.SC_OK);
+		OcspResponderTestServlet.setContentType("application/ocsp-response");
+
+		final OCSPResp ocspResp = PKITestUtils.createOcspResp(this.certificate, false, this.rootCertificate,
+				this.rootCertificate, this.rootKeyPair.getPrivate());
+
+		OcspResponderTestServlet.setOcspData(ocspResp.getEncoded());
+		this.testedInstance.setLightweight();
+
+		// operate
+		final OCSPResp resultOcspResp = this.testedInstance.findOcspResponse(this.ocspUri, this.certificate,
+				this.rootCertificate, new Date());
+
+		// verify
+		assertNotNull(resultOcspResp);
+		assertEquals("GET", OcspResponderTestServlet.getRequestMethod());
+		final OCSPReq ocspReq = OcspResponderTestServlet.getOcspReq();
+		assertNotNull(ocspReq);
+		assertEquals(1, ocspReq.getRequestList().length);
+		assertNull(ocspReq.getExtension(OCSPObjectIdentifiers.id_pkix_ocsp_nonce));
+	}
+
+	@Test
+	public void testOcspResponses() throws Exception {
+		// setup
+		OcspResponderTestServlet.setResponseStatus(HttpServletResponse.SC_OK);
+		OcspResponderTestServlet.setContentType("application/ocsp-response");
+
+		final OCSPResp ocspResp = PKITestUtils.createOcspResp(this.certificate, false, this.rootCertificate,
+				this.rootCertificate, this.rootKeyPair.getPrivate());
+		OcspResponderTestServlet.setOcspData(ocspResp.getEncoded());
+
+		final KeyPair keyPair = PKITestUtils.generateKeyPair();
+		final LocalDateTime notBefore = LocalDateTime.now();
+		final X509Certificate certificate2 = PKITestUtils.generateCertificate(keyPair.getPublic(), "CN=Test2",
+				notBefore, notBefore.plusMonths(1), this.rootCertificate, this.rootKeyPair.getPrivate());
+
+		// operate
+		final OCSPResp resultOcspResp = this.testedInstance.findOcspResponses(this.ocspUri,
+				Arrays.asList(this.certificate, certificate2), this.rootCertificate, new Date());
+
+		// verify
+		assertNotNull(resultOcspResp);
+		assertEquals(2, OcspResponderTestServlet.getOcspReq().getRequestList().length);
+	}
+
+	@Test
+	public void testOcspResponseNonceMismatch() throws Exception {
+		// setup
+		OcspResponderTestServlet.setResponseStatus(HttpServletResponse.SC_OK);
+		OcspResponderTestServlet.setContentType("application/ocsp-response");
+		OcspResponderTestServlet.setOcspData(createOcspRespWithNonce(new byte[20]).getEncoded());
+
+		// operate
+		final OCSPResp resultOcspResp = this.testedInstance.findOcspResponse(this.ocspUri, this.certificate,
+				this.rootCertificate, new Date());
+
+		// verify
+		assertNull(resultOcspResp);
+		assertEquals("POST", OcspResponderTestServlet.getRequestMethod());
+		assertNotNull(
+				OcspResponderTestServlet.getOcspReq().getExtension(OCSPObjectIdentifiers.id_pkix_ocsp_nonce));
+	}
+
+	@Test
+	public void testPresignedOcspResponseWithoutNonce() throws Exception {
+		// setup
+		OcspResponderTestServlet.setResponseStatus(HttpServletResponse.SC_OK);
+		OcspResponderTestServlet.setContentType("application/ocsp-response");
+		OcspResponderTestServlet.setOcspData(createOcspRespWithNonce(new byte[20]).getEncoded());
+		this.testedInstance.setUseNonce(false);
+
+		// operate
+		final OCSPResp resultOcspResp = this.testedInstance.findOcspResponse(this.ocspUri, this.certificate,
+				this.rootCertificate, new Date());
+
+		// verify
+		assertNotNull(resultOcspResp);
+		assertEquals("POST", OcspResponderTestServlet.getRequestMethod());
+	}
+
+	@Test
+	public void testCircuitBreakerOpens() throws Exception {
+		// setup
+		OcspResponderTestServlet.setResponseStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+		this.testedInstance.getHttpTransport().setCircuitBreakerFailureThreshold(2);
+
+		// operate
+		for (int idx = 0; idx < 2; idx++) {
+			assertThrows(ServerNotAvailableException.class, () -> this.testedInstance.findOcspResponse(this.ocspUri,
+					this.certificate, this.rootCertificate, new Date()));
+		}
+		final ServerNotAvailableException result = assertThrows(ServerNotAvailableException.class,
+				() -> this.testedInstance.findOcspResponse(this.ocspUri, this.certificate, this.rootCertificate,
+						new Date()));
+
+		// verify
+		assertEquals(2, OcspResponderTestServlet.getRequestCount());
+		assertTrue(result.getCause() instanceof CircuitBreakerOpenException);
+		assertEquals(CircuitBreaker.State.OPEN, this.testedInstance.getHttpTransport().getCircuitBreakerState(this.ocspUri));
+	}
+
+	@Test
+	public void testNegativeCache() throws Exception {
+		// setup
+		OcspResponderTestServlet.setResponseStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+		this.testedInstance.setNegativeCacheDuration(60 * 1000);
+
+		// operate
+		assertThrows(ServerNotAvailableException.class, () -> this.testedInstance.findOcspResponse(this.ocspUri,
+				this.certificate, this.rootCertificate, new Date()));
+		assertThrows(ServerNotAvailableException.class, () -> this.testedInstance.findOcspResponse(this.ocspUri,
+				this.certificate, this.rootCertificate, new Date()));
+
+		// verify
+		assertEquals(1, OcspResponderTestServlet.getRequestCount());
+
+		// operate: disabling the negative cache contacts the responder again
+		this.testedInstance.setNegativeCacheDuration(0);
+		assertThrows(ServerNotAvailableException.class, () -> this.testedInstance.findOcspResponse(this.ocspUri,
+				this.certificate, this.rootCertificate, new Date()));
+
+		// verify
+		assertEquals(2, OcspResponderTestServlet.getRequestCount());
+	}
+
+	@Test
+	public void testValidationDeadlineExceeded() throws Exception {
+		// setup
+		OcspResponderTestServlet.setResponseStatus(HttpServletResponse.SC_OK);
+		final ValidationDeadline previousValidationDeadline = ValidationDeadline
+				.setCurrent(new ValidationDeadline(0));
+
+		// operate
+		final ServerNotAvailableException result;
+		try {
+			result = assertThrows(ServerNotAvailableException.class, () -> this.testedInstance
+					.findOcspResponse(this.ocspUri, this.certificate, this.rootCertificate, new Date()));
+		} finally {
+			ValidationDeadline.setCurrent(previousValidationDeadline);
+		}
+
+		// verify
+		assertEquals(0, OcspResponderTestServlet.getRequestCount());
+		assertTrue(result.getCause() instanceof SocketTimeoutException);
+	}
+
+	@Test
+	public void testValidationDeadlineExceededNotNegativeCached() throws Exception {
+		// setup
+		OcspResponderTestServlet.setResponseStatus(HttpServletResponse.SC_OK);
+		OcspResponderTestServlet.setContentType("application/ocsp-response");
+		final OCSPResp ocspResp = PKITestUtils.createOcspResp(this.certificate, false, this.rootCertificate,
+				this.rootCertificate, this.rootKeyPair.getPrivate());
+		OcspResponderTestServlet.setOcspData(ocspResp.getEncoded());
+		this.testedInstance.setNegativeCacheDuration(60 * 1000);
+		final ValidationDeadline previousValidationDeadline = ValidationDeadline
+				.setCurrent(new ValidationDeadline(0));
+		try {
+			assertThrows(ServerNotAvailableException.class, () -> this.testedInstance
+					.findOcspResponse(this.ocspUri, this.certificate, this.rootCertificate, new Date()));
+		} finally {
+			ValidationDeadline.setCurrent(previousValidationDeadline);
+		}
+
+		// operate
+		final OCSPResp resultOcspResp = this.testedInstance.findOcspResponse(this.ocspUri, this.certificate,
+				this.rootCertificate, new Date());
+
+		// verify
+		assertNotNull(resultOcspResp);
+		assertEquals(1, OcspResponderTestServlet.getRequestCount());
+	}
+
+	@Test
+	public void testOcspResponseAsync() throws Exception {
+		// setup
+		OcspResponderTestServlet.setResponseStatus(HttpServletResponse.SC_OK);
+		OcspResponderTestServlet.setContentType("application/ocsp-response");
+		final OCSPResp ocspResp = PKITestUtils.createOcspResp(this.certificate, false, this.rootCertificate,
+				this.rootCertificate, this.rootKeyPair.getPrivate());
+		OcspResponderTestServlet.setOcspData(ocspResp.getEncoded());
+
+		// operate
+		final OCSPResp resultOcspResp;
+		try {
+			resultOcspResp = this.testedInstance
+					.findOcspResponseAsync(this.ocspUri, this.certificate, this.rootCertificate, new Date()).get();
+		} finally {
+			this.testedInstance.getHttpTransport().close();
+		}
+
+		// verify
+		assertNotNull(resultOcspResp);
+		assertTrue(Arrays.equals(ocspResp.getEncoded(), resultOcspResp.getEncoded()));
+	}
+
+	@Test
+	public void testOcspServerNotRespondingAsync() throws Exception {
+		// setup
+		OcspResponderTestServlet.setResponseStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+
+		// operate
+		final ExecutionException result;
+		try {
+			result = assertThrows(ExecutionException.class, () -> this.testedInstance
+					.findOcspResponseAsync(this.ocspUri, this.certificate, this.rootCertificate, new Date()).get());
+		} finally {
+			this.testedInstance.getHttpTransport().close();
+		}
+
+		// verify
+		assertTrue(result.getCause() instanceof ServerNotAvailableException);
+	}
+
+	private OCSPResp createOcspRespWithNonce(final byte[] nonce) throws Exception {
+		final DigestCalculatorProvider digCalcProv = new JcaDigestCalculatorProviderBuilder()
+				.setProvider(BouncyCastleProvider.PROVIDER_NAME).build();
+		final CertificateID certificateId = new CertificateID(digCalcProv.get(CertificateID.HASH_SHA1),
+				new JcaX509CertificateHolder(this.rootCertificate), this.certificate.getSerialNumber());
+		final BasicOCSPRespBuilder basicOCSPRespBuilder = new JcaBasicOCSPRespBuilder(
+				this.rootCertificate.getPublicKey(), digCalcProv.get(CertificateID.HASH_SHA1));
+		basicOCSPRespBuilder.addResponse(certificateId, CertificateStatus.GOOD);
+		basicOCSPRespBuilder.setResponseExtensions(new Extensions(new Extension(
+				OCSPObjectIdentifiers.id_pkix_ocsp_nonce, false, new DEROctetString(new DEROctetString(nonce)))));
+		final BasicOCSPResp basicOCSPResp = basicOCSPRespBuilder.build(
+				new JcaContentSignerBuilder("SHA256withRSA").build(this.rootKeyPair.getPrivate()), null, new Date());
+		return new OCSPRespBuilder().build(OCSPRespBuilder.SUCCESSFUL, basicOCSPResp);
+	}
+
 	public static class OcspResponderTestServlet extends HttpServlet {
 
 		private static final Log LOG = LogFactory.getLog(OcspResponderTestServlet.class);
@@ -219,6 +477,12 @@ public class OnlineOcspRepositoryTest {
 
 		private static byte[] ocspData;
 
+		private static String requestMethod;
+
+		private static OCSPReq ocspReq;
+
+		private static int requestCount;
+
 		public static void setResponseStatus(final int responseStatus) {
 			OcspResponderTestServlet.responseStatus = responseStatus;
 		}
@@ -231,16 +495,49 @@ public class OnlineOcspRepositoryTest {
 			OcspResponderTestServlet.ocspData = ocspData;
 		}
 
+		public static String getRequestMethod() {
+			return OcspResponderTestServlet.requestMethod;
+		}
+
+		public static OCSPReq getOcspReq() {
+			return OcspResponderTestServlet.ocspReq;
+		}
+
+		public static int getRequestCount() {
+			return OcspResponderTestServlet.requestCount;
+		}
+
 		public static void reset() {
 			OcspResponderTestServlet.responseStatus = 0;
 			OcspResponderTestServlet.contentType = null;
 			OcspResponderTestServlet.ocspData = null;
+			OcspResponderTestServlet.requestMethod = null;
+			OcspResponderTestServlet.ocspReq = null;
+			OcspResponderTestServlet.requestCount = 0;
+		}
+
+		@Override
+		protected void doGet(final HttpServletRequest request, final HttpServletResponse response)
+				throws ServletException, IOException {
+			LOG.debug("doGet");
+			final String requestUri = request.getRequestURI();
+			final String encodedOcspReq = requestUri.substring(requestUri.lastIndexOf('/') + 1);
+			final byte[] ocspReqData = Base64.decode(URLDecoder.decode(encodedOcspReq, "UTF-8"));
+			handleOcspRequest("GET", ocspReqData, response);
 		}
 
 		@Override
 		protected void doPost(final HttpServletRequest request, final HttpServletResponse response)
 				throws ServletException, IOException {
 			LOG.debug("doPost");
+			handleOcspRequest("POST", IOUtils.toByteArray(request.getInputStream()), response);
+		}
+
+		private void handleOcspRequest(final String method, final byte[] ocspReqData,
+				final HttpServletResponse response) throws IOException {
+			OcspResponderTestServlet.requestCount++;
+			OcspResponderTestServlet.requestMethod = method;
+			OcspResponderTestServlet.ocspReq = new OCSPReq(ocspReqData);
 			if (null != OcspResponderTestServlet.contentType) {
 				response.addHeader("Content-Type", OcspResponderTestServlet.contentType);
 			}
@@ -19,18 +19,29 @@
 
 package test.unit.be.fedict.trust;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
 import java.security.KeyPair;
 import java.security.Security;
 import java.security.SignatureException;
+import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.easymock.EasyMock;
@@ -38,7 +49,13 @@ import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
 import be.fedict.trust.TrustValidator;
+import be.fedict.trust.ValidationContext;
+import be.fedict.trust.ValidationDeadline;
 import be.fedict.trust.constraints.CertificateConstraint;
+import be.fedict.trust.crl.CachedCrlRepository;
+import be.fedict.trust.crl.CrlRepository;
+import be.fedict.trust.crl.CrlTrustLinker;
+import be.fedict.trust.linker.AlwaysTrustTrustLinker;
 import be.fedict.trust.linker.TrustLinker;
 import be.fedict.trust.linker.TrustLinkerResult;
 import be.fedict.trust.linker.TrustLinkerResultException;
@@ -46,6 +63,8 @@ import be.fedict.trust.linker.TrustLinkerResultReason;
 import be.fedict.trust.policy.AlgorithmPolicy;
 import be.fedict.trust.policy.DefaultAlgorithmPolicy;
 import be.fedict.trust.repository.CertificateRepository;
+import be.fedict.trust.revocation.CRLRevocationData;
+import be.fedict.trust.revocation.RevocationData;
 import be.fedict.trust.test.PKITestUtils;
 
 public class TrustValidatorTest {
@@ -757,4 +776,556 @@ public class TrustValidatorTest {
 			EasyMock.verify(mockCertificateRepository, mockTrustLinker);
 		}
 	}
+
+	@Test
+	public void validationTimeout() throws Exception {
+		KeyPair rootKeyPair = PKITestUtils.generateKeyPair();
+		LocalDateTime notBefore = LocalDateTime.now();
+		LocalDateTime notAfter = notBefore.plusMonths(1);
+		X509Certificate rootCertificate = PKITestUtils.generateSelfSignedCertificate(rootKeyPair, "CN=TestRoot",
+				notBefore, notAfter);
+
+		KeyPair keyPair = PKITestUtils.generateKeyPair();
+		X509Certificate certificate = PKITestUtils.generateCertificate(keyPair.getPublic(), "CN=Test", notBefore,
+				notAfter, rootCertificate, rootKeyPair.getPrivate());
+
+		CertificateRepository mockCertificateRepository = EasyMock.createMock(CertificateRepository.class);
+		TrustValidator trustValidator = new TrustValidator(mockCertificateRepository);
+		trustValidator.setValidationTimeout(50);
+
+		List<X509Certificate> certificatePath = new LinkedList<>();
+		certificatePath.add(certificate);
+		certificatePath.add(rootCertificate);
+
+		EasyMock.expect(mockCertificateRepository.isTrustPoint(rootCertificate)).andReturn(true);
+
+		Date validationDate = new Date();
+
+		TrustLinker mockTrustLinker = EasyMock.createMock(TrustLinker.class);
+		EasyMock.expect(mockTrustLinker.hasTrustLink(EasyMock.eq(certificate), EasyMock.eq(rootCertificate),
+				EasyMock.eq(validationDate), EasyMock.eq(trustValidator.getRevocationData()),
+				EasyMock.anyObject(AlgorithmPolicy.class))).andAnswer(() -> {
+					assertNotNull(ValidationDeadline.getCurrent());
+					Thread.sleep(100);
+					throw new TrustLinkerResultException(TrustLinkerResultReason.OCSP_UNAVAILABLE);
+				});
+		trustValidator.addTrustLinker(mockTrustLinker);
+
+		EasyMock.replay(mockCertificateRepository, mockTrustLinker);
+
+		try {
+			trustValidator.isTrusted(certificatePath, validationDate);
+			fail();
+		} catch (TrustLinkerResultException e) {
+			// expected
+			assertEquals(TrustLinkerResultReason.VALIDATION_TIMEOUT, e.getReason());
+		}
+
+		EasyMock.verify(mockCertificateRepository, mockTrustLinker);
+		assertNull(ValidationDeadline.getCurrent());
+	}
+
+	@Test
+	public void trustLinkAsync() throws Exception {
+		KeyPair rootKeyPair = PKITestUtils.generateKeyPair();
+		LocalDateTime notBefore = LocalDateTime.now();
+		LocalDateTime notAfter = notBefore.plusMonths(1);
+		X509Certificate rootCertificate = PKITestUtils.generateSelfSignedCertificate(rootKeyPair, "CN=TestRoot",
+				notBefore, notAfter);
+
+		KeyPair keyPair = PKITestUtils.generateKeyPair();
+		X509Certificate certificate = PKITestUtils.generateCertificate(keyPair.getPublic(), "CN=Test", notBefore,
+				notAfter, rootCertificate, rootKeyPair.getPrivate());
+
+		CertificateRepository mockCertificateRepository = EasyMock.createMock(CertificateRepository.class);
+		TrustValidator trustValidator = new TrustValidator(mockCertificateRepository);
+
+		List<X509Certificate> certificatePath = new LinkedList<>();
+		certificatePath.add(certificate);
+		certificatePath.add(rootCertificate);
+
+		EasyMock.expect(mockCertificateRepository.isTrustPoint(rootCertificate)).andReturn(true);
+
+		Date validationDate = new Date();
+
+		TrustLinker mockTrustLinker = EasyMock.createMock(TrustLinker.class);
+		EasyMock.expect(mockTrustLinker.hasTrustLink(EasyMock.eq(certificate), EasyMock.eq(rootCertificate),
+				EasyMock.eq(validationDate), EasyMock.eq(trustValidator.getRevocationData()),
+				EasyMock.anyObject(AlgorithmPolicy.class))).andReturn(TrustLinkerResult.TRUSTED);
+		trustValidator.addTrustLinker(mockTrustLinker);
+
+		EasyMock.replay(mockCertificateRepository, mockTrustLinker);
+
+		trustValidator.isTrustedAsync(certificatePath, validationDate).get();
+
+		EasyMock.verify(mockCertificateRepository, mockTrustLinker);
+	}
+
+	@Test
+	public void trustLinkAsyncRevoked() throws Exception {
+		KeyPair rootKeyPair = PKITestUtils.generateKeyPair();
+		LocalDateTime notBefore = LocalDateTime.now();
+		LocalDateTime notAfter = notBefore.plusMonths(1);
+		X509Certificate rootCertificate = PKITestUtils.generateSelfSignedCertificate(rootKeyPair, "CN=TestRoot",
+				notBefore, notAfter);
+
+		KeyPair keyPair = PKITestUtils.generateKeyPair();
+		X509Certificate certificate = PKITestUtils.generateCertificate(keyPair.getPublic(), "CN=Test", notBefore,
+				notAfter, rootCertificate, rootKeyPair.getPrivate());
+
+		CertificateRepository mockCertificateRepository = EasyMock.createMock(CertificateRepository.class);
+		TrustValidator trustValidator = new TrustValidator(mockCertificateRepository);
+
+		List<X509Certificate> certificatePath = new LinkedList<>();
+		certificatePath.add(certificate);
+		certificatePath.add(rootCertificate);
+
+		EasyMock.expect(mockCertificateRepository.isTrustPoint(rootCertificate)).andReturn(true);
+
+		Date validationDate = new Date();
+
+		TrustLinker mockTrustLinker = EasyMock.createMock(TrustLinker.class);
+		EasyMock.expect(mockTrustLinker.hasTrustLink(EasyMock.eq(certificate), EasyMock.eq(rootCertificate),
+				EasyMock.eq(validationDate), EasyMock.eq(trustValidator.getRevocationData()),
+				EasyMock.anyObject(AlgorithmPolicy.class)))
+				.andThrow(new TrustLinkerResultException(TrustLinkerResultReason.INVALID_REVOCATION_STATUS));
+		trustValidator.addTrustLinker(mockTrustLinker);
+
+		EasyMock.replay(mockCertificateRepository, mockTrustLinker);
+
+		try {
+			trustValidator.isTrustedAsync(certificatePath, validationDate).get();
+			fail();
+		} catch (ExecutionException e) {
+			// expected
+			TrustLinkerResultException cause = (TrustLinkerResultException) e.getCause();
+			assertEquals(TrustLinkerResultReason.INVALID_REVOCATION_STATUS, cause.getReason());
+		}
+
+		EasyMock.verify(mockCertificateRepository, mockTrustLinker);
+	}
+
+	@Test
+	public void trustLinkAsyncDoesNotBlockOnCrlRepository() throws Exception {
+		// setup
+		KeyPair rootKeyPair = PKITestUtils.generateKeyPair();
+		LocalDateTime notBefore = LocalDateTime.now().minusDays(1);
+		LocalDateTime notAfter = notBefore.plusMonths(1);
+		X509Certificate rootCertificate = PKITestUtils.generateSelfSignedCertificate(rootKeyPair, "CN=TestRoot",
+				notBefore, notAfter);
+
+		KeyPair keyPair = PKITestUtils.generateKeyPair();
+		X509Certificate certificate = PKITestUtils.generateCertificate(keyPair.getPublic(), "CN=Test", notBefore,
+				notAfter, rootCertificate, rootKeyPair.getPrivate(), false, -1, "http://crl.test");
+		X509CRL crl = PKITestUtils.generateCrl(rootKeyPair.getPrivate(), rootCertificate, notBefore,
+				notBefore.plusDays(7));
+
+		CertificateRepository mockCertificateRepository = EasyMock.createMock(CertificateRepository.class);
+		EasyMock.expect(mockCertificateRepository.isTrustPoint(rootCertificate)).andReturn(true);
+
+		// the CRL download only completes once the caller got its future back
+		CountDownLatch latch = new CountDownLatch(1);
+		CrlRepository blockingCrlRepository = (crlUri, issuerCertificate, validationDate) -> {
+			try {
+				latch.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return crl;
+		};
+		TrustValidator trustValidator = new TrustValidator(mockCertificateRepository);
+		trustValidator.addTrustLinker(new CrlTrustLinker(new CachedCrlRepository(blockingCrlRepository)));
+
+		List<X509Certificate> certificatePath = new LinkedList<>();
+		certificatePath.add(certificate);
+		certificatePath.add(rootCertificate);
+
+		EasyMock.replay(mockCertificateRepository);
+
+		// operate
+		CompletableFuture<Void> result = trustValidator.isTrustedAsync(certificatePath, new Date());
+
+		// verify
+		assertFalse(result.isDone());
+		latch.countDown();
+		result.get(5, TimeUnit.SECONDS);
+		EasyMock.verify(mockCertificateRepository);
+	}
+
+	@Test
+	public void concurrentTrustLinking() throws Exception {
+		KeyPair rootKeyPair = PKITestUtils.generateKeyPair();
+		LocalDateTime notBefore = LocalDateTime.now();
+		LocalDateTime notAfter = notBefore.plusMonths(1);
+		X509Certificate rootCertificate = PKITestUtils.generateSelfSignedCertificate(rootKeyPair, "CN=TestRoot",
+				notBefore, notAfter);
+
+		KeyPair interKeyPair = PKITestUtils.generateKeyPair();
+		X509Certificate interCertificate = PKITestUtils.generateCertificate(interKeyPair.getPublic(), "CN=Inter",
+				notBefore, notAfter, rootCertificate, rootKeyPair.getPrivate());
+
+		KeyPair keyPair = PKITestUtils.generateKeyPair();
+		X509Certificate certificate = PKITestUtils.generateCertificate(keyPair.getPublic(), "CN=Test", notBefore,
+				notAfter, interCertificate, interKeyPair.getPrivate());
+
+		CertificateRepository mockCertificateRepository = EasyMock.createMock(CertificateRepository.class);
+		TrustValidator trustValidator = new TrustValidator(mockCertificateRepository);
+		trustValidator.setConcurrentTrustLinking(true);
+		trustValidator.setRevocationData(new RevocationData());
+
+		List<X509Certificate> certificatePath = new LinkedList<>();
+		certificatePath.add(certificate);
+		certificatePath.add(interCertificate);
+		certificatePath.add(rootCertificate);
+
+		EasyMock.expect(mockCertificateRepository.isTrustPoint(rootCertificate)).andReturn(true);
+
+		Date validationDate = new Date();
+
+		// both links have to be running at the same time for the latch to open
+		CountDownLatch latch = new CountDownLatch(2);
+		trustValidator.addTrustLinker((childCertificate, issuerCertificate, date, revocationData, algorithmPolicy) -> {
+			latch.countDown();
+			try {
+				if (false == latch.await(5, TimeUnit.SECONDS)) {
+					return TrustLinkerResult.UNDECIDED;
+				}
+			} catch (InterruptedException e) {
+				return TrustLinkerResult.UNDECIDED;
+			}
+			revocationData.getCrlRevocationData()
+					.add(new CRLRevocationData(childCertificate.getEncoded(), "urn:test"));
+			return TrustLinkerResult.TRUSTED;
+		});
+
+		EasyMock.replay(mockCertificateRepository);
+
+		// operate
+		trustValidator.isTrusted(certificatePath, validationDate);
+
+		// verify
+		EasyMock.verify(mockCertificateRepository);
+		List<CRLRevocationData> crlRevocationData = trustValidator.getRevocationData().getCrlRevocationData();
+		assertEquals(2, crlRevocationData.size());
+		assertArrayEquals(interCertificate.getEncoded(), crlRevocationData.get(0).getCRL());
+		assertArrayEquals(certificate.getEncoded(), crlRevocationData.get(1).getCRL());
+	}
+
+	@Test
+	public void concurrentTrustLinkingOverlapsCrlLookups() throws Exception {
+		// setup
+		KeyPair rootKeyPair = PKITestUtils.generateKeyPair();
+		LocalDateTime notBefore = LocalDateTime.now().minusDays(1);
+		LocalDateTime notAfter = notBefore.plusMonths(1);
+		X509Certificate rootCertificate = PKITestUtils.generateSelfSignedCertificate(rootKeyPair, "CN=TestRoot",
+				notBefore, notAfter);
+
+		KeyPair interKeyPair = PKITestUtils.generateKeyPair();
+		X509Certificate interCertificate = PKITestUtils.generateCertificate(interKeyPair.getPublic(), "CN=Inter",
+				notBefore, notAfter, rootCertificate, rootKeyPair.getPrivate(), true, -1, "http://root.crl.test");
+
+		KeyPair keyPair = PKITestUtils.generateKeyPair();
+		X509Certificate certificate = PKITestUtils.generateCertificate(keyPair.getPublic(), "CN=Test", notBefore,
+				notAfter, interCertificate, interKeyPair.getPrivate(), false, -1, "http://inter.crl.test");
+
+		X509CRL rootCrl = PKITestUtils.generateCrl(rootKeyPair.getPrivate(), rootCertificate, notBefore,
+				notBefore.plusDays(7));
+		X509CRL interCrl = PKITestUtils.generateCrl(interKeyPair.getPrivate(), interCertificate, notBefore,
+				notBefore.plusDays(7));
+
+		CertificateRepository mockCertificateRepository = EasyMock.createMock(CertificateRepository.class);
+		EasyMock.expect(mockCertificateRepository.isTrustPoint(rootCertificate)).andReturn(true);
+
+		// both CRL downloads have to be running at the same time for the latch to open
+		CountDownLatch latch = new CountDownLatch(2);
+		CrlRepository blockingCrlRepository = (crlUri, issuerCertificate, validationDate) -> {
+			latch.countDown();
+			try {
+				if (false == latch.await(5, TimeUnit.SECONDS)) {
+					return null;
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return null;
+			}
+			return issuerCertificate.equals(rootCertificate) ? rootCrl : interCrl;
+		};
+		TrustValidator trustValidator = new TrustValidator(mockCertificateRepository);
+		trustValidator.setConcurrentTrustLinking(true);
+		trustValidator.setRevocationData(new RevocationData());
+		trustValidator.addTrustLinker(new CrlTrustLinker(new CachedCrlRepository(blockingCrlRepository)));
+
+		List<X509Certificate> certificatePath = new LinkedList<>();
+		certificatePath.add(certificate);
+		certificatePath.add(interCertificate);
+		certificatePath.add(rootCertificate);
+
+		EasyMock.replay(mockCertificateRepository);
+
+		// operate
+		trustValidator.isTrusted(certificatePath, new Date());
+
+		// verify
+		EasyMock.verify(mockCertificateRepository);
+		assertEquals(0, latch.getCount());
+		List<CRLRevocationData> crlRevocationData = trustValidator.getRevocationData().getCrlRevocationData();
+		assertEquals(2, crlRevocationData.size());
+		assertArrayEquals(rootCrl.getEncoded(), crlRevocationData.get(0).getCRL());
+		assertArrayEquals(interCrl.getEncoded(), crlRevocationData.get(1).getCRL());
+	}
+
+	@Test
+	public void concurrentTrustLinkingMergesRevocationDataInTrustLinkerOrder() throws Exception {
+		// setup
+		KeyPair rootKeyPair = PKITestUtils.generateKeyPair();
+		LocalDateTime notBefore = LocalDateTime.now();
+		LocalDateTime notAfter = notBefore.plusMonths(1);
+		X509Certificate rootCertificate = PKITestUtils.generateSelfSignedCertificate(rootKeyPair, "CN=TestRoot",
+				notBefore, notAfter);
+
+		KeyPair interKeyPair = PKITestUtils.generateKeyPair();
+		X509Certificate interCertificate = PKITestUtils.generateCertificate(interKeyPair.getPublic(), "CN=Inter",
+				notBefore, notAfter, rootCertificate, rootKeyPair.getPrivate());
+
+		KeyPair keyPair = PKITestUtils.generateKeyPair();
+		X509Certificate certificate = PKITestUtils.generateCertificate(keyPair.getPublic(), "CN=Test", notBefore,
+				notAfter, interCertificate, interKeyPair.getPrivate());
+
+		CertificateRepository mockCertificateRepository = EasyMock.createMock(CertificateRepository.class);
+		EasyMock.expect(mockCertificateRepository.isTrustPoint(rootCertificate)).andReturn(true);
+
+		TrustValidator trustValidator = new TrustValidator(mockCertificateRepository);
+		trustValidator.setConcurrentTrustLinking(true);
+		trustValidator.setRevocationData(new RevocationData());
+
+		// the first trust linker only completes after the second one did for both links
+		CountDownLatch latch = new CountDownLatch(2);
+		trustValidator.addTrustLinker((childCertificate, issuerCertificate, date, revocationData, algorithmPolicy) -> {
+			try {
+				if (false == latch.await(5, TimeUnit.SECONDS)) {
+					return TrustLinkerResult.UNDECIDED;
+				}
+			} catch (InterruptedException e) {
+				return TrustLinkerResult.UNDECIDED;
+			}
+			revocationData.getCrlRevocationData()
+					.add(new CRLRevocationData(childCertificate.getEncoded(), "urn:first"));
+			return TrustLinkerResult.TRUSTED;
+		});
+		trustValidator.addTrustLinker((childCertificate, issuerCertificate, date, revocationData, algorithmPolicy) -> {
+			revocationData.getCrlRevocationData()
+					.add(new CRLRevocationData(childCertificate.getEncoded(), "urn:second"));
+			latch.countDown();
+			return TrustLinkerResult.TRUSTED;
+		});
+
+		List<X509Certificate> certificatePath = new LinkedList<>();
+		certificatePath.add(certificate);
+		certificatePath.add(interCertificate);
+		certificatePath.add(rootCertificate);
+
+		EasyMock.replay(mockCertificateRepository);
+
+		// operate
+		trustValidator.isTrusted(certificatePath, new Date());
+
+		// verify
+		EasyMock.verify(mockCertificateRepository);
+		List<CRLRevocationData> crlRevocationData = trustValidator.getRevocationData().getCrlRevocationData();
+		assertEquals(4, crlRevocationData.size());
+		assertArrayEquals(interCertificate.getEncoded(), crlRevocationData.get(0).getCRL());
+		assertEquals("urn:first", crlRevocationData.get(0).getURI());
+		assertArrayEquals(interCertificate.getEncoded(), crlRevocationData.get(1).getCRL());
+		assertEquals("urn:second", crlRevocationData.get(1).getURI());
+		assertArrayEquals(certificate.getEncoded(), crlRevocationData.get(2).getCRL());
+		assertEquals("urn:first", crlRevocationData.get(2).getURI());
+		assertArrayEquals(certificate.getEncoded(), crlRevocationData.get(3).getCRL());
+		assertEquals("urn:second", crlRevocationData.get(3).getURI());
+	}
+
+	@Test
+	public void concurrentTrustLinkingCancelsRemainingLinks() throws Exception {
+		// setup
+		KeyPair rootKeyPair = PKITestUtils.generateKeyPair();
+		LocalDateTime notBefore = LocalDateTime.now();
+		LocalDateTime notAfter = notBefore.plusMonths(1);
+		X509Certificate rootCertificate = PKITestUtils.generateSelfSignedCertificate(rootKeyPair, "CN=TestRoot",
+				notBefore, notAfter);
+
+		KeyPair interKeyPair = PKITestUtils.generateKeyPair();
+		X509Certificate interCertificate = PKITestUtils.generateCertificate(interKeyPair.getPublic(), "CN=Inter",
+				notBefore, notAfter, rootCertificate, rootKeyPair.getPrivate());
+
+		KeyPair keyPair = PKITestUtils.generateKeyPair();
+		X509Certificate certificate = PKITestUtils.generateCertificate(keyPair.getPublic(), "CN=Test", notBefore,
+				notAfter, interCertificate, interKeyPair.getPrivate());
+
+		CertificateRepository mockCertificateRepository = EasyMock.createMock(CertificateRepository.class);
+		EasyMock.expect(mockCertificateRepository.isTrustPoint(rootCertificate)).andReturn(true);
+
+		// runs the trust linker of the first link right away, and holds back the others
+		List<Runnable> pendingTasks = new LinkedList<>();
+		TrustValidator trustValidator = new TrustValidator(mockCertificateRepository);
+		trustValidator.setConcurrentTrustLinking(true);
+		trustValidator.setExecutor(task -> {
+			if (pendingTasks.isEmpty()) {
+				pendingTasks.add(null);
+				task.run();
+			} else {
+				pendingTasks.add(task);
+			}
+		});
+		AtomicInteger leafTrustLinkerCalls = new AtomicInteger();
+		trustValidator.addTrustLinker((childCertificate, issuerCertificate, date, revocationData, algorithmPolicy) -> {
+			if (childCertificate.equals(interCertificate)) {
+				throw new TrustLinkerResultException(TrustLinkerResultReason.INVALID_REVOCATION_STATUS);
+			}
+			leafTrustLinkerCalls.incrementAndGet();
+			return TrustLinkerResult.TRUSTED;
+		});
+
+		List<X509Certificate> certificatePath = new LinkedList<>();
+		certificatePath.add(certificate);
+		certificatePath.add(interCertificate);
+		certificatePath.add(rootCertificate);
+
+		EasyMock.replay(mockCertificateRepository);
+
+		// operate
+		try {
+			trustValidator.isTrusted(certificatePath, new Date());
+			fail();
+		} catch (TrustLinkerResultException e) {
+			// verify
+			assertEquals(TrustLinkerResultReason.INVALID_REVOCATION_STATUS, e.getReason());
+		}
+		for (Runnable pendingTask : pendingTasks) {
+			if (null != pendingTask) {
+				pendingTask.run();
+			}
+		}
+		assertEquals(2, pendingTasks.size());
+		assertEquals(0, leafTrustLinkerCalls.get());
+		EasyMock.verify(mockCertificateRepository);
+	}
+
+	@Test
+	public void concurrentTrustLinkingRevokedIntermediate() throws Exception {
+		KeyPair rootKeyPair = PKITestUtils.generateKeyPair();
+		LocalDateTime notBefore = LocalDateTime.now();
+		LocalDateTime notAfter = notBefore.plusMonths(1);
+		X509Certificate rootCertificate = PKITestUtils.generateSelfSignedCertificate(rootKeyPair, "CN=TestRoot",
+				notBefore, notAfter);
+
+		KeyPair interKeyPair = PKITestUtils.generateKeyPair();
+		X509Certificate interCertificate = PKITestUtils.generateCertificate(interKeyPair.getPublic(), "CN=Inter",
+				notBefore, notAfter, rootCertificate, rootKeyPair.getPrivate());
+
+		KeyPair keyPair = PKITestUtils.generateKeyPair();
+		X509Certificate certificate = PKITestUtils.generateCertificate(keyPair.getPublic(), "CN=Test", notBefore,
+				notAfter, interCertificate, interKeyPair.getPrivate());
+
+		CertificateRepository mockCertificateRepository = EasyMock.createMock(CertificateRepository.class);
+		TrustValidator trustValidator = new TrustValidator(mockCertificateRepository);
+		trustValidator.setConcurrentTrustLinking(true);
+		trustValidator.setRevocationData(new RevocationData());
+
+		List<X509Certificate> certificatePath = new LinkedList<>();
+		certificatePath.add(certificate);
+		certificatePath.add(interCertificate);
+		certificatePath.add(rootCertificate);
+
+		EasyMock.expect(mockCertificateRepository.isTrustPoint(rootCertificate)).andReturn(true);
+
+		Date validationDate = new Date();
+
+		TrustLinker mockTrustLinker = EasyMock.createMock(TrustLinker.class);
+		EasyMock.expect(mockTrustLinker.hasTrustLink(EasyMock.eq(interCertificate), EasyMock.eq(rootCertificate),
+				EasyMock.eq(validationDate), EasyMock.anyObject(RevocationData.class),
+				EasyMock.anyObject(AlgorithmPolicy.class)))
+				.andThrow(new TrustLinkerResultException(TrustLinkerResultReason.INVALID_REVOCATION_STATUS));
+		EasyMock.expect(mockTrustLinker.hasTrustLink(EasyMock.eq(certificate), EasyMock.eq(interCertificate),
+				EasyMock.eq(validationDate), EasyMock.anyObject(RevocationData.class),
+				EasyMock.anyObject(AlgorithmPolicy.class))).andReturn(TrustLinkerResult.TRUSTED);
+		trustValidator.addTrustLinker(mockTrustLinker);
+
+		EasyMock.replay(mockCertificateRepository, mockTrustLinker);
+
+		// operate
+		try {
+			trustValidator.isTrusted(certificatePath, validationDate);
+			fail();
+		} catch (TrustLinkerResultException e) {
+			// verify
+			assertEquals(TrustLinkerResultReason.INVALID_REVOCATION_STATUS, e.getReason());
+		}
+		assertTrue(trustValidator.getRevocationData().getCrlRevocationData().isEmpty());
+	}
+
+	@Test
+	public void builderTrustValidatorIsImmutable() throws Exception {
+		// setup
+		CertificateRepository mockCertificateRepository = EasyMock.createMock(CertificateRepository.class);
+		TrustValidator trustValidator = TrustValidator.builder(mockCertificateRepository)
+				.addTrustLinker(new AlwaysTrustTrustLinker()).build();
+
+		// operate & verify
+		try {
+			trustValidator.addTrustLinker(new AlwaysTrustTrustLinker());
+			fail();
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		try {
+			trustValidator.setRevocationData(new RevocationData());
+			fail();
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void sharedTrustValidatorPerCallRevocationData() throws Exception {
+		// setup
+		KeyPair rootKeyPair = PKITestUtils.generateKeyPair();
+		LocalDateTime notBefore = LocalDateTime.now();
+		LocalDateTime notAfter = notBefore.plusMonths(1);
+		X509Certificate rootCertificate = PKITestUtils.generateSelfSignedCertificate(rootKeyPair, "CN=TestRoot",
+				notBefore, notAfter);
+
+		KeyPair keyPair = PKITestUtils.generateKeyPair();
+		X509Certificate certificate = PKITestUtils.generateCertificate(keyPair.getPublic(), "CN=Test", notBefore,
+				notAfter, rootCertificate, rootKeyPair.getPrivate());
+
+		CertificateRepository mockCertificateRepository = EasyMock.createMock(CertificateRepository.class);
+		EasyMock.expect(mockCertificateRepository.isTrustPoint(rootCertificate)).andStubReturn(true);
+
+		TrustValidator trustValidator = TrustValidator.builder(mockCertificateRepository)
+				.addTrustLinker((childCertificate, issuerCertificate, date, revocationData, algorithmPolicy) -> {
+					revocationData.getCrlRevocationData()
+							.add(new CRLRevocationData(childCertificate.getEncoded(), "urn:test"));
+					return TrustLinkerResult.TRUSTED;
+				}).build();
+
+		List<X509Certificate> certificatePath = new LinkedList<>();
+		certificatePath.add(certificate);
+		certificatePath.add(rootCertificate);
+
+		EasyMock.replay(mockCertificateRepository);
+
+		ValidationContext validationContext = new ValidationContext();
+		validationContext.setRevocationData(new RevocationData());
+		ValidationContext otherValidationContext = new ValidationContext();
+		otherValidationContext.setRevocationData(new RevocationData());
+
+		// operate
+		trustValidator.isTrusted(certificatePath, validationContext);
+		trustValidator.isTrustedAsync(certificatePath, otherValidationContext).get();
+
+		// verify
+		EasyMock.verify(mockCertificateRepository);
+		assertEquals(1, validationContext.getRevocationData().getCrlRevocationData().size());
+		assertEquals(1, otherValidationContext.getRevocationData().getCrlRevocationData().size());
+		assertNull(trustValidator.getRevocationData());
+	}
 }
@@ -0,0 +1,424 @@
+/*
+ * Java Trust Project.
+ * Copyright (C) 2009 FedICT.
+ * Copyright (C) 2015-2021 e-Contract.be BV.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.unit.be.fedict.trust;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.security.KeyPair;
+import java.security.Security;
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.easymock.EasyMock;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import be.fedict.trust.TrustValidator;
+import be.fedict.trust.ValidationContext;
+import be.fedict.trust.cache.ValidationResultCache;
+import be.fedict.trust.crl.CrlRepository;
+import be.fedict.trust.crl.CrlStreamParser;
+import be.fedict.trust.crl.CrlTrustLinker;
+import be.fedict.trust.crl.IndexedX509CRL;
+import be.fedict.trust.linker.TrustLinkerResult;
+import be.fedict.trust.linker.TrustLinkerResultException;
+import be.fedict.trust.linker.TrustLinkerResultReason;
+import be.fedict.trust.repository.CertificateRepository;
+import be.fedict.trust.revocation.CRLRevocationData;
+import be.fedict.trust.revocation.RevocationData;
+import be.fedict.trust.test.PKITestUtils;
+import be.fedict.trust.test.PKITestUtils.RevokedCertificate;
+
+public class ValidationResultCacheTest {
+
+	private KeyPair rootKeyPair;
+
+	private X509Certificate rootCertificate;
+
+	private List<X509Certificate> certificatePath;
+
+	private CertificateRepository mockCertificateRepository;
+
+	@BeforeAll
+	public static void installSecurityProviders() throws Exception {
+		Security.addProvider(new BouncyCastleProvider());
+	}
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		this.rootKeyPair = PKITestUtils.generateKeyPair();
+		LocalDateTime notBefore = LocalDateTime.now().minusDays(1);
+		LocalDateTime notAfter = notBefore.plusMonths(1);
+		this.rootCertificate = PKITestUtils.generateSelfSignedCertificate(this.rootKeyPair, "CN=TestRoot", notBefore,
+				notAfter);
+		KeyPair keyPair = PKITestUtils.generateKeyPair();
+		X509Certificate certificate = PKITestUtils.generateCertificate(keyPair.getPublic(), "CN=Test", notBefore,
+				notAfter, this.rootCertificate, this.rootKeyPair.getPrivate());
+		this.certificatePath = new LinkedList<>();
+		this.certificatePath.add(certificate);
+		this.certificatePath.add(this.rootCertificate);
+
+		this.mockCertificateRepository = EasyMock.createMock(CertificateRepository.class);
+		EasyMock.expect(this.mockCertificateRepository.isTrustPoint(this.rootCertificate)).andStubReturn(true);
+		EasyMock.replay(this.mockCertificateRepository);
+	}
+
+	@Test
+	public void testCachedValidationResult() throws Exception {
+		// setup
+		X509CRL crl = PKITestUtils.generateCrl(this.rootKeyPair.getPrivate(), this.rootCertificate,
+				LocalDateTime.now().minusHours(1), LocalDateTime.now().plusDays(1));
+		AtomicInteger trustLinkerCalls = new AtomicInteger();
+		ValidationResultCache validationResultCache = new ValidationResultCache();
+		TrustValidator trustValidator = TrustValidator.builder(this.mockCertificateRepository)
+				.addTrustLinker((childCertificate, certificate, validationDate, revocationData, algorithmPolicy) -> {
+					trustLinkerCalls.incrementAndGet();
+					revocationData.getCrlRevocationData().add(new CRLRevocationData(crl.getEncoded(), "urn:crl"));
+					return TrustLinkerResult.TRUSTED;
+				}).setValidationResultCache(validationResultCache).build();
+		Date validationDate = new Date();
+		ValidationContext firstValidationContext = new ValidationContext(validationDate);
+		firstValidationContext.setRevocationData(new RevocationData());
+
+		// operate
+		trustValidator.isTrusted(this.certificatePath, firstValidationContext);
+		ValidationContext validationContext = new ValidationContext(new Date(validationDate.getTime() + 1000));
+		validationContext.setRevocationData(new RevocationData());
+		trustValidator.isTrusted(this.certificatePath, validationContext);
+
+		// verify
+		assertEquals(1, trustLinkerCalls.get());
+		assertEquals(1, validationResultCache.size());
+		assertEquals(1, validationContext.getRevocationData().getCrlRevocationData().size());
+
+		// operate: a cached result does not apply to earlier validation dates
+		trustValidator.isTrusted(this.certificatePath, new Date(validationDate.getTime() - 60 * 1000));
+
+		// verify
+		assertEquals(2, trustLinkerCalls.get());
+	}
+
+	@Test
+	public void testExpiredRevocationDataNotCached() throws Exception {
+		// setup
+		X509CRL crl = PKITestUtils.generateCrl(this.rootKeyPair.getPrivate(), this.rootCertificate,
+				LocalDateTime.now().minusHours(2), LocalDateTime.now().minusHours(1));
+		AtomicInteger trustLinkerCalls = new AtomicInteger();
+		ValidationResultCache validationResultCache = new ValidationResultCache();
+		TrustValidator trustValidator = new TrustValidator(this.mockCertificateRepository);
+		trustValidator.addTrustLinker((childCertificate, certificate, validationDate, revocationData,
+				algorithmPolicy) -> {
+			trustLinkerCalls.incrementAndGet();
+			revocationData.getCrlRevocationData().add(new CRLRevocationData(crl.getEncoded(), "urn:crl"));
+			return TrustLinkerResult.TRUSTED;
+		});
+		trustValidator.setValidationResultCache(validationResultCache);
+
+		// operate
+		trustValidator.isTrusted(this.certificatePath);
+		trustValidator.isTrusted(this.certificatePath);
+
+		// verify
+		assertEquals(2, trustLinkerCalls.get());
+		assertEquals(0, validationResultCache.size());
+	}
+
+	@Test
+	public void testRevokedAfterValidationDate() throws Exception {
+		// setup
+		LocalDateTime now = LocalDateTime.now();
+		LocalDateTime notBefore = now.minusDays(1);
+		KeyPair keyPair = PKITestUtils.generateKeyPair();
+		X509Certificate certificate = PKITestUtils.generateCertificate(keyPair.getPublic(), "CN=Test", notBefore,
+				notBefore.plusMonths(1), this.rootCertificate, this.rootKeyPair.getPrivate(), false, -1,
+				"http://crl.test");
+		List<X509Certificate> certificatePath = new LinkedList<>();
+		certificatePath.add(certificate);
+		certificatePath.add(this.rootCertificate);
+		X509CRL crl = PKITestUtils.generateCrl(this.rootKeyPair.getPrivate(), this.rootCertificate,
+				now.minusHours(3), now.plusDays(1), Collections.singletonList(
+						new RevokedCertificate(certificate.getSerialNumber(), now.minusHours(1))));
+		CrlRepository mockCrlRepository = EasyMock.createMock(CrlRepository.class);
+		EasyMock.expect(mockCrlRepository.findCrl(EasyMock.anyObject(URI.class), EasyMock.eq(this.rootCertificate),
+				EasyMock.anyObject(Date.class))).andStubReturn(crl);
+		EasyMock.replay(mockCrlRepository);
+		ValidationResultCache validationResultCache = new ValidationResultCache();
+		TrustValidator trustValidator = TrustValidator.builder(this.mockCertificateRepository)
+				.addTrustLinker(new CrlTrustLinker(mockCrlRepository))
+				.setValidationResultCache(validationResultCache).build();
+
+		// operate: trusted before the revocation date
+		trustValidator.isTrusted(certificatePath, now.minusHours(2));
+
+		// verify
+		assertEquals(1, validationResultCache.size());
+
+		// operate & verify: the cached result does not cover the revocation
+		TrustLinkerResultException result = assertThrows(TrustLinkerResultException.class,
+				() -> trustValidator.isTrusted(certificatePath));
+		assertEquals(TrustLinkerResultReason.INVALID_REVOCATION_STATUS, result.getReason());
+	}
+
+	@Test
+	public void testSharedCacheSeparatesConfigurations() throws Exception {
+		// setup
+		ValidationResultCache validationResultCache = new ValidationResultCache();
+		TrustValidator trustingTrustValidator = TrustValidator.builder(this.mockCertificateRepository)
+				.addTrustLinker((childCertificate, certificate, validationDate, revocationData,
+						algorithmPolicy) -> TrustLinkerResult.TRUSTED)
+				.setValidationResultCache(validationResultCache).build();
+		TrustValidator revokingTrustValidator = TrustValidator.builder(this.mockCertificateRepository)
+				.addTrustLinker((childCertificate, certificate, validationDate, revocationData, algorithmPolicy) -> {
+					throw new TrustLinkerResultException(TrustLinkerResultReason.INVALID_REVOCATION_STATUS);
+				}).setValidationResultCache(validationResultCache).build();
+
+		// operate
+		trustingTrustValidator.isTrusted(this.certificatePath);
+
+		// verify
+		assertEquals(1, validationResultCache.size());
+
+		// operate & verify: the other configuration does not see the cached result
+		TrustLinkerResultException result = assertThrows(TrustLinkerResultException.class,
+				() -> revokingTrustValidator.isTrusted(this.certificatePath));
+		assertEquals(TrustLinkerResultReason.INVALID_REVOCATION_STATUS, result.getReason());
+	}
+
+	@Test
+	public void testConfigurationChangeNotServedFromCache() throws Exception {
+		// setup
+		AtomicInteger trustLinkerCalls = new AtomicInteger();
+		ValidationResultCache validationResultCache = new ValidationResultCache();
+		TrustValidator trustValidator = new TrustValidator(this.mockCertificateRepository);
+		trustValidator.addTrustLinker((childCertificate, certificate, validationDate, revocationData,
+				algorithmPolicy) -> {
+			trustLinkerCalls.incrementAndGet();
+			return TrustLinkerResult.TRUSTED;
+		});
+		trustValidator.setValidationResultCache(validationResultCache);
+		trustValidator.isTrusted(this.certificatePath);
+
+		// operate
+		trustValidator.addTrustLinker((childCertificate, certificate, validationDate, revocationData,
+				algorithmPolicy) -> {
+			throw new TrustLinkerResultException(TrustLinkerResultReason.INVALID_REVOCATION_STATUS);
+		});
+
+		// verify
+		TrustLinkerResultException result = assertThrows(TrustLinkerResultException.class,
+				() -> trustValidator.isTrusted(this.certificatePath));
+		assertEquals(TrustLinkerResultReason.INVALID_REVOCATION_STATUS, result.getReason());
+		assertEquals(2, trustLinkerCalls.get());
+	}
+
+	@Test
+	public void testCrlEncodingNotRetained() throws Exception {
+		// setup
+		LocalDateTime now = LocalDateTime.now();
+		LocalDateTime notBefore = now.minusDays(1);
+		KeyPair keyPair = PKITestUtils.generateKeyPair();
+		X509Certificate certificate = PKITestUtils.generateCertificate(keyPair.getPublic(), "CN=Test", notBefore,
+				notBefore.plusMonths(1), this.rootCertificate, this.rootKeyPair.getPrivate(), false, -1,
+				"http://crl.test");
+		List<X509Certificate> certificatePath = new LinkedList<>();
+		certificatePath.add(certificate);
+		certificatePath.add(this.rootCertificate);
+		X509CRL encodedCrl = PKITestUtils.generateCrl(this.rootKeyPair.getPrivate(), this.rootCertificate,
+				now.minusHours(3), now.plusDays(1), Collections.singletonList(
+						new RevokedCertificate(certificate.getSerialNumber(), now.plusHours(1))));
+		CrlStreamParser crlStreamParser = new CrlStreamParser(this.rootKeyPair.getPublic());
+		crlStreamParser.setRetainEncoding(false);
+		IndexedX509CRL crl = crlStreamParser.parse(new ByteArrayInputStream(encodedCrl.getEncoded()));
+		AtomicInteger crlLookups = new AtomicInteger();
+		CrlRepository crlRepository = (crlUri, issuerCertificate, validationDate) -> {
+			crlLookups.incrementAndGet();
+			return crl;
+		};
+		ValidationResultCache validationResultCache = new ValidationResultCache();
+		validationResultCache.setMaxAge(24 * 60 * 60 * 1000);
+		TrustValidator trustValidator = TrustValidator.builder(this.mockCertificateRepository)
+				.addTrustLinker(new CrlTrustLinker(crlRepository)).setValidationResultCache(validationResultCache)
+				.build();
+		Date validationDate = new Date();
+
+		// operate
+		trustValidator.isTrusted(certificatePath, validationDate);
+		trustValidator.isTrusted(certificatePath, validationDate);
+
+		// verify
+		assertEquals(1, crlLookups.get());
+		assertEquals(1, validationResultCache.size());
+
+		// operate & verify: the cached result ends at the revocation listed by the CRL index
+		TrustLinkerResultException result = assertThrows(TrustLinkerResultException.class,
+				() -> trustValidator.isTrusted(certificatePath,
+						Date.from(now.plusHours(2).atZone(ZoneId.systemDefault()).toInstant())));
+		assertEquals(TrustLinkerResultReason.INVALID_REVOCATION_STATUS, result.getReason());
+		assertEquals(2, crlLookups.get());
+
+		// operate & verify: a caller asking for the revocation data cannot get the CRL
+		ValidationContext validationContext = new ValidationContext(validationDate);
+		validationContext.setRevocationData(new RevocationData());
+		result = assertThrows(TrustLinkerResultException.class,
+				() -> trustValidator.isTrusted(certificatePath, validationContext));
+		assertEquals(TrustLinkerResultReason.UNSPECIFIED, result.getReason());
+	}
+
+	@Test
+	public void testTrustLinkCache() throws Exception {
+		// setup
+		LocalDateTime notBefore = LocalDateTime.now().minusDays(1);
+		LocalDateTime notAfter = notBefore.plusMonths(1);
+		KeyPair interKeyPair = PKITestUtils.generateKeyPair();
+		X509Certificate interCertificate = PKITestUtils.generateCertificate(interKeyPair.getPublic(), "CN=Inter",
+				notBefore, notAfter, this.rootCertificate, this.rootKeyPair.getPrivate());
+		List<List<X509Certificate>> certificatePaths = new LinkedList<>();
+		for (int idx = 0; idx < 3; idx++) {
+			KeyPair keyPair = PKITestUtils.generateKeyPair();
+			X509Certificate certificate = PKITestUtils.generateCertificate(keyPair.getPublic(), "CN=Test" + idx,
+					notBefore, notAfter, interCertificate, interKeyPair.getPrivate());
+			List<X509Certificate> certificatePath = new LinkedList<>();
+			certificatePath.add(certificate);
+			certificatePath.add(interCertificate);
+			certificatePath.add(this.rootCertificate);
+			certificatePaths.add(certificatePath);
+		}
+		AtomicInteger interTrustLinkerCalls = new AtomicInteger();
+		AtomicInteger trustLinkerCalls = new AtomicInteger();
+		ValidationResultCache trustLinkCache = new ValidationResultCache();
+		TrustValidator trustValidator = new TrustValidator(this.mockCertificateRepository);
+		trustValidator.addTrustLinker((childCertificate, certificate, validationDate, revocationData,
+				algorithmPolicy) -> {
+			trustLinkerCalls.incrementAndGet();
+			if (childCertificate.equals(interCertificate)) {
+				interTrustLinkerCalls.incrementAndGet();
+			}
+			return TrustLinkerResult.TRUSTED;
+		});
+		trustValidator.setTrustLinkCache(trustLinkCache);
+
+		// operate
+		trustValidator.isTrusted(certificatePaths.get(0));
+		trustValidator.isTrusted(certificatePaths.get(1));
+		trustValidator.isTrustedAsync(certificatePaths.get(2), new Date()).get();
+
+		// verify
+		assertEquals(1, interTrustLinkerCalls.get());
+		assertEquals(4, trustLinkerCalls.get());
+		assertEquals(1, trustLinkCache.size());
+	}
+
+	@Test
+	public void testSharedTrustLinkCacheSeparatesConfigurations() throws Exception {
+		// setup
+		LocalDateTime notBefore = LocalDateTime.now().minusDays(1);
+		LocalDateTime notAfter = notBefore.plusMonths(1);
+		KeyPair interKeyPair = PKITestUtils.generateKeyPair();
+		X509Certificate interCertificate = PKITestUtils.generateCertificate(interKeyPair.getPublic(), "CN=Inter",
+				notBefore, notAfter, this.rootCertificate, this.rootKeyPair.getPrivate());
+		KeyPair keyPair = PKITestUtils.generateKeyPair();
+		X509Certificate certificate = PKITestUtils.generateCertificate(keyPair.getPublic(), "CN=Test", notBefore,
+				notAfter, interCertificate, interKeyPair.getPrivate());
+		List<X509Certificate> certificatePath = new LinkedList<>();
+		certificatePath.add(certificate);
+		certificatePath.add(interCertificate);
+		certificatePath.add(this.rootCertificate);
+		ValidationResultCache trustLinkCache = new ValidationResultCache();
+		TrustValidator trustingTrustValidator = TrustValidator.builder(this.mockCertificateRepository)
+				.addTrustLinker((childCertificate, issuerCertificate, validationDate, revocationData,
+						algorithmPolicy) -> TrustLinkerResult.TRUSTED)
+				.setTrustLinkCache(trustLinkCache).build();
+		TrustValidator revokingTrustValidator = TrustValidator.builder(this.mockCertificateRepository)
+				.addTrustLinker((childCertificate, issuerCertificate, validationDate, revocationData,
+						algorithmPolicy) -> {
+					if (childCertificate.equals(interCertificate)) {
+						throw new TrustLinkerResultException(TrustLinkerResultReason.INVALID_REVOCATION_STATUS);
+					}
+					return TrustLinkerResult.TRUSTED;
+				}).setTrustLinkCache(trustLinkCache).build();
+
+		// operate
+		trustingTrustValidator.isTrusted(certificatePath);
+
+		// verify
+		assertEquals(1, trustLinkCache.size());
+
+		// operate & verify: the other trust linkers do not see the cached trust link
+		TrustLinkerResultException result = assertThrows(TrustLinkerResultException.class,
+				() -> revokingTrustValidator.isTrusted(certificatePath));
+		assertEquals(TrustLinkerResultReason.INVALID_REVOCATION_STATUS, result.getReason());
+	}
+
+	@Test
+	public void testTrustLinkCacheRevokedIntermediate() throws Exception {
+		// setup
+		LocalDateTime now = LocalDateTime.now();
+		LocalDateTime notBefore = now.minusDays(1);
+		LocalDateTime notAfter = notBefore.plusMonths(1);
+		KeyPair interKeyPair = PKITestUtils.generateKeyPair();
+		X509Certificate interCertificate = PKITestUtils.generateCertificate(interKeyPair.getPublic(), "CN=Inter",
+				notBefore, notAfter, this.rootCertificate, this.rootKeyPair.getPrivate(), true, -1,
+				"http://root.crl.test");
+		KeyPair keyPair = PKITestUtils.generateKeyPair();
+		X509Certificate certificate = PKITestUtils.generateCertificate(keyPair.getPublic(), "CN=Test", notBefore,
+				notAfter, interCertificate, interKeyPair.getPrivate(), false, -1, "http://inter.crl.test");
+		List<X509Certificate> certificatePath = new LinkedList<>();
+		certificatePath.add(certificate);
+		certificatePath.add(interCertificate);
+		certificatePath.add(this.rootCertificate);
+		X509CRL rootCrl = PKITestUtils.generateCrl(this.rootKeyPair.getPrivate(), this.rootCertificate,
+				now.minusHours(3), now.plusDays(1), Collections.singletonList(
+						new RevokedCertificate(interCertificate.getSerialNumber(), now.minusHours(1))));
+		X509CRL interCrl = PKITestUtils.generateCrl(interKeyPair.getPrivate(), interCertificate, now.minusHours(3),
+				now.plusDays(1));
+		CrlRepository mockCrlRepository = EasyMock.createMock(CrlRepository.class);
+		EasyMock.expect(mockCrlRepository.findCrl(EasyMock.anyObject(URI.class), EasyMock.eq(this.rootCertificate),
+				EasyMock.anyObject(Date.class))).andStubReturn(rootCrl);
+		EasyMock.expect(mockCrlRepository.findCrl(EasyMock.anyObject(URI.class), EasyMock.eq(interCertificate),
+				EasyMock.anyObject(Date.class))).andStubReturn(interCrl);
+		EasyMock.replay(mockCrlRepository);
+		ValidationResultCache trustLinkCache = new ValidationResultCache();
+		TrustValidator trustValidator = TrustValidator.builder(this.mockCertificateRepository)
+				.addTrustLinker(new CrlTrustLinker(mockCrlRepository)).setTrustLinkCache(trustLinkCache).build();
+
+		// operate: trusted before the revocation date of the intermediate
+		trustValidator.isTrusted(certificatePath, now.minusHours(2));
+
+		// verify
+		assertEquals(1, trustLinkCache.size());
+
+		// operate & verify: the cached trust link does not cover the revocation
+		TrustLinkerResultException result = assertThrows(TrustLinkerResultException.class,
+				() -> trustValidator.isTrusted(certificatePath));
+		assertEquals(TrustLinkerResultReason.INVALID_REVOCATION_STATUS, result.getReason());
+	}
+}